@@ -0,0 +1,12 @@
+package ma.iorecycling.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Active le cache applicatif (Caffeine, configuré par spring.cache.* dans application.yml)
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+}
@@ -0,0 +1,44 @@
+package ma.iorecycling.config;
+
+import org.slf4j.MDC;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Map;
+
+/**
+ * Pool de threads borné pour le calcul parallèle des KPIs du dashboard comptabilité
+ */
+@Configuration
+@EnableConfigurationProperties(DashboardProperties.class)
+public class DashboardExecutorConfig {
+
+    @Bean(name = "dashboardExecutor")
+    public ThreadPoolTaskExecutor dashboardExecutor(DashboardProperties properties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.getThreads());
+        executor.setMaxPoolSize(properties.getThreads());
+        executor.setQueueCapacity(properties.getFileAttente());
+        executor.setThreadNamePrefix("dashboard-kpi-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        
+        // Propager le contexte de logs (tenantId, traceId...) aux threads de calcul
+        executor.setTaskDecorator(tache -> {
+            Map<String, String> contexte = MDC.getCopyOfContextMap();
+            return () -> {
+                if (contexte != null) {
+                    MDC.setContextMap(contexte);
+                }
+                try {
+                    tache.run();
+                } finally {
+                    MDC.clear();
+                }
+            };
+        });
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,40 @@
+package ma.iorecycling.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "comptabilite.dashboard")
+public class DashboardProperties {
+
+    /**
+     * Exécute les requêtes KPI du dashboard en parallèle (sinon l'une après l'autre)
+     */
+    private boolean parallele = true;
+
+    /**
+     * Nombre de threads partagés par tous les calculs de dashboard
+     * A garder nettement sous la taille du pool de connexions
+     */
+    private int threads = 6;
+
+    /**
+     * Nombre maximal de requêtes KPI simultanées pour un même dashboard
+     */
+    private int parallelismeParRequete = 4;
+
+    /**
+     * Nombre maximal de requêtes KPI en attente d'un thread
+     */
+    private int fileAttente = 100;
+
+    /**
+     * Délai global de calcul d'un dashboard, au-delà les KPI manquants sont signalés indisponibles
+     */
+    private long timeoutMs = 5000;
+
+    /**
+     * Nombre de catégories détaillées dans la répartition des dépenses, les suivantes sont regroupées dans "Autre"
+     */
+    private int nbCategories = 8;
+}
@@ -0,0 +1,69 @@
+package ma.iorecycling.config;
+
+import com.opencsv.CSVWriter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ma.iorecycling.dto.ImportEnlevementsResultDTO;
+import ma.iorecycling.service.EnlevementImportService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Import d'enlèvements en ligne de commande, puis arrêt de l'application
+ * Actif uniquement si app.import.enlevements.fichier est renseigné, par exemple :
+ * java -jar backend.jar --spring.main.web-application-type=none --app.import.enlevements.fichier=/data/polymedic.csv
+ * Les erreurs sont écrites dans &lt;fichier&gt;.erreurs.csv ; code retour 0 si tout est importé, 2 sinon
+ */
+@Component
+@ConditionalOnProperty(prefix = "app.import.enlevements", name = "fichier")
+@RequiredArgsConstructor
+@Slf4j
+public class EnlevementImportRunner implements CommandLineRunner {
+    
+    private final EnlevementImportService enlevementImportService;
+    private final ApplicationContext applicationContext;
+    
+    @Value("${app.import.enlevements.fichier}")
+    private String fichier;
+    
+    @Value("${app.import.enlevements.utilisateur:import-cli}")
+    private String utilisateur;
+    
+    @Override
+    public void run(String... args) throws Exception {
+        Path chemin = Path.of(fichier);
+        log.info("Import des enlèvements depuis {}", chemin);
+        
+        ImportEnlevementsResultDTO rapport;
+        try (InputStream contenu = Files.newInputStream(chemin)) {
+            rapport = enlevementImportService.importer(contenu, utilisateur);
+        }
+        
+        if (rapport.getNombreErreurs() > 0) {
+            Path erreurs = Path.of(fichier + ".erreurs.csv");
+            try (Writer writer = Files.newBufferedWriter(erreurs, StandardCharsets.UTF_8);
+                 CSVWriter csv = new CSVWriter(writer, ';', CSVWriter.DEFAULT_QUOTE_CHARACTER,
+                         CSVWriter.DEFAULT_ESCAPE_CHARACTER, CSVWriter.DEFAULT_LINE_END)) {
+                csv.writeNext(new String[]{"ligne", "reference", "message"});
+                for (ImportEnlevementsResultDTO.ErreurLigne erreur : rapport.getErreurs()) {
+                    csv.writeNext(new String[]{String.valueOf(erreur.getLigne()), erreur.getReference(), erreur.getMessage()});
+                }
+            }
+            log.warn("{} erreurs ({} détaillées) écrites dans {}",
+                    rapport.getNombreErreurs(), rapport.getErreurs().size(), erreurs);
+        }
+        
+        int code = rapport.getEnlevementsRejetes() > 0 ? 2 : 0;
+        System.exit(SpringApplication.exit(applicationContext, () -> code));
+    }
+}
@@ -0,0 +1,31 @@
+package ma.iorecycling.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Pool de threads borné des exports comptables écrits en flux (voir ExportComptableExecutor)
+ */
+@Configuration
+@EnableConfigurationProperties(ExportProperties.class)
+public class ExportExecutorConfig {
+
+    private final ExportProperties properties;
+
+    public ExportExecutorConfig(ExportProperties properties) {
+        this.properties = properties;
+    }
+
+    @Bean(name = "exportExecutor")
+    public ThreadPoolTaskExecutor exportExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.getThreads());
+        executor.setMaxPoolSize(properties.getThreads());
+        executor.setQueueCapacity(properties.getFileAttente());
+        executor.setThreadNamePrefix("export-comptable-");
+        executor.initialize();
+        return executor;
+    }
+}
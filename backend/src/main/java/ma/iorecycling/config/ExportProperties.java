@@ -0,0 +1,30 @@
+package ma.iorecycling.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "comptabilite.export")
+public class ExportProperties {
+
+    /**
+     * Nombre d'exports écrits en parallèle
+     * Chaque export occupe une connexion pendant toute sa durée
+     */
+    private int threads = 4;
+
+    /**
+     * Exports en attente d'un thread au-delà desquels les demandes sont refusées
+     */
+    private int fileAttente = 4;
+
+    /**
+     * Nombre de lignes lues par aller-retour du curseur JDBC
+     */
+    private int fetchSize = 1000;
+
+    /**
+     * Durée maximale d'un export avant interruption de la réponse
+     */
+    private long timeoutMs = 1_800_000;
+}
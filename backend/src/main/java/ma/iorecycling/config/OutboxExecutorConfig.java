@@ -0,0 +1,28 @@
+package ma.iorecycling.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Pool de threads borné du worker de l'outbox comptable
+ * La file est dimensionnée sur le lot : le worker n'en soumet jamais plus d'un à la fois
+ */
+@Configuration
+@EnableConfigurationProperties(OutboxProperties.class)
+public class OutboxExecutorConfig {
+
+    @Bean(name = "outboxExecutor")
+    public ThreadPoolTaskExecutor outboxExecutor(OutboxProperties properties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.getThreads());
+        executor.setMaxPoolSize(properties.getThreads());
+        executor.setQueueCapacity(properties.getLot());
+        executor.setThreadNamePrefix("outbox-comptable-");
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        executor.initialize();
+        return executor;
+    }
+}
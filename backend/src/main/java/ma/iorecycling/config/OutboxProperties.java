@@ -0,0 +1,50 @@
+package ma.iorecycling.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "comptabilite.outbox")
+public class OutboxProperties {
+
+    /**
+     * Nombre de threads générant les transactions en parallèle
+     * Chaque thread occupe une connexion pendant une génération
+     */
+    private int threads = 2;
+
+    /**
+     * Nombre maximal de demandes réservées par passage du worker
+     */
+    private int lot = 50;
+
+    /**
+     * Intervalle entre deux passages du worker
+     */
+    private long intervalleMs = 2000;
+
+    /**
+     * Nombre de tentatives avant passage en ECHEC
+     */
+    private int tentativesMax = 8;
+
+    /**
+     * Délai avant la première nouvelle tentative, doublé à chaque échec
+     */
+    private long delaiInitialMs = 5000;
+
+    /**
+     * Délai maximal entre deux tentatives
+     */
+    private long delaiMaxMs = 3_600_000;
+
+    /**
+     * Durée au-delà de laquelle une demande EN_COURS est considérée abandonnée (arrêt brutal) et reprise
+     */
+    private long verrouExpirationMs = 300_000;
+
+    /**
+     * Durée de conservation des demandes traitées
+     */
+    private int retentionJours = 7;
+}
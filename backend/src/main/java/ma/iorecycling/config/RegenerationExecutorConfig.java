@@ -0,0 +1,27 @@
+package ma.iorecycling.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Pool de threads borné des jobs de régénération des transactions
+ */
+@Configuration
+@EnableConfigurationProperties(RegenerationProperties.class)
+public class RegenerationExecutorConfig {
+
+    @Bean(name = "regenerationExecutor")
+    public ThreadPoolTaskExecutor regenerationExecutor(RegenerationProperties properties) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.getThreads());
+        executor.setMaxPoolSize(properties.getThreads());
+        executor.setQueueCapacity(properties.getFileAttente());
+        executor.setThreadNamePrefix("regeneration-");
+        // Un job interrompu reprend au dernier lot validé au prochain démarrage
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+}
@@ -0,0 +1,35 @@
+package ma.iorecycling.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@Data
+@ConfigurationProperties(prefix = "comptabilite.regeneration")
+public class RegenerationProperties {
+
+    /**
+     * Nombre de jobs exécutés simultanément, chacun n'occupe une connexion que le temps d'un lot
+     * A garder nettement sous la taille du pool de connexions
+     */
+    private int threads = 1;
+
+    /**
+     * Nombre maximal de jobs en attente d'un thread (les suivants sont lancés par la reprise planifiée)
+     */
+    private int fileAttente = 10;
+
+    /**
+     * Nombre d'enlèvements par lot (une transaction par lot)
+     */
+    private int tailleLot = 200;
+
+    /**
+     * Pause entre deux lots, laisse les connexions aux requêtes des utilisateurs
+     */
+    private long pauseMs = 100;
+
+    /**
+     * Durée sans avancement au-delà de laquelle un job EN_COURS est considéré abandonné et repris
+     */
+    private long verrouExpirationMs = 120_000;
+}
@@ -0,0 +1,12 @@
+package ma.iorecycling.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Active les traitements planifiés (clôture mensuelle de la trésorerie, worker de l'outbox comptable)
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
@@ -2,24 +2,34 @@ package ma.iorecycling.controller;
 
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import ma.iorecycling.dto.*;
+import ma.iorecycling.entity.CreanceAnciennete;
 import ma.iorecycling.entity.Transaction;
+import ma.iorecycling.exception.RapprochementRefuseException;
 import ma.iorecycling.service.*;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -38,6 +48,13 @@ public class AdminComptabiliteController {
     private final PaiementService paiementService;
     private final EcheanceService echeanceService;
     private final ComptabiliteDashboardService dashboardService;
+    private final TransactionRollupService rollupService;
+    private final TresorerieService tresorerieService;
+    private final BalanceAgeeService balanceAgeeService;
+    private final OutboxComptableService outboxComptableService;
+    private final ExportComptableService exportComptableService;
+    private final ExportComptableExecutor exportComptableExecutor;
+    private final RapprochementBancaireService rapprochementBancaireService;
     
     // ========== TRANSACTIONS ==========
     
@@ -95,6 +112,35 @@ public class AdminComptabiliteController {
         }
     }
     
+    /**
+     * Liste les transactions par curseur (keyset), du plus récent au plus ancien
+     */
+    @GetMapping("/transactions/scroll")
+    @Operation(summary = "Parcourt les transactions par curseur", description = "Page suivante via le jeton nextCursor, coût constant quelle que soit la profondeur. Le total n'est calculé que si withTotal=true.")
+    public ResponseEntity<CursorPageDTO<TransactionDTO>> scrollTransactions(
+            @RequestParam(required = false) Long societeId,
+            @RequestParam(required = false) Long enlevementId,
+            @RequestParam(required = false) Transaction.TypeTransaction type,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
+        
+        log.info("GET /api/comptabilite/transactions/scroll - Société: {}, Enlèvement: {}, Type: {}", 
+                societeId, enlevementId, type);
+        
+        try {
+            CursorPageDTO<TransactionDTO> transactions = transactionService.getTransactionsApres(
+                    societeId, enlevementId, type, cursor, size, withTotal);
+            return ResponseEntity.ok(transactions);
+        } catch (IllegalArgumentException e) {
+            log.error("Paramètres de pagination invalides : {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Erreur lors de la récupération des transactions", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
     /**
      * Récupère une transaction par ID
      */
@@ -166,6 +212,40 @@ public class AdminComptabiliteController {
         }
     }
     
+    // ========== EXPORT ==========
+    
+    /**
+     * Exporte le grand livre d'une société sur une période (transactions, paiements, échéances) en CSV
+     * La réponse est écrite au fil de la lecture, sur le pool exportExecutor (voir ExportComptableExecutor)
+     */
+    @GetMapping("/export")
+    @Operation(summary = "Exporte le grand livre", 
+               description = "Export CSV des transactions d'une société avec leurs paiements et échéances")
+    public WebAsyncTask<ResponseEntity<Void>> exporterGrandLivre(
+            @RequestParam Long societeId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateDebut,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateFin,
+            HttpServletResponse response) {
+        log.info("GET /api/comptabilite/export - Société: {}, du {} au {}", societeId, dateDebut, dateFin);
+        
+        return exportComptableExecutor.tache(() -> {
+            try {
+                exportComptableService.verifierDemande(societeId, dateDebut, dateFin);
+            } catch (IllegalArgumentException e) {
+                log.error("Demande d'export invalide: {}", e.getMessage());
+                return ResponseEntity.badRequest().build();
+            }
+            
+            // En-têtes posés avant le premier octet : une erreur ne peut plus être renvoyée une fois l'écriture commencée
+            String fichier = String.format("grand-livre-%d-%s-%s.csv", societeId, dateDebut, dateFin);
+            response.setHeader(HttpHeaders.CONTENT_DISPOSITION, 
+                    ContentDisposition.attachment().filename(fichier).build().toString());
+            response.setContentType(new MediaType("text", "csv", StandardCharsets.UTF_8).toString());
+            exportComptableService.exporterGrandLivre(societeId, dateDebut, dateFin, response.getOutputStream());
+            return ResponseEntity.ok().build();
+        });
+    }
+    
     // ========== PAIEMENTS ==========
     
     /**
@@ -209,6 +289,32 @@ public class AdminComptabiliteController {
         }
     }
     
+    /**
+     * Liste les paiements d'une société par curseur (keyset), du plus récent au plus ancien
+     */
+    @GetMapping("/paiements/scroll")
+    @Operation(summary = "Parcourt les paiements par curseur", description = "Page suivante via le jeton nextCursor, coût constant quelle que soit la profondeur. Le total n'est calculé que si withTotal=true.")
+    public ResponseEntity<CursorPageDTO<PaiementDTO>> scrollPaiements(
+            @RequestParam Long societeId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
+        
+        log.info("GET /api/comptabilite/paiements/scroll - Société: {}", societeId);
+        
+        try {
+            CursorPageDTO<PaiementDTO> paiements = paiementService.getPaiementsBySocieteApres(
+                    societeId, cursor, size, withTotal);
+            return ResponseEntity.ok(paiements);
+        } catch (IllegalArgumentException e) {
+            log.error("Paramètres de pagination invalides : {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Erreur lors de la récupération des paiements", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
     /**
      * Supprime un paiement
      */
@@ -226,6 +332,88 @@ public class AdminComptabiliteController {
         }
     }
     
+    /**
+     * Vérifie la cohérence du montant payé enregistré sur les transactions
+     */
+    @GetMapping("/paiements/verification")
+    @Operation(summary = "Vérifier les montants payés", description = "Liste les transactions dont le montant payé enregistré diffère de la somme de leurs paiements valides")
+    public ResponseEntity<List<MontantPayeEcartDTO>> verifierMontantsPayes() {
+        log.info("GET /api/comptabilite/paiements/verification");
+        
+        try {
+            return ResponseEntity.ok(paiementService.verifierMontantsPayes());
+        } catch (Exception e) {
+            log.error("Erreur lors de la vérification des montants payés", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    /**
+     * Recalcule le montant payé des transactions incohérentes
+     */
+    @PostMapping("/paiements/correction")
+    @Operation(summary = "Corriger les montants payés", description = "Recalcule le montant payé des transactions incohérentes depuis leurs paiements valides et retourne le nombre de transactions corrigées")
+    public ResponseEntity<Integer> corrigerMontantsPayes() {
+        log.info("POST /api/comptabilite/paiements/correction");
+        
+        try {
+            return ResponseEntity.ok(paiementService.corrigerMontantsPayes());
+        } catch (Exception e) {
+            log.error("Erreur lors de la correction des montants payés", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    /**
+     * Propose une transaction pour chaque ligne d'un relevé bancaire (CSV ou XML camt.053), sans rien enregistrer
+     */
+    @PostMapping(value = "/rapprochement", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Rapprocher un relevé bancaire", description = "Rapproche chaque ligne du relevé d'une transaction ouverte par numéro cité (transaction, enlèvement, vente) ou par montant restant égal dans la tolérance de date. Les propositions sont à valider puis appliquer.")
+    public ResponseEntity<RapprochementDTO> proposerRapprochement(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(required = false) Long societeId,
+            @RequestParam(defaultValue = "60") int toleranceJours) {
+        
+        log.info("POST /api/comptabilite/rapprochement - Fichier {}, société {}", file.getOriginalFilename(), societeId);
+        
+        try (InputStream contenu = file.getInputStream()) {
+            return ResponseEntity.ok(rapprochementBancaireService.proposer(
+                    contenu, file.getOriginalFilename(), societeId, toleranceJours));
+        } catch (IllegalArgumentException e) {
+            log.error("Relevé bancaire invalide : {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Erreur lors du rapprochement du relevé bancaire", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    /**
+     * Enregistre les paiements des rapprochements acceptés, tous ou aucun
+     */
+    @PostMapping("/rapprochement/application")
+    @Operation(summary = "Appliquer un rapprochement", description = "Crée en une transaction un paiement par rapprochement accepté et l'attribue aux échéances. Rien n'est enregistré si un montant dépasse le restant de sa transaction : la réponse 400 liste alors les transactions refusées et leur motif.")
+    public ResponseEntity<ResultatRapprochementDTO> appliquerRapprochement(
+            @Valid @RequestBody ApplicationRapprochementRequest request,
+            @AuthenticationPrincipal Jwt jwt) {
+        
+        log.info("POST /api/comptabilite/rapprochement/application - {} paiements", request.getPaiements().size());
+        
+        try {
+            String createdBy = jwt.getSubject();
+            return ResponseEntity.ok(rapprochementBancaireService.appliquer(request.getPaiements(), createdBy));
+        } catch (RapprochementRefuseException e) {
+            log.error("Rapprochement refusé : {}", e.getMessage());
+            return ResponseEntity.badRequest().body(ResultatRapprochementDTO.builder().refus(e.getRefus()).build());
+        } catch (IllegalArgumentException e) {
+            log.error("Rapprochement refusé : {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Erreur lors de l'application du rapprochement", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
     // ========== ÉCHÉANCES ==========
     
     /**
@@ -313,5 +501,193 @@ public class AdminComptabiliteController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
+    
+    /**
+     * Récupère le comparatif des sociétés sur une période (une ligne par société)
+     */
+    @GetMapping("/dashboard/societes")
+    @Operation(summary = "Comparatif des sociétés", description = "Recettes, dépenses, résultat, taux de marge, impayés et CA de chaque société, paginés et triables sur n'importe quel indicateur (ex: sort=resultatNet,desc)")
+    public ResponseEntity<Page<ComparatifSocieteDTO>> getComparatifSocietes(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateDebut,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateFin,
+            @PageableDefault(size = 20, sort = "totalRecettes", direction = Sort.Direction.DESC) Pageable pageable) {
+        
+        log.info("GET /api/admin/comptabilite/dashboard/societes - Période: {} - {}, Tri: {}", 
+                dateDebut, dateFin, pageable.getSort());
+        
+        try {
+            return ResponseEntity.ok(dashboardService.calculateComparatifSocietes(dateDebut, dateFin, pageable));
+        } catch (IllegalArgumentException e) {
+            log.error("Comparatif des sociétés invalide : {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Erreur lors du calcul du comparatif des sociétés", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    // ========== TRÉSORERIE ==========
+    
+    /**
+     * Récupère le solde de trésorerie à une date
+     * Si societeId est null, calcule le solde pour toutes les sociétés
+     */
+    @GetMapping("/tresorerie/solde")
+    @Operation(summary = "Solde de trésorerie à une date", description = "Calcule le solde (recettes - dépenses) cumulé jusqu'à la date donnée incluse. Si societeId n'est pas fourni, calcule pour toutes les sociétés.")
+    public ResponseEntity<SoldeTresorerieDTO> getSoldeTresorerie(
+            @RequestParam(required = false) Long societeId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        
+        log.info("GET /api/comptabilite/tresorerie/solde - Société: {}, Date: {}", 
+                societeId != null ? societeId : "TOUTES", date);
+        
+        try {
+            return ResponseEntity.ok(tresorerieService.getSoldeAu(societeId, date));
+        } catch (Exception e) {
+            log.error("Erreur lors du calcul du solde de trésorerie", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    /**
+     * Lance la clôture des mois écoulés sans attendre le traitement planifié
+     */
+    @PostMapping("/tresorerie/cloture")
+    @Operation(summary = "Clôturer les mois écoulés", description = "Calcule les soldes mensuels manquants jusqu'au mois précédent inclus et retourne le nombre de soldes créés")
+    public ResponseEntity<Integer> cloturerTresorerie() {
+        log.info("POST /api/comptabilite/tresorerie/cloture");
+        
+        try {
+            return ResponseEntity.ok(tresorerieService.cloturerMoisEcoules());
+        } catch (Exception e) {
+            log.error("Erreur lors de la clôture de la trésorerie", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    // ========== BALANCE ÂGÉE ==========
+    
+    /**
+     * Balance âgée des créances clients (0-30, 31-60, 61-90 et plus de 90 jours)
+     * Si societeId est null, une ligne par société
+     */
+    @GetMapping("/balance-agee")
+    @Operation(summary = "Balance âgée des créances", description = "Recettes impayées par société et tranche d'ancienneté, à la date de référence avancée chaque nuit. Si societeId n'est pas fourni, couvre toutes les sociétés.")
+    public ResponseEntity<BalanceAgeeDTO> getBalanceAgee(@RequestParam(required = false) Long societeId) {
+        log.info("GET /api/comptabilite/balance-agee - Société: {}", societeId != null ? societeId : "TOUTES");
+        
+        try {
+            return ResponseEntity.ok(balanceAgeeService.getBalanceAgee(societeId));
+        } catch (Exception e) {
+            log.error("Erreur lors du calcul de la balance âgée", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    /**
+     * Détail des créances d'une société dans une tranche de la balance âgée
+     */
+    @GetMapping("/balance-agee/{societeId}/creances")
+    @Operation(summary = "Détail d'une tranche de la balance âgée", description = "Liste paginée des recettes impayées d'une société dans la tranche demandée")
+    public ResponseEntity<Page<CreanceDTO>> getCreances(
+            @PathVariable Long societeId,
+            @RequestParam CreanceAnciennete.Tranche tranche,
+            @PageableDefault(sort = "dateTransaction", direction = Sort.Direction.ASC) Pageable pageable) {
+        log.info("GET /api/comptabilite/balance-agee/{}/creances - Tranche: {}", societeId, tranche);
+        
+        try {
+            return ResponseEntity.ok(balanceAgeeService.getCreances(societeId, tranche, pageable));
+        } catch (Exception e) {
+            log.error("Erreur lors de la récupération des créances", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    /**
+     * Avance la date de référence de la balance âgée sans attendre le traitement planifié
+     */
+    @PostMapping("/balance-agee/avancement")
+    @Operation(summary = "Avancer la balance âgée", description = "Compte l'ancienneté des créances à la date du jour et retourne le nombre de lignes de balance modifiées")
+    public ResponseEntity<Integer> avancerBalanceAgee() {
+        log.info("POST /api/comptabilite/balance-agee/avancement");
+        
+        try {
+            return ResponseEntity.ok(balanceAgeeService.avancerDateReference());
+        } catch (Exception e) {
+            log.error("Erreur lors de l'avancement de la balance âgée", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    // ========== AGRÉGAT JOURNALIER ==========
+    
+    /**
+     * Vérifie la cohérence de l'agrégat journalier avec les transactions
+     */
+    @GetMapping("/rollup/verification")
+    @Operation(summary = "Vérifier l'agrégat journalier", description = "Liste les écarts entre l'agrégat journalier utilisé par le dashboard et les transactions. Une liste vide signifie que l'agrégat est cohérent.")
+    public ResponseEntity<List<RollupEcartDTO>> verifierRollup() {
+        log.info("GET /api/comptabilite/rollup/verification");
+        
+        try {
+            return ResponseEntity.ok(rollupService.verifier());
+        } catch (Exception e) {
+            log.error("Erreur lors de la vérification de l'agrégat journalier", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    /**
+     * Reconstruit l'agrégat journalier depuis les transactions
+     */
+    @PostMapping("/rollup/reconstruction")
+    @Operation(summary = "Reconstruire l'agrégat journalier", description = "Recalcule entièrement l'agrégat journalier depuis les transactions et retourne le nombre de lignes créées")
+    public ResponseEntity<Integer> reconstruireRollup() {
+        log.info("POST /api/comptabilite/rollup/reconstruction");
+        
+        try {
+            return ResponseEntity.ok(rollupService.reconstruire());
+        } catch (Exception e) {
+            log.error("Erreur lors de la reconstruction de l'agrégat journalier", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    // ========== OUTBOX DE GÉNÉRATION ==========
+    
+    /**
+     * État de la génération asynchrone des transactions des enlèvements
+     */
+    @GetMapping("/outbox")
+    @Operation(summary = "État de l'outbox comptable", description = "Nombre de générations de transactions en attente, en cours et en échec, âge de la plus ancienne demande en attente et dernières demandes en échec")
+    public ResponseEntity<OutboxStatutDTO> getOutboxStatut() {
+        log.info("GET /api/comptabilite/outbox");
+        
+        try {
+            return ResponseEntity.ok(outboxComptableService.getStatut());
+        } catch (Exception e) {
+            log.error("Erreur lors de la lecture de l'état de l'outbox comptable", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    /**
+     * Relance une génération passée en échec
+     */
+    @PostMapping("/outbox/{id}/relance")
+    @Operation(summary = "Relancer une génération en échec", description = "Remet en file une demande de génération passée en échec après le nombre maximal de tentatives")
+    public ResponseEntity<Void> relancerOutbox(@PathVariable Long id) {
+        log.info("POST /api/comptabilite/outbox/{}/relance", id);
+        
+        try {
+            outboxComptableService.relancer(id);
+            return ResponseEntity.noContent().build();
+        } catch (IllegalArgumentException e) {
+            log.warn("Relance impossible : {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Erreur lors de la relance de la demande {}", id, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
 }
-
@@ -6,21 +6,32 @@ import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import ma.iorecycling.dto.CreateEnlevementRequest;
+import ma.iorecycling.dto.CursorPageDTO;
 import ma.iorecycling.dto.EnlevementDTO;
+import ma.iorecycling.dto.EnlevementSummaryDTO;
+import ma.iorecycling.dto.CreateRegenerationJobRequest;
+import ma.iorecycling.dto.ImportEnlevementsResultDTO;
+import ma.iorecycling.dto.RegenerationJobDTO;
 import ma.iorecycling.dto.UpdateEnlevementRequest;
+import ma.iorecycling.service.EnlevementImportService;
 import ma.iorecycling.service.EnlevementService;
+import ma.iorecycling.service.RegenerationTransactionsService;
+import ma.iorecycling.service.TonnageMensuelService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.web.PageableDefault;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
+import java.io.InputStream;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -36,6 +47,9 @@ import java.util.List;
 public class AdminEnlevementController {
     
     private final EnlevementService enlevementService;
+    private final TonnageMensuelService tonnageMensuelService;
+    private final EnlevementImportService enlevementImportService;
+    private final RegenerationTransactionsService regenerationService;
     
     /**
      * Crée un nouvel enlèvement
@@ -98,26 +112,49 @@ public class AdminEnlevementController {
     }
     
     /**
-     * Liste les enlèvements (tous ou filtrés par société)
+     * Liste les enlèvements (tous ou filtrés par société), en résumé sans items
      */
     @GetMapping
     @Operation(summary = "Lister les enlèvements", description = "Récupère la liste paginée des enlèvements")
-    public ResponseEntity<Page<EnlevementDTO>> getEnlevements(
+    public ResponseEntity<Page<EnlevementSummaryDTO>> getEnlevements(
             @RequestParam(required = false) Long societeId,
             @PageableDefault(size = 20, sort = "dateEnlevement", direction = Sort.Direction.DESC) Pageable pageable) {
         
         log.info("GET /api/admin/enlevements - société {}", societeId);
         
         if (societeId != null) {
-            Page<EnlevementDTO> enlevements = enlevementService.getEnlevementsBySociete(societeId, pageable);
+            Page<EnlevementSummaryDTO> enlevements = enlevementService.getEnlevementSummariesBySociete(societeId, pageable);
             return ResponseEntity.ok(enlevements);
         }
         
         // Récupérer tous les enlèvements
-        Page<EnlevementDTO> enlevements = enlevementService.getAllEnlevements(pageable);
+        Page<EnlevementSummaryDTO> enlevements = enlevementService.getEnlevementSummaries(pageable);
         return ResponseEntity.ok(enlevements);
     }
     
+    /**
+     * Liste les résumés d'enlèvements par curseur (keyset), du plus récent au plus ancien
+     */
+    @GetMapping("/scroll")
+    @Operation(summary = "Parcourir les enlèvements par curseur", description = "Page suivante via le jeton nextCursor, coût constant quelle que soit la profondeur. Le total n'est calculé que si withTotal=true.")
+    public ResponseEntity<CursorPageDTO<EnlevementSummaryDTO>> scrollEnlevements(
+            @RequestParam(required = false) Long societeId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int size,
+            @RequestParam(defaultValue = "false") boolean withTotal) {
+        
+        log.info("GET /api/admin/enlevements/scroll - société {}", societeId);
+        
+        try {
+            CursorPageDTO<EnlevementSummaryDTO> enlevements = enlevementService.getEnlevementSummariesApres(
+                    societeId, cursor, size, withTotal);
+            return ResponseEntity.ok(enlevements);
+        } catch (IllegalArgumentException e) {
+            log.error("Paramètres de pagination invalides : {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+    }
+    
     /**
      * Récupère les enlèvements entre deux dates
      */
@@ -173,6 +210,84 @@ public class AdminEnlevementController {
         }
     }
     
+    /**
+     * Lance la régénération en masse des transactions d'une société et/ou d'une période
+     */
+    @PostMapping("/regeneration-transactions")
+    @Operation(summary = "Régénérer les transactions en masse", description = "Crée un job exécuté en arrière-plan par lots. Critères optionnels : societeId, dateDebut, dateFin. Retourne le job, dont l'avancement se suit par GET /regeneration-transactions/{jobId}")
+    public ResponseEntity<RegenerationJobDTO> lancerRegeneration(
+            @RequestBody CreateRegenerationJobRequest request,
+            @AuthenticationPrincipal Jwt jwt) {
+        
+        log.info("POST /api/admin/enlevements/regeneration-transactions - Société: {}, du {} au {}", 
+                request.getSocieteId(), request.getDateDebut(), request.getDateFin());
+        
+        try {
+            String username = jwt != null ? jwt.getClaimAsString("preferred_username") : "admin";
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(regenerationService.lancer(request, username));
+        } catch (IllegalArgumentException e) {
+            log.error("Régénération invalide : {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Erreur lors du lancement de la régénération des transactions", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    /**
+     * Liste les derniers jobs de régénération
+     */
+    @GetMapping("/regeneration-transactions")
+    @Operation(summary = "Jobs de régénération", description = "Liste les derniers jobs de régénération des transactions avec leur avancement")
+    public ResponseEntity<List<RegenerationJobDTO>> getRegenerations() {
+        log.info("GET /api/admin/enlevements/regeneration-transactions");
+        
+        try {
+            return ResponseEntity.ok(regenerationService.getDerniersJobs());
+        } catch (Exception e) {
+            log.error("Erreur lors de la récupération des jobs de régénération", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    /**
+     * Avancement d'un job de régénération
+     */
+    @GetMapping("/regeneration-transactions/{jobId}")
+    @Operation(summary = "Avancement d'une régénération", description = "Progression, débit, estimation du temps restant et erreurs d'un job de régénération")
+    public ResponseEntity<RegenerationJobDTO> getRegeneration(@PathVariable Long jobId) {
+        log.info("GET /api/admin/enlevements/regeneration-transactions/{}", jobId);
+        
+        try {
+            return ResponseEntity.ok(regenerationService.getJob(jobId));
+        } catch (IllegalArgumentException e) {
+            log.error("Job non trouvé : {}", e.getMessage());
+            return ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            log.error("Erreur lors de la récupération du job de régénération", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    /**
+     * Annule un job de régénération en attente ou en cours
+     */
+    @PostMapping("/regeneration-transactions/{jobId}/annulation")
+    @Operation(summary = "Annuler une régénération", description = "Arrête le job après le lot en cours, les lots déjà traités restent appliqués")
+    public ResponseEntity<RegenerationJobDTO> annulerRegeneration(@PathVariable Long jobId) {
+        log.info("POST /api/admin/enlevements/regeneration-transactions/{}/annulation", jobId);
+        
+        try {
+            return ResponseEntity.ok(regenerationService.annuler(jobId));
+        } catch (IllegalArgumentException e) {
+            log.error("Annulation impossible : {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Erreur lors de l'annulation du job de régénération", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
     /**
      * Récupère les transactions d'un enlèvement
      */
@@ -191,5 +306,43 @@ public class AdminEnlevementController {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
+    
+    /**
+     * Reconstruit le cube mensuel des tonnages depuis les enlèvements
+     */
+    @PostMapping("/tonnage-mensuel/reconstruction")
+    @Operation(summary = "Reconstruire le cube des tonnages", description = "Recalcule entièrement tonnage_mensuel depuis les items d'enlèvement. Retourne le nombre de lignes créées.")
+    public ResponseEntity<Integer> reconstruireTonnageMensuel() {
+        log.info("POST /api/admin/enlevements/tonnage-mensuel/reconstruction");
+        
+        try {
+            return ResponseEntity.ok(tonnageMensuelService.reconstruire());
+        } catch (Exception e) {
+            log.error("Erreur lors de la reconstruction du cube des tonnages", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+    
+    /**
+     * Importe en masse des enlèvements historiques depuis un CSV (une ligne par item)
+     */
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Importer des enlèvements (CSV)", description = "Crée enlèvements, items et transactions par lots. Les lignes consécutives de même reference forment un enlèvement. Retourne le rapport avec les erreurs par ligne.")
+    public ResponseEntity<ImportEnlevementsResultDTO> importerEnlevements(
+            @RequestParam("file") MultipartFile file,
+            @AuthenticationPrincipal Jwt jwt) {
+        
+        log.info("POST /api/admin/enlevements/import - Fichier {}", file.getOriginalFilename());
+        
+        try (InputStream contenu = file.getInputStream()) {
+            String username = jwt != null ? jwt.getClaimAsString("preferred_username") : "admin";
+            return ResponseEntity.ok(enlevementImportService.importer(contenu, username));
+        } catch (IllegalArgumentException e) {
+            log.error("Fichier d'import invalide : {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            log.error("Erreur lors de l'import des enlèvements", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
 }
-
@@ -5,16 +5,23 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import ma.iorecycling.dto.DashboardKpisDTO;
+import ma.iorecycling.entity.SocieteVersion;
 import ma.iorecycling.service.ClientContextService;
 import ma.iorecycling.service.DashboardService;
+import ma.iorecycling.service.SocieteVersionService;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Controller REST pour le dashboard client avec les 5 KPIs
@@ -29,16 +36,21 @@ public class ClientDashboardKpisController {
     
     private final DashboardService dashboardService;
     private final ClientContextService clientContextService;
+    private final SocieteVersionService societeVersionService;
     
     /**
-     * Récupère tous les KPIs pour une période
+     * Récupère les KPIs demandés (tous par défaut) pour une période
+     * Répond 304 Not Modified si les données de la société n'ont pas changé depuis la dernière réponse
+     * (l'ETag dépend aussi du jour : prochain enlèvement et période par défaut)
      */
     @GetMapping("/kpis")
-    @Operation(summary = "KPIs du dashboard", description = "Récupère les 5 KPIs principaux pour la période")
+    @Operation(summary = "KPIs du dashboard", description = "Récupère les 5 KPIs principaux pour la période. fields (ex: fields=count,budget) limite le calcul aux KPIs demandés parmi prochain, count, quantites et budget.")
     public ResponseEntity<DashboardKpisDTO> getKpis(
             @AuthenticationPrincipal Jwt jwt,
             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateDebut,
-            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateFin) {
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate dateFin,
+            @RequestParam(required = false) List<String> fields,
+            WebRequest webRequest) {
         
         Long societeId = clientContextService.getClientId(jwt);
         if (societeId == null) {
@@ -46,22 +58,45 @@ public class ClientDashboardKpisController {
             return ResponseEntity.status(org.springframework.http.HttpStatus.FORBIDDEN).build();
         }
         
+        Set<DashboardService.KpiClient> kpis;
+        try {
+            kpis = DashboardService.KpiClient.depuis(fields);
+        } catch (IllegalArgumentException e) {
+            log.error("Paramètre fields invalide : {}", e.getMessage());
+            return ResponseEntity.badRequest().build();
+        }
+        
+        LocalDate aujourdhui = LocalDate.now();
+        SocieteVersion version = societeVersionService.getVersion(societeId);
+        String etag = societeVersionService.etag(version, aujourdhui);
+        long lastModified = Math.max(version.getModifieLe().toEpochMilli(),
+                aujourdhui.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        if (webRequest.checkNotModified(etag, lastModified)) {
+            log.debug("GET /api/client/dashboard/kpis - société {} non modifiée", societeId);
+            return null;
+        }
+        
         // Si pas de dates, utiliser le mois en cours
         if (dateDebut == null) {
-            dateDebut = LocalDate.now().withDayOfMonth(1);
+            dateDebut = aujourdhui.withDayOfMonth(1);
         }
         if (dateFin == null) {
-            dateFin = LocalDate.now();
+            dateFin = aujourdhui;
         }
         
-        log.info("GET /api/client/dashboard/kpis - société {} du {} au {}", societeId, dateDebut, dateFin);
+        log.info("GET /api/client/dashboard/kpis - société {} du {} au {} - KPIs {}", 
+                societeId, dateDebut, dateFin, kpis);
         
-        DashboardKpisDTO kpis = dashboardService.calculateKpis(societeId, dateDebut, dateFin);
-        return ResponseEntity.ok(kpis);
+        DashboardKpisDTO dto = dashboardService.calculateKpis(societeId, dateDebut, dateFin, kpis);
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .eTag(etag)
+                .lastModified(lastModified)
+                .body(dto);
     }
     
     /**
-     * KPI 3 : Nombre d'enlèvements
+     * KPI 3 : Nombre d'enlèvements (une seule requête COUNT)
      */
     @GetMapping("/count")
     @Operation(summary = "Nombre d'enlèvements", description = "Récupère le nombre total d'enlèvements sur la période")
@@ -83,7 +118,8 @@ public class ClientDashboardKpisController {
             dateFin = LocalDate.now();
         }
         
-        DashboardKpisDTO kpis = dashboardService.calculateKpis(societeId, dateDebut, dateFin);
+        DashboardKpisDTO kpis = dashboardService.calculateKpis(societeId, dateDebut, dateFin,
+                Set.of(DashboardService.KpiClient.COUNT));
         return ResponseEntity.ok(kpis.getNombreEnlevements());
     }
 }
@@ -5,18 +5,23 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import ma.iorecycling.dto.EnlevementDTO;
+import ma.iorecycling.dto.EnlevementSummaryDTO;
+import ma.iorecycling.entity.SocieteVersion;
 import ma.iorecycling.service.EnlevementService;
 import ma.iorecycling.service.ClientContextService;
+import ma.iorecycling.service.SocieteVersionService;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
 /**
  * Controller REST pour la consultation des enlèvements (côté client)
@@ -31,6 +36,7 @@ public class ClientEnlevementController {
     
     private final EnlevementService enlevementService;
     private final ClientContextService clientContextService;
+    private final SocieteVersionService societeVersionService;
     
     /**
      * Récupère un enlèvement par son ID (vérifie qu'il appartient à la société du client)
@@ -68,12 +74,14 @@ public class ClientEnlevementController {
     
     /**
      * Liste les enlèvements de la société du client (paginé)
+     * Répond 304 Not Modified si les données de la société n'ont pas changé depuis la dernière réponse
      */
     @GetMapping
     @Operation(summary = "Mes enlèvements", description = "Récupère la liste paginée des enlèvements de la société")
-    public ResponseEntity<Page<EnlevementDTO>> getEnlevements(
+    public ResponseEntity<Page<EnlevementSummaryDTO>> getEnlevements(
             @AuthenticationPrincipal Jwt jwt,
-            @PageableDefault(size = 20, sort = "dateEnlevement", direction = Sort.Direction.DESC) Pageable pageable) {
+            @PageableDefault(size = 20, sort = "dateEnlevement", direction = Sort.Direction.DESC) Pageable pageable,
+            WebRequest webRequest) {
         
         Long societeId = clientContextService.getClientId(jwt);
         if (societeId == null) {
@@ -81,10 +89,22 @@ public class ClientEnlevementController {
             return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
         }
         
+        SocieteVersion version = societeVersionService.getVersion(societeId);
+        String etag = societeVersionService.etag(version);
+        long lastModified = version.getModifieLe().toEpochMilli();
+        if (webRequest.checkNotModified(etag, lastModified)) {
+            log.debug("GET /api/client/enlevements - société {} non modifiée", societeId);
+            return null;
+        }
+        
         log.info("GET /api/client/enlevements - société {}", societeId);
         
-        Page<EnlevementDTO> enlevements = enlevementService.getEnlevementsBySociete(societeId, pageable);
-        return ResponseEntity.ok(enlevements);
+        Page<EnlevementSummaryDTO> enlevements = enlevementService.getEnlevementSummariesBySociete(societeId, pageable);
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .eTag(etag)
+                .lastModified(lastModified)
+                .body(enlevements);
     }
 }
 
@@ -0,0 +1,27 @@
+package ma.iorecycling.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Rapprochements acceptés : un paiement par ligne de relevé, enregistrés ensemble ou pas du tout
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ApplicationRapprochementRequest {
+    
+    public static final int PAIEMENTS_MAX = 20_000;
+    
+    @NotEmpty(message = "Aucun paiement à enregistrer")
+    @Size(max = PAIEMENTS_MAX, message = "Trop de paiements dans une même application")
+    private List<@Valid CreatePaiementRequest> paiements;
+}
@@ -0,0 +1,24 @@
+package ma.iorecycling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Balance âgée des créances clients à la date de référence (voir migration V33)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BalanceAgeeDTO {
+    
+    // Date à laquelle l'ancienneté est comptée, avancée chaque nuit
+    private LocalDate dateReference;
+    private List<LigneBalanceAgeeDTO> societes;
+    private LigneBalanceAgeeDTO total;
+}
@@ -0,0 +1,34 @@
+package ma.iorecycling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * DTO pour une ligne du dashboard comparatif des sociétés
+ * Recettes, dépenses et CA portent sur la période, les impayés sur l'encours actuel
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ComparatifSocieteDTO {
+
+    private Long societeId;
+    private String raisonSociale;
+
+    private BigDecimal totalRecettes;
+    private BigDecimal totalDepenses;
+    private BigDecimal resultatNet; // Recettes - Dépenses
+    private Double tauxMarge; // Résultat / Recettes en %, null si aucune recette
+
+    private BigDecimal totalImpayes;
+    private Long nombreTransactionsImpayees;
+
+    private BigDecimal caPrestation;
+    private BigDecimal caVenteMatiere;
+    private BigDecimal caTotal; // CA Prestation + CA Vente Matière
+}
@@ -57,6 +57,9 @@ public class ComptabiliteDashboardDTO {
     private BigDecimal caVenteMatiere; // CA généré par les ventes de matière
     private BigDecimal caTotal; // CA Prestation + CA Vente Matière
     
+    // KPIs non calculés (erreur ou délai dépassé), affichés avec une valeur par défaut
+    private List<String> kpisIndisponibles;
+    
     @Data
     @Builder
     @NoArgsConstructor
@@ -67,6 +70,8 @@ public class ComptabiliteDashboardDTO {
         private BigDecimal recettes;
         private BigDecimal depenses;
         private BigDecimal resultat;
+        private BigDecimal caPrestation; // Part des recettes issue des prestations
+        private BigDecimal caVenteMatiere; // Part des recettes issue des ventes de matière
     }
 }
 
@@ -0,0 +1,35 @@
+package ma.iorecycling.dto;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Recette impayée d'une tranche de la balance âgée (détail)
+ */
+@Data
+@NoArgsConstructor
+public class CreanceDTO {
+    
+    private Long transactionId;
+    private LocalDate dateTransaction;
+    private String description;
+    private String numeroReference;
+    private BigDecimal montant;
+    private BigDecimal montantPaye;
+    private BigDecimal montantRestant;
+    private Long joursAnciennete; // Jours écoulés à la date de référence
+    
+    public CreanceDTO(Long transactionId, LocalDate dateTransaction, String description, String numeroReference,
+                      BigDecimal montant, BigDecimal montantPaye, BigDecimal montantRestant) {
+        this.transactionId = transactionId;
+        this.dateTransaction = dateTransaction;
+        this.description = description;
+        this.numeroReference = numeroReference;
+        this.montant = montant;
+        this.montantPaye = montantPaye;
+        this.montantRestant = montantRestant;
+    }
+}
@@ -19,6 +19,8 @@ import java.math.BigDecimal;
 @AllArgsConstructor
 public class CreatePickupItemRequest {
     
+    private Long id;  // Item existant à modifier (mise à jour d'enlèvement), null pour un nouvel item
+    
     @NotBlank(message = "Le type de déchet est obligatoire")
     private String typeDechet;  // RECYCLABLE, BANAL, A_DETRUIRE
     
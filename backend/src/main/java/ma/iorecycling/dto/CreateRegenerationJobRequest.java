@@ -0,0 +1,25 @@
+package ma.iorecycling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * DTO pour lancer une régénération en masse des transactions des enlèvements
+ * Tous les critères sont optionnels : sans critère, tous les enlèvements sont régénérés
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CreateRegenerationJobRequest {
+
+    private Long societeId;
+
+    private LocalDate dateDebut;
+
+    private LocalDate dateFin;
+}
@@ -0,0 +1,106 @@
+package ma.iorecycling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Page d'une liste parcourue par curseur (keyset), du plus récent au plus ancien
+ * Le coût d'une page ne dépend pas de sa profondeur : la requête reprend après la clé
+ * (date, id) du dernier élément renvoyé au lieu de sauter un OFFSET
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CursorPageDTO<T> {
+
+    /**
+     * Taille de page maximale acceptée
+     */
+    public static final int TAILLE_MAX = 100;
+
+    private List<T> content;
+    private int size;
+    private boolean hasNext;
+    private String nextCursor; // Jeton opaque à renvoyer pour la page suivante, null en fin de liste
+    private Long totalElements; // Renseigné uniquement si demandé (withTotal)
+
+    /**
+     * Construit une page à partir de lignes lues avec une taille + 1 (la ligne en trop signale une suite)
+     */
+    public static <T> CursorPageDTO<T> of(List<T> lignes, int taille, Function<T, Cursor> cle, Long total) {
+        boolean suite = lignes.size() > taille;
+        List<T> contenu = suite ? lignes.subList(0, taille) : lignes;
+        return CursorPageDTO.<T>builder()
+                .content(contenu)
+                .size(contenu.size())
+                .hasNext(suite)
+                .nextCursor(suite ? cle.apply(contenu.get(contenu.size() - 1)).encoder() : null)
+                .totalElements(total)
+                .build();
+    }
+
+    public <R> CursorPageDTO<R> map(Function<T, R> mapper) {
+        return new CursorPageDTO<>(content.stream().map(mapper).toList(), size, hasNext, nextCursor, totalElements);
+    }
+
+    /**
+     * Convertit tout le contenu en une fois (assemblage groupé), dans le même ordre
+     */
+    public <R> CursorPageDTO<R> mapContent(Function<List<T>, List<R>> mapper) {
+        return new CursorPageDTO<>(mapper.apply(content), size, hasNext, nextCursor, totalElements);
+    }
+
+    /**
+     * Vérifie la taille de page demandée et la plafonne à TAILLE_MAX
+     */
+    public static int taille(int demandee) {
+        if (demandee < 1) {
+            throw new IllegalArgumentException("Taille de page invalide : " + demandee);
+        }
+        return Math.min(demandee, TAILLE_MAX);
+    }
+
+    /**
+     * Clé de reprise (date, id) encodée en Base64 URL
+     */
+    public record Cursor(LocalDate date, Long id) {
+
+        /**
+         * Position avant le premier élément : toute ligne réelle est strictement inférieure
+         */
+        public static final Cursor DEBUT = new Cursor(LocalDate.of(9999, 12, 31), Long.MAX_VALUE);
+
+        public String encoder() {
+            return Base64.getUrlEncoder().withoutPadding()
+                    .encodeToString((date + ":" + id).getBytes(StandardCharsets.UTF_8));
+        }
+
+        /**
+         * Décode un jeton reçu du client, DEBUT si absent
+         */
+        public static Cursor decoder(String jeton) {
+            if (jeton == null || jeton.isBlank()) {
+                return DEBUT;
+            }
+            try {
+                String[] parties = new String(Base64.getUrlDecoder().decode(jeton), StandardCharsets.UTF_8).split(":");
+                if (parties.length != 2) {
+                    throw new IllegalArgumentException("Curseur invalide");
+                }
+                return new Cursor(LocalDate.parse(parties[0]), Long.parseLong(parties[1]));
+            } catch (DateTimeParseException | IllegalArgumentException e) {
+                throw new IllegalArgumentException("Curseur invalide", e);
+            }
+        }
+    }
+}
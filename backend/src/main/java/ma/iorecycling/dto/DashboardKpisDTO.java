@@ -13,7 +13,7 @@ import java.util.Map;
  * DTO pour les 5 KPIs du portail client
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class DashboardKpisDTO {
@@ -0,0 +1,51 @@
+package ma.iorecycling.dto;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * Projection allégée d'un enlèvement pour les listes (admin et client)
+ * Les totaux viennent des colonnes maintenues par trigger sur enlevement (voir migration V27),
+ * le détail des items n'est servi que par EnlevementDTO sur /{id}
+ */
+public interface EnlevementSummaryDTO {
+
+    Long getId();
+    String getNumeroEnlevement();
+    LocalDate getDateEnlevement();
+    LocalTime getHeureEnlevement();
+
+    Long getSocieteId();
+    String getSocieteNom();
+    Long getSiteId();
+    String getSiteNom();
+
+    String getCamionMatricule();
+    String getChauffeurNom();
+    String getDestinationRaisonSociale();
+
+    Integer getNbItems();
+    BigDecimal getPoidsTotal();
+    BigDecimal getPoidsRecyclable();
+    BigDecimal getBudgetRecyclage();
+    BigDecimal getBudgetTraitement();
+
+    /**
+     * Budget recyclage - Budget traitement
+     */
+    default BigDecimal getBilanNet() {
+        return getBudgetRecyclage().subtract(getBudgetTraitement());
+    }
+
+    /**
+     * Poids recyclable / Poids total en %, même arrondi que EnlevementMapper
+     */
+    default Double getTauxRecyclage() {
+        return getPoidsTotal().compareTo(BigDecimal.ZERO) > 0
+                ? getPoidsRecyclable().divide(getPoidsTotal(), 4, RoundingMode.HALF_UP)
+                    .multiply(BigDecimal.valueOf(100)).doubleValue()
+                : 0.0;
+    }
+}
@@ -0,0 +1,55 @@
+package ma.iorecycling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rapport d'un import en masse d'enlèvements depuis un CSV
+ * Un enlèvement dont une ligne est invalide est rejeté en entier, les autres sont importés
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ImportEnlevementsResultDTO {
+
+    /**
+     * Nombre maximal d'erreurs détaillées dans le rapport (nombreErreurs les compte toutes)
+     */
+    public static final int ERREURS_MAX = 1000;
+
+    private long lignesLues;
+    private long enlevementsImportes;
+    private long itemsImportes;
+    private long transactionsGenerees;
+    private long enlevementsRejetes;
+    private long nombreErreurs;
+    private long dureeMs;
+
+    @Builder.Default
+    private List<ErreurLigne> erreurs = new ArrayList<>();
+
+    public void ajouterErreur(long ligne, String reference, String message) {
+        nombreErreurs++;
+        if (erreurs.size() < ERREURS_MAX) {
+            erreurs.add(new ErreurLigne(ligne, reference, message));
+        }
+    }
+
+    /**
+     * Erreur sur une ligne du fichier (numéro de ligne physique, en-tête = 1)
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ErreurLigne {
+        private long ligne;
+        private String reference;
+        private String message;
+    }
+}
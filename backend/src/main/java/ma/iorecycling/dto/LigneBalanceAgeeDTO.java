@@ -0,0 +1,32 @@
+package ma.iorecycling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Ligne de la balance âgée : recettes impayées d'une société réparties par tranche d'ancienneté
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LigneBalanceAgeeDTO {
+    
+    // Null sur la ligne de total toutes sociétés
+    private Long societeId;
+    private String societeNom;
+    private Long nombreCreances;
+    private BigDecimal montant0a30Jours;
+    private BigDecimal montant31a60Jours;
+    private BigDecimal montant61a90Jours;
+    private BigDecimal montantPlus90Jours;
+    
+    /**
+     * Montant restant toutes tranches confondues
+     */
+    public BigDecimal getMontantTotal() {
+        return montant0a30Jours.add(montant31a60Jours).add(montant61a90Jours).add(montantPlus90Jours);
+    }
+}
@@ -0,0 +1,26 @@
+package ma.iorecycling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * DTO pour une transaction dont le montant payé enregistré diffère de ses paiements
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MontantPayeEcartDTO {
+    
+    private Long transactionId;
+    
+    // Valeur de la colonne transaction.montant_paye
+    private BigDecimal montantPayeEnregistre;
+    
+    // Somme des paiements valides de la transaction
+    private BigDecimal montantPayeCalcule;
+}
@@ -0,0 +1,19 @@
+package ma.iorecycling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+
+/**
+ * Résultat d'agrégat (nombre de lignes et montant total) calculé directement en base
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class NombreMontantDTO {
+    
+    private Long nombre;
+    private BigDecimal montant;
+}
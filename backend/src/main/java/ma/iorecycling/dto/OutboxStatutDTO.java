@@ -0,0 +1,43 @@
+package ma.iorecycling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * État de l'outbox de la génération comptable : file en attente et demandes en échec
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxStatutDTO {
+
+    private long enAttente;
+    private long enCours;
+    private long echecs;
+    private Instant plusAncienneEnAttente; // Null si la file est vide
+    private Long retardSecondes; // Âge de la plus ancienne demande en attente
+
+    @Builder.Default
+    private List<Echec> derniersEchecs = new ArrayList<>();
+
+    /**
+     * Demande passée en ECHEC après le nombre maximal de tentatives
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Echec {
+        private Long id;
+        private Long enlevementId;
+        private int tentatives;
+        private String derniereErreur;
+        private Instant dateEchec;
+    }
+}
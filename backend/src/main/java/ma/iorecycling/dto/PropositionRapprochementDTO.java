@@ -0,0 +1,54 @@
+package ma.iorecycling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Ligne d'un relevé bancaire et la transaction qui lui est proposée
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class PropositionRapprochementDTO {
+    
+    // Ligne du relevé
+    private long numeroLigne;
+    private LocalDate dateOperation;
+    private BigDecimal montant;
+    private boolean credit;
+    private String libelle;
+    private String referenceBancaire;
+    
+    private StatutProposition statut;
+    private Critere critere;
+    private int nombreCandidats; // Transactions satisfaisant le critère
+    
+    // Transaction proposée
+    private Long transactionId;
+    private Long societeId;
+    private String societeNom;
+    private LocalDate dateTransaction;
+    private String description;
+    private String numeroReference;
+    private BigDecimal montantRestant; // Avant cette ligne
+    private BigDecimal montantAttribue; // Plafonné au montant restant
+    private Long ecartJours; // Date d'opération - date de transaction
+    
+    public enum StatutProposition {
+        PROPOSEE,           // Une transaction retenue sans ambiguïté
+        AMBIGUE,            // Plusieurs transactions de même montant à même écart de date, la première est proposée
+        NON_RAPPROCHEE,     // Aucune transaction ne correspond
+        DEJA_ENREGISTREE    // Référence bancaire déjà portée par un paiement
+    }
+    
+    public enum Critere {
+        REFERENCE,      // Numéro de transaction, d'enlèvement ou de vente cité dans le libellé ou la référence
+        MONTANT_DATE    // Montant restant égal au montant, date dans la tolérance
+    }
+}
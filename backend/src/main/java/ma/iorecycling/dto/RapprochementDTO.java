@@ -0,0 +1,31 @@
+package ma.iorecycling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Propositions de rapprochement d'un relevé bancaire, ligne à ligne, à valider avant application
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RapprochementDTO {
+    
+    private long lignesLues;
+    private long lignesProposees;
+    private long lignesAmbigues;
+    private long lignesNonRapprochees;
+    private long lignesDejaEnregistrees;
+    private BigDecimal montantPropose;
+    private long dureeMs;
+    
+    @Builder.Default
+    private List<PropositionRapprochementDTO> propositions = new ArrayList<>();
+}
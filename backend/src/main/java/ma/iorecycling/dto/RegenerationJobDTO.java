@@ -0,0 +1,43 @@
+package ma.iorecycling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Avancement d'un job de régénération des transactions
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RegenerationJobDTO {
+
+    private Long id;
+    private Long societeId;
+    private LocalDate dateDebut;
+    private LocalDate dateFin;
+    private String statut;
+
+    private long total; // Enlèvements concernés au lancement
+    private long traites;
+    private long enErreur;
+    private double progression; // Pourcentage traité
+    private long transactionsCreees;
+    private long transactionsModifiees;
+    private long transactionsSupprimees;
+
+    private Double enlevementsParSeconde; // Débit sur le temps de traitement effectif
+    private Long resteSecondes; // Estimation au débit actuel, null si inconnue
+
+    private String derniereErreur;
+    private String demandePar;
+    private Instant createdAt;
+    private Instant demarreLe;
+    private Instant actifLe;
+    private Instant termineLe;
+}
@@ -0,0 +1,49 @@
+package ma.iorecycling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Résultat de l'application des rapprochements acceptés
+ * Si l'application est refusée, rien n'est enregistré et refus liste les transactions en cause
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ResultatRapprochementDTO {
+    
+    private long paiementsCrees;
+    private BigDecimal montantTotal;
+    private long transactionsSoldees;
+    private long echeancesSoldees;
+    private long dureeMs;
+    
+    @Builder.Default
+    private List<Refus> refus = new ArrayList<>();
+    
+    /**
+     * Transaction dont les paiements demandés ne peuvent pas être enregistrés
+     * (montantDemande : somme des lignes de la transaction ; montantRestant null si elle n'existe pas)
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Refus {
+        private Long transactionId;
+        private BigDecimal montantDemande;
+        private BigDecimal montantRestant;
+        private MotifRefus motif;
+    }
+    
+    public enum MotifRefus {
+        TRANSACTION_INEXISTANTE,
+        MONTANT_SUPERIEUR_AU_RESTANT
+    }
+}
@@ -0,0 +1,33 @@
+package ma.iorecycling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * DTO pour un écart entre l'agrégat journalier et les transactions réelles
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RollupEcartDTO {
+    
+    private Long societeId;
+    private LocalDate jour;
+    private String type;
+    private String typeRecette;
+    private String categorie;
+    
+    // Valeurs recalculées depuis la table transaction
+    private BigDecimal montantAttendu;
+    private Long nombreAttendu;
+    
+    // Valeurs présentes dans l'agrégat
+    private BigDecimal montantAgrege;
+    private Long nombreAgrege;
+}
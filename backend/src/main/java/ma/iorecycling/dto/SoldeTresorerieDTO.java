@@ -0,0 +1,24 @@
+package ma.iorecycling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * DTO pour le solde de trésorerie à une date
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SoldeTresorerieDTO {
+    
+    // Null lorsque le solde couvre toutes les sociétés
+    private Long societeId;
+    private LocalDate date;
+    private BigDecimal solde;
+}
@@ -0,0 +1,29 @@
+package ma.iorecycling.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import ma.iorecycling.entity.Transaction;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Transaction ouverte candidate au rapprochement bancaire (projection sans chargement des entités)
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransactionOuverteDTO {
+    
+    private Long id;
+    private Transaction.TypeTransaction type;
+    private Long societeId;
+    private String societeNom;
+    private LocalDate dateTransaction;
+    private String description;
+    private String numeroReference;
+    private String numeroEnlevement;
+    private String numeroVente;
+    private BigDecimal montantRestant;
+}
@@ -0,0 +1,85 @@
+package ma.iorecycling.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Nombre et montant restant des recettes impayées d'une société dans une tranche d'ancienneté
+ * Table tenue à jour par trigger et avancée chaque nuit (voir migration V33), en lecture seule côté application
+ */
+@Entity
+@Table(name = "creance_anciennete")
+@IdClass(CreanceAnciennete.CreanceAncienneteId.class)
+@Immutable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CreanceAnciennete {
+
+    @Id
+    @Column(name = "societe_id", nullable = false)
+    private Long societeId;
+
+    /**
+     * Rang de la tranche (voir Tranche)
+     */
+    @Id
+    @Column(name = "tranche", nullable = false)
+    private Integer tranche;
+
+    @Column(name = "nombre", nullable = false)
+    private Integer nombre;
+
+    @Column(name = "montant_restant", nullable = false, precision = 17, scale = 2)
+    private BigDecimal montantRestant;
+
+    /**
+     * Clé composite de la ligne de balance
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class CreanceAncienneteId implements Serializable {
+        private Long societeId;
+        private Integer tranche;
+    }
+
+    /**
+     * Tranches d'ancienneté, dans l'ordre de leur rang (même découpage que tranche_anciennete en base)
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public enum Tranche {
+        JOURS_0_30(0, 30),
+        JOURS_31_60(31, 60),
+        JOURS_61_90(61, 90),
+        PLUS_90_JOURS(91, null);
+
+        private final int joursMin;
+        private final Integer joursMax;
+
+        /**
+         * Date de transaction la plus ancienne de la tranche à la date de référence (null : sans limite)
+         */
+        public LocalDate dateMin(LocalDate reference) {
+            return joursMax != null ? reference.minusDays(joursMax) : null;
+        }
+
+        /**
+         * Date de transaction la plus récente de la tranche à la date de référence (null : sans limite)
+         * Une transaction datée après la référence compte dans la première tranche
+         */
+        public LocalDate dateMax(LocalDate reference) {
+            return joursMin > 0 ? reference.minusDays(joursMin) : null;
+        }
+    }
+}
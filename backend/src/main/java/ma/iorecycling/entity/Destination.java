@@ -9,6 +9,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
@@ -44,6 +45,7 @@ public class Destination {
     
     @NotEmpty(message = "Au moins un type de traitement est obligatoire")
     @ElementCollection(targetClass = TypeTraitement.class, fetch = FetchType.EAGER)
+    @BatchSize(size = 50) // chargés par requêtes IN pour les destinations des enlèvements chargés ensemble
     @Enumerated(EnumType.STRING)
     @CollectionTable(name = "destination_types_traitement", joinColumns = @JoinColumn(name = "destination_id"))
     @Column(name = "type_traitement", nullable = false)
@@ -26,7 +26,8 @@ import java.time.LocalDate;
 public class Echeance {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "echeance_seq")
+    @SequenceGenerator(name = "echeance_seq", sequenceName = "echeance_id_seq", allocationSize = 50)
     private Long id;
     
     @NotNull(message = "La transaction est obligatoire")
@@ -10,6 +10,7 @@ import lombok.Builder;
 import org.hibernate.annotations.CreationTimestamp;
 import org.hibernate.annotations.UpdateTimestamp;
 
+import java.math.BigDecimal;
 import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalTime;
@@ -27,12 +28,14 @@ import java.util.List;
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
-public class Enlevement {
+public class Enlevement implements Numerotable {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "enlevement_seq")
+    @SequenceGenerator(name = "enlevement_seq", sequenceName = "enlevement_id_seq", allocationSize = 50)
     private Long id;
     
+    @NumeroMetier(prefixe = "ENL")
     @Column(name = "numero_enlevement", unique = true, length = 50)
     private String numeroEnlevement;
     
@@ -85,7 +88,23 @@ public class Enlevement {
     
     @Column(name = "created_by", length = 100)
     private String createdBy;
-    
+
+    // Totaux maintenus par trigger sur pickup_item (voir migration V27), en lecture seule
+    @Column(name = "nb_items", insertable = false, updatable = false)
+    private Integer nbItems;
+
+    @Column(name = "poids_total", precision = 15, scale = 3, insertable = false, updatable = false)
+    private BigDecimal poidsTotal;
+
+    @Column(name = "poids_recyclable", precision = 15, scale = 3, insertable = false, updatable = false)
+    private BigDecimal poidsRecyclable;
+
+    @Column(name = "budget_recyclage", precision = 15, scale = 2, insertable = false, updatable = false)
+    private BigDecimal budgetRecyclage;
+
+    @Column(name = "budget_traitement", precision = 15, scale = 2, insertable = false, updatable = false)
+    private BigDecimal budgetTraitement;
+
     // Relations
     @OneToMany(mappedBy = "enlevement", cascade = CascadeType.ALL, orphanRemoval = true)
     @Builder.Default
@@ -96,6 +115,11 @@ public class Enlevement {
     private List<Document> documents = new ArrayList<>();
     
     // Méthodes utilitaires
+    @Override
+    public LocalDate getDateNumerotation() {
+        return dateEnlevement;
+    }
+
     public void addItem(PickupItem item) {
         items.add(item);
         item.setEnlevement(this);
@@ -0,0 +1,25 @@
+package ma.iorecycling.entity;
+
+import org.hibernate.annotations.ValueGenerationType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Numéro métier PREFIXE-année-id attribué à l'insertion
+ * Le numéro est calculé après l'allocation de l'id par la séquence et avant la construction
+ * de l'INSERT : l'entité part en une seule écriture, sans UPDATE de rattrapage
+ * L'entité doit implémenter Numerotable
+ */
+@ValueGenerationType(generatedBy = NumeroMetierGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface NumeroMetier {
+
+    /**
+     * Préfixe du numéro (ex. ENL, VENT)
+     */
+    String prefixe();
+}
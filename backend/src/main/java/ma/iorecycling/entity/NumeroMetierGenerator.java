@@ -0,0 +1,45 @@
+package ma.iorecycling.entity;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+
+/**
+ * Générateur des numéros métier (voir NumeroMetier)
+ * Un numéro déjà renseigné (import, saisie) est conservé
+ */
+public class NumeroMetierGenerator implements BeforeExecutionGenerator {
+
+    private final String prefixe;
+
+    public NumeroMetierGenerator(NumeroMetier config) {
+        this.prefixe = config.prefixe();
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner,
+                           Object currentValue, EventType eventType) {
+        if (currentValue != null) {
+            return currentValue;
+        }
+        Numerotable entite = (Numerotable) owner;
+        return numero(prefixe, entite.getDateNumerotation(), entite.getId());
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+
+    /**
+     * Format PREFIXE-année-id sur 6 chiffres, partagé avec les écritures JDBC
+     */
+    public static String numero(String prefixe, LocalDate date, Long id) {
+        int annee = date != null ? date.getYear() : LocalDate.now().getYear();
+        return prefixe + "-" + annee + "-" + String.format("%06d", id);
+    }
+}
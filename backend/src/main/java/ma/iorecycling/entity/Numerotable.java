@@ -0,0 +1,16 @@
+package ma.iorecycling.entity;
+
+import java.time.LocalDate;
+
+/**
+ * Entité portant un numéro métier (voir NumeroMetier)
+ */
+public interface Numerotable {
+
+    Long getId();
+
+    /**
+     * Date dont l'année entre dans le numéro, année courante si null
+     */
+    LocalDate getDateNumerotation();
+}
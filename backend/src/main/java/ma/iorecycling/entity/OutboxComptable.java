@@ -0,0 +1,67 @@
+package ma.iorecycling.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
+
+/**
+ * Demande de génération des transactions comptables d'un enlèvement (voir migration V30)
+ * Enregistrée dans la transaction de l'enlèvement et traitée en arrière-plan par OutboxComptableService
+ */
+@Entity
+@Table(name = "outbox_comptable")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxComptable {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "enlevement_id", nullable = false)
+    private Long enlevementId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "statut", nullable = false, length = 20)
+    @Builder.Default
+    private Statut statut = Statut.EN_ATTENTE;
+
+    @Column(name = "tentatives", nullable = false)
+    @Builder.Default
+    private Integer tentatives = 0;
+
+    @Column(name = "prochaine_tentative", nullable = false)
+    private Instant prochaineTentative;
+
+    @Column(name = "verrouille_le")
+    private Instant verrouilleLe;
+
+    @Column(name = "derniere_erreur", columnDefinition = "TEXT")
+    private String derniereErreur;
+
+    @Column(name = "traite_le")
+    private Instant traiteLe;
+
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private Instant createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+
+    public enum Statut {
+        EN_ATTENTE,
+        EN_COURS,
+        TRAITE,
+        ECHEC // Nombre maximal de tentatives atteint, relance manuelle
+    }
+}
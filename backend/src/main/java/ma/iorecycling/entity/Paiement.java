@@ -27,7 +27,8 @@ import java.time.LocalDate;
 public class Paiement {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "paiement_seq")
+    @SequenceGenerator(name = "paiement_seq", sequenceName = "paiement_id_seq", allocationSize = 50)
     private Long id;
     
     @NotNull(message = "La transaction est obligatoire")
@@ -35,6 +36,10 @@ public class Paiement {
     @JoinColumn(name = "transaction_id", nullable = false)
     private Transaction transaction;
     
+    // Société de la transaction, recopiée par trigger (voir migration V28), en lecture seule
+    @Column(name = "societe_id", insertable = false, updatable = false)
+    private Long societeId;
+    
     @NotNull(message = "Le montant est obligatoire")
     @DecimalMin(value = "0.01", message = "Le montant doit être supérieur à 0")
     @Column(name = "montant", nullable = false, precision = 15, scale = 2)
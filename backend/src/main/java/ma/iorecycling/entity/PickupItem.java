@@ -29,7 +29,8 @@ import java.util.List;
 public class PickupItem {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "pickup_item_seq")
+    @SequenceGenerator(name = "pickup_item_seq", sequenceName = "pickup_item_id_seq", allocationSize = 50)
     private Long id;
     
     @NotNull(message = "L'enlèvement est obligatoire")
@@ -26,7 +26,8 @@ import java.time.LocalDate;
 public class PlanningEnlevement {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "planning_enlevement_seq")
+    @SequenceGenerator(name = "planning_enlevement_seq", sequenceName = "planning_enlevement_id_seq", allocationSize = 50)
     private Long id;
     
     @NotNull(message = "La date prévue est obligatoire")
@@ -0,0 +1,103 @@
+package ma.iorecycling.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Job de régénération en masse des transactions des enlèvements (voir migration V32)
+ * L'avancement est mis à jour par requête atomique à chaque lot (RegenerationJobRepository)
+ */
+@Entity
+@Table(name = "regeneration_job")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RegenerationJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "societe_id")
+    private Long societeId;
+
+    @Column(name = "date_debut")
+    private LocalDate dateDebut;
+
+    @Column(name = "date_fin")
+    private LocalDate dateFin;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "statut", nullable = false, length = 20)
+    @Builder.Default
+    private Statut statut = Statut.EN_ATTENTE;
+
+    @Column(name = "total", nullable = false)
+    private long total;
+
+    @Column(name = "traites", nullable = false)
+    private long traites;
+
+    @Column(name = "en_erreur", nullable = false)
+    private long enErreur;
+
+    @Column(name = "transactions_creees", nullable = false)
+    private long transactionsCreees;
+
+    @Column(name = "transactions_modifiees", nullable = false)
+    private long transactionsModifiees;
+
+    @Column(name = "transactions_supprimees", nullable = false)
+    private long transactionsSupprimees;
+
+    // Point de reprise : plus grand id d'enlèvement du dernier lot validé
+    @Column(name = "dernier_enlevement_id", nullable = false)
+    private long dernierEnlevementId;
+
+    @Column(name = "duree_traitement_ms", nullable = false)
+    private long dureeTraitementMs;
+
+    @Column(name = "derniere_erreur", columnDefinition = "TEXT")
+    private String derniereErreur;
+
+    @Column(name = "demande_par", length = 100)
+    private String demandePar;
+
+    @Column(name = "demarre_le")
+    private Instant demarreLe;
+
+    // Dernier signe de vie du worker, un job EN_COURS inactif trop longtemps est repris
+    @Column(name = "actif_le")
+    private Instant actifLe;
+
+    // Jeton du worker propriétaire (date de réservation), exigé par chaque avancement
+    @Column(name = "verrouille_le")
+    private Instant verrouilleLe;
+
+    @Column(name = "termine_le")
+    private Instant termineLe;
+
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private Instant createdAt;
+
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+
+    public enum Statut {
+        EN_ATTENTE,
+        EN_COURS,
+        TERMINE,
+        ANNULE
+    }
+}
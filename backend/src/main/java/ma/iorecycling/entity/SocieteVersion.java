@@ -0,0 +1,32 @@
+package ma.iorecycling.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.time.Instant;
+
+/**
+ * Version des données d'une société (enlèvements, items, documents, transactions, planning)
+ * Incrémentée par trigger une fois par transaction qui écrit (voir migration V26), en lecture seule côté application
+ */
+@Entity
+@Table(name = "societe_version")
+@Immutable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SocieteVersion {
+
+    @Id
+    @Column(name = "societe_id", nullable = false)
+    private Long societeId;
+
+    @Column(name = "version", nullable = false)
+    private Long version;
+
+    @Column(name = "modifie_le", nullable = false)
+    private Instant modifieLe;
+}
@@ -0,0 +1,63 @@
+package ma.iorecycling.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Solde de trésorerie d'une société à la fin d'un mois clôturé
+ * Table alimentée par la clôture mensuelle (voir migration V22), en lecture seule côté application
+ */
+@Entity
+@Table(name = "solde_tresorerie")
+@IdClass(SoldeTresorerie.SoldeTresorerieId.class)
+@Immutable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SoldeTresorerie {
+
+    @Id
+    @Column(name = "societe_id", nullable = false)
+    private Long societeId;
+
+    /**
+     * Premier jour du mois clôturé
+     */
+    @Id
+    @Column(name = "mois", nullable = false)
+    private LocalDate mois;
+
+    @Column(name = "total_recettes", nullable = false, precision = 17, scale = 2)
+    private BigDecimal totalRecettes;
+
+    @Column(name = "total_depenses", nullable = false, precision = 17, scale = 2)
+    private BigDecimal totalDepenses;
+
+    /**
+     * Solde cumulé (recettes - dépenses) depuis l'origine jusqu'à la fin du mois
+     */
+    @Column(name = "solde_cumule", nullable = false, precision = 17, scale = 2)
+    private BigDecimal soldeCumule;
+
+    @Column(name = "date_cloture", nullable = false)
+    private LocalDateTime dateCloture;
+
+    /**
+     * Clé composite de l'instantané
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class SoldeTresorerieId implements Serializable {
+        private Long societeId;
+        private LocalDate mois;
+    }
+}
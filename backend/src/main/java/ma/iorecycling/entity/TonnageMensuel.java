@@ -0,0 +1,80 @@
+package ma.iorecycling.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Cube mensuel des quantités et montants des items d'enlèvement
+ * par société, site, mois, type de déchet et sous-type
+ * Table maintenue par EnlevementService (voir migration V25), en lecture seule via JPA
+ * sousType vaut "" lorsqu'il n'est pas renseigné sur l'item
+ */
+@Entity
+@Table(name = "tonnage_mensuel")
+@IdClass(TonnageMensuel.TonnageMensuelId.class)
+@Immutable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TonnageMensuel {
+
+    @Id
+    @Column(name = "societe_id", nullable = false)
+    private Long societeId;
+
+    @Id
+    @Column(name = "site_id", nullable = false)
+    private Long siteId;
+
+    @Id
+    @Column(name = "mois", nullable = false)
+    private LocalDate mois; // premier jour du mois
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type_dechet", nullable = false, length = 20)
+    private PickupItem.TypeDechet typeDechet;
+
+    @Id
+    @Column(name = "sous_type", nullable = false, length = 50)
+    private String sousType;
+
+    @Column(name = "quantite_kg", nullable = false, precision = 15, scale = 3)
+    private BigDecimal quantiteKg;
+
+    @Column(name = "montant_mad", nullable = false, precision = 17, scale = 2)
+    private BigDecimal montantMad;
+
+    @Column(name = "montant_prestation_mad", nullable = false, precision = 17, scale = 2)
+    private BigDecimal montantPrestationMad;
+
+    @Column(name = "montant_achat_mad", nullable = false, precision = 17, scale = 2)
+    private BigDecimal montantAchatMad;
+
+    @Column(name = "montant_traitement_mad", nullable = false, precision = 17, scale = 2)
+    private BigDecimal montantTraitementMad;
+
+    @Column(name = "nb_items", nullable = false)
+    private Integer nbItems;
+
+    /**
+     * Clé composite du cube
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class TonnageMensuelId implements Serializable {
+        private Long societeId;
+        private Long siteId;
+        private LocalDate mois;
+        private PickupItem.TypeDechet typeDechet;
+        private String sousType;
+    }
+}
@@ -31,7 +31,8 @@ import java.util.List;
 public class Transaction {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "transaction_seq")
+    @SequenceGenerator(name = "transaction_seq", sequenceName = "transaction_id_seq", allocationSize = 50)
     private Long id;
     
     @NotNull(message = "Le type de transaction est obligatoire")
@@ -70,6 +71,11 @@ public class Transaction {
     @JoinColumn(name = "enlevement_id")
     private Enlevement enlevement;
     
+    // Item de l'enlèvement à l'origine d'une transaction générée (voir migration V31)
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "pickup_item_id")
+    private PickupItem pickupItem;
+    
     // NOUVEAU CHAMP - Type de recette (PRESTATION ou VENTE_MATIERE)
     @Enumerated(EnumType.STRING)
     @Column(name = "type_recette", length = 20)
@@ -89,6 +95,15 @@ public class Transaction {
     @Builder.Default
     private StatutTransaction statut = StatutTransaction.EN_ATTENTE;
     
+    // Somme des paiements valides, mise à jour uniquement par PaiementService (requête atomique)
+    @Column(name = "montant_paye", nullable = false, precision = 15, scale = 2, insertable = false, updatable = false)
+    @Builder.Default
+    private BigDecimal montantPaye = BigDecimal.ZERO;
+    
+    // Colonne générée en base (montant - montant_paye), utilisée par les requêtes d'impayés
+    @Column(name = "montant_restant", precision = 15, scale = 2, insertable = false, updatable = false)
+    private BigDecimal montantRestant;
+    
     @CreationTimestamp
     @Column(name = "created_at", updatable = false)
     private Instant createdAt;
@@ -131,12 +146,10 @@ public class Transaction {
     }
     
     /**
-     * Calcule le montant total payé
+     * Retourne le montant total payé (colonne dénormalisée, sans charger les paiements)
      */
     public BigDecimal getMontantPaye() {
-        return paiements.stream()
-                .map(Paiement::getMontant)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        return montantPaye != null ? montantPaye : BigDecimal.ZERO;
     }
     
     /**
@@ -153,6 +166,22 @@ public class Transaction {
         return getMontantRestant().compareTo(BigDecimal.ZERO) <= 0;
     }
     
+    /**
+     * Recalcule le statut selon le montant payé (sans effet sur une transaction annulée)
+     */
+    public void recalculerStatut() {
+        if (statut == StatutTransaction.ANNULEE) {
+            return;
+        }
+        if (getMontantPaye().compareTo(BigDecimal.ZERO) == 0) {
+            statut = StatutTransaction.EN_ATTENTE;
+        } else if (getMontantPaye().compareTo(montant) >= 0) {
+            statut = StatutTransaction.PAYEE;
+        } else {
+            statut = StatutTransaction.PARTIELLEMENT_PAYEE;
+        }
+    }
+    
     /**
      * Enum pour le type de transaction
      */
@@ -0,0 +1,67 @@
+package ma.iorecycling.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Immutable;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Agrégat journalier des transactions par société, type, type de recette et catégorie
+ * Table maintenue par trigger (voir migration V21), en lecture seule côté application
+ * typeRecette et categorie valent "" lorsqu'ils ne sont pas renseignés sur la transaction
+ */
+@Entity
+@Table(name = "transaction_daily_rollup")
+@IdClass(TransactionDailyRollup.RollupId.class)
+@Immutable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class TransactionDailyRollup {
+
+    @Id
+    @Column(name = "societe_id", nullable = false)
+    private Long societeId;
+
+    @Id
+    @Column(name = "jour", nullable = false)
+    private LocalDate jour;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(name = "type", nullable = false, length = 20)
+    private Transaction.TypeTransaction type;
+
+    @Id
+    @Column(name = "type_recette", nullable = false, length = 20)
+    private String typeRecette;
+
+    @Id
+    @Column(name = "categorie", nullable = false, length = 100)
+    private String categorie;
+
+    @Column(name = "montant_total", nullable = false, precision = 17, scale = 2)
+    private BigDecimal montantTotal;
+
+    @Column(name = "nb_transactions", nullable = false)
+    private Integer nbTransactions;
+
+    /**
+     * Clé composite de l'agrégat
+     */
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class RollupId implements Serializable {
+        private Long societeId;
+        private LocalDate jour;
+        private Transaction.TypeTransaction type;
+        private String typeRecette;
+        private String categorie;
+    }
+}
@@ -23,12 +23,14 @@ import java.util.List;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
-public class Vente {
+public class Vente implements Numerotable {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "vente_seq")
+    @SequenceGenerator(name = "vente_seq", sequenceName = "vente_id_seq", allocationSize = 50)
     private Long id;
     
+    @NumeroMetier(prefixe = "VENT")
     @Column(name = "numero_vente", unique = true, length = 50)
     private String numeroVente;
     
@@ -68,6 +70,11 @@ public class Vente {
     private List<VenteItem> items = new ArrayList<>();
     
     // Méthodes utilitaires
+    @Override
+    public LocalDate getDateNumerotation() {
+        return dateVente;
+    }
+
     public void addItem(VenteItem item) {
         items.add(item);
         item.setVente(this);
@@ -27,7 +27,8 @@ import java.time.Instant;
 public class VenteItem {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "vente_item_seq")
+    @SequenceGenerator(name = "vente_item_seq", sequenceName = "vente_item_id_seq", allocationSize = 50)
     private Long id;
     
     @NotNull(message = "La vente est obligatoire")
@@ -0,0 +1,9 @@
+package ma.iorecycling.event;
+
+/**
+ * Événement publié lorsqu'une écriture modifie les données d'une société
+ * (transactions, paiements, échéances, enlèvements, ventes)
+ * Sert à invalider les dashboards en cache de cette société
+ */
+public record SocieteDonneesModifieesEvent(Long societeId) {
+}
@@ -0,0 +1,23 @@
+package ma.iorecycling.exception;
+
+import lombok.Getter;
+import ma.iorecycling.dto.ResultatRapprochementDTO;
+
+import java.util.List;
+
+/**
+ * Application d'un rapprochement refusée : aucun paiement n'est enregistré
+ * Porte les transactions en cause et leur motif, retournés au client avec la réponse 400
+ */
+@Getter
+public class RapprochementRefuseException extends IllegalArgumentException {
+
+    private final transient List<ResultatRapprochementDTO.Refus> refus;
+
+    public RapprochementRefuseException(List<ResultatRapprochementDTO.Refus> refus) {
+        super("Rapprochement refusé pour " + refus.size() + " transaction(s) : " + refus.stream()
+                .map(r -> r.getTransactionId() + " (" + r.getMotif() + ")")
+                .toList());
+        this.refus = refus;
+    }
+}
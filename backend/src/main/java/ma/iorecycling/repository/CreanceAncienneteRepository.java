@@ -0,0 +1,47 @@
+package ma.iorecycling.repository;
+
+import ma.iorecycling.dto.LigneBalanceAgeeDTO;
+import ma.iorecycling.entity.CreanceAnciennete;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Repository pour la balance âgée des créances clients
+ */
+@Repository
+public interface CreanceAncienneteRepository
+        extends JpaRepository<CreanceAnciennete, CreanceAnciennete.CreanceAncienneteId> {
+
+    /**
+     * Balance âgée par société (toutes si societeId est null), lue sur au plus 4 lignes par société
+     */
+    @Query("SELECT new ma.iorecycling.dto.LigneBalanceAgeeDTO(c.societeId, s.raisonSociale, SUM(c.nombre), " +
+           "COALESCE(SUM(CASE WHEN c.tranche = 0 THEN c.montantRestant END), 0), " +
+           "COALESCE(SUM(CASE WHEN c.tranche = 1 THEN c.montantRestant END), 0), " +
+           "COALESCE(SUM(CASE WHEN c.tranche = 2 THEN c.montantRestant END), 0), " +
+           "COALESCE(SUM(CASE WHEN c.tranche = 3 THEN c.montantRestant END), 0)) " +
+           "FROM CreanceAnciennete c JOIN Societe s ON s.id = c.societeId " +
+           "WHERE (:societeId IS NULL OR c.societeId = :societeId) " +
+           "GROUP BY c.societeId, s.raisonSociale " +
+           "HAVING SUM(c.nombre) > 0 " +
+           "ORDER BY s.raisonSociale")
+    List<LigneBalanceAgeeDTO> findBalanceAgee(@Param("societeId") Long societeId);
+
+    /**
+     * Date à laquelle l'ancienneté des créances est comptée
+     */
+    @Query(value = "SELECT date_reference FROM creance_reference WHERE id = 1", nativeQuery = true)
+    LocalDate findDateReference();
+
+    /**
+     * Avance la date de référence et fait changer de tranche les créances qui franchissent une borne
+     * Retourne le nombre de lignes de balance modifiées (à appeler dans une transaction en écriture)
+     */
+    @Query(value = "SELECT avancer_creance_anciennete(CAST(:dateReference AS date))", nativeQuery = true)
+    Integer avancer(@Param("dateReference") LocalDate dateReference);
+}
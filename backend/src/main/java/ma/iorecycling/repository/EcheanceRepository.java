@@ -1,5 +1,6 @@
 package ma.iorecycling.repository;
 
+import ma.iorecycling.dto.NombreMontantDTO;
 import ma.iorecycling.entity.Echeance;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -7,6 +8,7 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -20,6 +22,12 @@ public interface EcheanceRepository extends JpaRepository<Echeance, Long> {
      */
     List<Echeance> findByTransactionId(Long transactionId);
     
+    /**
+     * Échéances d'un lot de transactions (assemblage d'une page en une requête IN)
+     */
+    @Query("SELECT e FROM Echeance e WHERE e.transaction.id IN :transactionIds ORDER BY e.id")
+    List<Echeance> findByTransactionIdIn(@Param("transactionIds") Collection<Long> transactionIds);
+    
     /**
      * Trouve les échéances en retard d'une société
      */
@@ -71,5 +79,58 @@ public interface EcheanceRepository extends JpaRepository<Echeance, Long> {
            "ORDER BY e.dateEcheance ASC")
     List<Echeance> findEcheancesEnAttenteByTransactionId(
             @Param("transactionId") Long transactionId);
+    
+    /**
+     * Échéances en attente d'un lot de transactions, triées par transaction puis par date (rapprochement bancaire)
+     */
+    @Query("SELECT e FROM Echeance e WHERE e.transaction.id IN :transactionIds " +
+           "AND e.statut = 'EN_ATTENTE' " +
+           "ORDER BY e.transaction.id, e.dateEcheance ASC")
+    List<Echeance> findEcheancesEnAttenteByTransactionIdIn(
+            @Param("transactionIds") Collection<Long> transactionIds);
+    
+    // ========== AGRÉGATS POUR LE DASHBOARD ==========
+    
+    /**
+     * Nombre et montant des échéances en retard d'une société
+     */
+    @Query("SELECT new ma.iorecycling.dto.NombreMontantDTO(COUNT(e), COALESCE(SUM(e.montant), 0)) " +
+           "FROM Echeance e WHERE e.transaction.societe.id = :societeId " +
+           "AND e.dateEcheance < :dateLimite " +
+           "AND e.statut = 'EN_ATTENTE'")
+    NombreMontantDTO countAndSumEcheancesEnRetard(
+            @Param("societeId") Long societeId,
+            @Param("dateLimite") LocalDate dateLimite);
+    
+    /**
+     * Nombre et montant des échéances à venir d'une société
+     */
+    @Query("SELECT new ma.iorecycling.dto.NombreMontantDTO(COUNT(e), COALESCE(SUM(e.montant), 0)) " +
+           "FROM Echeance e WHERE e.transaction.societe.id = :societeId " +
+           "AND e.dateEcheance >= :dateDebut " +
+           "AND e.dateEcheance <= :dateFin " +
+           "AND e.statut = 'EN_ATTENTE'")
+    NombreMontantDTO countAndSumEcheancesAVenir(
+            @Param("societeId") Long societeId,
+            @Param("dateDebut") LocalDate dateDebut,
+            @Param("dateFin") LocalDate dateFin);
+    
+    /**
+     * Nombre et montant des échéances en retard de toutes les sociétés
+     */
+    @Query("SELECT new ma.iorecycling.dto.NombreMontantDTO(COUNT(e), COALESCE(SUM(e.montant), 0)) " +
+           "FROM Echeance e WHERE e.dateEcheance < :dateLimite " +
+           "AND e.statut = 'EN_ATTENTE'")
+    NombreMontantDTO countAndSumEcheancesEnRetardAll(@Param("dateLimite") LocalDate dateLimite);
+    
+    /**
+     * Nombre et montant des échéances à venir de toutes les sociétés
+     */
+    @Query("SELECT new ma.iorecycling.dto.NombreMontantDTO(COUNT(e), COALESCE(SUM(e.montant), 0)) " +
+           "FROM Echeance e WHERE e.dateEcheance >= :dateDebut " +
+           "AND e.dateEcheance <= :dateFin " +
+           "AND e.statut = 'EN_ATTENTE'")
+    NombreMontantDTO countAndSumEcheancesAVenirAll(
+            @Param("dateDebut") LocalDate dateDebut,
+            @Param("dateFin") LocalDate dateFin);
 }
-
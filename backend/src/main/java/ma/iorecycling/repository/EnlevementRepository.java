@@ -1,6 +1,8 @@
 package ma.iorecycling.repository;
 
+import ma.iorecycling.dto.EnlevementSummaryDTO;
 import ma.iorecycling.entity.Enlevement;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -9,7 +11,10 @@ import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -18,32 +23,150 @@ import java.util.Optional;
 @Repository
 public interface EnlevementRepository extends JpaRepository<Enlevement, Long> {
     
+    /**
+     * Taille des listes IN de chargerAvecDetails
+     */
+    int TAILLE_LOT_DETAILS = 500;
+    
+    String SELECT_SUMMARY = "SELECT e.id AS id, e.numeroEnlevement AS numeroEnlevement, " +
+           "e.dateEnlevement AS dateEnlevement, e.heureEnlevement AS heureEnlevement, " +
+           "s.id AS societeId, s.raisonSociale AS societeNom, si.id AS siteId, si.name AS siteNom, " +
+           "c.matricule AS camionMatricule, e.chauffeurNom AS chauffeurNom, " +
+           "d.raisonSociale AS destinationRaisonSociale, e.nbItems AS nbItems, " +
+           "e.poidsTotal AS poidsTotal, e.poidsRecyclable AS poidsRecyclable, " +
+           "e.budgetRecyclage AS budgetRecyclage, e.budgetTraitement AS budgetTraitement " +
+           "FROM Enlevement e JOIN e.societe s JOIN e.site si " +
+           "LEFT JOIN e.camion c LEFT JOIN e.destination d";
+    
     /**
      * Trouve un enlèvement par son numéro
      */
     Optional<Enlevement> findByNumeroEnlevement(String numeroEnlevement);
     
+    /**
+     * Numéros déjà utilisés parmi ceux donnés (contrôle avant un import en masse)
+     */
+    @Query("SELECT e.numeroEnlevement FROM Enlevement e WHERE e.numeroEnlevement IN :numeros")
+    List<String> findNumerosExistants(@Param("numeros") Collection<String> numeros);
+    
     /**
      * Trouve tous les enlèvements d'une société
      */
     Page<Enlevement> findBySocieteId(Long societeId, Pageable pageable);
     
+    /**
+     * Ids des enlèvements d'une société (toutes si null) et d'une période, par id croissant après un point de reprise
+     */
+    @Query("SELECT e.id FROM Enlevement e WHERE e.id > :apresId " +
+           "AND (:societeId IS NULL OR e.societe.id = :societeId) " +
+           "AND e.dateEnlevement BETWEEN :dateDebut AND :dateFin " +
+           "ORDER BY e.id")
+    List<Long> findIdsApres(@Param("apresId") long apresId, @Param("societeId") Long societeId,
+                            @Param("dateDebut") LocalDate dateDebut, @Param("dateFin") LocalDate dateFin, Limit limit);
+    
+    @Query("SELECT COUNT(e) FROM Enlevement e WHERE (:societeId IS NULL OR e.societe.id = :societeId) " +
+           "AND e.dateEnlevement BETWEEN :dateDebut AND :dateFin")
+    long countBySocieteIdOptionnelAndDateBetween(@Param("societeId") Long societeId,
+                                                 @Param("dateDebut") LocalDate dateDebut, @Param("dateFin") LocalDate dateFin);
+    
+    /**
+     * Verrouille des enlèvements (par id croissant) avant de régénérer leurs transactions : les régénérations
+     * concurrentes d'un même enlèvement (job, outbox, régénération manuelle, modification) passent l'une après l'autre
+     */
+    @Query(value = "SELECT id FROM enlevement WHERE id IN (:ids) ORDER BY id FOR UPDATE", nativeQuery = true)
+    List<Long> verrouiller(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * Charge des enlèvements avec leur société et leurs items (génération des transactions)
+     */
+    @Query("SELECT DISTINCT e FROM Enlevement e JOIN FETCH e.societe LEFT JOIN FETCH e.items WHERE e.id IN :ids")
+    List<Enlevement> findAllWithItemsByIdIn(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * Page de résumés de tous les enlèvements, sans charger les items (totaux stockés, voir V27)
+     */
+    @Query(value = SELECT_SUMMARY,
+           countQuery = "SELECT COUNT(e) FROM Enlevement e")
+    Page<EnlevementSummaryDTO> findSummaries(Pageable pageable);
+    
+    /**
+     * Page de résumés des enlèvements d'une société, sans charger les items (totaux stockés, voir V27)
+     */
+    @Query(value = SELECT_SUMMARY + " WHERE e.societe.id = :societeId",
+           countQuery = "SELECT COUNT(e) FROM Enlevement e WHERE e.societe.id = :societeId")
+    Page<EnlevementSummaryDTO> findSummariesBySocieteId(@Param("societeId") Long societeId, Pageable pageable);
+    
+    /**
+     * Résumés des enlèvements après un curseur (date, id), du plus récent au plus ancien
+     * Parcours de l'index (date_enlevement, id) sans OFFSET ni comptage (voir migration V28)
+     */
+    @Query(SELECT_SUMMARY +
+           " WHERE (e.dateEnlevement, e.id) < (:date, :id)" +
+           " ORDER BY e.dateEnlevement DESC, e.id DESC")
+    List<EnlevementSummaryDTO> findSummariesApres(
+            @Param("date") LocalDate date, @Param("id") Long id, Limit limit);
+    
+    /**
+     * Résumés des enlèvements d'une société après un curseur (date, id)
+     * Parcours de l'index (societe_id, date_enlevement, id)
+     */
+    @Query(SELECT_SUMMARY +
+           " WHERE e.societe.id = :societeId AND (e.dateEnlevement, e.id) < (:date, :id)" +
+           " ORDER BY e.dateEnlevement DESC, e.id DESC")
+    List<EnlevementSummaryDTO> findSummariesBySocieteIdApres(
+            @Param("societeId") Long societeId,
+            @Param("date") LocalDate date, @Param("id") Long id, Limit limit);
+    
+    /**
+     * Nombre d'enlèvements, d'une société ou de toutes si societeId est null
+     */
+    @Query("SELECT COUNT(e) FROM Enlevement e WHERE (:societeId IS NULL OR e.societe.id = :societeId)")
+    long countBySocieteIdOptionnel(@Param("societeId") Long societeId);
+    
     /**
      * Trouve tous les enlèvements d'un site
      */
     Page<Enlevement> findBySiteId(Long siteId, Pageable pageable);
     
     /**
-     * Trouve les enlèvements d'une société entre deux dates
+     * Ids des enlèvements d'une société entre deux dates, les plus récents d'abord
+     * (1re phase du chargement, la 2e est chargerAvecDetails)
      */
-    @Query("SELECT e FROM Enlevement e WHERE e.societe.id = :societeId " +
+    @Query("SELECT e.id FROM Enlevement e WHERE e.societe.id = :societeId " +
            "AND e.dateEnlevement BETWEEN :dateDebut AND :dateFin " +
-           "ORDER BY e.dateEnlevement DESC")
-    List<Enlevement> findBySocieteIdAndDateBetween(
+           "ORDER BY e.dateEnlevement DESC, e.id DESC")
+    List<Long> findIdsBySocieteIdAndDateBetween(
             @Param("societeId") Long societeId,
             @Param("dateDebut") LocalDate dateDebut,
             @Param("dateFin") LocalDate dateFin);
     
+    /**
+     * Charge des enlèvements avec tout ce qu'affiche EnlevementMapper :
+     * société, site, camion, destination et items en une requête
+     * (les types de traitement des destinations suivent par requêtes IN, voir Destination)
+     */
+    @Query("SELECT DISTINCT e FROM Enlevement e " +
+           "JOIN FETCH e.societe " +
+           "JOIN FETCH e.site " +
+           "LEFT JOIN FETCH e.camion " +
+           "LEFT JOIN FETCH e.destination " +
+           "LEFT JOIN FETCH e.items " +
+           "WHERE e.id IN :ids")
+    List<Enlevement> findAllWithDetailsByIdIn(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * Charge les enlèvements d'une liste d'ids, dans le même ordre, par lots de TAILLE_LOT_DETAILS
+     * Nombre de requêtes proportionnel au nombre de lots, pas au nombre d'enlèvements
+     */
+    default List<Enlevement> chargerAvecDetails(List<Long> ids) {
+        Map<Long, Enlevement> parId = new HashMap<>(ids.size());
+        for (int i = 0; i < ids.size(); i += TAILLE_LOT_DETAILS) {
+            findAllWithDetailsByIdIn(ids.subList(i, Math.min(i + TAILLE_LOT_DETAILS, ids.size())))
+                    .forEach(e -> parId.put(e.getId(), e));
+        }
+        return ids.stream().map(parId::get).toList();
+    }
+    
     /**
      * Compte le nombre d'enlèvements d'une société entre deux dates
      */
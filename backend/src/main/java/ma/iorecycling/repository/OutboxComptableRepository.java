@@ -0,0 +1,69 @@
+package ma.iorecycling.repository;
+
+import jakarta.persistence.LockModeType;
+import ma.iorecycling.entity.OutboxComptable;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Repository de l'outbox de la génération comptable
+ */
+@Repository
+public interface OutboxComptableRepository extends JpaRepository<OutboxComptable, Long> {
+
+    /**
+     * Enregistre une demande de génération pour un enlèvement
+     * Sans effet si une demande est déjà en attente pour cet enlèvement
+     */
+    @Modifying
+    @Query(value = "INSERT INTO outbox_comptable (enlevement_id, statut, tentatives, prochaine_tentative, created_at, updated_at) " +
+           "VALUES (:enlevementId, 'EN_ATTENTE', 0, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP) " +
+           "ON CONFLICT (enlevement_id) WHERE statut = 'EN_ATTENTE' DO NOTHING", nativeQuery = true)
+    int planifier(@Param("enlevementId") Long enlevementId);
+
+    /**
+     * Verrouille les prochaines demandes à traiter, en ignorant celles déjà verrouillées par un autre worker
+     * Sont reprises les demandes en attente arrivées à échéance et les réservations expirées
+     * Un enlèvement dont une demande est en cours de traitement n'est pas repris en parallèle
+     */
+    @Query(value = "SELECT o.* FROM outbox_comptable o " +
+           "WHERE ((o.statut = 'EN_ATTENTE' AND o.prochaine_tentative <= CURRENT_TIMESTAMP " +
+           "        AND NOT EXISTS (SELECT 1 FROM outbox_comptable c WHERE c.enlevement_id = o.enlevement_id " +
+           "                        AND c.statut = 'EN_COURS' AND c.verrouille_le >= :expiration)) " +
+           "    OR (o.statut = 'EN_COURS' AND o.verrouille_le < :expiration)) " +
+           "ORDER BY o.prochaine_tentative, o.id " +
+           "LIMIT :limite FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<OutboxComptable> verrouillerATraiter(@Param("expiration") Instant expiration, @Param("limite") int limite);
+
+    /**
+     * Relit une demande en la verrouillant jusqu'à la fin de la transaction
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM OutboxComptable o WHERE o.id = :id")
+    Optional<OutboxComptable> findByIdForUpdate(@Param("id") Long id);
+
+    boolean existsByEnlevementIdAndStatut(Long enlevementId, OutboxComptable.Statut statut);
+
+    long countByStatut(OutboxComptable.Statut statut);
+
+    @Query("SELECT MIN(o.createdAt) FROM OutboxComptable o WHERE o.statut = :statut")
+    Instant findPlusAncienneByStatut(@Param("statut") OutboxComptable.Statut statut);
+
+    List<OutboxComptable> findByStatutOrderByUpdatedAtDesc(OutboxComptable.Statut statut, Pageable pageable);
+
+    /**
+     * Purge les demandes traitées avant une date
+     */
+    @Modifying
+    @Query("DELETE FROM OutboxComptable o WHERE o.statut = ma.iorecycling.entity.OutboxComptable.Statut.TRAITE AND o.traiteLe < :avant")
+    int purgerTraitees(@Param("avant") Instant avant);
+}
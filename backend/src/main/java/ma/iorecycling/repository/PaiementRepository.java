@@ -1,6 +1,7 @@
 package ma.iorecycling.repository;
 
 import ma.iorecycling.entity.Paiement;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -10,6 +11,7 @@ import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -24,16 +26,39 @@ public interface PaiementRepository extends JpaRepository<Paiement, Long> {
     List<Paiement> findByTransactionId(Long transactionId);
     
     /**
-     * Trouve tous les paiements d'une société (via transaction)
+     * Paiements d'un lot de transactions (assemblage d'une page en une requête IN)
      */
-    @Query("SELECT p FROM Paiement p WHERE p.transaction.societe.id = :societeId")
+    @Query("SELECT p FROM Paiement p WHERE p.transaction.id IN :transactionIds ORDER BY p.id")
+    List<Paiement> findByTransactionIdIn(@Param("transactionIds") Collection<Long> transactionIds);
+    
+    /**
+     * Trouve tous les paiements d'une société
+     */
+    @Query("SELECT p FROM Paiement p WHERE p.societeId = :societeId")
     Page<Paiement> findBySocieteId(@Param("societeId") Long societeId, Pageable pageable);
     
+    /**
+     * Paiements d'une société après un curseur (date, id), du plus récent au plus ancien
+     * Parcours de l'index (societe_id, date_paiement, id) (voir migration V28)
+     */
+    @Query("SELECT p FROM Paiement p WHERE p.societeId = :societeId " +
+           "AND (p.datePaiement, p.id) < (:date, :id) " +
+           "ORDER BY p.datePaiement DESC, p.id DESC")
+    List<Paiement> findBySocieteIdApres(
+            @Param("societeId") Long societeId,
+            @Param("date") LocalDate date, @Param("id") Long id, Limit limit);
+    
+    /**
+     * Nombre de paiements d'une société
+     */
+    @Query("SELECT COUNT(p) FROM Paiement p WHERE p.societeId = :societeId")
+    long countBySocieteId(@Param("societeId") Long societeId);
+    
     /**
      * Calcule le total des paiements d'une société sur une période
      */
     @Query("SELECT COALESCE(SUM(p.montant), 0) FROM Paiement p " +
-           "WHERE p.transaction.societe.id = :societeId " +
+           "WHERE p.societeId = :societeId " +
            "AND p.datePaiement BETWEEN :dateDebut AND :dateFin " +
            "AND p.statut = 'VALIDE'")
     BigDecimal sumPaiementsBySocieteAndPeriod(
@@ -58,5 +83,12 @@ public interface PaiementRepository extends JpaRepository<Paiement, Long> {
            "WHERE p.transaction.id = :transactionId " +
            "AND p.statut = 'VALIDE'")
     BigDecimal sumMontantPayeByTransactionId(@Param("transactionId") Long transactionId);
+    
+    /**
+     * Références déjà enregistrées parmi celles données (lignes de relevé bancaire déjà rapprochées)
+     */
+    @Query("SELECT DISTINCT p.reference FROM Paiement p WHERE p.reference IN :references " +
+           "AND p.statut = 'VALIDE'")
+    List<String> findReferencesExistantes(@Param("references") Collection<String> references);
 }
 
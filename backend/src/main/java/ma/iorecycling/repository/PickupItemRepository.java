@@ -26,6 +26,45 @@ public interface PickupItemRepository extends JpaRepository<PickupItem, Long> {
      */
     void deleteByEnlevementId(Long enlevementId);
     
+    /**
+     * KPIs du portail client d'une société sur une période en une seule requête
+     * Les mois entièrement compris entre debutCube et finCube (premiers jours de mois) sont lus
+     * dans le cube tonnage_mensuel, les items ne sont parcourus que pour les jours hors de ces mois
+     * (debutCube > finCube si la période ne contient aucun mois complet)
+     * Retourne des lignes [nature, clé, quantité, montant] :
+     * - ("ENLEVEMENTS", null, nombre d'enlèvements, null)
+     * - ("TYPE", type de déchet, quantité kg, montant MAD)
+     * - ("SOUS_TYPE", sous-type recyclable, quantité kg, montant MAD)
+     */
+    @Query(value = "WITH enlevements AS (" +
+           "  SELECT e.id, e.date_enlevement FROM enlevement e " +
+           "  WHERE e.societe_id = :societeId " +
+           "  AND e.date_enlevement BETWEEN :dateDebut AND :dateFin), " +
+           "items AS (" +
+           "  SELECT i.type_dechet, i.sous_type, i.quantite_kg, i.montant_mad " +
+           "  FROM pickup_item i JOIN enlevements e ON e.id = i.enlevement_id " +
+           "  WHERE CAST(date_trunc('month', e.date_enlevement) AS DATE) NOT BETWEEN :debutCube AND :finCube " +
+           "  UNION ALL " +
+           "  SELECT c.type_dechet, NULLIF(c.sous_type, ''), c.quantite_kg, c.montant_mad " +
+           "  FROM tonnage_mensuel c " +
+           "  WHERE c.societe_id = :societeId " +
+           "  AND c.mois BETWEEN :debutCube AND :finCube) " +
+           "SELECT 'ENLEVEMENTS' AS nature, NULL AS cle, CAST(COUNT(*) AS NUMERIC) AS quantite, NULL AS montant " +
+           "FROM enlevements " +
+           "UNION ALL " +
+           "SELECT 'TYPE', type_dechet, SUM(quantite_kg), COALESCE(SUM(montant_mad), 0) " +
+           "FROM items GROUP BY type_dechet " +
+           "UNION ALL " +
+           "SELECT 'SOUS_TYPE', sous_type, SUM(quantite_kg), COALESCE(SUM(montant_mad), 0) " +
+           "FROM items WHERE type_dechet = 'RECYCLABLE' GROUP BY sous_type",
+           nativeQuery = true)
+    List<Object[]> findKpisClientParPeriode(
+            @Param("societeId") Long societeId,
+            @Param("dateDebut") LocalDate dateDebut,
+            @Param("dateFin") LocalDate dateFin,
+            @Param("debutCube") LocalDate debutCube,
+            @Param("finCube") LocalDate finCube);
+    
     /**
      * Calcule la quantité totale par type de déchet pour une société sur une période
      */
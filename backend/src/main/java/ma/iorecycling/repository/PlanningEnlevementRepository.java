@@ -9,6 +9,7 @@ import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository pour l'entité PlanningEnlevement
@@ -16,6 +17,19 @@ import java.util.List;
 @Repository
 public interface PlanningEnlevementRepository extends JpaRepository<PlanningEnlevement, Long> {
     
+    /**
+     * Prochain enlèvement planifié ou confirmé d'une société, avec son site (KPI 1 du portail client)
+     */
+    @Query("SELECT p FROM PlanningEnlevement p JOIN FETCH p.site " +
+           "WHERE p.societe.id = :societeId " +
+           "AND p.datePrevue >= :dateAujourdhui " +
+           "AND p.statut IN ('PLANIFIE', 'CONFIRME') " +
+           "ORDER BY p.datePrevue ASC, p.heurePrevue ASC " +
+           "LIMIT 1")
+    Optional<PlanningEnlevement> findProchainEnlevement(
+            @Param("societeId") Long societeId,
+            @Param("dateAujourdhui") LocalDate dateAujourdhui);
+    
     /**
      * Trouve le prochain enlèvement planifié pour une société (KPI 1)
      * Retourne une liste triée par date et heure, le premier élément est le prochain
@@ -0,0 +1,82 @@
+package ma.iorecycling.repository;
+
+import ma.iorecycling.entity.RegenerationJob;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Repository des jobs de régénération des transactions
+ * Les changements d'état et l'avancement passent par des UPDATE conditionnels : une annulation
+ * concurrente n'est jamais écrasée par le worker
+ */
+@Repository
+public interface RegenerationJobRepository extends JpaRepository<RegenerationJob, Long> {
+
+    List<RegenerationJob> findAllByOrderByIdDesc(Pageable pageable);
+
+    @Query("SELECT j.statut FROM RegenerationJob j WHERE j.id = :id")
+    RegenerationJob.Statut findStatutById(@Param("id") Long id);
+
+    /**
+     * Jobs à (re)lancer : en attente, ou en cours sans signe de vie depuis l'expiration
+     */
+    @Query("SELECT j.id FROM RegenerationJob j " +
+           "WHERE j.statut = ma.iorecycling.entity.RegenerationJob.Statut.EN_ATTENTE " +
+           "OR (j.statut = ma.iorecycling.entity.RegenerationJob.Statut.EN_COURS AND j.actifLe < :expiration) " +
+           "ORDER BY j.id")
+    List<Long> findIdsAReprendre(@Param("expiration") Instant expiration);
+
+    /**
+     * Prend en charge un job, retourne 0 s'il est déjà pris par un autre worker, terminé ou annulé
+     * La date de réservation devient le jeton de propriété du worker (verrouilleLe)
+     */
+    @Modifying
+    @Query("UPDATE RegenerationJob j SET j.statut = ma.iorecycling.entity.RegenerationJob.Statut.EN_COURS, " +
+           "j.actifLe = :maintenant, j.verrouilleLe = :maintenant, " +
+           "j.demarreLe = COALESCE(j.demarreLe, :maintenant), j.updatedAt = :maintenant " +
+           "WHERE j.id = :id AND (j.statut = ma.iorecycling.entity.RegenerationJob.Statut.EN_ATTENTE " +
+           "OR (j.statut = ma.iorecycling.entity.RegenerationJob.Statut.EN_COURS AND j.actifLe < :expiration))")
+    int reserver(@Param("id") Long id, @Param("maintenant") Instant maintenant, @Param("expiration") Instant expiration);
+
+    /**
+     * Enregistre un avancement validé et le signe de vie du worker, dans la transaction du traitement
+     * Retourne 0 si le worker n'est plus propriétaire du job (repris ou annulé) : le traitement doit être annulé
+     */
+    @Modifying
+    @Query("UPDATE RegenerationJob j SET j.traites = j.traites + :traites, j.enErreur = j.enErreur + :enErreur, " +
+           "j.transactionsCreees = j.transactionsCreees + :creees, " +
+           "j.transactionsModifiees = j.transactionsModifiees + :modifiees, " +
+           "j.transactionsSupprimees = j.transactionsSupprimees + :supprimees, " +
+           "j.dernierEnlevementId = :dernierId, j.dureeTraitementMs = j.dureeTraitementMs + :dureeMs, " +
+           "j.derniereErreur = COALESCE(:erreur, j.derniereErreur), j.actifLe = :maintenant, j.updatedAt = :maintenant " +
+           "WHERE j.id = :id AND j.verrouilleLe = :verrou " +
+           "AND j.statut = ma.iorecycling.entity.RegenerationJob.Statut.EN_COURS")
+    int avancer(@Param("id") Long id, @Param("verrou") Instant verrou,
+                @Param("traites") long traites, @Param("enErreur") long enErreur,
+                @Param("creees") long creees, @Param("modifiees") long modifiees, @Param("supprimees") long supprimees,
+                @Param("dernierId") long dernierId, @Param("dureeMs") long dureeMs,
+                @Param("erreur") String erreur, @Param("maintenant") Instant maintenant);
+
+    /**
+     * Termine un job parcouru jusqu'au bout, par son worker propriétaire uniquement
+     */
+    @Modifying
+    @Query("UPDATE RegenerationJob j SET j.statut = ma.iorecycling.entity.RegenerationJob.Statut.TERMINE, " +
+           "j.termineLe = :maintenant, j.updatedAt = :maintenant " +
+           "WHERE j.id = :id AND j.verrouilleLe = :verrou " +
+           "AND j.statut = ma.iorecycling.entity.RegenerationJob.Statut.EN_COURS")
+    int terminer(@Param("id") Long id, @Param("verrou") Instant verrou, @Param("maintenant") Instant maintenant);
+
+    @Modifying
+    @Query("UPDATE RegenerationJob j SET j.statut = :statut, j.termineLe = :maintenant, j.updatedAt = :maintenant " +
+           "WHERE j.id = :id AND j.statut IN :depuis")
+    int changerStatut(@Param("id") Long id, @Param("statut") RegenerationJob.Statut statut,
+                      @Param("depuis") List<RegenerationJob.Statut> depuis, @Param("maintenant") Instant maintenant);
+}
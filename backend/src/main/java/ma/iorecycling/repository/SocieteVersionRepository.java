@@ -0,0 +1,12 @@
+package ma.iorecycling.repository;
+
+import ma.iorecycling.entity.SocieteVersion;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Repository pour la version des données par société
+ */
+@Repository
+public interface SocieteVersionRepository extends JpaRepository<SocieteVersion, Long> {
+}
@@ -0,0 +1,63 @@
+package ma.iorecycling.repository;
+
+import ma.iorecycling.entity.SoldeTresorerie;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Repository pour les soldes de trésorerie des mois clôturés
+ */
+@Repository
+public interface SoldeTresorerieRepository
+        extends JpaRepository<SoldeTresorerie, SoldeTresorerie.SoldeTresorerieId> {
+
+    /**
+     * Solde d'une société à une date : dernier instantané antérieur au mois de la date
+     * plus les mouvements de l'agrégat journalier depuis la fin de cet instantané
+     */
+    @Query(value = "WITH instantane AS (" +
+           "  SELECT s.mois, s.solde_cumule FROM solde_tresorerie s " +
+           "  WHERE s.societe_id = :societeId " +
+           "  AND s.mois < CAST(date_trunc('month', CAST(:date AS date)) AS date) " +
+           "  ORDER BY s.mois DESC LIMIT 1) " +
+           "SELECT COALESCE((SELECT i.solde_cumule FROM instantane i), 0) + " +
+           "COALESCE((SELECT SUM(CASE WHEN r.type = 'RECETTE' THEN r.montant_total ELSE -r.montant_total END) " +
+           "  FROM transaction_daily_rollup r " +
+           "  WHERE r.societe_id = :societeId " +
+           "  AND r.jour <= CAST(:date AS date) " +
+           "  AND r.jour >= COALESCE((SELECT CAST(i.mois + INTERVAL '1 month' AS date) FROM instantane i), " +
+           "                         DATE '0001-01-01')), 0)",
+           nativeQuery = true)
+    BigDecimal calculerSoldeBySocieteAt(
+            @Param("societeId") Long societeId,
+            @Param("date") LocalDate date);
+
+    /**
+     * Solde de toutes les sociétés à une date (somme des soldes par société)
+     */
+    @Query(value = "WITH instantanes AS (" +
+           "  SELECT DISTINCT ON (s.societe_id) s.societe_id, s.mois, s.solde_cumule " +
+           "  FROM solde_tresorerie s " +
+           "  WHERE s.mois < CAST(date_trunc('month', CAST(:date AS date)) AS date) " +
+           "  ORDER BY s.societe_id, s.mois DESC) " +
+           "SELECT COALESCE((SELECT SUM(i.solde_cumule) FROM instantanes i), 0) + " +
+           "COALESCE((SELECT SUM(CASE WHEN r.type = 'RECETTE' THEN r.montant_total ELSE -r.montant_total END) " +
+           "  FROM transaction_daily_rollup r " +
+           "  LEFT JOIN instantanes i ON i.societe_id = r.societe_id " +
+           "  WHERE r.jour <= CAST(:date AS date) " +
+           "  AND (i.mois IS NULL OR r.jour >= i.mois + INTERVAL '1 month')), 0)",
+           nativeQuery = true)
+    BigDecimal calculerSoldeAt(@Param("date") LocalDate date);
+
+    /**
+     * Clôture les mois manquants de chaque société jusqu'au mois donné inclus
+     * Retourne le nombre d'instantanés créés (à appeler dans une transaction en écriture)
+     */
+    @Query(value = "SELECT cloturer_solde_tresorerie(CAST(:dernierMois AS date))", nativeQuery = true)
+    Integer cloturer(@Param("dernierMois") LocalDate dernierMois);
+}
@@ -0,0 +1,68 @@
+package ma.iorecycling.repository;
+
+import ma.iorecycling.entity.TonnageMensuel;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+/**
+ * Repository pour le cube mensuel des tonnages
+ */
+@Repository
+public interface TonnageMensuelRepository
+        extends JpaRepository<TonnageMensuel, TonnageMensuel.TonnageMensuelId> {
+
+    String INSERT_CUBE = "INSERT INTO tonnage_mensuel (societe_id, site_id, mois, type_dechet, sous_type, " +
+           "       quantite_kg, montant_mad, montant_prestation_mad, montant_achat_mad, " +
+           "       montant_traitement_mad, nb_items) " +
+           "SELECT e.societe_id, e.site_id, CAST(date_trunc('month', e.date_enlevement) AS DATE), " +
+           "       i.type_dechet, COALESCE(i.sous_type, ''), " +
+           "       :signe * SUM(i.quantite_kg), :signe * COALESCE(SUM(i.montant_mad), 0), " +
+           "       :signe * COALESCE(SUM(i.montant_prestation_mad), 0), " +
+           "       :signe * COALESCE(SUM(i.montant_achat_mad), 0), " +
+           "       :signe * COALESCE(SUM(i.montant_traitement_mad), 0), :signe * COUNT(*) " +
+           "FROM pickup_item i JOIN enlevement e ON e.id = i.enlevement_id ";
+
+    String CONFLIT_CUBE = "GROUP BY 1, 2, 3, 4, 5 " +
+           "ON CONFLICT (societe_id, site_id, mois, type_dechet, sous_type) DO UPDATE " +
+           "SET quantite_kg = tonnage_mensuel.quantite_kg + EXCLUDED.quantite_kg, " +
+           "    montant_mad = tonnage_mensuel.montant_mad + EXCLUDED.montant_mad, " +
+           "    montant_prestation_mad = tonnage_mensuel.montant_prestation_mad + EXCLUDED.montant_prestation_mad, " +
+           "    montant_achat_mad = tonnage_mensuel.montant_achat_mad + EXCLUDED.montant_achat_mad, " +
+           "    montant_traitement_mad = tonnage_mensuel.montant_traitement_mad + EXCLUDED.montant_traitement_mad, " +
+           "    nb_items = tonnage_mensuel.nb_items + EXCLUDED.nb_items";
+
+    /**
+     * Ajoute (signe = 1) ou retire (signe = -1) les items d'un enlèvement du cube
+     * Les valeurs lues sont celles de la base : les modifications en cours sont d'abord écrites
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = INSERT_CUBE + "WHERE e.id = :enlevementId " + CONFLIT_CUBE, nativeQuery = true)
+    int appliquerEnlevement(@Param("enlevementId") Long enlevementId, @Param("signe") int signe);
+
+    /**
+     * Ajoute (signe = 1) ou retire (signe = -1) en une requête les items de plusieurs enlèvements (import en masse)
+     */
+    @Modifying(flushAutomatically = true)
+    @Query(value = INSERT_CUBE + "WHERE e.id IN (:enlevementIds) " + CONFLIT_CUBE, nativeQuery = true)
+    int appliquerEnlevements(@Param("enlevementIds") List<Long> enlevementIds, @Param("signe") int signe);
+
+    /**
+     * Supprime les lignes d'une société qui ne contiennent plus aucun item
+     */
+    @Modifying
+    @Query(value = "DELETE FROM tonnage_mensuel WHERE societe_id = :societeId AND nb_items <= 0",
+           nativeQuery = true)
+    int supprimerLignesVides(@Param("societeId") Long societeId);
+
+    /**
+     * Reconstruit entièrement le cube depuis pickup_item et enlevement
+     * Retourne le nombre de lignes créées (à appeler dans une transaction en écriture)
+     */
+    @Query(value = "SELECT reconstruire_tonnage_mensuel()", nativeQuery = true)
+    Integer reconstruire();
+}
@@ -0,0 +1,241 @@
+package ma.iorecycling.repository;
+
+import ma.iorecycling.entity.TransactionDailyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Repository pour l'agrégat journalier des transactions
+ */
+@Repository
+public interface TransactionDailyRollupRepository
+        extends JpaRepository<TransactionDailyRollup, TransactionDailyRollup.RollupId> {
+
+    /**
+     * Totaux d'une société sur une période, par type et type de recette
+     * Retourne : [type, type de recette ("" si aucun), montant]
+     */
+    @Query("SELECT r.type, r.typeRecette, SUM(r.montantTotal) FROM TransactionDailyRollup r " +
+           "WHERE r.societeId = :societeId " +
+           "AND r.jour BETWEEN :dateDebut AND :dateFin " +
+           "GROUP BY r.type, r.typeRecette")
+    List<Object[]> sumParTypeBySocieteAndPeriod(
+            @Param("societeId") Long societeId,
+            @Param("dateDebut") LocalDate dateDebut,
+            @Param("dateFin") LocalDate dateFin);
+
+    /**
+     * Répartition des dépenses d'une société par catégorie, limitée aux nbCategories plus importantes
+     * Les autres catégories et les dépenses sans catégorie sont regroupées dans "Autre" (en dernier)
+     * Retourne : [catégorie, montant]
+     */
+    @Query(value = "WITH categories AS (" +
+           "  SELECT CASE WHEN r.categorie = '' THEN 'Autre' ELSE r.categorie END AS categorie, " +
+           "         SUM(r.montant_total) AS montant " +
+           "  FROM transaction_daily_rollup r " +
+           "  WHERE r.type = 'DEPENSE' " +
+           "  AND r.societe_id = :societeId " +
+           "  AND r.jour BETWEEN :dateDebut AND :dateFin " +
+           "  GROUP BY 1), " +
+           "classees AS (" +
+           "  SELECT categorie, montant, " +
+           "         ROW_NUMBER() OVER (ORDER BY (categorie = 'Autre'), montant DESC, categorie) AS rang " +
+           "  FROM categories), " +
+           "regroupees AS (" +
+           "  SELECT CASE WHEN rang <= :nbCategories THEN categorie ELSE 'Autre' END AS libelle, " +
+           "         SUM(montant) AS montant " +
+           "  FROM classees " +
+           "  GROUP BY 1) " +
+           "SELECT libelle, montant FROM regroupees " +
+           "ORDER BY (libelle = 'Autre'), montant DESC",
+           nativeQuery = true)
+    List<Object[]> sumDepensesParCategorieBySocieteAndPeriod(
+            @Param("societeId") Long societeId,
+            @Param("dateDebut") LocalDate dateDebut,
+            @Param("dateFin") LocalDate dateFin,
+            @Param("nbCategories") int nbCategories);
+
+    /**
+     * Agrège les montants d'une société par tranche (semaine ou mois), type et type de recette
+     * Les semaines sont des tranches de 7 jours à partir de dateDebut, les mois sont calendaires
+     * Retourne : [début de tranche, type, type de recette, montant]
+     */
+    @Query(value = "SELECT CAST(CASE WHEN :granularite = 'SEMAINE' " +
+           "THEN CAST(:dateDebut AS date) + ((r.jour - CAST(:dateDebut AS date)) / 7) * 7 " +
+           "ELSE CAST(date_trunc('month', r.jour) AS date) END AS date) AS debut_tranche, " +
+           "r.type, r.type_recette, SUM(r.montant_total) " +
+           "FROM transaction_daily_rollup r " +
+           "WHERE r.societe_id = :societeId " +
+           "AND r.jour BETWEEN :dateDebut AND :dateFin " +
+           "GROUP BY 1, 2, 3",
+           nativeQuery = true)
+    List<Object[]> sumMontantsParTrancheBySocieteAndPeriod(
+            @Param("societeId") Long societeId,
+            @Param("dateDebut") LocalDate dateDebut,
+            @Param("dateFin") LocalDate dateFin,
+            @Param("granularite") String granularite);
+
+    // ========== MÉTHODES POUR TOUTES LES SOCIÉTÉS ==========
+
+    /**
+     * Totaux de toutes les sociétés sur une période, par type et type de recette
+     * Retourne : [type, type de recette ("" si aucun), montant]
+     */
+    @Query("SELECT r.type, r.typeRecette, SUM(r.montantTotal) FROM TransactionDailyRollup r " +
+           "WHERE r.jour BETWEEN :dateDebut AND :dateFin " +
+           "GROUP BY r.type, r.typeRecette")
+    List<Object[]> sumParTypeByPeriod(
+            @Param("dateDebut") LocalDate dateDebut,
+            @Param("dateFin") LocalDate dateFin);
+
+    /**
+     * Répartition des dépenses de toutes les sociétés par catégorie, limitée aux nbCategories plus importantes
+     * Retourne : [catégorie, montant] ("Autre" en dernier)
+     */
+    @Query(value = "WITH categories AS (" +
+           "  SELECT CASE WHEN r.categorie = '' THEN 'Autre' ELSE r.categorie END AS categorie, " +
+           "         SUM(r.montant_total) AS montant " +
+           "  FROM transaction_daily_rollup r " +
+           "  WHERE r.type = 'DEPENSE' " +
+           "  AND r.jour BETWEEN :dateDebut AND :dateFin " +
+           "  GROUP BY 1), " +
+           "classees AS (" +
+           "  SELECT categorie, montant, " +
+           "         ROW_NUMBER() OVER (ORDER BY (categorie = 'Autre'), montant DESC, categorie) AS rang " +
+           "  FROM categories), " +
+           "regroupees AS (" +
+           "  SELECT CASE WHEN rang <= :nbCategories THEN categorie ELSE 'Autre' END AS libelle, " +
+           "         SUM(montant) AS montant " +
+           "  FROM classees " +
+           "  GROUP BY 1) " +
+           "SELECT libelle, montant FROM regroupees " +
+           "ORDER BY (libelle = 'Autre'), montant DESC",
+           nativeQuery = true)
+    List<Object[]> sumDepensesParCategorieByPeriod(
+            @Param("dateDebut") LocalDate dateDebut,
+            @Param("dateFin") LocalDate dateFin,
+            @Param("nbCategories") int nbCategories);
+
+    /**
+     * Agrège les montants de toutes les sociétés par tranche (semaine ou mois), type et type de recette
+     * Retourne : [début de tranche, type, type de recette, montant]
+     */
+    @Query(value = "SELECT CAST(CASE WHEN :granularite = 'SEMAINE' " +
+           "THEN CAST(:dateDebut AS date) + ((r.jour - CAST(:dateDebut AS date)) / 7) * 7 " +
+           "ELSE CAST(date_trunc('month', r.jour) AS date) END AS date) AS debut_tranche, " +
+           "r.type, r.type_recette, SUM(r.montant_total) " +
+           "FROM transaction_daily_rollup r " +
+           "WHERE r.jour BETWEEN :dateDebut AND :dateFin " +
+           "GROUP BY 1, 2, 3",
+           nativeQuery = true)
+    List<Object[]> sumMontantsParTrancheByPeriod(
+            @Param("dateDebut") LocalDate dateDebut,
+            @Param("dateFin") LocalDate dateFin,
+            @Param("granularite") String granularite);
+
+    // ========== COMPARATIF DES SOCIÉTÉS ==========
+
+    /**
+     * Indicateurs de toutes les sociétés en une seule passe, triés puis paginés en base
+     * tri : nom de colonne du résultat (raison_sociale, total_recettes, ...), croissant : sens du tri
+     * Retourne : [societe_id, raison_sociale, total_recettes, total_depenses, resultat_net, taux_marge,
+     *             total_impayes, nombre_impayes, ca_prestation, ca_vente_matiere, ca_total]
+     */
+    @Query(value = "WITH totaux AS (" +
+           "  SELECT r.societe_id, " +
+           "         SUM(CASE WHEN r.type = 'RECETTE' THEN r.montant_total ELSE 0 END) AS total_recettes, " +
+           "         SUM(CASE WHEN r.type = 'DEPENSE' THEN r.montant_total ELSE 0 END) AS total_depenses, " +
+           "         SUM(CASE WHEN r.type = 'RECETTE' AND r.type_recette = 'PRESTATION' " +
+           "             THEN r.montant_total ELSE 0 END) AS ca_prestation, " +
+           "         SUM(CASE WHEN r.type = 'RECETTE' AND r.type_recette = 'VENTE_MATIERE' " +
+           "             THEN r.montant_total ELSE 0 END) AS ca_vente_matiere " +
+           "  FROM transaction_daily_rollup r " +
+           "  WHERE r.jour BETWEEN :dateDebut AND :dateFin " +
+           "  GROUP BY r.societe_id), " +
+           "impayes AS (" +
+           "  SELECT t.societe_id, COUNT(*) AS nombre_impayes, SUM(t.montant_restant) AS total_impayes " +
+           "  FROM transaction t " +
+           "  WHERE t.montant_restant > 0 AND t.statut <> 'ANNULEE' " +
+           "  GROUP BY t.societe_id), " +
+           "comparatif AS (" +
+           "  SELECT s.id AS societe_id, s.raison_sociale, " +
+           "         COALESCE(tx.total_recettes, 0) AS total_recettes, " +
+           "         COALESCE(tx.total_depenses, 0) AS total_depenses, " +
+           "         COALESCE(tx.total_recettes, 0) - COALESCE(tx.total_depenses, 0) AS resultat_net, " +
+           "         CASE WHEN tx.total_recettes > 0 " +
+           "              THEN ROUND((tx.total_recettes - tx.total_depenses) * 100 / tx.total_recettes, 2) " +
+           "         END AS taux_marge, " +
+           "         COALESCE(i.total_impayes, 0) AS total_impayes, " +
+           "         COALESCE(i.nombre_impayes, 0) AS nombre_impayes, " +
+           "         COALESCE(tx.ca_prestation, 0) AS ca_prestation, " +
+           "         COALESCE(tx.ca_vente_matiere, 0) AS ca_vente_matiere, " +
+           "         COALESCE(tx.ca_prestation, 0) + COALESCE(tx.ca_vente_matiere, 0) AS ca_total " +
+           "  FROM societe s " +
+           "  LEFT JOIN totaux tx ON tx.societe_id = s.id " +
+           "  LEFT JOIN impayes i ON i.societe_id = s.id), " +
+           "triees AS (" +
+           "  SELECT c.*, " +
+           "         CASE :tri " +
+           "           WHEN 'total_recettes' THEN c.total_recettes " +
+           "           WHEN 'total_depenses' THEN c.total_depenses " +
+           "           WHEN 'resultat_net' THEN c.resultat_net " +
+           "           WHEN 'taux_marge' THEN c.taux_marge " +
+           "           WHEN 'total_impayes' THEN c.total_impayes " +
+           "           WHEN 'nombre_impayes' THEN c.nombre_impayes " +
+           "           WHEN 'ca_prestation' THEN c.ca_prestation " +
+           "           WHEN 'ca_vente_matiere' THEN c.ca_vente_matiere " +
+           "           WHEN 'ca_total' THEN c.ca_total " +
+           "         END AS valeur_tri " +
+           "  FROM comparatif c) " +
+           "SELECT societe_id, raison_sociale, total_recettes, total_depenses, resultat_net, taux_marge, " +
+           "       total_impayes, nombre_impayes, ca_prestation, ca_vente_matiere, ca_total " +
+           "FROM triees " +
+           "ORDER BY CASE WHEN :croissant THEN valeur_tri END ASC NULLS LAST, " +
+           "         CASE WHEN NOT :croissant THEN valeur_tri END DESC NULLS LAST, " +
+           "         CASE WHEN :tri = 'raison_sociale' AND NOT :croissant THEN raison_sociale END DESC, " +
+           "         raison_sociale, societe_id " +
+           "LIMIT :limite OFFSET :decalage",
+           nativeQuery = true)
+    List<Object[]> findComparatifSocietes(
+            @Param("dateDebut") LocalDate dateDebut,
+            @Param("dateFin") LocalDate dateFin,
+            @Param("tri") String tri,
+            @Param("croissant") boolean croissant,
+            @Param("limite") int limite,
+            @Param("decalage") long decalage);
+
+    // ========== CONTRÔLE DE DÉRIVE ==========
+
+    /**
+     * Compare l'agrégat au recalcul depuis la table transaction
+     * Retourne : [societe_id, jour, type, type_recette, categorie,
+     *             montant attendu, montant agrégé, nombre attendu, nombre agrégé]
+     */
+    @Query(value = "WITH attendu AS (" +
+           "  SELECT societe_id, date_transaction AS jour, type, " +
+           "         COALESCE(type_recette, '') AS type_recette, COALESCE(categorie, '') AS categorie, " +
+           "         SUM(montant) AS montant_total, COUNT(*) AS nb_transactions " +
+           "  FROM transaction " +
+           "  GROUP BY 1, 2, 3, 4, 5) " +
+           "SELECT societe_id, jour, type, type_recette, categorie, " +
+           "       a.montant_total, r.montant_total, a.nb_transactions, r.nb_transactions " +
+           "FROM attendu a " +
+           "FULL OUTER JOIN transaction_daily_rollup r USING (societe_id, jour, type, type_recette, categorie) " +
+           "WHERE a.montant_total IS DISTINCT FROM r.montant_total " +
+           "   OR a.nb_transactions IS DISTINCT FROM r.nb_transactions " +
+           "ORDER BY jour, societe_id",
+           nativeQuery = true)
+    List<Object[]> findEcarts();
+
+    /**
+     * Reconstruit entièrement l'agrégat depuis la table transaction
+     * Retourne le nombre de lignes d'agrégat créées (à appeler dans une transaction en écriture)
+     */
+    @Query(value = "SELECT reconstruire_transaction_daily_rollup()", nativeQuery = true)
+    Integer reconstruire();
+}
@@ -1,15 +1,21 @@
 package ma.iorecycling.repository;
 
+import ma.iorecycling.dto.CreanceDTO;
+import ma.iorecycling.dto.NombreMontantDTO;
+import ma.iorecycling.dto.TransactionOuverteDTO;
 import ma.iorecycling.entity.Transaction;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 
 /**
@@ -43,6 +49,97 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
      */
     Page<Transaction> findByEnlevementIdAndType(Long enlevementId, Transaction.TypeTransaction type, Pageable pageable);
     
+    /**
+     * Transactions après un curseur (date, id), du plus récent au plus ancien (voir migration V28)
+     */
+    @Query("SELECT t FROM Transaction t " +
+           "WHERE (:type IS NULL OR t.type = :type) " +
+           "AND (t.dateTransaction, t.id) < (:date, :id) " +
+           "ORDER BY t.dateTransaction DESC, t.id DESC")
+    List<Transaction> findApres(
+            @Param("type") Transaction.TypeTransaction type,
+            @Param("date") LocalDate date, @Param("id") Long id, Limit limit);
+    
+    /**
+     * Transactions d'une société après un curseur (date, id)
+     */
+    @Query("SELECT t FROM Transaction t WHERE t.societe.id = :societeId " +
+           "AND (:type IS NULL OR t.type = :type) " +
+           "AND (t.dateTransaction, t.id) < (:date, :id) " +
+           "ORDER BY t.dateTransaction DESC, t.id DESC")
+    List<Transaction> findBySocieteIdApres(
+            @Param("societeId") Long societeId,
+            @Param("type") Transaction.TypeTransaction type,
+            @Param("date") LocalDate date, @Param("id") Long id, Limit limit);
+    
+    /**
+     * Transactions d'un enlèvement après un curseur (date, id)
+     */
+    @Query("SELECT t FROM Transaction t WHERE t.enlevement.id = :enlevementId " +
+           "AND (:type IS NULL OR t.type = :type) " +
+           "AND (t.dateTransaction, t.id) < (:date, :id) " +
+           "ORDER BY t.dateTransaction DESC, t.id DESC")
+    List<Transaction> findByEnlevementIdApres(
+            @Param("enlevementId") Long enlevementId,
+            @Param("type") Transaction.TypeTransaction type,
+            @Param("date") LocalDate date, @Param("id") Long id, Limit limit);
+    
+    /**
+     * Nombres de transactions par filtre de la liste (une requête par combinaison de filtres,
+     * chacune avec son propre plan et son index)
+     */
+    long countByType(Transaction.TypeTransaction type);
+    
+    long countBySocieteId(Long societeId);
+    
+    long countBySocieteIdAndType(Long societeId, Transaction.TypeTransaction type);
+    
+    long countByEnlevementId(Long enlevementId);
+    
+    long countByEnlevementIdAndType(Long enlevementId, Transaction.TypeTransaction type);
+    
+    /**
+     * Pages d'identifiants de transactions, une requête par combinaison de filtres de la liste
+     * (1re phase du chargement d'une page, voir TransactionDtoAssembler)
+     */
+    @Query(value = "SELECT t.id FROM Transaction t",
+           countQuery = "SELECT COUNT(t) FROM Transaction t")
+    Page<Long> findPageIds(Pageable pageable);
+    
+    @Query(value = "SELECT t.id FROM Transaction t WHERE t.type = :type",
+           countQuery = "SELECT COUNT(t) FROM Transaction t WHERE t.type = :type")
+    Page<Long> findPageIdsByType(@Param("type") Transaction.TypeTransaction type, Pageable pageable);
+    
+    @Query(value = "SELECT t.id FROM Transaction t WHERE t.societe.id = :societeId",
+           countQuery = "SELECT COUNT(t) FROM Transaction t WHERE t.societe.id = :societeId")
+    Page<Long> findPageIdsBySocieteId(@Param("societeId") Long societeId, Pageable pageable);
+    
+    @Query(value = "SELECT t.id FROM Transaction t WHERE t.societe.id = :societeId AND t.type = :type",
+           countQuery = "SELECT COUNT(t) FROM Transaction t WHERE t.societe.id = :societeId AND t.type = :type")
+    Page<Long> findPageIdsBySocieteIdAndType(@Param("societeId") Long societeId,
+                                             @Param("type") Transaction.TypeTransaction type, Pageable pageable);
+    
+    @Query(value = "SELECT t.id FROM Transaction t WHERE t.enlevement.id = :enlevementId",
+           countQuery = "SELECT COUNT(t) FROM Transaction t WHERE t.enlevement.id = :enlevementId")
+    Page<Long> findPageIdsByEnlevementId(@Param("enlevementId") Long enlevementId, Pageable pageable);
+    
+    @Query(value = "SELECT t.id FROM Transaction t WHERE t.enlevement.id = :enlevementId AND t.type = :type",
+           countQuery = "SELECT COUNT(t) FROM Transaction t WHERE t.enlevement.id = :enlevementId AND t.type = :type")
+    Page<Long> findPageIdsByEnlevementIdAndType(@Param("enlevementId") Long enlevementId,
+                                                @Param("type") Transaction.TypeTransaction type, Pageable pageable);
+    
+    /**
+     * Charge des transactions avec les en-têtes affichés dans la liste (2e phase) :
+     * société, enlèvement, ligne de vente et vente en une requête
+     */
+    @Query("SELECT t FROM Transaction t " +
+           "JOIN FETCH t.societe " +
+           "LEFT JOIN FETCH t.enlevement " +
+           "LEFT JOIN FETCH t.venteItem vi " +
+           "LEFT JOIN FETCH vi.vente " +
+           "WHERE t.id IN :ids")
+    List<Transaction> findAllWithEnTetesByIdIn(@Param("ids") Collection<Long> ids);
+    
     /**
      * Trouve les transactions d'une société entre deux dates
      */
@@ -94,15 +191,71 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
      * Trouve les transactions impayées (montant restant > 0)
      */
     @Query("SELECT t FROM Transaction t WHERE t.societe.id = :societeId " +
-           "AND t.statut != 'ANNULEE' " +
-           "AND (SELECT COALESCE(SUM(p.montant), 0) FROM Paiement p WHERE p.transaction.id = t.id) < t.montant")
+           "AND t.montantRestant > 0 " +
+           "AND t.statut <> 'ANNULEE'")
     List<Transaction> findTransactionsImpayees(@Param("societeId") Long societeId);
     
+    /**
+     * Recettes impayées d'une société datées entre deux dates optionnelles (détail d'une tranche de la balance âgée)
+     */
+    @Query(value = "SELECT new ma.iorecycling.dto.CreanceDTO(t.id, t.dateTransaction, t.description, " +
+           "t.numeroReference, t.montant, t.montantPaye, t.montantRestant) " +
+           "FROM Transaction t WHERE t.societe.id = :societeId " +
+           "AND t.type = 'RECETTE' " +
+           "AND t.montantRestant > 0 " +
+           "AND t.statut <> 'ANNULEE' " +
+           "AND (:dateMin IS NULL OR t.dateTransaction >= :dateMin) " +
+           "AND (:dateMax IS NULL OR t.dateTransaction <= :dateMax)",
+           countQuery = "SELECT COUNT(t) FROM Transaction t WHERE t.societe.id = :societeId " +
+           "AND t.type = 'RECETTE' " +
+           "AND t.montantRestant > 0 " +
+           "AND t.statut <> 'ANNULEE' " +
+           "AND (:dateMin IS NULL OR t.dateTransaction >= :dateMin) " +
+           "AND (:dateMax IS NULL OR t.dateTransaction <= :dateMax)")
+    Page<CreanceDTO> findCreances(
+            @Param("societeId") Long societeId,
+            @Param("dateMin") LocalDate dateMin,
+            @Param("dateMax") LocalDate dateMax,
+            Pageable pageable);
+    
+    /**
+     * Transactions ouvertes (montant restant positif, non annulées) d'une société, ou de toutes si societeId est null,
+     * avec les numéros d'enlèvement et de vente cités en référence sur les relevés bancaires
+     */
+    @Query("SELECT new ma.iorecycling.dto.TransactionOuverteDTO(t.id, t.type, s.id, s.raisonSociale, " +
+           "t.dateTransaction, t.description, t.numeroReference, e.numeroEnlevement, v.numeroVente, t.montantRestant) " +
+           "FROM Transaction t JOIN t.societe s " +
+           "LEFT JOIN t.enlevement e " +
+           "LEFT JOIN t.venteItem vi LEFT JOIN vi.vente v " +
+           "WHERE t.montantRestant > 0 " +
+           "AND t.statut <> 'ANNULEE' " +
+           "AND (:societeId IS NULL OR s.id = :societeId)")
+    List<TransactionOuverteDTO> findTransactionsOuvertes(@Param("societeId") Long societeId);
+    
+    /**
+     * Nombre et montant restant des transactions impayées d'une société
+     */
+    @Query("SELECT new ma.iorecycling.dto.NombreMontantDTO(COUNT(t), COALESCE(SUM(t.montantRestant), 0)) " +
+           "FROM Transaction t WHERE t.societe.id = :societeId " +
+           "AND t.montantRestant > 0 " +
+           "AND t.statut <> 'ANNULEE'")
+    NombreMontantDTO countAndSumImpayes(@Param("societeId") Long societeId);
+    
     /**
      * Trouve toutes les transactions d'un enlèvement
      */
     List<Transaction> findByEnlevementId(Long enlevementId);
     
+    /**
+     * Trouve les transactions d'un lot d'enlèvements
+     */
+    List<Transaction> findByEnlevementIdIn(Collection<Long> enlevementIds);
+    
+    /**
+     * Vérifie si des paiements ont été saisis sur les transactions d'items
+     */
+    boolean existsByPickupItemIdInAndMontantPayeGreaterThan(Collection<Long> pickupItemIds, BigDecimal montant);
+    
     /**
      * Calcule le CA Prestation d'une société sur une période
      */
@@ -176,10 +329,18 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
     /**
      * Trouve les transactions impayées de toutes les sociétés
      */
-    @Query("SELECT t FROM Transaction t WHERE t.statut != 'ANNULEE' " +
-           "AND (SELECT COALESCE(SUM(p.montant), 0) FROM Paiement p WHERE p.transaction.id = t.id) < t.montant")
+    @Query("SELECT t FROM Transaction t WHERE t.montantRestant > 0 " +
+           "AND t.statut <> 'ANNULEE'")
     List<Transaction> findTransactionsImpayeesAll();
     
+    /**
+     * Nombre et montant restant des transactions impayées de toutes les sociétés
+     */
+    @Query("SELECT new ma.iorecycling.dto.NombreMontantDTO(COUNT(t), COALESCE(SUM(t.montantRestant), 0)) " +
+           "FROM Transaction t WHERE t.montantRestant > 0 " +
+           "AND t.statut <> 'ANNULEE'")
+    NombreMontantDTO countAndSumImpayesAll();
+    
     /**
      * Trouve les transactions de toutes les sociétés entre deux dates
      */
@@ -189,5 +350,55 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
     List<Transaction> findByDateBetween(
             @Param("dateDebut") LocalDate dateDebut,
             @Param("dateFin") LocalDate dateFin);
+    
+    // ========== MONTANT PAYÉ DÉNORMALISÉ ==========
+    
+    /**
+     * Ajoute un paiement au montant payé si le montant restant le permet
+     * Retourne 0 si la transaction n'existe pas ou si le paiement dépasse le montant restant
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Transaction t SET t.montantPaye = t.montantPaye + :montant " +
+           "WHERE t.id = :transactionId " +
+           "AND t.montant - t.montantPaye >= :montant")
+    int ajouterMontantPaye(
+            @Param("transactionId") Long transactionId,
+            @Param("montant") BigDecimal montant);
+    
+    /**
+     * Retire un paiement supprimé du montant payé
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Transaction t SET t.montantPaye = t.montantPaye - :montant " +
+           "WHERE t.id = :transactionId")
+    int retirerMontantPaye(
+            @Param("transactionId") Long transactionId,
+            @Param("montant") BigDecimal montant);
+    
+    /**
+     * Liste les transactions dont le montant payé diffère de la somme des paiements valides
+     * Retourne : [transaction_id, montant payé enregistré, montant payé recalculé]
+     */
+    @Query(value = "SELECT t.id, t.montant_paye, COALESCE(p.total, 0) " +
+           "FROM transaction t " +
+           "LEFT JOIN (SELECT transaction_id, SUM(montant) AS total FROM paiement " +
+           "           WHERE statut = 'VALIDE' GROUP BY transaction_id) p ON p.transaction_id = t.id " +
+           "WHERE t.montant_paye <> COALESCE(p.total, 0) " +
+           "ORDER BY t.id",
+           nativeQuery = true)
+    List<Object[]> findEcartsMontantPaye();
+    
+    /**
+     * Recalcule le montant payé des transactions incohérentes depuis les paiements valides
+     * Retourne le nombre de transactions corrigées
+     */
+    @Modifying(clearAutomatically = true)
+    @Query(value = "UPDATE transaction t SET montant_paye = COALESCE(p.total, 0) " +
+           "FROM transaction t2 " +
+           "LEFT JOIN (SELECT transaction_id, SUM(montant) AS total FROM paiement " +
+           "           WHERE statut = 'VALIDE' GROUP BY transaction_id) p ON p.transaction_id = t2.id " +
+           "WHERE t2.id = t.id " +
+           "AND t.montant_paye <> COALESCE(p.total, 0)",
+           nativeQuery = true)
+    int corrigerMontantsPayes();
 }
-
@@ -0,0 +1,84 @@
+package ma.iorecycling.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ma.iorecycling.dto.BalanceAgeeDTO;
+import ma.iorecycling.dto.CreanceDTO;
+import ma.iorecycling.dto.LigneBalanceAgeeDTO;
+import ma.iorecycling.entity.CreanceAnciennete;
+import ma.iorecycling.repository.CreanceAncienneteRepository;
+import ma.iorecycling.repository.TransactionRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+/**
+ * Service de la balance âgée des créances clients (recettes impayées par tranche d'ancienneté)
+ * La balance est lue dans creance_anciennete, tenue à jour par trigger à chaque écriture sur les transactions
+ * et leurs montants payés (voir migration V33) : aucun parcours des factures ni de leurs paiements
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional(readOnly = true)
+public class BalanceAgeeService {
+
+    private final CreanceAncienneteRepository creanceAncienneteRepository;
+    private final TransactionRepository transactionRepository;
+
+    /**
+     * Balance âgée d'une société, ou de toutes si societeId est null, avec la ligne de total
+     */
+    public BalanceAgeeDTO getBalanceAgee(Long societeId) {
+        List<LigneBalanceAgeeDTO> lignes = creanceAncienneteRepository.findBalanceAgee(societeId);
+
+        LigneBalanceAgeeDTO total = new LigneBalanceAgeeDTO(null, null, 0L,
+                BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO);
+        for (LigneBalanceAgeeDTO ligne : lignes) {
+            total.setNombreCreances(total.getNombreCreances() + ligne.getNombreCreances());
+            total.setMontant0a30Jours(total.getMontant0a30Jours().add(ligne.getMontant0a30Jours()));
+            total.setMontant31a60Jours(total.getMontant31a60Jours().add(ligne.getMontant31a60Jours()));
+            total.setMontant61a90Jours(total.getMontant61a90Jours().add(ligne.getMontant61a90Jours()));
+            total.setMontantPlus90Jours(total.getMontantPlus90Jours().add(ligne.getMontantPlus90Jours()));
+        }
+
+        return BalanceAgeeDTO.builder()
+                .dateReference(creanceAncienneteRepository.findDateReference())
+                .societes(lignes)
+                .total(total)
+                .build();
+    }
+
+    /**
+     * Détail des créances d'une société dans une tranche, comptée à la même date de référence que la balance
+     */
+    public Page<CreanceDTO> getCreances(Long societeId, CreanceAnciennete.Tranche tranche, Pageable pageable) {
+        LocalDate reference = creanceAncienneteRepository.findDateReference();
+        Page<CreanceDTO> creances = transactionRepository.findCreances(
+                societeId, tranche.dateMin(reference), tranche.dateMax(reference), pageable);
+        creances.forEach(c -> c.setJoursAnciennete(ChronoUnit.DAYS.between(c.getDateTransaction(), reference)));
+        return creances;
+    }
+
+    /**
+     * Avance la date de référence à aujourd'hui, juste après minuit
+     * Seules les créances qui franchissent une borne de tranche sont relues ; un jour manqué est rattrapé
+     */
+    @Scheduled(cron = "${comptabilite.balance-agee.avancement-cron:0 5 0 * * *}")
+    @Transactional
+    public int avancerDateReference() {
+        LocalDate aujourdhui = LocalDate.now();
+        log.info("Avancement de la balance âgée au {}", aujourdhui);
+
+        Integer nbLignes = creanceAncienneteRepository.avancer(aujourdhui);
+        log.info("Balance âgée avancée : {} lignes modifiées", nbLignes);
+        return nbLignes != null ? nbLignes : 0;
+    }
+}
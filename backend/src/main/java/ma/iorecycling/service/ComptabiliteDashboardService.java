@@ -2,25 +2,35 @@ package ma.iorecycling.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import ma.iorecycling.config.DashboardProperties;
+import ma.iorecycling.dto.ComparatifSocieteDTO;
 import ma.iorecycling.dto.ComptabiliteDashboardDTO;
 import ma.iorecycling.dto.ComptabiliteDashboardDTO.EvolutionMensuelleDTO;
+import ma.iorecycling.dto.NombreMontantDTO;
 import ma.iorecycling.entity.Transaction;
 import ma.iorecycling.repository.EcheanceRepository;
 import ma.iorecycling.repository.PaiementRepository;
+import ma.iorecycling.repository.SocieteRepository;
+import ma.iorecycling.repository.TransactionDailyRollupRepository;
 import ma.iorecycling.repository.TransactionRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
-import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Service pour calculer les KPIs du dashboard de comptabilité
+ * Les montants sont lus dans l'agrégat journalier transaction_daily_rollup
+ * Les requêtes KPI sont indépendantes et exécutées par DashboardKpiExecutor (en parallèle par défaut)
+ * Les dashboards complets sont mis en cache jusqu'à la prochaine modification des données de la société
  */
 @Service
 @RequiredArgsConstructor
@@ -28,130 +38,226 @@ import java.util.stream.Collectors;
 @Transactional(readOnly = true)
 public class ComptabiliteDashboardService {
     
+    /**
+     * Critères de tri du comparatif : propriété du DTO -> colonne de la requête
+     */
+    private static final Map<String, String> TRIS_COMPARATIF = Map.ofEntries(
+            Map.entry("raisonSociale", "raison_sociale"),
+            Map.entry("totalRecettes", "total_recettes"),
+            Map.entry("totalDepenses", "total_depenses"),
+            Map.entry("resultatNet", "resultat_net"),
+            Map.entry("tauxMarge", "taux_marge"),
+            Map.entry("totalImpayes", "total_impayes"),
+            Map.entry("nombreTransactionsImpayees", "nombre_impayes"),
+            Map.entry("caPrestation", "ca_prestation"),
+            Map.entry("caVenteMatiere", "ca_vente_matiere"),
+            Map.entry("caTotal", "ca_total"));
+    
     private final TransactionRepository transactionRepository;
+    private final TransactionDailyRollupRepository rollupRepository;
     private final PaiementRepository paiementRepository;
     private final EcheanceRepository echeanceRepository;
-    
-    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
-    private static final DateTimeFormatter MONTH_LIBELLE_FORMATTER = DateTimeFormatter.ofPattern("MMMM yyyy", Locale.FRENCH);
+    private final SocieteRepository societeRepository;
+    private final EvolutionPeriodeCalculator evolutionCalculator;
+    private final TresorerieService tresorerieService;
+    private final DashboardKpiExecutor kpiExecutor;
+    private final DashboardCacheService dashboardCache;
+    private final DashboardProperties dashboardProperties;
     
     /**
      * Calcule tous les KPIs pour une société sur une période
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public ComptabiliteDashboardDTO calculateDashboard(Long societeId, LocalDate dateDebut, LocalDate dateFin, String periode) {
         log.info("Calcul du dashboard comptabilité pour société {} du {} au {}", societeId, dateDebut, dateFin);
+        return dashboardCache.obtenir(DashboardCacheService.CACHE_COMPTABILITE,
+                new DashboardCacheService.DashboardCacheKey(societeId, dateDebut, dateFin, periode),
+                () -> assemblerDashboard(societeId, dateDebut, dateFin, periode),
+                dashboard -> dashboard.getKpisIndisponibles().isEmpty());
+    }
+    
+    /**
+     * Calcule tous les KPIs pour toutes les sociétés sur une période
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public ComptabiliteDashboardDTO calculateDashboardAll(LocalDate dateDebut, LocalDate dateFin, String periode) {
+        log.info("Calcul du dashboard comptabilité pour toutes les sociétés du {} au {}", dateDebut, dateFin);
+        return dashboardCache.obtenir(DashboardCacheService.CACHE_COMPTABILITE,
+                new DashboardCacheService.DashboardCacheKey(null, dateDebut, dateFin, periode),
+                () -> assemblerDashboard(null, dateDebut, dateFin, periode),
+                dashboard -> dashboard.getKpisIndisponibles().isEmpty());
+    }
+    
+    /**
+     * Compare les indicateurs de toutes les sociétés sur une période
+     * Une requête groupée pour la page demandée (triée et paginée en base) et un comptage des sociétés
+     * Seul le premier critère de tri est pris en compte, par défaut le total des recettes décroissant
+     */
+    public Page<ComparatifSocieteDTO> calculateComparatifSocietes(LocalDate dateDebut, LocalDate dateFin, Pageable pageable) {
+        log.info("Calcul du comparatif des sociétés du {} au {} - {}", dateDebut, dateFin, pageable);
+        
+        Sort.Order ordre = pageable.getSort().stream().findFirst()
+                .orElse(Sort.Order.desc("totalRecettes"));
+        String tri = TRIS_COMPARATIF.get(ordre.getProperty());
+        if (tri == null) {
+            throw new IllegalArgumentException("Critère de tri non supporté : " + ordre.getProperty());
+        }
         
-        // Totaux recettes et dépenses
-        BigDecimal totalRecettes = transactionRepository.sumRecettesBySocieteAndPeriod(
-                societeId, dateDebut, dateFin);
-        BigDecimal totalDepenses = transactionRepository.sumDepensesBySocieteAndPeriod(
-                societeId, dateDebut, dateFin);
+        List<ComparatifSocieteDTO> lignes = rollupRepository.findComparatifSocietes(
+                        dateDebut, dateFin, tri, ordre.isAscending(), pageable.getPageSize(), pageable.getOffset())
+                .stream()
+                .map(this::toComparatifSocieteDTO)
+                .toList();
+        return new PageImpl<>(lignes, pageable, societeRepository.count());
+    }
+    
+    /**
+     * Lance les requêtes KPI d'une société (ou de toutes si societeId est null) puis assemble le dashboard
+     * Pas de transaction englobante : chaque requête utilise sa propre connexion en lecture seule
+     */
+    private ComptabiliteDashboardDTO assemblerDashboard(Long societeId, LocalDate dateDebut, LocalDate dateFin, String periode) {
+        LocalDate aujourdhui = LocalDate.now();
+        LocalDate dateFinAVenir = aujourdhui.plusDays(30);
+        LocalDate periodePrecedenteDebut = dateDebut.minusMonths(periode.equals("mensuel") ? 1 : 
+                                                                  periode.equals("trimestriel") ? 3 : 12);
+        LocalDate periodePrecedenteFin = dateDebut.minusDays(1);
+        NombreMontantDTO aucun = new NombreMontantDTO(0L, BigDecimal.ZERO);
+        TotauxPeriode totauxVides = TotauxPeriode.depuis(List.of());
         
-        // Résultat net
-        BigDecimal resultatNet = totalRecettes.subtract(totalDepenses);
+        DashboardKpiExecutor.Collecte collecte = kpiExecutor.nouvelleCollecte();
+        
+        // Totaux recettes, dépenses et CA par type de recette
+        DashboardKpiExecutor.Kpi<TotauxPeriode> totauxKpi = collecte.soumettre("totaux",
+                () -> TotauxPeriode.depuis(societeId != null
+                        ? rollupRepository.sumParTypeBySocieteAndPeriod(societeId, dateDebut, dateFin)
+                        : rollupRepository.sumParTypeByPeriod(dateDebut, dateFin)),
+                totauxVides);
+        
+        // Totaux de la période précédente (calcul des évolutions)
+        DashboardKpiExecutor.Kpi<TotauxPeriode> totauxPrecedentsKpi = collecte.soumettre("totauxPeriodePrecedente",
+                () -> TotauxPeriode.depuis(societeId != null
+                        ? rollupRepository.sumParTypeBySocieteAndPeriod(societeId, periodePrecedenteDebut, periodePrecedenteFin)
+                        : rollupRepository.sumParTypeByPeriod(periodePrecedenteDebut, periodePrecedenteFin)),
+                totauxVides);
         
         // Paiements reçus
-        BigDecimal totalPaiementsRecus = paiementRepository.sumPaiementsBySocieteAndPeriod(
-                societeId, dateDebut, dateFin);
+        DashboardKpiExecutor.Kpi<BigDecimal> paiementsKpi = collecte.soumettre("paiementsRecus",
+                () -> societeId != null
+                        ? paiementRepository.sumPaiementsBySocieteAndPeriod(societeId, dateDebut, dateFin)
+                        : paiementRepository.sumPaiementsByPeriod(dateDebut, dateFin),
+                BigDecimal.ZERO);
         
         // Transactions impayées
-        List<Transaction> transactionsImpayees = transactionRepository.findTransactionsImpayees(societeId);
-        BigDecimal totalImpayes = transactionsImpayees.stream()
-                .map(Transaction::getMontantRestant)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        DashboardKpiExecutor.Kpi<NombreMontantDTO> impayesKpi = collecte.soumettre("impayes",
+                () -> societeId != null
+                        ? transactionRepository.countAndSumImpayes(societeId)
+                        : transactionRepository.countAndSumImpayesAll(),
+                aucun);
         
         // Échéances en retard
-        LocalDate aujourdhui = LocalDate.now();
-        List<ma.iorecycling.entity.Echeance> echeancesEnRetard = echeanceRepository.findEcheancesEnRetard(societeId, aujourdhui);
-        BigDecimal montantEcheancesEnRetard = echeancesEnRetard.stream()
-                .map(ma.iorecycling.entity.Echeance::getMontant)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        DashboardKpiExecutor.Kpi<NombreMontantDTO> echeancesEnRetardKpi = collecte.soumettre("echeancesEnRetard",
+                () -> societeId != null
+                        ? echeanceRepository.countAndSumEcheancesEnRetard(societeId, aujourdhui)
+                        : echeanceRepository.countAndSumEcheancesEnRetardAll(aujourdhui),
+                aucun);
         
         // Échéances à venir (30 prochains jours)
-        LocalDate dateFinAVenir = aujourdhui.plusDays(30);
-        List<ma.iorecycling.entity.Echeance> echeancesAVenir = echeanceRepository.findEcheancesAVenir(
-                societeId, aujourdhui, dateFinAVenir);
-        BigDecimal montantEcheancesAVenir = echeancesAVenir.stream()
-                .map(ma.iorecycling.entity.Echeance::getMontant)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        DashboardKpiExecutor.Kpi<NombreMontantDTO> echeancesAVenirKpi = collecte.soumettre("echeancesAVenir",
+                () -> societeId != null
+                        ? echeanceRepository.countAndSumEcheancesAVenir(societeId, aujourdhui, dateFinAVenir)
+                        : echeanceRepository.countAndSumEcheancesAVenirAll(aujourdhui, dateFinAVenir),
+                aucun);
         
         // Répartition des dépenses par catégorie
-        Map<String, BigDecimal> depensesParCategorie = calculateDepensesParCategorie(societeId, dateDebut, dateFin);
+        DashboardKpiExecutor.Kpi<Map<String, BigDecimal>> categoriesKpi = collecte.soumettre("depensesParCategorie",
+                () -> societeId != null
+                        ? calculateDepensesParCategorie(societeId, dateDebut, dateFin)
+                        : calculateDepensesParCategorieAll(dateDebut, dateFin),
+                Map.of());
         
         // Évolution selon la période sélectionnée
-        List<EvolutionMensuelleDTO> evolutionMensuelle = calculateEvolutionByPeriod(societeId, dateDebut, dateFin, periode);
+        DashboardKpiExecutor.Kpi<List<EvolutionMensuelleDTO>> evolutionKpi = collecte.soumettre("evolutionMensuelle",
+                () -> societeId != null
+                        ? calculateEvolutionByPeriod(societeId, dateDebut, dateFin, periode)
+                        : calculateEvolutionByPeriodAll(dateDebut, dateFin, periode),
+                List.of());
+        
+        // Trésorerie (dernier solde mensuel clôturé + mouvements depuis)
+        DashboardKpiExecutor.Kpi<BigDecimal> tresorerieKpi = collecte.soumettre("tresorerie",
+                () -> societeId != null
+                        ? tresorerieService.getSoldeActuel(societeId)
+                        : tresorerieService.getSoldeActuelAll(),
+                null);
+        
+        List<String> kpisIndisponibles = collecte.attendre();
+        if (!kpisIndisponibles.isEmpty()) {
+            log.warn("Dashboard comptabilité incomplet, KPIs indisponibles : {}", kpisIndisponibles);
+        }
         
-        // Calcul des évolutions (comparaison avec période précédente)
-        LocalDate periodePrecedenteDebut = dateDebut.minusMonths(periode.equals("mensuel") ? 1 : 
-                                                                  periode.equals("trimestriel") ? 3 : 12);
-        LocalDate periodePrecedenteFin = dateDebut.minusDays(1);
+        TotauxPeriode totaux = totauxKpi.get();
+        BigDecimal totalRecettes = totaux.recettes();
+        BigDecimal totalDepenses = totaux.depenses();
+        
+        // Résultat net
+        BigDecimal resultatNet = totalRecettes.subtract(totalDepenses);
         
-        BigDecimal recettesPrecedentes = transactionRepository.sumRecettesBySocieteAndPeriod(
-                societeId, periodePrecedenteDebut, periodePrecedenteFin);
-        BigDecimal depensesPrecedentes = transactionRepository.sumDepensesBySocieteAndPeriod(
-                societeId, periodePrecedenteDebut, periodePrecedenteFin);
+        // Calcul des évolutions (comparaison avec période précédente)
+        TotauxPeriode totauxPrecedents = totauxPrecedentsKpi.get();
+        BigDecimal recettesPrecedentes = totauxPrecedents.recettes();
+        BigDecimal depensesPrecedentes = totauxPrecedents.depenses();
         BigDecimal resultatPrecedent = recettesPrecedentes.subtract(depensesPrecedentes);
         
         Double evolutionRecettesPct = calculateEvolutionPct(totalRecettes, recettesPrecedentes);
         Double evolutionDepensesPct = calculateEvolutionPct(totalDepenses, depensesPrecedentes);
         Double evolutionResultatPct = calculateEvolutionPct(resultatNet, resultatPrecedent);
         
-        // Trésorerie (approximation : total recettes - total dépenses depuis le début)
-        BigDecimal tresorerie = calculateTresorerie(societeId);
-        
         // Calcul CA Prestation et CA Vente Matière
-        BigDecimal caPrestation = transactionRepository.sumCAPrestationBySocieteAndPeriod(
-                societeId, dateDebut, dateFin);
-        BigDecimal caVenteMatiere = transactionRepository.sumCAVenteMatiereBySocieteAndPeriod(
-                societeId, dateDebut, dateFin);
+        BigDecimal caPrestation = totaux.caPrestation();
+        BigDecimal caVenteMatiere = totaux.caVenteMatiere();
         BigDecimal caTotal = caPrestation.add(caVenteMatiere);
         
+        NombreMontantDTO impayes = impayesKpi.get();
+        NombreMontantDTO echeancesEnRetard = echeancesEnRetardKpi.get();
+        NombreMontantDTO echeancesAVenir = echeancesAVenirKpi.get();
+        
         return ComptabiliteDashboardDTO.builder()
                 .totalRecettes(totalRecettes)
                 .totalDepenses(totalDepenses)
                 .resultatNet(resultatNet)
-                .tresorerie(tresorerie)
+                .tresorerie(tresorerieKpi.get())
                 .evolutionRecettesPct(evolutionRecettesPct)
                 .evolutionDepensesPct(evolutionDepensesPct)
                 .evolutionResultatPct(evolutionResultatPct)
-                .totalPaiementsRecus(totalPaiementsRecus)
-                .totalImpayes(totalImpayes)
-                .nombreTransactionsImpayees((long) transactionsImpayees.size())
-                .nombreEcheancesEnRetard((long) echeancesEnRetard.size())
-                .montantEcheancesEnRetard(montantEcheancesEnRetard)
-                .nombreEcheancesAVenir((long) echeancesAVenir.size())
-                .montantEcheancesAVenir(montantEcheancesAVenir)
-                .depensesParCategorie(depensesParCategorie)
-                .evolutionMensuelle(evolutionMensuelle)
+                .totalPaiementsRecus(paiementsKpi.get())
+                .totalImpayes(impayes.getMontant())
+                .nombreTransactionsImpayees(impayes.getNombre())
+                .nombreEcheancesEnRetard(echeancesEnRetard.getNombre())
+                .montantEcheancesEnRetard(echeancesEnRetard.getMontant())
+                .nombreEcheancesAVenir(echeancesAVenir.getNombre())
+                .montantEcheancesAVenir(echeancesAVenir.getMontant())
+                .depensesParCategorie(categoriesKpi.get())
+                .evolutionMensuelle(evolutionKpi.get())
                 .dateDebut(dateDebut)
                 .dateFin(dateFin)
                 .periode(periode)
                 .caPrestation(caPrestation)
                 .caVenteMatiere(caVenteMatiere)
                 .caTotal(caTotal)
+                .kpisIndisponibles(kpisIndisponibles)
                 .build();
     }
     
     /**
-     * Calcule la répartition des dépenses par catégorie
+     * Calcule la répartition des dépenses par catégorie (catégories principales + "Autre")
      */
     private Map<String, BigDecimal> calculateDepensesParCategorie(Long societeId, LocalDate dateDebut, LocalDate dateFin) {
-        List<Transaction> depenses = transactionRepository.findBySocieteIdAndDateBetween(
-                societeId, dateDebut, dateFin).stream()
-                .filter(t -> t.getType() == Transaction.TypeTransaction.DEPENSE)
-                .collect(Collectors.toList());
-        
-        Map<String, BigDecimal> result = new HashMap<>();
-        for (Transaction transaction : depenses) {
-            String categorie = transaction.getCategorie() != null ? transaction.getCategorie() : "Autre";
-            result.merge(categorie, transaction.getMontant(), BigDecimal::add);
-        }
-        
-        return result;
+        return toRepartitionParCategorie(rollupRepository.sumDepensesParCategorieBySocieteAndPeriod(
+                societeId, dateDebut, dateFin, dashboardProperties.getNbCategories()));
     }
     
     /**
      * Calcule l'évolution selon la période sélectionnée pour une société
+     * Toutes les tranches sont agrégées en une seule requête
      */
     private List<EvolutionMensuelleDTO> calculateEvolutionByPeriod(
             Long societeId, 
@@ -159,111 +265,9 @@ public class ComptabiliteDashboardService {
             LocalDate dateFin, 
             String periode) {
         
-        List<EvolutionMensuelleDTO> result = new ArrayList<>();
-        
-        if ("mensuel".equals(periode)) {
-            // Pour mensuel : afficher par semaine
-            LocalDate current = dateDebut;
-            int weekNumber = 1;
-            
-            while (!current.isAfter(dateFin)) {
-                LocalDate weekStart = current;
-                LocalDate weekEnd = current.plusDays(6);
-                if (weekEnd.isAfter(dateFin)) {
-                    weekEnd = dateFin;
-                }
-                
-                BigDecimal recettes = transactionRepository.sumRecettesBySocieteAndPeriod(
-                        societeId, weekStart, weekEnd);
-                BigDecimal depenses = transactionRepository.sumDepensesBySocieteAndPeriod(
-                        societeId, weekStart, weekEnd);
-                BigDecimal resultat = recettes.subtract(depenses);
-                
-                String label = "Semaine " + weekNumber;
-                result.add(EvolutionMensuelleDTO.builder()
-                        .mois(weekStart.format(MONTH_FORMATTER))
-                        .moisLibelle(label)
-                        .recettes(recettes)
-                        .depenses(depenses)
-                        .resultat(resultat)
-                        .build());
-                
-                current = weekEnd.plusDays(1);
-                weekNumber++;
-            }
-            
-        } else if ("trimestriel".equals(periode)) {
-            // Pour trimestriel : afficher par mois
-            YearMonth startMonth = YearMonth.from(dateDebut);
-            YearMonth endMonth = YearMonth.from(dateFin);
-            
-            YearMonth current = startMonth;
-            while (!current.isAfter(endMonth)) {
-                LocalDate debutMois = current.atDay(1);
-                LocalDate finMois = current.atEndOfMonth();
-                
-                // Ajuster aux dates réelles de la période
-                if (debutMois.isBefore(dateDebut)) {
-                    debutMois = dateDebut;
-                }
-                if (finMois.isAfter(dateFin)) {
-                    finMois = dateFin;
-                }
-                
-                BigDecimal recettes = transactionRepository.sumRecettesBySocieteAndPeriod(
-                        societeId, debutMois, finMois);
-                BigDecimal depenses = transactionRepository.sumDepensesBySocieteAndPeriod(
-                        societeId, debutMois, finMois);
-                BigDecimal resultat = recettes.subtract(depenses);
-                
-                result.add(EvolutionMensuelleDTO.builder()
-                        .mois(current.format(MONTH_FORMATTER))
-                        .moisLibelle(debutMois.format(MONTH_LIBELLE_FORMATTER))
-                        .recettes(recettes)
-                        .depenses(depenses)
-                        .resultat(resultat)
-                        .build());
-                
-                current = current.plusMonths(1);
-            }
-            
-        } else {
-            // Pour annuel : afficher par mois (12 mois de l'année)
-            YearMonth startMonth = YearMonth.from(dateDebut);
-            YearMonth endMonth = YearMonth.from(dateFin);
-            
-            YearMonth current = startMonth;
-            while (!current.isAfter(endMonth)) {
-                LocalDate debutMois = current.atDay(1);
-                LocalDate finMois = current.atEndOfMonth();
-                
-                // Ajuster aux dates réelles de la période
-                if (debutMois.isBefore(dateDebut)) {
-                    debutMois = dateDebut;
-                }
-                if (finMois.isAfter(dateFin)) {
-                    finMois = dateFin;
-                }
-                
-                BigDecimal recettes = transactionRepository.sumRecettesBySocieteAndPeriod(
-                        societeId, debutMois, finMois);
-                BigDecimal depenses = transactionRepository.sumDepensesBySocieteAndPeriod(
-                        societeId, debutMois, finMois);
-                BigDecimal resultat = recettes.subtract(depenses);
-                
-                result.add(EvolutionMensuelleDTO.builder()
-                        .mois(current.format(MONTH_FORMATTER))
-                        .moisLibelle(debutMois.format(MONTH_LIBELLE_FORMATTER))
-                        .recettes(recettes)
-                        .depenses(depenses)
-                        .resultat(resultat)
-                        .build());
-                
-                current = current.plusMonths(1);
-            }
-        }
-        
-        return result;
+        List<Object[]> lignes = rollupRepository.sumMontantsParTrancheBySocieteAndPeriod(
+                societeId, dateDebut, dateFin, evolutionCalculator.granularite(periode).name());
+        return evolutionCalculator.construire(dateDebut, dateFin, periode, lignes);
     }
     
     /**
@@ -280,249 +284,90 @@ public class ComptabiliteDashboardService {
     }
     
     /**
-     * Calcule tous les KPIs pour toutes les sociétés sur une période
-     */
-    public ComptabiliteDashboardDTO calculateDashboardAll(LocalDate dateDebut, LocalDate dateFin, String periode) {
-        log.info("Calcul du dashboard comptabilité pour toutes les sociétés du {} au {}", dateDebut, dateFin);
-        
-        // Totaux recettes et dépenses
-        BigDecimal totalRecettes = transactionRepository.sumRecettesByPeriod(dateDebut, dateFin);
-        BigDecimal totalDepenses = transactionRepository.sumDepensesByPeriod(dateDebut, dateFin);
-        
-        // Résultat net
-        BigDecimal resultatNet = totalRecettes.subtract(totalDepenses);
-        
-        // Paiements reçus
-        BigDecimal totalPaiementsRecus = paiementRepository.sumPaiementsByPeriod(dateDebut, dateFin);
-        
-        // Transactions impayées
-        List<Transaction> transactionsImpayees = transactionRepository.findTransactionsImpayeesAll();
-        BigDecimal totalImpayes = transactionsImpayees.stream()
-                .map(Transaction::getMontantRestant)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
-        // Échéances en retard
-        LocalDate aujourdhui = LocalDate.now();
-        List<ma.iorecycling.entity.Echeance> echeancesEnRetard = echeanceRepository.findEcheancesEnRetardAll(aujourdhui);
-        BigDecimal montantEcheancesEnRetard = echeancesEnRetard.stream()
-                .map(ma.iorecycling.entity.Echeance::getMontant)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
-        // Échéances à venir (30 prochains jours)
-        LocalDate dateFinAVenir = aujourdhui.plusDays(30);
-        List<ma.iorecycling.entity.Echeance> echeancesAVenir = echeanceRepository.findEcheancesAVenirAll(
-                aujourdhui, dateFinAVenir);
-        BigDecimal montantEcheancesAVenir = echeancesAVenir.stream()
-                .map(ma.iorecycling.entity.Echeance::getMontant)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
-        
-        // Répartition des dépenses par catégorie
-        Map<String, BigDecimal> depensesParCategorie = calculateDepensesParCategorieAll(dateDebut, dateFin);
-        
-        // Évolution selon la période sélectionnée
-        List<EvolutionMensuelleDTO> evolutionMensuelle = calculateEvolutionByPeriodAll(dateDebut, dateFin, periode);
-        
-        // Calcul des évolutions (comparaison avec période précédente)
-        LocalDate periodePrecedenteDebut = dateDebut.minusMonths(periode.equals("mensuel") ? 1 : 
-                                                                  periode.equals("trimestriel") ? 3 : 12);
-        LocalDate periodePrecedenteFin = dateDebut.minusDays(1);
-        
-        BigDecimal recettesPrecedentes = transactionRepository.sumRecettesByPeriod(
-                periodePrecedenteDebut, periodePrecedenteFin);
-        BigDecimal depensesPrecedentes = transactionRepository.sumDepensesByPeriod(
-                periodePrecedenteDebut, periodePrecedenteFin);
-        BigDecimal resultatPrecedent = recettesPrecedentes.subtract(depensesPrecedentes);
-        
-        Double evolutionRecettesPct = calculateEvolutionPct(totalRecettes, recettesPrecedentes);
-        Double evolutionDepensesPct = calculateEvolutionPct(totalDepenses, depensesPrecedentes);
-        Double evolutionResultatPct = calculateEvolutionPct(resultatNet, resultatPrecedent);
-        
-        // Trésorerie (approximation : total recettes - total dépenses depuis le début)
-        BigDecimal tresorerie = calculateTresorerieAll();
-        
-        // Calcul CA Prestation et CA Vente Matière
-        BigDecimal caPrestation = transactionRepository.sumCAPrestationByPeriod(dateDebut, dateFin);
-        BigDecimal caVenteMatiere = transactionRepository.sumCAVenteMatiereByPeriod(dateDebut, dateFin);
-        BigDecimal caTotal = caPrestation.add(caVenteMatiere);
-        
-        return ComptabiliteDashboardDTO.builder()
-                .totalRecettes(totalRecettes)
-                .totalDepenses(totalDepenses)
-                .resultatNet(resultatNet)
-                .tresorerie(tresorerie)
-                .evolutionRecettesPct(evolutionRecettesPct)
-                .evolutionDepensesPct(evolutionDepensesPct)
-                .evolutionResultatPct(evolutionResultatPct)
-                .totalPaiementsRecus(totalPaiementsRecus)
-                .totalImpayes(totalImpayes)
-                .nombreTransactionsImpayees((long) transactionsImpayees.size())
-                .nombreEcheancesEnRetard((long) echeancesEnRetard.size())
-                .montantEcheancesEnRetard(montantEcheancesEnRetard)
-                .nombreEcheancesAVenir((long) echeancesAVenir.size())
-                .montantEcheancesAVenir(montantEcheancesAVenir)
-                .depensesParCategorie(depensesParCategorie)
-                .evolutionMensuelle(evolutionMensuelle)
-                .dateDebut(dateDebut)
-                .dateFin(dateFin)
-                .periode(periode)
-                .caPrestation(caPrestation)
-                .caVenteMatiere(caVenteMatiere)
-                .caTotal(caTotal)
-                .build();
-    }
-    
-    /**
-     * Calcule la répartition des dépenses par catégorie pour toutes les sociétés
+     * Calcule la répartition des dépenses par catégorie pour toutes les sociétés (catégories principales + "Autre")
      */
     private Map<String, BigDecimal> calculateDepensesParCategorieAll(LocalDate dateDebut, LocalDate dateFin) {
-        List<Transaction> depenses = transactionRepository.findByDateBetween(dateDebut, dateFin).stream()
-                .filter(t -> t.getType() == Transaction.TypeTransaction.DEPENSE)
-                .collect(Collectors.toList());
-        
-        Map<String, BigDecimal> result = new HashMap<>();
-        for (Transaction transaction : depenses) {
-            String categorie = transaction.getCategorie() != null ? transaction.getCategorie() : "Autre";
-            result.merge(categorie, transaction.getMontant(), BigDecimal::add);
-        }
-        
-        return result;
+        return toRepartitionParCategorie(rollupRepository.sumDepensesParCategorieByPeriod(
+                dateDebut, dateFin, dashboardProperties.getNbCategories()));
     }
     
     /**
      * Calcule l'évolution selon la période sélectionnée pour toutes les sociétés
+     * Toutes les tranches sont agrégées en une seule requête
      */
     private List<EvolutionMensuelleDTO> calculateEvolutionByPeriodAll(
             LocalDate dateDebut, 
             LocalDate dateFin, 
             String periode) {
         
-        List<EvolutionMensuelleDTO> result = new ArrayList<>();
-        
-        if ("mensuel".equals(periode)) {
-            // Pour mensuel : afficher par semaine
-            LocalDate current = dateDebut;
-            int weekNumber = 1;
-            
-            while (!current.isAfter(dateFin)) {
-                LocalDate weekStart = current;
-                LocalDate weekEnd = current.plusDays(6);
-                if (weekEnd.isAfter(dateFin)) {
-                    weekEnd = dateFin;
-                }
-                
-                BigDecimal recettes = transactionRepository.sumRecettesByPeriod(weekStart, weekEnd);
-                BigDecimal depenses = transactionRepository.sumDepensesByPeriod(weekStart, weekEnd);
-                BigDecimal resultat = recettes.subtract(depenses);
-                
-                String label = "Semaine " + weekNumber;
-                result.add(EvolutionMensuelleDTO.builder()
-                        .mois(weekStart.format(MONTH_FORMATTER))
-                        .moisLibelle(label)
-                        .recettes(recettes)
-                        .depenses(depenses)
-                        .resultat(resultat)
-                        .build());
-                
-                current = weekEnd.plusDays(1);
-                weekNumber++;
-            }
-            
-        } else if ("trimestriel".equals(periode)) {
-            // Pour trimestriel : afficher par mois
-            YearMonth startMonth = YearMonth.from(dateDebut);
-            YearMonth endMonth = YearMonth.from(dateFin);
-            
-            YearMonth current = startMonth;
-            while (!current.isAfter(endMonth)) {
-                LocalDate debutMois = current.atDay(1);
-                LocalDate finMois = current.atEndOfMonth();
-                
-                // Ajuster aux dates réelles de la période
-                if (debutMois.isBefore(dateDebut)) {
-                    debutMois = dateDebut;
-                }
-                if (finMois.isAfter(dateFin)) {
-                    finMois = dateFin;
-                }
-                
-                BigDecimal recettes = transactionRepository.sumRecettesByPeriod(debutMois, finMois);
-                BigDecimal depenses = transactionRepository.sumDepensesByPeriod(debutMois, finMois);
-                BigDecimal resultat = recettes.subtract(depenses);
-                
-                result.add(EvolutionMensuelleDTO.builder()
-                        .mois(current.format(MONTH_FORMATTER))
-                        .moisLibelle(debutMois.format(MONTH_LIBELLE_FORMATTER))
-                        .recettes(recettes)
-                        .depenses(depenses)
-                        .resultat(resultat)
-                        .build());
-                
-                current = current.plusMonths(1);
-            }
-            
-        } else {
-            // Pour annuel : afficher par mois (12 mois de l'année)
-            YearMonth startMonth = YearMonth.from(dateDebut);
-            YearMonth endMonth = YearMonth.from(dateFin);
-            
-            YearMonth current = startMonth;
-            while (!current.isAfter(endMonth)) {
-                LocalDate debutMois = current.atDay(1);
-                LocalDate finMois = current.atEndOfMonth();
-                
-                // Ajuster aux dates réelles de la période
-                if (debutMois.isBefore(dateDebut)) {
-                    debutMois = dateDebut;
-                }
-                if (finMois.isAfter(dateFin)) {
-                    finMois = dateFin;
-                }
-                
-                BigDecimal recettes = transactionRepository.sumRecettesByPeriod(debutMois, finMois);
-                BigDecimal depenses = transactionRepository.sumDepensesByPeriod(debutMois, finMois);
-                BigDecimal resultat = recettes.subtract(depenses);
-                
-                result.add(EvolutionMensuelleDTO.builder()
-                        .mois(current.format(MONTH_FORMATTER))
-                        .moisLibelle(debutMois.format(MONTH_LIBELLE_FORMATTER))
-                        .recettes(recettes)
-                        .depenses(depenses)
-                        .resultat(resultat)
-                        .build());
-                
-                current = current.plusMonths(1);
-            }
+        List<Object[]> lignes = rollupRepository.sumMontantsParTrancheByPeriod(
+                dateDebut, dateFin, evolutionCalculator.granularite(periode).name());
+        return evolutionCalculator.construire(dateDebut, dateFin, periode, lignes);
+    }
+    
+    /**
+     * Convertit les lignes [catégorie, montant] déjà regroupées par la base en répartition
+     * L'ordre de la requête (montant décroissant, "Autre" en dernier) est conservé
+     */
+    private Map<String, BigDecimal> toRepartitionParCategorie(List<Object[]> lignes) {
+        Map<String, BigDecimal> result = new LinkedHashMap<>();
+        for (Object[] ligne : lignes) {
+            result.put((String) ligne[0], (BigDecimal) ligne[1]);
         }
-        
         return result;
     }
     
     /**
-     * Calcule la trésorerie (approximation)
+     * Convertit une ligne du comparatif (voir TransactionDailyRollupRepository.findComparatifSocietes)
      */
-    private BigDecimal calculateTresorerie(Long societeId) {
-        // Total recettes depuis toujours
-        LocalDate dateDebut = LocalDate.of(2000, 1, 1);
-        LocalDate dateFin = LocalDate.now();
-        BigDecimal totalRecettes = transactionRepository.sumRecettesBySocieteAndPeriod(
-                societeId, dateDebut, dateFin);
-        BigDecimal totalDepenses = transactionRepository.sumDepensesBySocieteAndPeriod(
-                societeId, dateDebut, dateFin);
-        
-        return totalRecettes.subtract(totalDepenses);
+    private ComparatifSocieteDTO toComparatifSocieteDTO(Object[] ligne) {
+        return ComparatifSocieteDTO.builder()
+                .societeId(((Number) ligne[0]).longValue())
+                .raisonSociale((String) ligne[1])
+                .totalRecettes((BigDecimal) ligne[2])
+                .totalDepenses((BigDecimal) ligne[3])
+                .resultatNet((BigDecimal) ligne[4])
+                .tauxMarge(ligne[5] != null ? ((Number) ligne[5]).doubleValue() : null)
+                .totalImpayes((BigDecimal) ligne[6])
+                .nombreTransactionsImpayees(((Number) ligne[7]).longValue())
+                .caPrestation((BigDecimal) ligne[8])
+                .caVenteMatiere((BigDecimal) ligne[9])
+                .caTotal((BigDecimal) ligne[10])
+                .build();
     }
     
     /**
-     * Calcule la trésorerie pour toutes les sociétés (approximation)
+     * Totaux d'une période lus dans l'agrégat en une seule requête
      */
-    private BigDecimal calculateTresorerieAll() {
-        // Total recettes depuis toujours
-        LocalDate dateDebut = LocalDate.of(2000, 1, 1);
-        LocalDate dateFin = LocalDate.now();
-        BigDecimal totalRecettes = transactionRepository.sumRecettesByPeriod(dateDebut, dateFin);
-        BigDecimal totalDepenses = transactionRepository.sumDepensesByPeriod(dateDebut, dateFin);
-        
-        return totalRecettes.subtract(totalDepenses);
+    private record TotauxPeriode(BigDecimal recettes, BigDecimal depenses,
+                                 BigDecimal caPrestation, BigDecimal caVenteMatiere) {
+        
+        /**
+         * Construit les totaux depuis les lignes [type, type de recette, montant]
+         */
+        static TotauxPeriode depuis(List<Object[]> lignes) {
+            BigDecimal recettes = BigDecimal.ZERO;
+            BigDecimal depenses = BigDecimal.ZERO;
+            BigDecimal caPrestation = BigDecimal.ZERO;
+            BigDecimal caVenteMatiere = BigDecimal.ZERO;
+            
+            for (Object[] ligne : lignes) {
+                Transaction.TypeTransaction type = (Transaction.TypeTransaction) ligne[0];
+                String typeRecette = (String) ligne[1];
+                BigDecimal montant = (BigDecimal) ligne[2];
+                
+                if (type == Transaction.TypeTransaction.DEPENSE) {
+                    depenses = depenses.add(montant);
+                } else {
+                    recettes = recettes.add(montant);
+                    if ("PRESTATION".equals(typeRecette)) {
+                        caPrestation = caPrestation.add(montant);
+                    } else if ("VENTE_MATIERE".equals(typeRecette)) {
+                        caVenteMatiere = caVenteMatiere.add(montant);
+                    }
+                }
+            }
+            return new TotauxPeriode(recettes, depenses, caPrestation, caVenteMatiere);
+        }
     }
 }
-
@@ -0,0 +1,101 @@
+package ma.iorecycling.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ma.iorecycling.event.SocieteDonneesModifieesEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Cache des dashboards par (société, période)
+ * Les entrées d'une société sont invalidées après commit de toute écriture sur ses données,
+ * ainsi que les entrées "toutes sociétés" (societeId null)
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DashboardCacheService {
+    
+    public static final String CACHE_COMPTABILITE = "dashboardComptabilite";
+    public static final String CACHE_CLIENT = "dashboardClient";
+    
+    private final CacheManager cacheManager;
+    
+    // Compteurs de modifications : un calcul commencé avant une modification n'est pas mis en cache
+    private final Map<Long, AtomicLong> versionsParSociete = new ConcurrentHashMap<>();
+    private final AtomicLong versionGlobale = new AtomicLong();
+    
+    /**
+     * Retourne le dashboard en cache ou le calcule puis le met en cache s'il est complet
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T obtenir(String nomCache, DashboardCacheKey cle, Supplier<T> calcul, Predicate<T> cacheable) {
+        Cache cache = cacheManager.getCache(nomCache);
+        if (cache == null) {
+            return calcul.get();
+        }
+        
+        Cache.ValueWrapper enCache = cache.get(cle);
+        if (enCache != null) {
+            return (T) enCache.get();
+        }
+        
+        long version = version(cle.societeId());
+        T resultat = calcul.get();
+        if (resultat != null && cacheable.test(resultat) && version == version(cle.societeId())) {
+            cache.put(cle, resultat);
+        }
+        return resultat;
+    }
+    
+    /**
+     * Invalide les dashboards de la société modifiée et les dashboards toutes sociétés
+     * Exécuté après commit pour ne pas recharger le cache avec des données non validées
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onSocieteDonneesModifiees(SocieteDonneesModifieesEvent event) {
+        Long societeId = event.societeId();
+        versionGlobale.incrementAndGet();
+        if (societeId != null) {
+            versionsParSociete.computeIfAbsent(societeId, id -> new AtomicLong()).incrementAndGet();
+        }
+        
+        for (String nomCache : new String[]{CACHE_COMPTABILITE, CACHE_CLIENT}) {
+            Cache cache = cacheManager.getCache(nomCache);
+            if (cache == null) {
+                continue;
+            }
+            if (societeId == null || !(cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> caffeine)) {
+                cache.clear();
+                continue;
+            }
+            caffeine.asMap().keySet().removeIf(cle -> cle instanceof DashboardCacheKey dashboardCle
+                    && (dashboardCle.societeId() == null || societeId.equals(dashboardCle.societeId())));
+        }
+        log.debug("Dashboards en cache invalidés pour la société {}", societeId);
+    }
+    
+    private long version(Long societeId) {
+        if (societeId == null) {
+            return versionGlobale.get();
+        }
+        AtomicLong version = versionsParSociete.get(societeId);
+        return version != null ? version.get() : 0L;
+    }
+    
+    /**
+     * Clé de cache d'un dashboard (societeId null = toutes sociétés)
+     */
+    public record DashboardCacheKey(Long societeId, LocalDate dateDebut, LocalDate dateFin, String periode) {
+    }
+}
@@ -0,0 +1,167 @@
+package ma.iorecycling.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ma.iorecycling.config.DashboardProperties;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Exécute les requêtes KPI d'un dashboard, en parallèle ou l'une après l'autre selon la configuration
+ * Chaque requête s'exécute dans sa propre transaction en lecture seule (sa propre connexion)
+ * Une requête en échec ou hors délai prend sa valeur par défaut et est signalée indisponible
+ */
+@Component
+@Slf4j
+public class DashboardKpiExecutor {
+    
+    private final ThreadPoolTaskExecutor executor;
+    private final TransactionTemplate transactionTemplate;
+    private final DashboardProperties properties;
+    
+    public DashboardKpiExecutor(@Qualifier("dashboardExecutor") ThreadPoolTaskExecutor executor,
+                                PlatformTransactionManager transactionManager,
+                                DashboardProperties properties) {
+        this.executor = executor;
+        this.properties = properties;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.transactionTemplate.setTimeout((int) Math.max(1, Math.ceil(properties.getTimeoutMs() / 1000.0)));
+    }
+    
+    /**
+     * Démarre la collecte des KPIs d'un dashboard
+     */
+    public Collecte nouvelleCollecte() {
+        return new Collecte();
+    }
+    
+    /**
+     * Collecte des KPIs d'un dashboard, à utiliser depuis un seul thread (celui de la requête)
+     */
+    public class Collecte {
+        
+        private final long echeanceNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(properties.getTimeoutMs());
+        private final Semaphore places = new Semaphore(properties.getParallelismeParRequete());
+        private final List<Kpi<?>> kpis = new ArrayList<>();
+        
+        /**
+         * Soumet une requête KPI
+         * En mode parallèle, bloque tant que la limite de requêtes simultanées du dashboard est atteinte
+         */
+        public <T> Kpi<T> soumettre(String nom, Supplier<T> requete, T valeurParDefaut) {
+            Kpi<T> kpi = new Kpi<>(nom, valeurParDefaut);
+            kpis.add(kpi);
+            
+            if (!properties.isParallele()) {
+                try {
+                    kpi.terminer(transactionTemplate.execute(status -> requete.get()));
+                } catch (RuntimeException e) {
+                    log.warn("KPI {} indisponible", nom, e);
+                }
+                return kpi;
+            }
+            
+            try {
+                if (!places.tryAcquire(restantNanos(), TimeUnit.NANOSECONDS)) {
+                    log.warn("KPI {} non lancé : délai du dashboard dépassé", nom);
+                    return kpi;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return kpi;
+            }
+            
+            try {
+                kpi.future = executor.submit(() -> {
+                    try {
+                        return transactionTemplate.execute(status -> requete.get());
+                    } finally {
+                        places.release();
+                    }
+                });
+            } catch (TaskRejectedException e) {
+                places.release();
+                log.warn("KPI {} non lancé : pool de calcul du dashboard saturé", nom);
+            }
+            return kpi;
+        }
+        
+        /**
+         * Attend la fin des requêtes dans la limite du délai global
+         * Retourne les noms des KPIs indisponibles
+         */
+        public List<String> attendre() {
+            List<String> indisponibles = new ArrayList<>();
+            for (Kpi<?> kpi : kpis) {
+                kpi.attendre(restantNanos());
+                if (!kpi.disponible) {
+                    indisponibles.add(kpi.nom);
+                }
+            }
+            return indisponibles;
+        }
+        
+        private long restantNanos() {
+            return Math.max(0, echeanceNanos - System.nanoTime());
+        }
+    }
+    
+    /**
+     * Résultat d'une requête KPI
+     */
+    public static class Kpi<T> {
+        
+        private final String nom;
+        private final T valeurParDefaut;
+        private Future<T> future;
+        private T valeur;
+        private boolean disponible;
+        
+        private Kpi(String nom, T valeurParDefaut) {
+            this.nom = nom;
+            this.valeurParDefaut = valeurParDefaut;
+        }
+        
+        /**
+         * Valeur calculée, ou valeur par défaut si le KPI est indisponible
+         */
+        public T get() {
+            return disponible && valeur != null ? valeur : valeurParDefaut;
+        }
+        
+        private void terminer(T resultat) {
+            this.valeur = resultat;
+            this.disponible = true;
+        }
+        
+        private void attendre(long delaiNanos) {
+            if (future == null) {
+                return;
+            }
+            try {
+                terminer(future.get(delaiNanos, TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                log.warn("KPI {} abandonné : délai du dashboard dépassé", nom);
+            } catch (ExecutionException e) {
+                log.warn("KPI {} indisponible", nom, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                future.cancel(true);
+            }
+        }
+    }
+}
@@ -6,7 +6,6 @@ import ma.iorecycling.dto.DashboardKpisDTO;
 import ma.iorecycling.dto.DashboardKpisDTO.ProchainEnlevementDTO;
 import ma.iorecycling.dto.DashboardKpisDTO.QuantitesParTypeDTO;
 import ma.iorecycling.entity.PickupItem.TypeDechet;
-import ma.iorecycling.entity.PlanningEnlevement;
 import ma.iorecycling.repository.EnlevementRepository;
 import ma.iorecycling.repository.PickupItemRepository;
 import ma.iorecycling.repository.PlanningEnlevementRepository;
@@ -16,9 +15,14 @@ import org.springframework.transaction.annotation.Transactional;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * Service pour calculer les KPIs du dashboard client
@@ -32,35 +36,125 @@ public class DashboardService {
     private final EnlevementRepository enlevementRepository;
     private final PickupItemRepository pickupItemRepository;
     private final PlanningEnlevementRepository planningRepository;
+    private final DashboardCacheService dashboardCache;
+    
+    /**
+     * KPIs pouvant être demandés séparément au dashboard client
+     */
+    public enum KpiClient {
+        PROCHAIN,   // prochainEnlevement
+        COUNT,      // nombreEnlevements, moyenneParSemaine
+        QUANTITES,  // quantites, tauxRecyclage
+        BUDGET;     // budgetRecyclage, budgetTraitement, bilanNet
+        
+        /**
+         * Convertit les noms reçus en paramètre (ex: "count", "budget"), tous les KPIs si aucun nom
+         */
+        public static Set<KpiClient> depuis(Collection<String> noms) {
+            if (noms == null || noms.isEmpty()) {
+                return EnumSet.allOf(KpiClient.class);
+            }
+            Set<KpiClient> kpis = EnumSet.noneOf(KpiClient.class);
+            for (String nom : noms) {
+                try {
+                    kpis.add(valueOf(nom.trim().toUpperCase(Locale.ROOT)));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("KPI inconnu : " + nom);
+                }
+            }
+            return kpis;
+        }
+    }
     
     /**
      * Calcule tous les KPIs pour une société sur une période
      */
     public DashboardKpisDTO calculateKpis(Long societeId, LocalDate dateDebut, LocalDate dateFin) {
-        log.info("Calcul des KPIs pour société {} du {} au {}", societeId, dateDebut, dateFin);
+        return calculateKpis(societeId, dateDebut, dateFin, EnumSet.allOf(KpiClient.class));
+    }
+    
+    /**
+     * Calcule les KPIs demandés pour une société sur une période, les autres restent null
+     * Quantités et budgets proviennent des KPIs de la période (en cache), le nombre d'enlèvements seul
+     * est un simple COUNT, le prochain enlèvement est toujours recalculé (le planning n'invalide pas le cache)
+     */
+    public DashboardKpisDTO calculateKpis(Long societeId, LocalDate dateDebut, LocalDate dateFin, Set<KpiClient> kpis) {
+        log.info("Calcul des KPIs {} pour société {} du {} au {}", kpis, societeId, dateDebut, dateFin);
+        
+        DashboardKpisDTO.DashboardKpisDTOBuilder resultat;
+        if (kpis.contains(KpiClient.QUANTITES) || kpis.contains(KpiClient.BUDGET)) {
+            DashboardKpisDTO kpisPeriode = dashboardCache.obtenir(DashboardCacheService.CACHE_CLIENT,
+                    new DashboardCacheService.DashboardCacheKey(societeId, dateDebut, dateFin, null),
+                    () -> calculateKpisPeriode(societeId, dateDebut, dateFin),
+                    kpisCalcules -> true);
+            resultat = kpisPeriode.toBuilder();
+            if (!kpis.contains(KpiClient.COUNT)) {
+                resultat.nombreEnlevements(null).moyenneParSemaine(null);
+            }
+            if (!kpis.contains(KpiClient.QUANTITES)) {
+                resultat.quantites(null).tauxRecyclage(null);
+            }
+            if (!kpis.contains(KpiClient.BUDGET)) {
+                resultat.budgetRecyclage(null).budgetTraitement(null).bilanNet(null);
+            }
+        } else {
+            resultat = DashboardKpisDTO.builder().dateDebut(dateDebut).dateFin(dateFin);
+            if (kpis.contains(KpiClient.COUNT)) {
+                long nombreEnlevements = enlevementRepository.countBySocieteIdAndDateBetween(
+                        societeId, dateDebut, dateFin);
+                resultat.nombreEnlevements(nombreEnlevements)
+                        .moyenneParSemaine(calculateMoyenneParSemaine(nombreEnlevements, dateDebut, dateFin));
+            }
+        }
         
         // KPI 1 : Prochain enlèvement
-        ProchainEnlevementDTO prochainEnlevement = getProchainEnlevement(societeId);
-        
-        // KPI 2 : Quantités par type
-        QuantitesParTypeDTO quantites = calculateQuantitesParType(societeId, dateDebut, dateFin);
+        if (kpis.contains(KpiClient.PROCHAIN)) {
+            resultat.prochainEnlevement(getProchainEnlevement(societeId));
+        }
+        return resultat.build();
+    }
+    
+    /**
+     * Calcule les KPIs dépendant de la période (tous sauf le prochain enlèvement)
+     * Toutes les valeurs proviennent d'une seule requête (voir PickupItemRepository.findKpisClientParPeriode)
+     * qui lit les mois complets dans le cube tonnage_mensuel
+     */
+    private DashboardKpisDTO calculateKpisPeriode(Long societeId, LocalDate dateDebut, LocalDate dateFin) {
+        MoisComplets moisComplets = MoisComplets.de(dateDebut, dateFin);
+        List<Object[]> lignes = pickupItemRepository.findKpisClientParPeriode(
+                societeId, dateDebut, dateFin, moisComplets.premier(), moisComplets.dernier());
+        
+        long nombreEnlevements = 0;
+        Map<TypeDechet, BigDecimal> quantiteParType = new EnumMap<>(TypeDechet.class);
+        Map<TypeDechet, BigDecimal> montantParType = new EnumMap<>(TypeDechet.class);
+        Map<String, BigDecimal> detailRecyclable = new HashMap<>();
         
-        // KPI 3 : Nombre d'enlèvements
-        long nombreEnlevements = enlevementRepository.countBySocieteIdAndDateBetween(
-                societeId, dateDebut, dateFin);
+        for (Object[] ligne : lignes) {
+            String nature = (String) ligne[0];
+            String cle = (String) ligne[1];
+            BigDecimal quantite = (BigDecimal) ligne[2];
+            
+            switch (nature) {
+                case "ENLEVEMENTS" -> nombreEnlevements = quantite.longValue();
+                case "TYPE" -> {
+                    TypeDechet type = TypeDechet.valueOf(cle);
+                    quantiteParType.put(type, quantite);
+                    montantParType.put(type, (BigDecimal) ligne[3]);
+                }
+                case "SOUS_TYPE" -> detailRecyclable.put(cle, quantite);
+                default -> log.warn("Ligne de KPI client inconnue : {}", nature);
+            }
+        }
         
-        // Moyenne par semaine
-        long nombreJours = java.time.temporal.ChronoUnit.DAYS.between(dateDebut, dateFin) + 1;
-        double nombreSemaines = nombreJours / 7.0;
-        double moyenneParSemaine = nombreSemaines > 0 ? nombreEnlevements / nombreSemaines : 0;
+        // KPI 2 : Quantités par type
+        QuantitesParTypeDTO quantites = buildQuantitesParType(quantiteParType, detailRecyclable);
         
         // KPI 4 : Budget recyclage
-        BigDecimal budgetRecyclage = pickupItemRepository.calculateBudgetRecyclage(
-                societeId, dateDebut, dateFin);
+        BigDecimal budgetRecyclage = montantParType.getOrDefault(TypeDechet.RECYCLABLE, BigDecimal.ZERO);
         
         // KPI 5 : Budget traitement (A_DETRUIRE = BANAL + A_DETRUIRE)
-        BigDecimal budgetTraitement = pickupItemRepository.calculateBudgetTraitement(
-                societeId, dateDebut, dateFin);
+        BigDecimal budgetTraitement = montantParType.getOrDefault(TypeDechet.BANAL, BigDecimal.ZERO)
+                .add(montantParType.getOrDefault(TypeDechet.A_DETRUIRE, BigDecimal.ZERO));
         
         // Bilan net
         BigDecimal bilanNet = budgetRecyclage.subtract(budgetTraitement);
@@ -73,10 +167,9 @@ public class DashboardService {
                 : 0.0;
         
         return DashboardKpisDTO.builder()
-                .prochainEnlevement(prochainEnlevement)
                 .quantites(quantites)
                 .nombreEnlevements(nombreEnlevements)
-                .moyenneParSemaine(Math.round(moyenneParSemaine * 10) / 10.0)
+                .moyenneParSemaine(calculateMoyenneParSemaine(nombreEnlevements, dateDebut, dateFin))
                 .budgetRecyclage(budgetRecyclage)
                 .budgetTraitement(budgetTraitement)
                 .bilanNet(bilanNet)
@@ -86,45 +179,35 @@ public class DashboardService {
                 .build();
     }
     
+    /**
+     * KPI 3 : Moyenne d'enlèvements par semaine sur la période
+     */
+    private Double calculateMoyenneParSemaine(long nombreEnlevements, LocalDate dateDebut, LocalDate dateFin) {
+        long nombreJours = java.time.temporal.ChronoUnit.DAYS.between(dateDebut, dateFin) + 1;
+        double nombreSemaines = nombreJours / 7.0;
+        double moyenneParSemaine = nombreSemaines > 0 ? nombreEnlevements / nombreSemaines : 0;
+        return Math.round(moyenneParSemaine * 10) / 10.0;
+    }
+    
     /**
      * KPI 1 : Récupère le prochain enlèvement planifié
      */
     private ProchainEnlevementDTO getProchainEnlevement(Long societeId) {
-        List<PlanningEnlevement> prochains = planningRepository.findProchainsEnlevements(
-                societeId, LocalDate.now());
-        
-        if (prochains.isEmpty()) {
-            return null;
-        }
-        
-        // Prendre le premier élément (le plus proche)
-        PlanningEnlevement planning = prochains.get(0);
-        return ProchainEnlevementDTO.builder()
-                .datePrevue(planning.getDatePrevue())
-                .heurePrevue(planning.getHeurePrevue())
-                .siteId(planning.getSite().getId())
-                .siteNom(planning.getSite().getName())
-                .build();
+        return planningRepository.findProchainEnlevement(societeId, LocalDate.now())
+                .map(planning -> ProchainEnlevementDTO.builder()
+                        .datePrevue(planning.getDatePrevue())
+                        .heurePrevue(planning.getHeurePrevue())
+                        .siteId(planning.getSite().getId())
+                        .siteNom(planning.getSite().getName())
+                        .build())
+                .orElse(null);
     }
     
-    private QuantitesParTypeDTO calculateQuantitesParType(Long societeId, LocalDate dateDebut, LocalDate dateFin) {
-        List<Object[]> results = pickupItemRepository.sumQuantiteByTypeForSocieteAndPeriod(
-                societeId, dateDebut, dateFin);
-        
-        BigDecimal recyclable = BigDecimal.ZERO;
-        BigDecimal banal = BigDecimal.ZERO;
-        BigDecimal aDetruire = BigDecimal.ZERO;
-        
-        for (Object[] result : results) {
-            TypeDechet type = (TypeDechet) result[0];
-            BigDecimal quantite = (BigDecimal) result[1];
-            
-            switch (type) {
-                case RECYCLABLE -> recyclable = quantite;
-                case BANAL -> banal = quantite;
-                case A_DETRUIRE -> aDetruire = quantite;
-            }
-        }
+    private QuantitesParTypeDTO buildQuantitesParType(Map<TypeDechet, BigDecimal> quantiteParType,
+                                                      Map<String, BigDecimal> detailRecyclable) {
+        BigDecimal recyclable = quantiteParType.getOrDefault(TypeDechet.RECYCLABLE, BigDecimal.ZERO);
+        BigDecimal banal = quantiteParType.getOrDefault(TypeDechet.BANAL, BigDecimal.ZERO);
+        BigDecimal aDetruire = quantiteParType.getOrDefault(TypeDechet.A_DETRUIRE, BigDecimal.ZERO);
         
         BigDecimal total = recyclable.add(banal).add(aDetruire);
         
@@ -141,17 +224,6 @@ public class DashboardService {
                 ? aDetruire.divide(total, 4, RoundingMode.HALF_UP).multiply(BigDecimal.valueOf(100)).doubleValue()
                 : 0.0;
         
-        // Détail par sous-type pour RECYCLABLE
-        Map<String, BigDecimal> detailRecyclable = new HashMap<>();
-        List<Object[]> detailResults = pickupItemRepository.getDetailRecyclableBySousType(
-                societeId, dateDebut, dateFin);
-        
-        for (Object[] result : detailResults) {
-            String sousType = (String) result[0];
-            BigDecimal quantite = (BigDecimal) result[1];
-            detailRecyclable.put(sousType, quantite);
-        }
-        
         return QuantitesParTypeDTO.builder()
                 .recyclable(recyclable)
                 .banal(banal)
@@ -163,5 +235,21 @@ public class DashboardService {
                 .detailRecyclable(detailRecyclable)
                 .build();
     }
+    
+    /**
+     * Mois entièrement compris dans une période, identifiés par leur premier jour
+     * premier est après dernier lorsque la période ne contient aucun mois complet
+     */
+    record MoisComplets(LocalDate premier, LocalDate dernier) {
+        
+        static MoisComplets de(LocalDate dateDebut, LocalDate dateFin) {
+            LocalDate premier = dateDebut.getDayOfMonth() == 1
+                    ? dateDebut
+                    : dateDebut.withDayOfMonth(1).plusMonths(1);
+            LocalDate dernier = dateFin.equals(dateFin.withDayOfMonth(dateFin.lengthOfMonth()))
+                    ? dateFin.withDayOfMonth(1)
+                    : dateFin.withDayOfMonth(1).minusMonths(1);
+            return new MoisComplets(premier, dernier);
+        }
+    }
 }
-
@@ -4,7 +4,9 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import ma.iorecycling.dto.EcheanceDTO;
 import ma.iorecycling.entity.Echeance;
+import ma.iorecycling.event.SocieteDonneesModifieesEvent;
 import ma.iorecycling.repository.EcheanceRepository;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -22,6 +24,7 @@ import java.util.stream.Collectors;
 public class EcheanceService {
     
     private final EcheanceRepository echeanceRepository;
+    private final ApplicationEventPublisher eventPublisher;
     
     /**
      * Récupère une échéance par ID
@@ -74,6 +77,7 @@ public class EcheanceService {
         
         echeance.setStatut(Echeance.StatutEcheance.PAYEE);
         echeance = echeanceRepository.save(echeance);
+        publierModification(echeance);
         
         return toDTO(echeance);
     }
@@ -88,6 +92,7 @@ public class EcheanceService {
         
         echeance.setStatut(Echeance.StatutEcheance.IMPAYEE);
         echeance = echeanceRepository.save(echeance);
+        publierModification(echeance);
         
         return toDTO(echeance);
     }
@@ -100,6 +105,12 @@ public class EcheanceService {
         Echeance echeance = echeanceRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Échéance non trouvée: " + id));
         echeanceRepository.delete(echeance);
+        publierModification(echeance);
+    }
+    
+    private void publierModification(Echeance echeance) {
+        eventPublisher.publishEvent(new SocieteDonneesModifieesEvent(
+                echeance.getTransaction().getSociete().getId()));
     }
     
     private EcheanceDTO toDTO(Echeance echeance) {
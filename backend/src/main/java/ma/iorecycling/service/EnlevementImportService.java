@@ -0,0 +1,487 @@
+package ma.iorecycling.service;
+
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.exceptions.CsvValidationException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ma.iorecycling.dto.ImportEnlevementsResultDTO;
+import ma.iorecycling.entity.*;
+import ma.iorecycling.event.SocieteDonneesModifieesEvent;
+import ma.iorecycling.repository.*;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Import en masse d'enlèvements historiques depuis un CSV (séparateur ; ou ,)
+ *
+ * Une ligne par item. Les lignes consécutives de même "reference" forment un enlèvement, dont l'en-tête
+ * (date, société, site, camion, destination...) est lu sur la première ligne.
+ * Colonnes obligatoires : reference, date_enlevement, societe_id, site_id, type_dechet, quantite_kg,
+ * prix_unitaire_mad. Facultatives : numero_enlevement, heure_enlevement, date_destination,
+ * heure_destination, camion_id, chauffeur_nom, destination_id, observation, sous_type, unite_mesure,
+ * etat, prix_prestation_mad, prix_achat_mad, prix_traitement_mad.
+ *
+ * Les règles de EnlevementService.createEnlevement sont appliquées à chaque enlèvement ; un enlèvement
+ * invalide est rejeté en entier et ses erreurs figurent au rapport. Le fichier est lu en flux et écrit
+ * par lots de TAILLE_LOT enlèvements, chacun dans sa transaction (EnlevementImportWriter).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EnlevementImportService {
+
+    /**
+     * Nombre d'enlèvements écrits et validés ensemble
+     */
+    static final int TAILLE_LOT = 500;
+
+    private static final List<String> COLONNES_OBLIGATOIRES = List.of(
+            "reference", "date_enlevement", "societe_id", "site_id", "type_dechet", "quantite_kg", "prix_unitaire_mad");
+
+    private static final List<String> COLONNES_ENTETE = List.of(
+            "numero_enlevement", "date_enlevement", "heure_enlevement", "date_destination", "heure_destination",
+            "societe_id", "site_id", "camion_id", "chauffeur_nom", "destination_id", "observation");
+
+    private static final DateTimeFormatter DATE_FR = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    private final SocieteRepository societeRepository;
+    private final SiteRepository siteRepository;
+    private final CamionRepository camionRepository;
+    private final DestinationRepository destinationRepository;
+    private final EnlevementRepository enlevementRepository;
+    private final EnlevementImportWriter enlevementImportWriter;
+    private final PlatformTransactionManager transactionManager;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Importe le CSV et retourne le rapport ligne à ligne
+     * IllegalArgumentException si l'en-tête est incomplet ou le fichier illisible
+     */
+    public ImportEnlevementsResultDTO importer(InputStream fichier, String createdBy) throws IOException {
+        long debut = System.currentTimeMillis();
+        ImportEnlevementsResultDTO rapport = new ImportEnlevementsResultDTO();
+        Referentiel referentiel = chargerReferentiel();
+        Set<Long> societesModifiees = new HashSet<>();
+
+        try (CSVReader csv = ouvrir(fichier)) {
+            Map<String, Integer> colonnes = lireEntete(csv.readNext());
+            Import courant = new Import(colonnes, referentiel, createdBy, rapport, societesModifiees);
+
+            String[] valeurs;
+            while ((valeurs = csv.readNext()) != null) {
+                if (Arrays.stream(valeurs).allMatch(String::isBlank)) {
+                    continue;
+                }
+                rapport.setLignesLues(rapport.getLignesLues() + 1);
+                courant.ajouterLigne(new Ligne(csv.getLinesRead(), valeurs));
+            }
+            courant.terminer();
+        } catch (CsvValidationException e) {
+            throw new IllegalArgumentException("CSV illisible ligne " + e.getLineNumber() + " : " + e.getMessage(), e);
+        }
+
+        societesModifiees.forEach(id -> eventPublisher.publishEvent(new SocieteDonneesModifieesEvent(id)));
+        rapport.setDureeMs(System.currentTimeMillis() - debut);
+        log.info("Import terminé en {} ms : {} lignes, {} enlèvements importés, {} rejetés, {} erreurs",
+                rapport.getDureeMs(), rapport.getLignesLues(), rapport.getEnlevementsImportes(),
+                rapport.getEnlevementsRejetes(), rapport.getNombreErreurs());
+        return rapport;
+    }
+
+    /**
+     * Ouvre le flux en détectant le séparateur sur la ligne d'en-tête et en ignorant un BOM éventuel
+     */
+    private CSVReader ouvrir(InputStream fichier) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(fichier, StandardCharsets.UTF_8));
+        reader.mark(1);
+        if (reader.read() != '\uFEFF') {
+            reader.reset();
+        }
+        reader.mark(64 * 1024);
+        String entete = reader.readLine();
+        reader.reset();
+        char separateur = entete != null && entete.indexOf(';') >= 0 ? ';' : ',';
+        return new CSVReaderBuilder(reader)
+                .withCSVParser(new CSVParserBuilder().withSeparator(separateur).build())
+                .build();
+    }
+
+    private Map<String, Integer> lireEntete(String[] entete) {
+        if (entete == null) {
+            throw new IllegalArgumentException("Fichier vide");
+        }
+        Map<String, Integer> colonnes = new HashMap<>();
+        for (int i = 0; i < entete.length; i++) {
+            colonnes.put(entete[i].trim().toLowerCase(Locale.ROOT), i);
+        }
+        List<String> manquantes = COLONNES_OBLIGATOIRES.stream()
+                .filter(c -> !colonnes.containsKey(c))
+                .toList();
+        if (!manquantes.isEmpty()) {
+            throw new IllegalArgumentException("Colonnes manquantes : " + String.join(", ", manquantes));
+        }
+        return colonnes;
+    }
+
+    /**
+     * Sociétés, sites, camions et destinations chargés une fois pour valider tout le fichier
+     */
+    private Referentiel chargerReferentiel() {
+        TransactionTemplate lecture = new TransactionTemplate(transactionManager);
+        lecture.setReadOnly(true);
+        return lecture.execute(status -> {
+            List<Destination> destinations = destinationRepository.findAll();
+            return new Referentiel(
+                    societeRepository.findAll().stream().collect(Collectors.toMap(Societe::getId, Function.identity())),
+                    siteRepository.findAll().stream().collect(Collectors.toMap(Site::getId, Function.identity())),
+                    camionRepository.findAll().stream().collect(Collectors.toMap(Camion::getId, Function.identity())),
+                    destinations.stream().collect(Collectors.toMap(Destination::getId, Function.identity())),
+                    destinations.stream()
+                            .filter(Destination::peutTraiterDechetsDangereux)
+                            .map(Destination::getId)
+                            .collect(Collectors.toSet()));
+        });
+    }
+
+    private record Referentiel(Map<Long, Societe> societes, Map<Long, Site> sites, Map<Long, Camion> camions,
+                               Map<Long, Destination> destinations, Set<Long> destinationsDangereux) {
+    }
+
+    /**
+     * Ligne du fichier avec son numéro de ligne physique (en-tête = 1)
+     */
+    private record Ligne(long numero, String[] valeurs) {
+    }
+
+    /**
+     * Enlèvement validé en attente d'écriture, avec sa position dans le fichier pour le rapport
+     */
+    private record EnlevementLu(Enlevement enlevement, long ligne, String reference) {
+    }
+
+    /**
+     * État d'un import en cours : groupe de lignes de la référence courante et lot à écrire
+     */
+    private class Import {
+
+        private final Map<String, Integer> colonnes;
+        private final Referentiel referentiel;
+        private final String createdBy;
+        private final ImportEnlevementsResultDTO rapport;
+        private final Set<Long> societesModifiees;
+        private final Set<String> numerosVus = new HashSet<>();
+        private final List<Ligne> groupe = new ArrayList<>();
+        private final List<EnlevementLu> lot = new ArrayList<>();
+
+        Import(Map<String, Integer> colonnes, Referentiel referentiel, String createdBy,
+               ImportEnlevementsResultDTO rapport, Set<Long> societesModifiees) {
+            this.colonnes = colonnes;
+            this.referentiel = referentiel;
+            this.createdBy = createdBy;
+            this.rapport = rapport;
+            this.societesModifiees = societesModifiees;
+        }
+
+        void ajouterLigne(Ligne ligne) {
+            if (!groupe.isEmpty() && !Objects.equals(valeur(ligne, "reference"), valeur(groupe.get(0), "reference"))) {
+                fermerGroupe();
+            }
+            groupe.add(ligne);
+        }
+
+        void terminer() {
+            fermerGroupe();
+            ecrireLot();
+        }
+
+        private void fermerGroupe() {
+            if (groupe.isEmpty()) {
+                return;
+            }
+            EnlevementLu enlevement = construire(List.copyOf(groupe));
+            groupe.clear();
+            if (enlevement != null) {
+                lot.add(enlevement);
+                if (lot.size() >= TAILLE_LOT) {
+                    ecrireLot();
+                }
+            }
+        }
+
+        /**
+         * Valide un groupe de lignes selon les règles de createEnlevement, null (et erreurs au rapport) si invalide
+         */
+        private EnlevementLu construire(List<Ligne> lignes) {
+            Ligne premiere = lignes.get(0);
+            String reference = valeur(premiere, "reference");
+            List<ImportEnlevementsResultDTO.ErreurLigne> erreurs = new ArrayList<>();
+
+            Enlevement enlevement = null;
+            try {
+                enlevement = construireEnTete(premiere);
+            } catch (IllegalArgumentException e) {
+                erreurs.add(new ImportEnlevementsResultDTO.ErreurLigne(premiere.numero(), reference, e.getMessage()));
+            }
+
+            List<PickupItem> items = new ArrayList<>();
+            for (Ligne ligne : lignes) {
+                try {
+                    for (String colonne : COLONNES_ENTETE) {
+                        if (!Objects.equals(valeur(ligne, colonne), valeur(premiere, colonne))) {
+                            throw new IllegalArgumentException("Colonne " + colonne
+                                    + " différente de la première ligne de l'enlèvement " + reference);
+                        }
+                    }
+                    items.add(construireItem(ligne, enlevement));
+                } catch (IllegalArgumentException | IllegalStateException e) {
+                    erreurs.add(new ImportEnlevementsResultDTO.ErreurLigne(ligne.numero(), reference, e.getMessage()));
+                }
+            }
+
+            if (enlevement != null && erreurs.isEmpty()) {
+                try {
+                    verifierDestination(enlevement, items);
+                } catch (IllegalArgumentException e) {
+                    erreurs.add(new ImportEnlevementsResultDTO.ErreurLigne(premiere.numero(), reference, e.getMessage()));
+                }
+            }
+
+            if (!erreurs.isEmpty()) {
+                erreurs.forEach(err -> rapport.ajouterErreur(err.getLigne(), err.getReference(), err.getMessage()));
+                rapport.setEnlevementsRejetes(rapport.getEnlevementsRejetes() + 1);
+                return null;
+            }
+            enlevement.getItems().addAll(items);
+            return new EnlevementLu(enlevement, premiere.numero(), reference);
+        }
+
+        private Enlevement construireEnTete(Ligne ligne) {
+            Long societeId = entier(ligne, "societe_id");
+            Long siteId = entier(ligne, "site_id");
+            Societe societe = Optional.ofNullable(societeId).map(referentiel.societes()::get)
+                    .orElseThrow(() -> new IllegalArgumentException("Société non trouvée : " + societeId));
+            Site site = Optional.ofNullable(siteId).map(referentiel.sites()::get)
+                    .orElseThrow(() -> new IllegalArgumentException("Site non trouvé : " + siteId));
+            if (!site.getSociete().getId().equals(societe.getId())) {
+                throw new IllegalArgumentException("Le site ne correspond pas à la société");
+            }
+
+            Camion camion = null;
+            Long camionId = entier(ligne, "camion_id");
+            if (camionId != null) {
+                camion = Optional.ofNullable(referentiel.camions().get(camionId))
+                        .orElseThrow(() -> new IllegalArgumentException("Camion non trouvé avec l'ID : " + camionId));
+                if (!camion.getActif()) {
+                    throw new IllegalArgumentException("Le camion sélectionné n'est pas actif et ne peut pas être utilisé pour un enlèvement");
+                }
+            }
+
+            Destination destination = null;
+            Long destinationId = entier(ligne, "destination_id");
+            if (destinationId != null) {
+                destination = Optional.ofNullable(referentiel.destinations().get(destinationId))
+                        .orElseThrow(() -> new IllegalArgumentException("Destination non trouvée avec l'ID : " + destinationId));
+            }
+
+            String numero = valeur(ligne, "numero_enlevement");
+            if (numero != null && !numerosVus.add(numero)) {
+                throw new IllegalArgumentException("Numéro d'enlèvement en double dans le fichier : " + numero);
+            }
+
+            LocalDate dateEnlevement = date(ligne, "date_enlevement");
+            if (dateEnlevement == null) {
+                throw new IllegalArgumentException("La date de l'enlèvement est obligatoire");
+            }
+            return Enlevement.builder()
+                    .numeroEnlevement(numero)
+                    .dateEnlevement(dateEnlevement)
+                    .heureEnlevement(heure(ligne, "heure_enlevement"))
+                    .dateDestination(date(ligne, "date_destination"))
+                    .heureDestination(heure(ligne, "heure_destination"))
+                    .societe(societe)
+                    .site(site)
+                    .camion(camion)
+                    .chauffeurNom(valeur(ligne, "chauffeur_nom"))
+                    .destination(destination)
+                    .observation(valeur(ligne, "observation"))
+                    .createdBy(createdBy)
+                    .build();
+        }
+
+        private PickupItem construireItem(Ligne ligne, Enlevement enlevement) {
+            String type = valeur(ligne, "type_dechet");
+            PickupItem.TypeDechet typeDechet;
+            try {
+                typeDechet = PickupItem.TypeDechet.valueOf(String.valueOf(type).toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Type de déchet invalide : " + type);
+            }
+            BigDecimal quantite = positif(ligne, "quantite_kg", true);
+            BigDecimal prixUnitaire = positif(ligne, "prix_unitaire_mad", true);
+            String unite = valeur(ligne, "unite_mesure");
+
+            PickupItem item = PickupItem.builder()
+                    .enlevement(enlevement)
+                    .typeDechet(typeDechet)
+                    .sousType(valeur(ligne, "sous_type"))
+                    .quantiteKg(quantite)
+                    .uniteMesure(unite != null ? unite : "kg")
+                    .etat(valeur(ligne, "etat"))
+                    .prixUnitaireMad(prixUnitaire)
+                    .prixPrestationMad(positif(ligne, "prix_prestation_mad", false))
+                    .prixAchatMad(positif(ligne, "prix_achat_mad", false))
+                    .prixTraitementMad(positif(ligne, "prix_traitement_mad", false))
+                    .build();
+            // Mêmes contrôles et calculs de montants qu'à l'enregistrement JPA
+            item.validateAndCalculate();
+            return item;
+        }
+
+        /**
+         * Règle métier : déchets dangereux => destination obligatoire et compatible
+         */
+        private void verifierDestination(Enlevement enlevement, List<PickupItem> items) {
+            boolean hasDechetsDangereux = items.stream()
+                    .anyMatch(item -> PickupItem.TypeDechet.A_DETRUIRE.equals(item.getTypeDechet()));
+            if (!hasDechetsDangereux) {
+                return;
+            }
+            if (enlevement.getDestination() == null) {
+                throw new IllegalArgumentException("Une destination est obligatoire lorsque l'enlèvement contient des déchets dangereux (A_DETRUIRE)");
+            }
+            if (!referentiel.destinationsDangereux().contains(enlevement.getDestination().getId())) {
+                throw new IllegalArgumentException("La destination sélectionnée ne peut pas traiter les déchets dangereux. " +
+                        "Elle doit avoir au moins un des types de traitement suivants : INCINERATION, ENFOUISSEMENT, DENATURATION_DESTRUCTION, TRAITEMENT");
+            }
+        }
+
+        /**
+         * Écrit le lot en une transaction ; les numéros déjà en base sont rejetés avant, un échec base rejette le lot
+         */
+        private void ecrireLot() {
+            if (lot.isEmpty()) {
+                return;
+            }
+            List<String> numeros = lot.stream()
+                    .map(lu -> lu.enlevement().getNumeroEnlevement())
+                    .filter(Objects::nonNull)
+                    .toList();
+            Set<String> existants = numeros.isEmpty()
+                    ? new HashSet<>()
+                    : new HashSet<>(enlevementRepository.findNumerosExistants(numeros));
+
+            List<EnlevementLu> aEcrire = new ArrayList<>();
+            for (EnlevementLu lu : lot) {
+                if (existants.contains(lu.enlevement().getNumeroEnlevement())) {
+                    rapport.ajouterErreur(lu.ligne(), lu.reference(),
+                            "Numéro d'enlèvement déjà existant : " + lu.enlevement().getNumeroEnlevement());
+                    rapport.setEnlevementsRejetes(rapport.getEnlevementsRejetes() + 1);
+                } else {
+                    aEcrire.add(lu);
+                }
+            }
+            lot.clear();
+            if (aEcrire.isEmpty()) {
+                return;
+            }
+
+            try {
+                EnlevementImportWriter.Resultat resultat = enlevementImportWriter.ecrireLot(
+                        aEcrire.stream().map(EnlevementLu::enlevement).toList());
+                rapport.setEnlevementsImportes(rapport.getEnlevementsImportes() + aEcrire.size());
+                rapport.setItemsImportes(rapport.getItemsImportes() + resultat.items());
+                rapport.setTransactionsGenerees(rapport.getTransactionsGenerees() + resultat.transactions());
+                aEcrire.forEach(lu -> societesModifiees.add(lu.enlevement().getSociete().getId()));
+            } catch (DataAccessException e) {
+                log.error("Lot de {} enlèvements rejeté par la base", aEcrire.size(), e);
+                String message = "Lot rejeté par la base : " + e.getMostSpecificCause().getMessage();
+                aEcrire.forEach(lu -> rapport.ajouterErreur(lu.ligne(), lu.reference(), message));
+                rapport.setEnlevementsRejetes(rapport.getEnlevementsRejetes() + aEcrire.size());
+            }
+        }
+
+        private String valeur(Ligne ligne, String colonne) {
+            Integer index = colonnes.get(colonne);
+            if (index == null || index >= ligne.valeurs().length) {
+                return null;
+            }
+            String valeur = ligne.valeurs()[index].trim();
+            return valeur.isEmpty() ? null : valeur;
+        }
+
+        private Long entier(Ligne ligne, String colonne) {
+            String valeur = valeur(ligne, colonne);
+            try {
+                return valeur != null ? Long.valueOf(valeur) : null;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Valeur invalide pour " + colonne + " : " + valeur);
+            }
+        }
+
+        /**
+         * Décimal positif ou nul, virgule décimale acceptée
+         */
+        private BigDecimal positif(Ligne ligne, String colonne, boolean obligatoire) {
+            String valeur = valeur(ligne, colonne);
+            if (valeur == null) {
+                if (obligatoire) {
+                    throw new IllegalArgumentException("La colonne " + colonne + " est obligatoire");
+                }
+                return null;
+            }
+            BigDecimal nombre;
+            try {
+                nombre = new BigDecimal(valeur.replace(" ", "").replace(',', '.'));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Valeur invalide pour " + colonne + " : " + valeur);
+            }
+            if (nombre.signum() < 0) {
+                throw new IllegalArgumentException("La colonne " + colonne + " doit être positive ou zéro");
+            }
+            return nombre;
+        }
+
+        /**
+         * Date ISO (2024-11-28) ou française (28/11/2024)
+         */
+        private LocalDate date(Ligne ligne, String colonne) {
+            String valeur = valeur(ligne, colonne);
+            if (valeur == null) {
+                return null;
+            }
+            try {
+                return valeur.contains("/") ? LocalDate.parse(valeur, DATE_FR) : LocalDate.parse(valeur);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Date invalide pour " + colonne + " : " + valeur);
+            }
+        }
+
+        private LocalTime heure(Ligne ligne, String colonne) {
+            String valeur = valeur(ligne, colonne);
+            try {
+                return valeur != null ? LocalTime.parse(valeur) : null;
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("Heure invalide pour " + colonne + " : " + valeur);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package ma.iorecycling.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ma.iorecycling.entity.Enlevement;
+import ma.iorecycling.entity.NumeroMetierGenerator;
+import ma.iorecycling.entity.PickupItem;
+import ma.iorecycling.entity.Transaction;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Écriture par lots JDBC des enlèvements importés (voir EnlevementImportService)
+ * Chaque appel de ecrireLot est une transaction : un lot est validé ou rejeté en entier
+ * Les totaux des enlèvements, l'agrégat des transactions et les versions de société suivent
+ * par les triggers habituels, le cube mensuel en une requête par lot
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class EnlevementImportWriter {
+
+    // Séquence en pas de 50 (voir V29) : chaque valeur v réserve la plage v-49..v, comme l'optimiseur pooled de Hibernate
+    private static final int PAS_SEQUENCE = 50;
+
+    private static final String ALLOUER_IDS =
+            "SELECT nextval(CAST(? AS regclass)) FROM generate_series(1, ?)";
+
+    private static final String INSERT_ENLEVEMENT =
+            "INSERT INTO enlevement (id, numero_enlevement, date_enlevement, heure_enlevement, " +
+            "    date_destination, heure_destination, site_id, societe_id, observation, camion_id, " +
+            "    chauffeur_nom, destination_id, created_by, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)";
+
+    private static final String INSERT_ITEM =
+            "INSERT INTO pickup_item (id, enlevement_id, type_dechet, sous_type, quantite_kg, unite_mesure, etat, " +
+            "    prix_unitaire_mad, montant_mad, prix_prestation_mad, montant_prestation_mad, " +
+            "    prix_achat_mad, montant_achat_mad, prix_traitement_mad, montant_traitement_mad, " +
+            "    quantite_vendue_kg, reste_a_vendre_kg, created_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP)";
+
+    private static final String INSERT_TRANSACTION =
+            "INSERT INTO transaction (type, montant, date_transaction, description, categorie, " +
+            "    societe_id, enlevement_id, pickup_item_id, type_recette, statut, created_at, updated_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionGenerationService transactionGenerationService;
+    private final TonnageMensuelService tonnageMensuelService;
+
+    /**
+     * Insère un lot d'enlèvements validés avec leurs items et leurs transactions générées
+     * Les montants des items doivent déjà être calculés (PickupItem.validateAndCalculate)
+     * Retourne le nombre d'items et de transactions insérés
+     */
+    @Transactional
+    public Resultat ecrireLot(List<Enlevement> lot) {
+        List<Long> ids = allouerIds("enlevement_id_seq", lot.size());
+        for (int i = 0; i < lot.size(); i++) {
+            Enlevement enlevement = lot.get(i);
+            enlevement.setId(ids.get(i));
+            if (enlevement.getNumeroEnlevement() == null) {
+                enlevement.setNumeroEnlevement(
+                        NumeroMetierGenerator.numero("ENL", enlevement.getDateEnlevement(), enlevement.getId()));
+            }
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_ENLEVEMENT, lot, lot.size(), (ps, e) -> {
+            ps.setLong(1, e.getId());
+            ps.setString(2, e.getNumeroEnlevement());
+            ps.setObject(3, e.getDateEnlevement(), Types.DATE);
+            ps.setObject(4, e.getHeureEnlevement(), Types.TIME);
+            ps.setObject(5, e.getDateDestination(), Types.DATE);
+            ps.setObject(6, e.getHeureDestination(), Types.TIME);
+            ps.setLong(7, e.getSite().getId());
+            ps.setLong(8, e.getSociete().getId());
+            ps.setObject(9, e.getObservation(), Types.VARCHAR);
+            ps.setObject(10, e.getCamion() != null ? e.getCamion().getId() : null, Types.BIGINT);
+            ps.setObject(11, e.getChauffeurNom(), Types.VARCHAR);
+            ps.setObject(12, e.getDestination() != null ? e.getDestination().getId() : null, Types.BIGINT);
+            ps.setObject(13, e.getCreatedBy(), Types.VARCHAR);
+        });
+
+        // Ids des items connus avant l'insertion pour rattacher les transactions à leur item
+        List<PickupItem> items = new ArrayList<>();
+        lot.forEach(enlevement -> items.addAll(enlevement.getItems()));
+        List<Long> itemIds = allouerIds("pickup_item_id_seq", items.size());
+        for (int i = 0; i < items.size(); i++) {
+            items.get(i).setId(itemIds.get(i));
+        }
+        List<Transaction> transactions = new ArrayList<>();
+        for (Enlevement enlevement : lot) {
+            transactions.addAll(transactionGenerationService.construireTransactions(enlevement));
+        }
+
+        jdbcTemplate.batchUpdate(INSERT_ITEM, items, items.size(), (ps, item) -> {
+            ps.setLong(1, item.getId());
+            ps.setLong(2, item.getEnlevement().getId());
+            ps.setString(3, item.getTypeDechet().name());
+            ps.setObject(4, item.getSousType(), Types.VARCHAR);
+            ps.setBigDecimal(5, item.getQuantiteKg());
+            ps.setObject(6, item.getUniteMesure(), Types.VARCHAR);
+            ps.setObject(7, item.getEtat(), Types.VARCHAR);
+            ps.setBigDecimal(8, item.getPrixUnitaireMad());
+            ps.setObject(9, item.getMontantMad(), Types.NUMERIC);
+            ps.setObject(10, item.getPrixPrestationMad(), Types.NUMERIC);
+            ps.setObject(11, item.getMontantPrestationMad(), Types.NUMERIC);
+            ps.setObject(12, item.getPrixAchatMad(), Types.NUMERIC);
+            ps.setObject(13, item.getMontantAchatMad(), Types.NUMERIC);
+            ps.setObject(14, item.getPrixTraitementMad(), Types.NUMERIC);
+            ps.setObject(15, item.getMontantTraitementMad(), Types.NUMERIC);
+            ps.setObject(16, item.getQuantiteVendueKg(), Types.NUMERIC);
+            ps.setObject(17, item.getResteAVendreKg(), Types.NUMERIC);
+        });
+
+        if (!transactions.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_TRANSACTION, transactions, transactions.size(), (ps, t) -> {
+                ps.setString(1, t.getType().name());
+                ps.setBigDecimal(2, t.getMontant());
+                ps.setObject(3, t.getDateTransaction(), Types.DATE);
+                ps.setObject(4, t.getDescription(), Types.VARCHAR);
+                ps.setObject(5, t.getCategorie(), Types.VARCHAR);
+                ps.setLong(6, t.getSociete().getId());
+                ps.setLong(7, t.getEnlevement().getId());
+                ps.setLong(8, t.getPickupItem().getId());
+                ps.setObject(9, t.getTypeRecette() != null ? t.getTypeRecette().name() : null, Types.VARCHAR);
+                ps.setString(10, t.getStatut().name());
+            });
+        }
+
+        tonnageMensuelService.ajouterEnlevements(ids);
+
+        log.debug("Lot importé : {} enlèvements, {} items, {} transactions",
+                lot.size(), items.size(), transactions.size());
+        return new Resultat(items.size(), transactions.size());
+    }
+
+    /**
+     * Réserve n ids dans une séquence, une valeur par plage de PAS_SEQUENCE
+     */
+    private List<Long> allouerIds(String sequence, int n) {
+        int plages = (n + PAS_SEQUENCE - 1) / PAS_SEQUENCE;
+        List<Long> ids = new ArrayList<>(n);
+        for (Long haut : jdbcTemplate.queryForList(ALLOUER_IDS, Long.class, sequence, plages)) {
+            for (long id = haut - PAS_SEQUENCE + 1; id <= haut && ids.size() < n; id++) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Nombre de lignes insérées pour un lot
+     */
+    public record Resultat(int items, int transactions) {
+    }
+}
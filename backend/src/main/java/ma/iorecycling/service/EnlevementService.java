@@ -4,12 +4,15 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import ma.iorecycling.dto.CreateEnlevementRequest;
 import ma.iorecycling.dto.CreatePickupItemRequest;
+import ma.iorecycling.dto.CursorPageDTO;
 import ma.iorecycling.dto.EnlevementDTO;
+import ma.iorecycling.dto.EnlevementSummaryDTO;
 import ma.iorecycling.dto.UpdateEnlevementRequest;
 import ma.iorecycling.entity.Enlevement;
 import ma.iorecycling.entity.PickupItem;
 import ma.iorecycling.entity.Site;
 import ma.iorecycling.entity.Societe;
+import ma.iorecycling.event.SocieteDonneesModifieesEvent;
 import ma.iorecycling.mapper.EnlevementMapper;
 import ma.iorecycling.repository.CamionRepository;
 import ma.iorecycling.repository.DestinationRepository;
@@ -19,13 +22,20 @@ import ma.iorecycling.repository.SiteRepository;
 import ma.iorecycling.repository.SocieteRepository;
 import ma.iorecycling.repository.TransactionRepository;
 import ma.iorecycling.service.TransactionService;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Service pour la gestion des enlèvements
@@ -44,8 +54,11 @@ public class EnlevementService {
     private final DestinationRepository destinationRepository;
     private final EnlevementMapper enlevementMapper;
     private final TransactionGenerationService transactionGenerationService;
-    private final TransactionService transactionService;
+    private final OutboxComptableService outboxComptableService;
+    private final TransactionDtoAssembler transactionDtoAssembler;
     private final TransactionRepository transactionRepository;
+    private final TonnageMensuelService tonnageMensuelService;
+    private final ApplicationEventPublisher eventPublisher;
     
     /**
      * Crée un nouvel enlèvement avec ses items
@@ -115,60 +128,35 @@ public class EnlevementService {
                 .createdBy(createdBy)
                 .build();
         
+        // Le numéro est attribué à l'insertion (NumeroMetier)
         Enlevement savedEnlevement = enlevementRepository.save(enlevement);
-
-        if (savedEnlevement.getNumeroEnlevement() == null) {
-            savedEnlevement.setNumeroEnlevement(generateNumeroEnlevement(savedEnlevement));
-            savedEnlevement = enlevementRepository.save(savedEnlevement);
-        }
         
         // Créer les items
         for (CreatePickupItemRequest itemRequest : request.getItems()) {
             PickupItem item = createPickupItem(savedEnlevement, itemRequest);
             pickupItemRepository.save(item);
         }
+        tonnageMensuelService.ajouterEnlevement(savedEnlevement.getId());
         
         // Recharger l'enlèvement avec ses items
         savedEnlevement = enlevementRepository.findById(savedEnlevement.getId())
                 .orElseThrow();
         
-        // Générer automatiquement les transactions comptables
-        try {
-            transactionGenerationService.generateTransactionsFromEnlevement(savedEnlevement);
-        } catch (Exception e) {
-            log.warn("Erreur lors de la génération des transactions pour l'enlèvement {}: {}", 
-                    savedEnlevement.getNumeroEnlevement(), e.getMessage());
-            // On continue même si la génération échoue (l'enlèvement est créé)
-        }
+        // Transactions comptables générées en arrière-plan (outbox validée avec l'enlèvement)
+        outboxComptableService.planifierGeneration(savedEnlevement.getId());
         
+        eventPublisher.publishEvent(new SocieteDonneesModifieesEvent(societe.getId()));
         log.info("Enlèvement créé avec succès : {}", savedEnlevement.getNumeroEnlevement());
         return enlevementMapper.toDTO(savedEnlevement);
     }
 
-    private String generateNumeroEnlevement(Enlevement enlevement) {
-        int year = enlevement.getDateEnlevement() != null
-                ? enlevement.getDateEnlevement().getYear()
-                : LocalDate.now().getYear();
-        return "ENL-" + year + "-" + String.format("%06d", enlevement.getId());
-    }
-    
     private PickupItem createPickupItem(Enlevement enlevement, CreatePickupItemRequest request) {
-        PickupItem.TypeDechet typeDechet;
-        try {
-            String typeDechetStr = request.getTypeDechet().toUpperCase();
-            typeDechet = PickupItem.TypeDechet.valueOf(typeDechetStr);
-        } catch (IllegalArgumentException e) {
-            throw new IllegalArgumentException("Type de déchet invalide : " + request.getTypeDechet());
-        }
-        
         return PickupItem.builder()
                 .enlevement(enlevement)
-                .typeDechet(typeDechet)
+                .typeDechet(parseTypeDechet(request.getTypeDechet()))
                 .sousType(request.getSousType())
                 .quantiteKg(request.getQuantiteKg())
-                .uniteMesure(request.getUniteMesure() != null && !request.getUniteMesure().trim().isEmpty() 
-                        ? request.getUniteMesure() 
-                        : "kg")
+                .uniteMesure(uniteMesureOuDefaut(request.getUniteMesure()))
                 .etat(request.getEtat())
                 .prixUnitaireMad(request.getPrixUnitaireMad())
                 .prixPrestationMad(request.getPrixPrestationMad())
@@ -177,6 +165,76 @@ public class EnlevementService {
                 .build();
     }
     
+    /**
+     * Met à jour les items d'un enlèvement à partir de la demande
+     * Un item portant un id est modifié en place (un UPDATE seulement si une valeur change),
+     * un item sans id est ajouté, un item absent de la demande est supprimé
+     */
+    private void appliquerItems(Enlevement enlevement, List<CreatePickupItemRequest> demandes) {
+        Map<Long, PickupItem> existants = new HashMap<>();
+        for (PickupItem item : enlevement.getItems()) {
+            existants.put(item.getId(), item);
+        }
+        
+        List<PickupItem> nouveaux = new ArrayList<>();
+        for (CreatePickupItemRequest demande : demandes) {
+            if (demande.getId() == null) {
+                nouveaux.add(createPickupItem(enlevement, demande));
+                continue;
+            }
+            PickupItem item = existants.remove(demande.getId());
+            if (item == null) {
+                throw new IllegalArgumentException("Item non trouvé dans l'enlèvement : " + demande.getId());
+            }
+            modifierPickupItem(item, demande);
+        }
+        
+        Collection<PickupItem> retires = existants.values();
+        for (PickupItem item : retires) {
+            if (item.getQuantiteVendueKg() != null && item.getQuantiteVendueKg().compareTo(BigDecimal.ZERO) > 0) {
+                throw new IllegalArgumentException("L'item " + item.getId() + " a déjà été vendu et ne peut pas être supprimé");
+            }
+        }
+        if (!retires.isEmpty() && transactionRepository.existsByPickupItemIdInAndMontantPayeGreaterThan(
+                existants.keySet(), BigDecimal.ZERO)) {
+            throw new IllegalArgumentException("Des paiements sont enregistrés sur les transactions d'un item supprimé");
+        }
+        
+        new ArrayList<>(retires).forEach(enlevement::removeItem);
+        for (PickupItem item : nouveaux) {
+            enlevement.addItem(item);
+            pickupItemRepository.save(item);
+        }
+    }
+    
+    private void modifierPickupItem(PickupItem item, CreatePickupItemRequest request) {
+        if (item.getQuantiteVendueKg() != null && request.getQuantiteKg().compareTo(item.getQuantiteVendueKg()) < 0) {
+            throw new IllegalArgumentException("La quantité de l'item " + item.getId() 
+                    + " ne peut pas être inférieure à la quantité déjà vendue");
+        }
+        item.setTypeDechet(parseTypeDechet(request.getTypeDechet()));
+        item.setSousType(request.getSousType());
+        item.setQuantiteKg(request.getQuantiteKg());
+        item.setUniteMesure(uniteMesureOuDefaut(request.getUniteMesure()));
+        item.setEtat(request.getEtat());
+        item.setPrixUnitaireMad(request.getPrixUnitaireMad());
+        item.setPrixPrestationMad(request.getPrixPrestationMad());
+        item.setPrixAchatMad(request.getPrixAchatMad());
+        item.setPrixTraitementMad(request.getPrixTraitementMad());
+    }
+    
+    private PickupItem.TypeDechet parseTypeDechet(String typeDechet) {
+        try {
+            return PickupItem.TypeDechet.valueOf(typeDechet.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Type de déchet invalide : " + typeDechet);
+        }
+    }
+    
+    private String uniteMesureOuDefaut(String uniteMesure) {
+        return uniteMesure != null && !uniteMesure.trim().isEmpty() ? uniteMesure : "kg";
+    }
+    
     /**
      * Récupère un enlèvement par son ID avec ses transactions
      */
@@ -189,29 +247,42 @@ public class EnlevementService {
         
         // Charger les transactions liées à cet enlèvement
         List<ma.iorecycling.entity.Transaction> transactions = transactionRepository.findByEnlevementId(id);
-        dto.setTransactions(transactions.stream()
-                .map(transactionService::toDTO)
-                .collect(java.util.stream.Collectors.toList()));
+        dto.setTransactions(transactionDtoAssembler.assembler(transactions));
         
         return dto;
     }
     
     /**
-     * Récupère tous les enlèvements (paginé)
+     * Liste paginée de résumés de tous les enlèvements (sans items)
+     */
+    @Transactional(readOnly = true)
+    public Page<EnlevementSummaryDTO> getEnlevementSummaries(Pageable pageable) {
+        return enlevementRepository.findSummaries(pageable);
+    }
+    
+    /**
+     * Liste paginée de résumés des enlèvements d'une société (sans items)
      */
     @Transactional(readOnly = true)
-    public Page<EnlevementDTO> getAllEnlevements(Pageable pageable) {
-        return enlevementRepository.findAll(pageable)
-                .map(enlevementMapper::toDTO);
+    public Page<EnlevementSummaryDTO> getEnlevementSummariesBySociete(Long societeId, Pageable pageable) {
+        return enlevementRepository.findSummariesBySocieteId(societeId, pageable);
     }
     
     /**
-     * Récupère tous les enlèvements d'une société
+     * Page de résumés par curseur (keyset), de toutes les sociétés ou d'une seule
+     * Le comptage total n'est fait que si avecTotal est demandé
      */
     @Transactional(readOnly = true)
-    public Page<EnlevementDTO> getEnlevementsBySociete(Long societeId, Pageable pageable) {
-        return enlevementRepository.findBySocieteId(societeId, pageable)
-                .map(enlevementMapper::toDTO);
+    public CursorPageDTO<EnlevementSummaryDTO> getEnlevementSummariesApres(
+            Long societeId, String curseur, int taille, boolean avecTotal) {
+        CursorPageDTO.Cursor apres = CursorPageDTO.Cursor.decoder(curseur);
+        int n = CursorPageDTO.taille(taille);
+        List<EnlevementSummaryDTO> lignes = societeId != null
+                ? enlevementRepository.findSummariesBySocieteIdApres(societeId, apres.date(), apres.id(), Limit.of(n + 1))
+                : enlevementRepository.findSummariesApres(apres.date(), apres.id(), Limit.of(n + 1));
+        Long total = avecTotal ? enlevementRepository.countBySocieteIdOptionnel(societeId) : null;
+        return CursorPageDTO.of(lignes, n,
+                resume -> new CursorPageDTO.Cursor(resume.getDateEnlevement(), resume.getId()), total);
     }
     
     /**
@@ -221,8 +292,9 @@ public class EnlevementService {
     public List<EnlevementDTO> getEnlevementsBySocieteAndDateRange(
             Long societeId, LocalDate dateDebut, LocalDate dateFin) {
         
-        List<Enlevement> enlevements = enlevementRepository.findBySocieteIdAndDateBetween(
-                societeId, dateDebut, dateFin);
+        // Ids puis enlèvements et associations par lots : pas de chargement paresseux par ligne
+        List<Enlevement> enlevements = enlevementRepository.chargerAvecDetails(
+                enlevementRepository.findIdsBySocieteIdAndDateBetween(societeId, dateDebut, dateFin));
         
         return enlevements.stream()
                 .map(enlevementMapper::toDTO)
@@ -235,13 +307,17 @@ public class EnlevementService {
     public EnlevementDTO updateEnlevement(Long id, UpdateEnlevementRequest request, String updatedBy) {
         log.info("Modification de l'enlèvement ID {}", id);
         
-        // Récupérer l'enlèvement existant avec ses items
+        // Récupérer l'enlèvement existant avec ses items, verrouillé contre une régénération concurrente
+        enlevementRepository.verrouiller(List.of(id));
         Enlevement enlevement = enlevementRepository.findByIdWithItems(id)
                 .orElseThrow(() -> new IllegalArgumentException("Enlèvement non trouvé avec l'ID : " + id));
         
         // Récupérer la société de l'enlèvement existant (ne peut pas être modifiée)
         Societe societe = enlevement.getSociete();
         
+        // Retirer l'ancienne version de l'enlèvement du cube mensuel
+        tonnageMensuelService.retirerEnlevement(id, societe.getId());
+        
         // Vérifier que le site existe et appartient à la société
         Site site = siteRepository.findById(request.getSiteId())
                 .orElseThrow(() -> new IllegalArgumentException("Site non trouvé"));
@@ -296,34 +372,21 @@ public class EnlevementService {
         enlevement.setChauffeurNom(request.getChauffeurNom());
         enlevement.setDestination(destination);
         
-        // Supprimer les anciens items
-        if (enlevement.getItems() != null && !enlevement.getItems().isEmpty()) {
-            pickupItemRepository.deleteAll(enlevement.getItems());
-            enlevement.getItems().clear();
-        }
+        // Appliquer les items par différence : seuls les items modifiés, ajoutés ou retirés sont écrits
+        appliquerItems(enlevement, request.getItems());
         
-        // Créer les nouveaux items
-        for (CreatePickupItemRequest itemRequest : request.getItems()) {
-            PickupItem item = createPickupItem(enlevement, itemRequest);
-            pickupItemRepository.save(item);
-        }
-        
-        // Sauvegarder l'enlèvement mis à jour
+        // Sauvegarder l'enlèvement mis à jour (les items suivent par cascade)
         Enlevement savedEnlevement = enlevementRepository.save(enlevement);
+        tonnageMensuelService.ajouterEnlevement(savedEnlevement.getId());
         
         // Recharger l'enlèvement avec ses items
         savedEnlevement = enlevementRepository.findById(savedEnlevement.getId())
                 .orElseThrow();
         
-        // Régénérer automatiquement les transactions comptables
-        try {
-            transactionGenerationService.generateTransactionsFromEnlevement(savedEnlevement);
-        } catch (Exception e) {
-            log.warn("Erreur lors de la génération des transactions pour l'enlèvement {}: {}", 
-                    savedEnlevement.getNumeroEnlevement(), e.getMessage());
-            // On continue même si la génération échoue (l'enlèvement est mis à jour)
-        }
+        // Transactions comptables régénérées en arrière-plan (outbox validée avec l'enlèvement)
+        outboxComptableService.planifierGeneration(savedEnlevement.getId());
         
+        eventPublisher.publishEvent(new SocieteDonneesModifieesEvent(societe.getId()));
         log.info("Enlèvement modifié avec succès : {}", savedEnlevement.getNumeroEnlevement());
         return enlevementMapper.toDTO(savedEnlevement);
     }
@@ -334,11 +397,13 @@ public class EnlevementService {
     public void deleteEnlevement(Long id) {
         log.info("Suppression de l'enlèvement ID {}", id);
         
-        if (!enlevementRepository.existsById(id)) {
-            throw new IllegalArgumentException("Enlèvement non trouvé avec l'ID : " + id);
-        }
+        Enlevement enlevement = enlevementRepository.findById(id)
+                .orElseThrow(() -> new IllegalArgumentException("Enlèvement non trouvé avec l'ID : " + id));
+        Long societeId = enlevement.getSociete().getId();
         
-        enlevementRepository.deleteById(id);
+        tonnageMensuelService.retirerEnlevement(id, societeId);
+        enlevementRepository.delete(enlevement);
+        eventPublisher.publishEvent(new SocieteDonneesModifieesEvent(societeId));
         log.info("Enlèvement supprimé avec succès : ID {}", id);
     }
     
@@ -348,6 +413,7 @@ public class EnlevementService {
     public void regenerateTransactions(Long enlevementId) {
         log.info("Régénération des transactions pour l'enlèvement ID {}", enlevementId);
         
+        enlevementRepository.verrouiller(List.of(enlevementId));
         Enlevement enlevement = enlevementRepository.findByIdWithItems(enlevementId)
                 .orElseThrow(() -> new IllegalArgumentException("Enlèvement non trouvé avec l'ID : " + enlevementId));
         
@@ -359,6 +425,7 @@ public class EnlevementService {
         
         // Générer les transactions
         transactionGenerationService.generateTransactionsFromEnlevement(enlevement);
+        eventPublisher.publishEvent(new SocieteDonneesModifieesEvent(enlevement.getSociete().getId()));
         
         log.info("Transactions régénérées avec succès pour l'enlèvement {}", enlevement.getNumeroEnlevement());
     }
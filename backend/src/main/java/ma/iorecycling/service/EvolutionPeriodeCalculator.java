@@ -0,0 +1,138 @@
+package ma.iorecycling.service;
+
+import ma.iorecycling.dto.ComptabiliteDashboardDTO.EvolutionMensuelleDTO;
+import ma.iorecycling.entity.Transaction;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Découpage d'une période en tranches (semaines ou mois) pour le graphique d'évolution
+ * Les montants sont fournis par une requête agrégée unique (une ligne par tranche, type et type de recette)
+ * et répartis ici dans les tranches, pour une société comme pour toutes les sociétés
+ */
+@Component
+public class EvolutionPeriodeCalculator {
+
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM");
+    private static final DateTimeFormatter MONTH_LIBELLE_FORMATTER = DateTimeFormatter.ofPattern("MMMM yyyy", Locale.FRENCH);
+
+    /**
+     * Granularité des tranches, transmise telle quelle aux requêtes d'agrégation
+     */
+    public enum Granularite {
+        SEMAINE,    // Tranches de 7 jours à partir de la date de début
+        MOIS        // Mois calendaires
+    }
+
+    /**
+     * Détermine la granularité selon la période sélectionnée
+     * Mensuel : par semaine, trimestriel et annuel : par mois
+     */
+    public Granularite granularite(String periode) {
+        return "mensuel".equals(periode) ? Granularite.SEMAINE : Granularite.MOIS;
+    }
+
+    /**
+     * Construit l'évolution à partir des lignes agrégées
+     * Chaque ligne contient : [début de tranche, type, type de recette, montant]
+     */
+    public List<EvolutionMensuelleDTO> construire(LocalDate dateDebut, LocalDate dateFin, String periode,
+                                                  List<Object[]> lignes) {
+        Map<LocalDate, EvolutionMensuelleDTO> tranches = initialiserTranches(dateDebut, dateFin, granularite(periode));
+
+        for (Object[] ligne : lignes) {
+            EvolutionMensuelleDTO tranche = tranches.get(toLocalDate(ligne[0]));
+            if (tranche == null) {
+                continue;
+            }
+
+            String type = String.valueOf(ligne[1]);
+            String typeRecette = ligne[2] != null ? String.valueOf(ligne[2]) : null;
+            BigDecimal montant = ligne[3] != null ? (BigDecimal) ligne[3] : BigDecimal.ZERO;
+
+            if (Transaction.TypeTransaction.RECETTE.name().equals(type)) {
+                tranche.setRecettes(tranche.getRecettes().add(montant));
+                if (Transaction.TypeRecette.PRESTATION.name().equals(typeRecette)) {
+                    tranche.setCaPrestation(tranche.getCaPrestation().add(montant));
+                } else if (Transaction.TypeRecette.VENTE_MATIERE.name().equals(typeRecette)) {
+                    tranche.setCaVenteMatiere(tranche.getCaVenteMatiere().add(montant));
+                }
+            } else if (Transaction.TypeTransaction.DEPENSE.name().equals(type)) {
+                tranche.setDepenses(tranche.getDepenses().add(montant));
+            }
+        }
+
+        List<EvolutionMensuelleDTO> result = new ArrayList<>(tranches.values());
+        result.forEach(t -> t.setResultat(t.getRecettes().subtract(t.getDepenses())));
+        return result;
+    }
+
+    /**
+     * Crée les tranches vides, indexées par la date de début renvoyée par la requête d'agrégation
+     * (date de début + 7 * n pour les semaines, premier jour du mois pour les mois)
+     */
+    private Map<LocalDate, EvolutionMensuelleDTO> initialiserTranches(LocalDate dateDebut, LocalDate dateFin,
+                                                                     Granularite granularite) {
+        Map<LocalDate, EvolutionMensuelleDTO> tranches = new LinkedHashMap<>();
+
+        if (granularite == Granularite.SEMAINE) {
+            LocalDate current = dateDebut;
+            int weekNumber = 1;
+            while (!current.isAfter(dateFin)) {
+                tranches.put(current, trancheVide(current.format(MONTH_FORMATTER), "Semaine " + weekNumber));
+                current = current.plusDays(7);
+                weekNumber++;
+            }
+        } else {
+            YearMonth current = YearMonth.from(dateDebut);
+            YearMonth endMonth = YearMonth.from(dateFin);
+            while (!current.isAfter(endMonth)) {
+                LocalDate debutMois = current.atDay(1);
+                // Ajuster aux dates réelles de la période
+                LocalDate debutLibelle = debutMois.isBefore(dateDebut) ? dateDebut : debutMois;
+                tranches.put(debutMois, trancheVide(current.format(MONTH_FORMATTER),
+                        debutLibelle.format(MONTH_LIBELLE_FORMATTER)));
+                current = current.plusMonths(1);
+            }
+        }
+
+        return tranches;
+    }
+
+    private EvolutionMensuelleDTO trancheVide(String mois, String libelle) {
+        return EvolutionMensuelleDTO.builder()
+                .mois(mois)
+                .moisLibelle(libelle)
+                .recettes(BigDecimal.ZERO)
+                .depenses(BigDecimal.ZERO)
+                .resultat(BigDecimal.ZERO)
+                .caPrestation(BigDecimal.ZERO)
+                .caVenteMatiere(BigDecimal.ZERO)
+                .build();
+    }
+
+    /**
+     * Les requêtes natives renvoient selon le driver un java.sql.Date ou un LocalDate
+     */
+    static LocalDate toLocalDate(Object valeur) {
+        if (valeur instanceof LocalDate date) {
+            return date;
+        }
+        if (valeur instanceof java.sql.Date date) {
+            return date.toLocalDate();
+        }
+        if (valeur instanceof java.util.Date date) {
+            return new java.sql.Date(date.getTime()).toLocalDate();
+        }
+        return valeur != null ? LocalDate.parse(valeur.toString()) : null;
+    }
+}
@@ -0,0 +1,34 @@
+package ma.iorecycling.service;
+
+import ma.iorecycling.config.ExportProperties;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.WebAsyncTask;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Tâches asynchrones Spring MVC des exports comptables écrits en flux
+ * Le pool borné exportExecutor et la durée maximale d'un export ne s'appliquent qu'aux endpoints d'export :
+ * le traitement asynchrone du reste de l'application garde la configuration par défaut de Spring MVC
+ */
+@Component
+public class ExportComptableExecutor {
+
+    private final ThreadPoolTaskExecutor executor;
+    private final ExportProperties properties;
+
+    public ExportComptableExecutor(@Qualifier("exportExecutor") ThreadPoolTaskExecutor executor,
+                                   ExportProperties properties) {
+        this.executor = executor;
+        this.properties = properties;
+    }
+
+    /**
+     * Tâche exécutée sur le pool d'export, interrompue au-delà de la durée maximale d'un export
+     */
+    public <T> WebAsyncTask<T> tache(Callable<T> export) {
+        return new WebAsyncTask<>(properties.getTimeoutMs(), executor, export);
+    }
+}
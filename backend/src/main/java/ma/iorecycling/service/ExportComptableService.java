@@ -0,0 +1,175 @@
+package ma.iorecycling.service;
+
+import com.opencsv.CSVWriter;
+import com.opencsv.ICSVWriter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ma.iorecycling.config.ExportProperties;
+import ma.iorecycling.repository.SocieteRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+
+/**
+ * Export du grand livre d'une société (transactions, paiements et échéances) en CSV
+ * Les lignes sont lues par un curseur JDBC en avant seulement et écrites au fil de l'eau dans la réponse :
+ * mémoire constante quelle que soit la période, premiers octets envoyés dès les premières lignes lues
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ExportComptableService {
+
+    private static final int LIGNES_PAR_ENVOI = 1000;
+
+    private static final String[] ENTETE = {
+            "Ligne", "Transaction", "Date", "Type", "Catégorie", "Description", "Référence",
+            "Enlèvement", "Vente", "Montant", "Montant payé", "Montant restant", "Statut", "Mode de paiement"
+    };
+
+    // Une ligne par transaction sans paiement ni échéance, sinon une par paiement ou échéance (LATERAL),
+    // dans l'ordre de l'index (societe_id, date_transaction, id), voir migration V28
+    private static final String SELECT_GRAND_LIVRE =
+            "SELECT t.id, t.date_transaction, t.type, t.categorie, t.description, t.numero_reference, " +
+            "e.numero_enlevement, v.numero_vente, t.montant, t.montant_paye, t.montant_restant, t.statut, " +
+            "l.ligne, l.date_ligne, l.reference, l.montant AS montant_ligne, l.statut AS statut_ligne, l.mode_paiement " +
+            "FROM transaction t " +
+            "LEFT JOIN enlevement e ON e.id = t.enlevement_id " +
+            "LEFT JOIN vente_item vi ON vi.id = t.vente_item_id " +
+            "LEFT JOIN vente v ON v.id = vi.vente_id " +
+            "LEFT JOIN LATERAL (" +
+            "  SELECT 'PAIEMENT' AS ligne, 1 AS ordre, p.id, p.date_paiement AS date_ligne, p.reference, " +
+            "         p.montant, p.statut, p.mode_paiement " +
+            "  FROM paiement p WHERE p.transaction_id = t.id " +
+            "  UNION ALL " +
+            "  SELECT 'ECHEANCE', 2, ec.id, ec.date_echeance, NULL, ec.montant, ec.statut, NULL " +
+            "  FROM echeance ec WHERE ec.transaction_id = t.id" +
+            ") l ON true " +
+            "WHERE t.societe_id = ? AND t.date_transaction BETWEEN ? AND ? " +
+            "ORDER BY t.date_transaction, t.id, l.ordre, l.date_ligne, l.id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SocieteRepository societeRepository;
+    private final ExportProperties properties;
+
+    /**
+     * Vérifie la demande avant d'ouvrir le flux (une erreur ne peut plus être renvoyée une fois l'écriture commencée)
+     */
+    public void verifierDemande(Long societeId, LocalDate dateDebut, LocalDate dateFin) {
+        if (dateDebut.isAfter(dateFin)) {
+            throw new IllegalArgumentException("La date de début doit précéder la date de fin");
+        }
+        if (!societeRepository.existsById(societeId)) {
+            throw new IllegalArgumentException("Société non trouvée: " + societeId);
+        }
+    }
+
+    /**
+     * Écrit le grand livre de la société sur la période dans le flux de sortie (UTF-8 avec BOM, séparateur ;)
+     * La transaction en lecture seule garde le curseur ouvert côté PostgreSQL (fetch size sans autocommit)
+     */
+    @Transactional(readOnly = true)
+    public void exporterGrandLivre(Long societeId, LocalDate dateDebut, LocalDate dateFin,
+                                   OutputStream sortie) throws IOException {
+        long debut = System.currentTimeMillis();
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(sortie, StandardCharsets.UTF_8));
+        writer.write('\uFEFF');
+        CSVWriter csv = new CSVWriter(writer, ';', ICSVWriter.DEFAULT_QUOTE_CHARACTER,
+                ICSVWriter.DEFAULT_ESCAPE_CHARACTER, ICSVWriter.RFC4180_LINE_END);
+        csv.writeNext(ENTETE, false);
+
+        EcritureGrandLivre ecriture = new EcritureGrandLivre(csv);
+        PreparedStatementCreator curseur = connexion -> {
+            PreparedStatement ps = connexion.prepareStatement(SELECT_GRAND_LIVRE,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(properties.getFetchSize());
+            ps.setLong(1, societeId);
+            ps.setDate(2, Date.valueOf(dateDebut));
+            ps.setDate(3, Date.valueOf(dateFin));
+            return ps;
+        };
+        try {
+            jdbcTemplate.query(curseur, ecriture);
+        } catch (UncheckedIOException e) {
+            // Client déconnecté : la lecture est abandonnée avec la transaction
+            throw e.getCause();
+        }
+        csv.flush();
+
+        log.info("Export du grand livre de la société {} du {} au {} : {} lignes en {} ms",
+                societeId, dateDebut, dateFin, ecriture.lignes, System.currentTimeMillis() - debut);
+    }
+
+    /**
+     * Écrit chaque ligne lue, précédée de sa transaction au changement de transaction
+     * Le flux est vidé régulièrement : les octets partent au fil de la lecture, et une déconnexion interrompt la requête
+     */
+    private static class EcritureGrandLivre implements RowCallbackHandler {
+
+        private final CSVWriter csv;
+        private long transactionCourante = -1;
+        private long lignes;
+
+        EcritureGrandLivre(CSVWriter csv) {
+            this.csv = csv;
+        }
+
+        @Override
+        public void processRow(ResultSet rs) throws SQLException {
+            long transactionId = rs.getLong("id");
+            if (transactionId != transactionCourante) {
+                transactionCourante = transactionId;
+                ecrire(new String[]{
+                        "TRANSACTION", String.valueOf(transactionId), texte(rs.getDate("date_transaction")),
+                        rs.getString("type"), rs.getString("categorie"), rs.getString("description"),
+                        rs.getString("numero_reference"), rs.getString("numero_enlevement"), rs.getString("numero_vente"),
+                        montant(rs.getBigDecimal("montant")), montant(rs.getBigDecimal("montant_paye")),
+                        montant(rs.getBigDecimal("montant_restant")), rs.getString("statut"), null
+                });
+            }
+            String ligne = rs.getString("ligne");
+            if (ligne != null) {
+                ecrire(new String[]{
+                        ligne, String.valueOf(transactionId), texte(rs.getDate("date_ligne")),
+                        null, null, null, rs.getString("reference"), null, null,
+                        montant(rs.getBigDecimal("montant_ligne")), null, null,
+                        rs.getString("statut_ligne"), rs.getString("mode_paiement")
+                });
+            }
+        }
+
+        private void ecrire(String[] valeurs) {
+            csv.writeNext(valeurs, false);
+            if (++lignes % LIGNES_PAR_ENVOI == 0) {
+                try {
+                    csv.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+
+        private static String texte(Date date) {
+            return date != null ? date.toLocalDate().toString() : null;
+        }
+
+        private static String montant(BigDecimal montant) {
+            return montant != null ? montant.toPlainString() : null;
+        }
+    }
+}
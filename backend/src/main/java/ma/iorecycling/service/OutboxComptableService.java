@@ -0,0 +1,265 @@
+package ma.iorecycling.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ma.iorecycling.config.OutboxProperties;
+import ma.iorecycling.dto.OutboxStatutDTO;
+import ma.iorecycling.entity.OutboxComptable;
+import ma.iorecycling.event.SocieteDonneesModifieesEvent;
+import ma.iorecycling.repository.EnlevementRepository;
+import ma.iorecycling.repository.OutboxComptableRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Génération asynchrone des transactions comptables des enlèvements (outbox, voir migration V30)
+ * La demande est enregistrée dans la transaction de l'enlèvement : elle n'existe que si l'enlèvement est validé,
+ * et n'est jamais perdue. Le worker la traite hors requête, sur le pool outboxExecutor
+ * La génération remplace les transactions de l'enlèvement : rejouer une demande ne crée pas de doublon
+ */
+@Service
+@Slf4j
+public class OutboxComptableService {
+
+    private static final int LONGUEUR_ERREUR_MAX = 2000;
+    private static final int NB_ECHECS_AFFICHES = 20;
+
+    private final OutboxComptableRepository outboxRepository;
+    private final EnlevementRepository enlevementRepository;
+    private final TransactionGenerationService transactionGenerationService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ThreadPoolTaskExecutor executor;
+    private final TransactionTemplate transactionTemplate;
+    private final OutboxProperties properties;
+
+    public OutboxComptableService(OutboxComptableRepository outboxRepository,
+                                  EnlevementRepository enlevementRepository,
+                                  TransactionGenerationService transactionGenerationService,
+                                  ApplicationEventPublisher eventPublisher,
+                                  @Qualifier("outboxExecutor") ThreadPoolTaskExecutor executor,
+                                  PlatformTransactionManager transactionManager,
+                                  OutboxProperties properties) {
+        this.outboxRepository = outboxRepository;
+        this.enlevementRepository = enlevementRepository;
+        this.transactionGenerationService = transactionGenerationService;
+        this.eventPublisher = eventPublisher;
+        this.executor = executor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+    }
+
+    /**
+     * Demande la génération des transactions d'un enlèvement, dans la transaction appelante
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void planifierGeneration(Long enlevementId) {
+        outboxRepository.planifier(enlevementId);
+    }
+
+    /**
+     * Traite les demandes arrivées à échéance, lot par lot jusqu'à épuisement de la file
+     * Plusieurs instances peuvent tourner en parallèle : les demandes sont réservées avec SKIP LOCKED
+     */
+    @Scheduled(fixedDelayString = "${comptabilite.outbox.intervalle-ms:2000}")
+    public void traiterEnAttente() {
+        int traitees;
+        do {
+            traitees = traiterLot();
+        } while (traitees == properties.getLot() && !Thread.currentThread().isInterrupted());
+    }
+
+    /**
+     * Réserve un lot de demandes et les traite sur le pool, retourne le nombre de demandes réservées
+     */
+    int traiterLot() {
+        List<OutboxComptable> demandes = transactionTemplate.execute(status -> reserver());
+        if (demandes == null || demandes.isEmpty()) {
+            return 0;
+        }
+
+        List<Future<?>> taches = new ArrayList<>(demandes.size());
+        for (OutboxComptable demande : demandes) {
+            taches.add(executor.submit(() -> traiter(demande)));
+        }
+        for (Future<?> tache : taches) {
+            try {
+                tache.get();
+            } catch (ExecutionException e) {
+                log.error("Erreur inattendue du worker de l'outbox comptable", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        return demandes.size();
+    }
+
+    /**
+     * Passe les prochaines demandes EN_COURS, la date de verrouillage sert de jeton de propriété
+     */
+    private List<OutboxComptable> reserver() {
+        Instant maintenant = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        List<OutboxComptable> demandes = outboxRepository.verrouillerATraiter(
+                maintenant.minusMillis(properties.getVerrouExpirationMs()), properties.getLot());
+        for (OutboxComptable demande : demandes) {
+            demande.setStatut(OutboxComptable.Statut.EN_COURS);
+            demande.setVerrouilleLe(maintenant);
+            demande.setTentatives(demande.getTentatives() + 1);
+        }
+        return demandes;
+    }
+
+    /**
+     * Génère les transactions d'une demande réservée, replanifie la demande en cas d'échec
+     */
+    void traiter(OutboxComptable demande) {
+        try {
+            transactionTemplate.executeWithoutResult(status -> generer(demande));
+        } catch (RuntimeException e) {
+            log.warn("Échec de la génération des transactions de l'enlèvement {} (tentative {}) : {}",
+                    demande.getEnlevementId(), demande.getTentatives(), e.getMessage());
+            transactionTemplate.executeWithoutResult(status -> echouer(demande, e));
+        }
+    }
+
+    private void generer(OutboxComptable demande) {
+        OutboxComptable courante = outboxRepository.findByIdForUpdate(demande.getId()).orElse(null);
+        if (!estProprietaire(courante, demande)) {
+            return;
+        }
+
+        // Un enlèvement supprimé entre-temps n'a plus de transactions à générer
+        enlevementRepository.verrouiller(List.of(demande.getEnlevementId()));
+        enlevementRepository.findByIdWithItems(demande.getEnlevementId()).ifPresent(enlevement -> {
+            transactionGenerationService.generateTransactionsFromEnlevement(enlevement);
+            eventPublisher.publishEvent(new SocieteDonneesModifieesEvent(enlevement.getSociete().getId()));
+        });
+
+        courante.setStatut(OutboxComptable.Statut.TRAITE);
+        courante.setTraiteLe(Instant.now());
+        courante.setVerrouilleLe(null);
+        courante.setDerniereErreur(null);
+    }
+
+    /**
+     * Replanifie une demande en échec avec un délai doublé à chaque tentative, ou la passe en ECHEC
+     */
+    void echouer(OutboxComptable demande, Exception erreur) {
+        OutboxComptable courante = outboxRepository.findByIdForUpdate(demande.getId()).orElse(null);
+        if (!estProprietaire(courante, demande)) {
+            return;
+        }
+
+        courante.setVerrouilleLe(null);
+        courante.setDerniereErreur(resumer(erreur));
+        if (courante.getTentatives() >= properties.getTentativesMax()) {
+            courante.setStatut(OutboxComptable.Statut.ECHEC);
+            log.error("Génération des transactions de l'enlèvement {} abandonnée après {} tentatives",
+                    courante.getEnlevementId(), courante.getTentatives(), erreur);
+            return;
+        }
+
+        // Une demande plus récente attend déjà pour cet enlèvement : elle couvre celle-ci
+        if (outboxRepository.existsByEnlevementIdAndStatut(courante.getEnlevementId(), OutboxComptable.Statut.EN_ATTENTE)) {
+            outboxRepository.delete(courante);
+            return;
+        }
+        courante.setStatut(OutboxComptable.Statut.EN_ATTENTE);
+        courante.setProchaineTentative(Instant.now().plus(delaiAvantTentative(courante.getTentatives())));
+    }
+
+    /**
+     * Délai avant la tentative suivant la n-ième tentative échouée
+     */
+    Duration delaiAvantTentative(int tentatives) {
+        long delai = properties.getDelaiInitialMs() << Math.min(Math.max(tentatives - 1, 0), 30);
+        return Duration.ofMillis(Math.min(delai, properties.getDelaiMaxMs()));
+    }
+
+    /**
+     * La demande est toujours réservée par ce worker (pas reprise après expiration ni purgée)
+     */
+    private boolean estProprietaire(OutboxComptable courante, OutboxComptable demande) {
+        if (courante == null
+                || courante.getStatut() != OutboxComptable.Statut.EN_COURS
+                || !demande.getVerrouilleLe().equals(courante.getVerrouilleLe())) {
+            log.info("Demande {} de l'outbox comptable reprise par un autre worker, ignorée", demande.getId());
+            return false;
+        }
+        return true;
+    }
+
+    private String resumer(Exception erreur) {
+        String message = erreur.getClass().getSimpleName() + " : " + erreur.getMessage();
+        return message.length() > LONGUEUR_ERREUR_MAX ? message.substring(0, LONGUEUR_ERREUR_MAX) : message;
+    }
+
+    /**
+     * État de la file et dernières demandes en échec
+     */
+    @Transactional(readOnly = true)
+    public OutboxStatutDTO getStatut() {
+        Instant plusAncienne = outboxRepository.findPlusAncienneByStatut(OutboxComptable.Statut.EN_ATTENTE);
+        List<OutboxStatutDTO.Echec> echecs = outboxRepository.findByStatutOrderByUpdatedAtDesc(
+                        OutboxComptable.Statut.ECHEC, PageRequest.of(0, NB_ECHECS_AFFICHES)).stream()
+                .map(o -> new OutboxStatutDTO.Echec(o.getId(), o.getEnlevementId(), o.getTentatives(),
+                        o.getDerniereErreur(), o.getUpdatedAt()))
+                .toList();
+
+        return OutboxStatutDTO.builder()
+                .enAttente(outboxRepository.countByStatut(OutboxComptable.Statut.EN_ATTENTE))
+                .enCours(outboxRepository.countByStatut(OutboxComptable.Statut.EN_COURS))
+                .echecs(outboxRepository.countByStatut(OutboxComptable.Statut.ECHEC))
+                .plusAncienneEnAttente(plusAncienne)
+                .retardSecondes(plusAncienne != null ? Duration.between(plusAncienne, Instant.now()).toSeconds() : null)
+                .derniersEchecs(echecs)
+                .build();
+    }
+
+    /**
+     * Remet en file une demande en ECHEC, avec un compteur de tentatives remis à zéro
+     */
+    @Transactional
+    public void relancer(Long id) {
+        OutboxComptable demande = outboxRepository.findByIdForUpdate(id)
+                .orElseThrow(() -> new IllegalArgumentException("Demande non trouvée avec l'ID : " + id));
+        if (demande.getStatut() != OutboxComptable.Statut.ECHEC) {
+            throw new IllegalArgumentException("Seule une demande en échec peut être relancée");
+        }
+
+        if (outboxRepository.existsByEnlevementIdAndStatut(demande.getEnlevementId(), OutboxComptable.Statut.EN_ATTENTE)) {
+            outboxRepository.delete(demande);
+        } else {
+            demande.setStatut(OutboxComptable.Statut.EN_ATTENTE);
+            demande.setTentatives(0);
+            demande.setProchaineTentative(Instant.now());
+        }
+        log.info("Demande {} de l'outbox comptable relancée (enlèvement {})", id, demande.getEnlevementId());
+    }
+
+    /**
+     * Supprime les demandes traitées au-delà de la durée de conservation
+     */
+    @Scheduled(cron = "${comptabilite.outbox.purge-cron:0 0 3 * * *}")
+    @Transactional
+    public int purgerTraitees() {
+        int supprimees = outboxRepository.purgerTraitees(Instant.now().minus(Duration.ofDays(properties.getRetentionJours())));
+        log.info("Outbox comptable : {} demandes traitées purgées", supprimees);
+        return supprimees;
+    }
+}
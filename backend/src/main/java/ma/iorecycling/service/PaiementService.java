@@ -3,19 +3,25 @@ package ma.iorecycling.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import ma.iorecycling.dto.CreatePaiementRequest;
+import ma.iorecycling.dto.CursorPageDTO;
+import ma.iorecycling.dto.MontantPayeEcartDTO;
 import ma.iorecycling.dto.PaiementDTO;
 import ma.iorecycling.entity.Echeance;
 import ma.iorecycling.entity.Paiement;
 import ma.iorecycling.entity.Transaction;
+import ma.iorecycling.event.SocieteDonneesModifieesEvent;
 import ma.iorecycling.repository.EcheanceRepository;
 import ma.iorecycling.repository.PaiementRepository;
 import ma.iorecycling.repository.TransactionRepository;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -32,6 +38,7 @@ public class PaiementService {
     private final TransactionRepository transactionRepository;
     private final TransactionService transactionService;
     private final EcheanceRepository echeanceRepository;
+    private final ApplicationEventPublisher eventPublisher;
     
     /**
      * Crée un nouveau paiement
@@ -39,11 +46,14 @@ public class PaiementService {
     public PaiementDTO createPaiement(CreatePaiementRequest request, String createdBy) {
         log.info("Création d'un nouveau paiement pour transaction {}", request.getTransactionId());
         
+        // Mettre à jour le montant payé de manière atomique : la mise à jour n'a lieu
+        // que si le montant ne dépasse pas le montant restant
+        int nbMisesAJour = transactionRepository.ajouterMontantPaye(request.getTransactionId(), request.getMontant());
+        
         Transaction transaction = transactionRepository.findById(request.getTransactionId())
                 .orElseThrow(() -> new RuntimeException("Transaction non trouvée: " + request.getTransactionId()));
         
-        // Vérifier que le montant ne dépasse pas le montant restant
-        if (request.getMontant().compareTo(transaction.getMontantRestant()) > 0) {
+        if (nbMisesAJour == 0) {
             throw new RuntimeException("Le montant du paiement ne peut pas dépasser le montant restant");
         }
         
@@ -61,12 +71,18 @@ public class PaiementService {
         paiement = paiementRepository.save(paiement);
         
         // Attribution automatique intelligente aux échéances
-        attribuerPaiementAuxEcheances(paiement, transaction);
+        List<Echeance> echeancesPayees = attribuerAuxEcheances(paiement,
+                echeanceRepository.findEcheancesEnAttenteByTransactionId(transaction.getId()));
+        echeanceRepository.saveAll(echeancesPayees);
+        if (paiement.getEcheance() != null) {
+            paiementRepository.save(paiement);
+        }
         
         // Mettre à jour le statut de la transaction
         transactionService.updateTransaction(transaction.getId(), 
                 ma.iorecycling.dto.UpdateTransactionRequest.builder().build());
         
+        eventPublisher.publishEvent(new SocieteDonneesModifieesEvent(transaction.getSociete().getId()));
         log.info("Paiement créé avec ID {}", paiement.getId());
         return toDTO(paiement);
     }
@@ -77,21 +93,25 @@ public class PaiementService {
      * 1. Si le montant correspond exactement à une échéance, l'attribuer à cette échéance
      * 2. Sinon, attribuer par ordre de date (plus anciennes d'abord) jusqu'à épuisement du montant
      * 3. Marquer les échéances comme PAYEE quand elles sont complètement couvertes
+     * 
+     * Les échéances sont celles de la transaction du paiement, triées par date ; celles déjà payées sont ignorées.
+     * Retourne les échéances marquées PAYEE ; l'appelant les enregistre, ainsi que le paiement s'il a été lié à une échéance.
      */
-    private void attribuerPaiementAuxEcheances(Paiement paiement, Transaction transaction) {
-        // Récupérer toutes les échéances en attente de la transaction, triées par date
-        List<Echeance> echeancesEnAttente = echeanceRepository
-                .findEcheancesEnAttenteByTransactionId(transaction.getId());
+    public List<Echeance> attribuerAuxEcheances(Paiement paiement, List<Echeance> echeances) {
+        List<Echeance> echeancesEnAttente = echeances.stream()
+                .filter(e -> e.getStatut() == Echeance.StatutEcheance.EN_ATTENTE)
+                .toList();
         
         if (echeancesEnAttente.isEmpty()) {
-            log.debug("Aucune échéance en attente pour la transaction {}", transaction.getId());
-            return;
+            log.debug("Aucune échéance en attente pour la transaction {}", paiement.getTransaction().getId());
+            return List.of();
         }
         
         final BigDecimal montantPaiement = paiement.getMontant();
         BigDecimal montantRestant = montantPaiement;
+        List<Echeance> echeancesPayees = new ArrayList<>();
         log.info("Attribution du paiement {} ({} MAD) aux échéances de la transaction {}", 
-                paiement.getId(), montantPaiement, transaction.getId());
+                paiement.getId(), montantPaiement, paiement.getTransaction().getId());
         
         // Stratégie 1 : Chercher une correspondance exacte de montant
         Echeance echeanceExacte = echeancesEnAttente.stream()
@@ -103,10 +123,9 @@ public class PaiementService {
             // Correspondance exacte trouvée
             paiement.setEcheance(echeanceExacte);
             echeanceExacte.setStatut(Echeance.StatutEcheance.PAYEE);
-            echeanceRepository.save(echeanceExacte);
             log.info("Paiement {} attribué à l'échéance {} (correspondance exacte de montant)", 
                     paiement.getId(), echeanceExacte.getId());
-            return;
+            return List.of(echeanceExacte);
         }
         
         // Stratégie 2 : Attribution par ordre de date (plus anciennes d'abord)
@@ -124,7 +143,7 @@ public class PaiementService {
                     paiement.setEcheance(echeance);
                 }
                 echeance.setStatut(Echeance.StatutEcheance.PAYEE);
-                echeanceRepository.save(echeance);
+                echeancesPayees.add(echeance);
                 montantRestant = montantRestant.subtract(montantEcheance);
                 log.info("Échéance {} marquée comme payée (montant: {} MAD)", 
                         echeance.getId(), montantEcheance);
@@ -137,7 +156,7 @@ public class PaiementService {
                         paiement.setEcheance(echeance);
                     }
                     echeance.setStatut(Echeance.StatutEcheance.PAYEE);
-                    echeanceRepository.save(echeance);
+                    echeancesPayees.add(echeance);
                     log.info("Échéance {} marquée comme payée (paiement partiel: {} MAD sur {} MAD)", 
                             echeance.getId(), montantRestant, montantEcheance);
                 } else {
@@ -150,15 +169,11 @@ public class PaiementService {
             }
         }
         
-        // Sauvegarder le paiement avec le lien vers l'échéance si attribué
-        if (paiement.getEcheance() != null) {
-            paiementRepository.save(paiement);
-        }
-        
         if (montantRestant.compareTo(BigDecimal.ZERO) > 0) {
             log.warn("Montant restant non attribué: {} MAD pour le paiement {}", 
                     montantRestant, paiement.getId());
         }
+        return echeancesPayees;
     }
     
     /**
@@ -190,6 +205,22 @@ public class PaiementService {
                 .map(this::toDTO);
     }
     
+    /**
+     * Page de paiements d'une société par curseur (keyset)
+     * Le comptage total n'est fait que si avecTotal est demandé
+     */
+    @Transactional(readOnly = true)
+    public CursorPageDTO<PaiementDTO> getPaiementsBySocieteApres(Long societeId, String curseur,
+                                                                 int taille, boolean avecTotal) {
+        CursorPageDTO.Cursor apres = CursorPageDTO.Cursor.decoder(curseur);
+        int n = CursorPageDTO.taille(taille);
+        List<Paiement> lignes = paiementRepository.findBySocieteIdApres(
+                societeId, apres.date(), apres.id(), Limit.of(n + 1));
+        Long total = avecTotal ? paiementRepository.countBySocieteId(societeId) : null;
+        return CursorPageDTO.of(lignes, n, p -> new CursorPageDTO.Cursor(p.getDatePaiement(), p.getId()), total)
+                .map(this::toDTO);
+    }
+    
     /**
      * Supprime un paiement
      */
@@ -199,11 +230,20 @@ public class PaiementService {
                 .orElseThrow(() -> new RuntimeException("Paiement non trouvé: " + id));
         
         Long transactionId = paiement.getTransaction().getId();
+        Long societeId = paiement.getTransaction().getSociete().getId();
+        boolean paiementValide = paiement.getStatut() == Paiement.StatutPaiement.VALIDE;
+        BigDecimal montant = paiement.getMontant();
         paiementRepository.delete(paiement);
         
+        // Retirer le paiement du montant payé de la transaction
+        if (paiementValide) {
+            transactionRepository.retirerMontantPaye(transactionId, montant);
+        }
+        
         // Mettre à jour le statut de la transaction
         transactionService.updateTransaction(transactionId, 
                 ma.iorecycling.dto.UpdateTransactionRequest.builder().build());
+        eventPublisher.publishEvent(new SocieteDonneesModifieesEvent(societeId));
     }
     
     private PaiementDTO toDTO(Paiement paiement) {
@@ -222,5 +262,32 @@ public class PaiementService {
                 .updatedAt(paiement.getUpdatedAt())
                 .build();
     }
+    
+    /**
+     * Liste les transactions dont le montant payé enregistré diffère de la somme des paiements valides
+     */
+    @Transactional(readOnly = true)
+    public List<MontantPayeEcartDTO> verifierMontantsPayes() {
+        List<MontantPayeEcartDTO> ecarts = transactionRepository.findEcartsMontantPaye().stream()
+                .map(ligne -> MontantPayeEcartDTO.builder()
+                        .transactionId(((Number) ligne[0]).longValue())
+                        .montantPayeEnregistre((BigDecimal) ligne[1])
+                        .montantPayeCalcule((BigDecimal) ligne[2])
+                        .build())
+                .collect(Collectors.toList());
+        
+        if (!ecarts.isEmpty()) {
+            log.warn("{} transactions avec un montant payé incohérent", ecarts.size());
+        }
+        return ecarts;
+    }
+    
+    /**
+     * Recalcule le montant payé des transactions incohérentes depuis leurs paiements valides
+     */
+    public int corrigerMontantsPayes() {
+        int nbCorrigees = transactionRepository.corrigerMontantsPayes();
+        log.info("Montant payé recalculé pour {} transactions", nbCorrigees);
+        return nbCorrigees;
+    }
 }
-
@@ -0,0 +1,411 @@
+package ma.iorecycling.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ma.iorecycling.dto.ApplicationRapprochementRequest;
+import ma.iorecycling.dto.CreatePaiementRequest;
+import ma.iorecycling.dto.PropositionRapprochementDTO;
+import ma.iorecycling.dto.PropositionRapprochementDTO.Critere;
+import ma.iorecycling.dto.PropositionRapprochementDTO.StatutProposition;
+import ma.iorecycling.dto.RapprochementDTO;
+import ma.iorecycling.dto.ResultatRapprochementDTO;
+import ma.iorecycling.dto.TransactionOuverteDTO;
+import ma.iorecycling.entity.Echeance;
+import ma.iorecycling.entity.Paiement;
+import ma.iorecycling.entity.Transaction;
+import ma.iorecycling.event.SocieteDonneesModifieesEvent;
+import ma.iorecycling.exception.RapprochementRefuseException;
+import ma.iorecycling.repository.EcheanceRepository;
+import ma.iorecycling.repository.PaiementRepository;
+import ma.iorecycling.repository.TransactionRepository;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Rapprochement d'un relevé bancaire avec les transactions ouvertes
+ *
+ * proposer lit le relevé (ReleveBancaireParser) et charge en une requête les transactions ouvertes, indexées
+ * en mémoire par numéro (transaction, enlèvement, vente) et par montant restant. Chaque ligne est d'abord
+ * rapprochée par un numéro cité dans son libellé ou sa référence, puis, à défaut, par un montant restant égal
+ * dont la date est dans la tolérance. Un crédit est rapproché d'une recette, un débit d'une dépense, et le
+ * montant restant consommé par une ligne n'est plus proposé aux suivantes.
+ *
+ * appliquer enregistre les propositions acceptées en une transaction : montants payés mis à jour par un lot
+ * JDBC, échéances en attente chargées en une requête, paiements insérés par lots. Un paiement refusé
+ * (montant supérieur au restant) annule l'ensemble ; les transactions refusées sont retournées avec leur motif.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class RapprochementBancaireService {
+
+    /**
+     * Nombre maximal de lignes d'un relevé
+     */
+    static final int LIGNES_MAX = ApplicationRapprochementRequest.PAIEMENTS_MAX;
+
+    /**
+     * Taille des listes IN de recherche des références déjà enregistrées
+     */
+    private static final int TAILLE_LOT_REFERENCES = 1000;
+
+    /**
+     * Longueur minimale d'un numéro indexé, pour ne pas rapprocher sur un mot court du libellé
+     */
+    private static final int LONGUEUR_MIN_NUMERO = 4;
+
+    private static final String AJOUTER_MONTANT_PAYE =
+            "UPDATE transaction SET montant_paye = montant_paye + ? WHERE id = ? AND montant - montant_paye >= ?";
+
+    private final ReleveBancaireParser releveBancaireParser;
+    private final TransactionRepository transactionRepository;
+    private final PaiementRepository paiementRepository;
+    private final EcheanceRepository echeanceRepository;
+    private final PaiementService paiementService;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    /**
+     * Propose une transaction pour chaque ligne du relevé, sans rien enregistrer
+     * societeId restreint les transactions candidates (null : toutes les sociétés)
+     * IllegalArgumentException si le fichier est illisible ou trop long
+     */
+    @Transactional(readOnly = true)
+    public RapprochementDTO proposer(InputStream fichier, String nomFichier, Long societeId, int toleranceJours)
+            throws IOException {
+        long debut = System.currentTimeMillis();
+        if (toleranceJours < 0) {
+            throw new IllegalArgumentException("La tolérance de date ne peut pas être négative");
+        }
+        List<ReleveBancaireParser.Ligne> lignes = releveBancaireParser.lire(fichier, nomFichier, LIGNES_MAX);
+
+        List<TransactionOuverteDTO> transactions = transactionRepository.findTransactionsOuvertes(societeId);
+        RapprochementDTO rapprochement = rapprocher(lignes, transactions, referencesExistantes(lignes), toleranceJours);
+
+        rapprochement.setDureeMs(System.currentTimeMillis() - debut);
+        log.info("Rapprochement de {} lignes sur {} transactions ouvertes en {} ms : {} proposées, {} ambiguës, {} non rapprochées",
+                lignes.size(), transactions.size(), rapprochement.getDureeMs(), rapprochement.getLignesProposees(),
+                rapprochement.getLignesAmbigues(), rapprochement.getLignesNonRapprochees());
+        return rapprochement;
+    }
+
+    /**
+     * Références bancaires du relevé déjà portées par un paiement (relevé ou ligne déjà rapprochés)
+     */
+    private Set<String> referencesExistantes(List<ReleveBancaireParser.Ligne> lignes) {
+        List<String> references = lignes.stream()
+                .map(ReleveBancaireParser.Ligne::reference)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        Set<String> existantes = new HashSet<>();
+        for (int i = 0; i < references.size(); i += TAILLE_LOT_REFERENCES) {
+            existantes.addAll(paiementRepository.findReferencesExistantes(
+                    references.subList(i, Math.min(i + TAILLE_LOT_REFERENCES, references.size()))));
+        }
+        return existantes;
+    }
+
+    /**
+     * Rapproche les lignes des transactions : d'abord toutes les lignes par numéro, puis les restantes par montant
+     */
+    RapprochementDTO rapprocher(List<ReleveBancaireParser.Ligne> lignes, List<TransactionOuverteDTO> transactions,
+                                Set<String> referencesExistantes, int toleranceJours) {
+        Index index = new Index(transactions);
+        PropositionRapprochementDTO[] propositions = new PropositionRapprochementDTO[lignes.size()];
+
+        for (int i = 0; i < lignes.size(); i++) {
+            ReleveBancaireParser.Ligne ligne = lignes.get(i);
+            if (ligne.reference() != null && referencesExistantes.contains(ligne.reference())) {
+                propositions[i] = proposition(ligne, StatutProposition.DEJA_ENREGISTREE, null, 0, null);
+            } else {
+                propositions[i] = index.parNumero(ligne);
+            }
+        }
+        for (int i = 0; i < lignes.size(); i++) {
+            if (propositions[i] == null) {
+                propositions[i] = index.parMontant(lignes.get(i), toleranceJours);
+            }
+        }
+
+        RapprochementDTO rapprochement = RapprochementDTO.builder()
+                .lignesLues(lignes.size())
+                .montantPropose(BigDecimal.ZERO)
+                .propositions(new ArrayList<>(Arrays.asList(propositions)))
+                .build();
+        for (PropositionRapprochementDTO p : propositions) {
+            switch (p.getStatut()) {
+                case PROPOSEE -> rapprochement.setLignesProposees(rapprochement.getLignesProposees() + 1);
+                case AMBIGUE -> rapprochement.setLignesAmbigues(rapprochement.getLignesAmbigues() + 1);
+                case NON_RAPPROCHEE -> rapprochement.setLignesNonRapprochees(rapprochement.getLignesNonRapprochees() + 1);
+                case DEJA_ENREGISTREE -> rapprochement.setLignesDejaEnregistrees(rapprochement.getLignesDejaEnregistrees() + 1);
+            }
+            if (p.getMontantAttribue() != null) {
+                rapprochement.setMontantPropose(rapprochement.getMontantPropose().add(p.getMontantAttribue()));
+            }
+        }
+        return rapprochement;
+    }
+
+    /**
+     * Transactions ouvertes indexées par numéro normalisé et par montant restant, avec le restant non encore proposé
+     */
+    private static final class Index {
+        private final Map<String, List<TransactionOuverteDTO>> parNumero = new HashMap<>();
+        private final Map<BigDecimal, List<TransactionOuverteDTO>> parMontant = new HashMap<>();
+        private final Map<Long, BigDecimal> restants = new HashMap<>();
+
+        Index(List<TransactionOuverteDTO> transactions) {
+            for (TransactionOuverteDTO t : transactions) {
+                restants.put(t.getId(), t.getMontantRestant());
+                parMontant.computeIfAbsent(cleMontant(t.getMontantRestant()), k -> new ArrayList<>()).add(t);
+                for (String numero : new String[]{t.getNumeroReference(), t.getNumeroEnlevement(), t.getNumeroVente()}) {
+                    String cle = normaliser(numero);
+                    if (cle.length() >= LONGUEUR_MIN_NUMERO) {
+                        parNumero.computeIfAbsent(cle, k -> new ArrayList<>()).add(t);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Transaction dont un numéro est cité : celle dont le restant égale le montant, sinon la plus ancienne
+         * Retourne null si aucun numéro ne correspond (la ligne passe au rapprochement par montant)
+         */
+        PropositionRapprochementDTO parNumero(ReleveBancaireParser.Ligne ligne) {
+            Map<Long, TransactionOuverteDTO> candidats = new LinkedHashMap<>();
+            for (String mot : mots(ligne)) {
+                for (TransactionOuverteDTO t : parNumero.getOrDefault(mot, List.of())) {
+                    if (t.getType() == typeAttendu(ligne) && restant(t).signum() > 0) {
+                        candidats.putIfAbsent(t.getId(), t);
+                    }
+                }
+            }
+            if (candidats.isEmpty()) {
+                return null;
+            }
+            TransactionOuverteDTO retenue = candidats.values().stream()
+                    .filter(t -> restant(t).compareTo(ligne.montant()) == 0)
+                    .findFirst()
+                    .orElseGet(() -> candidats.values().stream()
+                            .min(Comparator.comparing(TransactionOuverteDTO::getDateTransaction)
+                                    .thenComparing(TransactionOuverteDTO::getId))
+                            .orElseThrow());
+            return retenir(ligne, retenue, StatutProposition.PROPOSEE, Critere.REFERENCE, candidats.size());
+        }
+
+        /**
+         * Transaction de même sens dont le restant égale le montant, la plus proche en date dans la tolérance
+         */
+        PropositionRapprochementDTO parMontant(ReleveBancaireParser.Ligne ligne, int toleranceJours) {
+            List<TransactionOuverteDTO> candidats = parMontant.getOrDefault(cleMontant(ligne.montant()), List.of()).stream()
+                    .filter(t -> t.getType() == typeAttendu(ligne))
+                    .filter(t -> restant(t).compareTo(ligne.montant()) == 0)
+                    .filter(t -> Math.abs(ecartJours(ligne, t)) <= toleranceJours)
+                    .sorted(Comparator.comparingLong((TransactionOuverteDTO t) -> Math.abs(ecartJours(ligne, t)))
+                            .thenComparing(TransactionOuverteDTO::getId))
+                    .toList();
+            if (candidats.isEmpty()) {
+                return proposition(ligne, StatutProposition.NON_RAPPROCHEE, null, 0, null);
+            }
+            TransactionOuverteDTO retenue = candidats.get(0);
+            boolean ambigue = candidats.size() > 1
+                    && Math.abs(ecartJours(ligne, candidats.get(1))) == Math.abs(ecartJours(ligne, retenue));
+            return retenir(ligne, retenue, ambigue ? StatutProposition.AMBIGUE : StatutProposition.PROPOSEE,
+                    Critere.MONTANT_DATE, candidats.size());
+        }
+
+        /**
+         * Propose la transaction pour le montant de la ligne, plafonné au restant, qui est décompté
+         */
+        private PropositionRapprochementDTO retenir(ReleveBancaireParser.Ligne ligne, TransactionOuverteDTO t,
+                                                    StatutProposition statut, Critere critere, int nombreCandidats) {
+            BigDecimal restant = restant(t);
+            BigDecimal attribue = ligne.montant().min(restant);
+            restants.put(t.getId(), restant.subtract(attribue));
+
+            PropositionRapprochementDTO p = proposition(ligne, statut, critere, nombreCandidats, t);
+            p.setMontantRestant(restant);
+            p.setMontantAttribue(attribue);
+            return p;
+        }
+
+        private BigDecimal restant(TransactionOuverteDTO t) {
+            return restants.get(t.getId());
+        }
+
+        private static Transaction.TypeTransaction typeAttendu(ReleveBancaireParser.Ligne ligne) {
+            return ligne.credit() ? Transaction.TypeTransaction.RECETTE : Transaction.TypeTransaction.DEPENSE;
+        }
+
+        private static long ecartJours(ReleveBancaireParser.Ligne ligne, TransactionOuverteDTO t) {
+            return ChronoUnit.DAYS.between(t.getDateTransaction(), ligne.date());
+        }
+
+        private static BigDecimal cleMontant(BigDecimal montant) {
+            return montant.setScale(2, RoundingMode.HALF_UP);
+        }
+
+        /**
+         * Mots du libellé et de la référence bancaire, normalisés comme les numéros indexés
+         */
+        private static Set<String> mots(ReleveBancaireParser.Ligne ligne) {
+            Set<String> mots = new LinkedHashSet<>();
+            for (String texte : new String[]{ligne.reference(), ligne.libelle()}) {
+                if (texte == null) {
+                    continue;
+                }
+                mots.add(normaliser(texte));
+                for (String mot : texte.split("[\\s,;:()\\[\\]]+")) {
+                    mots.add(normaliser(mot));
+                }
+            }
+            return mots;
+        }
+
+        /**
+         * Numéro sans séparateurs ni casse ("enl-2024/0012" -> ENL20240012)
+         */
+        private static String normaliser(String numero) {
+            if (numero == null) {
+                return "";
+            }
+            return numero.replaceAll("[^\\p{Alnum}]", "").toUpperCase(Locale.ROOT);
+        }
+    }
+
+    private static PropositionRapprochementDTO proposition(ReleveBancaireParser.Ligne ligne, StatutProposition statut,
+                                                           Critere critere, int nombreCandidats, TransactionOuverteDTO t) {
+        PropositionRapprochementDTO.PropositionRapprochementDTOBuilder p = PropositionRapprochementDTO.builder()
+                .numeroLigne(ligne.numero())
+                .dateOperation(ligne.date())
+                .montant(ligne.montant())
+                .credit(ligne.credit())
+                .libelle(ligne.libelle())
+                .referenceBancaire(ligne.reference())
+                .statut(statut)
+                .critere(critere)
+                .nombreCandidats(nombreCandidats);
+        if (t != null) {
+            p.transactionId(t.getId())
+                    .societeId(t.getSocieteId())
+                    .societeNom(t.getSocieteNom())
+                    .dateTransaction(t.getDateTransaction())
+                    .description(t.getDescription())
+                    .numeroReference(t.getNumeroReference())
+                    .ecartJours(ChronoUnit.DAYS.between(t.getDateTransaction(), ligne.date()));
+        }
+        return p.build();
+    }
+
+    /**
+     * Enregistre les paiements des rapprochements acceptés, tous ou aucun
+     * RapprochementRefuseException si un montant dépasse le restant de sa transaction ou si une transaction n'existe pas
+     */
+    @Transactional
+    public ResultatRapprochementDTO appliquer(List<CreatePaiementRequest> demandes, String createdBy) {
+        long debut = System.currentTimeMillis();
+        if (demandes.size() > LIGNES_MAX) {
+            throw new IllegalArgumentException("Trop de paiements : " + demandes.size() + " (maximum " + LIGNES_MAX + ")");
+        }
+
+        // Montant payé ajouté une fois par transaction, dans l'ordre des ids pour ne pas croiser les verrous
+        Map<Long, BigDecimal> totaux = new TreeMap<>();
+        demandes.forEach(d -> totaux.merge(d.getTransactionId(), d.getMontant(), BigDecimal::add));
+        List<Map.Entry<Long, BigDecimal>> mises = new ArrayList<>(totaux.entrySet());
+        int[][] resultats = jdbcTemplate.batchUpdate(AJOUTER_MONTANT_PAYE, mises, mises.size(), (ps, e) -> {
+            ps.setBigDecimal(1, e.getValue());
+            ps.setLong(2, e.getKey());
+            ps.setBigDecimal(3, e.getValue());
+        });
+        Map<Long, BigDecimal> refusees = new TreeMap<>();
+        int rang = 0;
+        for (int[] lot : resultats) {
+            for (int nbLignes : lot) {
+                if (nbLignes != 1) {
+                    refusees.put(mises.get(rang).getKey(), mises.get(rang).getValue());
+                }
+                rang++;
+            }
+        }
+        if (!refusees.isEmpty()) {
+            throw new RapprochementRefuseException(refus(refusees));
+        }
+
+        // Transactions lues après la mise à jour : montant payé à jour pour le statut
+        Map<Long, Transaction> transactions = transactionRepository.findAllById(totaux.keySet()).stream()
+                .collect(Collectors.toMap(Transaction::getId, Function.identity()));
+        Map<Long, List<Echeance>> echeances = echeanceRepository.findEcheancesEnAttenteByTransactionIdIn(totaux.keySet())
+                .stream()
+                .collect(Collectors.groupingBy(e -> e.getTransaction().getId()));
+
+        List<Paiement> paiements = new ArrayList<>(demandes.size());
+        List<Echeance> echeancesPayees = new ArrayList<>();
+        for (CreatePaiementRequest demande : demandes) {
+            Paiement paiement = Paiement.builder()
+                    .transaction(transactions.get(demande.getTransactionId()))
+                    .montant(demande.getMontant())
+                    .datePaiement(demande.getDatePaiement())
+                    .modePaiement(demande.getModePaiement())
+                    .reference(demande.getReference())
+                    .notes(demande.getNotes())
+                    .statut(Paiement.StatutPaiement.VALIDE)
+                    .createdBy(createdBy)
+                    .build();
+            echeancesPayees.addAll(paiementService.attribuerAuxEcheances(paiement,
+                    echeances.getOrDefault(demande.getTransactionId(), List.of())));
+            paiements.add(paiement);
+        }
+        paiementRepository.saveAll(paiements);
+        echeanceRepository.saveAll(echeancesPayees);
+        transactions.values().forEach(Transaction::recalculerStatut);
+
+        transactions.values().stream()
+                .map(t -> t.getSociete().getId())
+                .distinct()
+                .forEach(id -> eventPublisher.publishEvent(new SocieteDonneesModifieesEvent(id)));
+
+        ResultatRapprochementDTO resultat = ResultatRapprochementDTO.builder()
+                .paiementsCrees(paiements.size())
+                .montantTotal(totaux.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add))
+                .transactionsSoldees(transactions.values().stream()
+                        .filter(t -> t.getStatut() == Transaction.StatutTransaction.PAYEE)
+                        .count())
+                .echeancesSoldees(echeancesPayees.size())
+                .dureeMs(System.currentTimeMillis() - debut)
+                .build();
+        log.info("Rapprochement appliqué en {} ms : {} paiements sur {} transactions, {} MAD",
+                resultat.getDureeMs(), resultat.getPaiementsCrees(), transactions.size(), resultat.getMontantTotal());
+        return resultat;
+    }
+
+    /**
+     * Motif de refus de chaque transaction dont le montant payé n'a pas été mis à jour
+     * (lue dans la transaction en cours : son restant n'a pas été modifié par le lot)
+     */
+    private List<ResultatRapprochementDTO.Refus> refus(Map<Long, BigDecimal> refusees) {
+        Map<Long, Transaction> existantes = transactionRepository.findAllById(refusees.keySet()).stream()
+                .collect(Collectors.toMap(Transaction::getId, Function.identity()));
+        List<ResultatRapprochementDTO.Refus> refus = new ArrayList<>(refusees.size());
+        refusees.forEach((id, montant) -> {
+            Transaction t = existantes.get(id);
+            refus.add(t == null
+                    ? new ResultatRapprochementDTO.Refus(id, montant, null,
+                            ResultatRapprochementDTO.MotifRefus.TRANSACTION_INEXISTANTE)
+                    : new ResultatRapprochementDTO.Refus(id, montant, t.getMontantRestant(),
+                            ResultatRapprochementDTO.MotifRefus.MONTANT_SUPERIEUR_AU_RESTANT));
+        });
+        return refus;
+    }
+}
@@ -0,0 +1,334 @@
+package ma.iorecycling.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ma.iorecycling.config.RegenerationProperties;
+import ma.iorecycling.dto.CreateRegenerationJobRequest;
+import ma.iorecycling.dto.RegenerationJobDTO;
+import ma.iorecycling.entity.Enlevement;
+import ma.iorecycling.entity.RegenerationJob;
+import ma.iorecycling.event.SocieteDonneesModifieesEvent;
+import ma.iorecycling.repository.EnlevementRepository;
+import ma.iorecycling.repository.RegenerationJobRepository;
+import ma.iorecycling.repository.SocieteRepository;
+import ma.iorecycling.repository.TransactionRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Régénération en masse des transactions des enlèvements (jobs, voir migration V32)
+ * Un job parcourt les enlèvements par id croissant, par lots : chargement des items et des transactions
+ * du lot en deux requêtes, écritures groupées, avancement validé dans la transaction du lot
+ * Après un arrêt, le job reprend après le dernier lot validé (au démarrage ou par la reprise planifiée)
+ * Chaque avancement exige le jeton posé à la réservation : un worker dont le job a été repris ou annulé
+ * voit son dernier lot annulé et s'arrête
+ */
+@Service
+@Slf4j
+public class RegenerationTransactionsService {
+
+    private static final LocalDate DATE_MIN = LocalDate.of(1900, 1, 1);
+    private static final LocalDate DATE_MAX = LocalDate.of(9999, 12, 31);
+    private static final int NB_JOBS_AFFICHES = 20;
+    private static final int LONGUEUR_ERREUR_MAX = 2000;
+
+    private final RegenerationJobRepository jobRepository;
+    private final EnlevementRepository enlevementRepository;
+    private final TransactionRepository transactionRepository;
+    private final SocieteRepository societeRepository;
+    private final TransactionGenerationService transactionGenerationService;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ThreadPoolTaskExecutor executor;
+    private final TransactionTemplate transactionTemplate;
+    private final RegenerationProperties properties;
+
+    // Jobs soumis au pool par cette instance, pour ne pas les soumettre deux fois
+    private final Set<Long> jobsSoumis = ConcurrentHashMap.newKeySet();
+
+    public RegenerationTransactionsService(RegenerationJobRepository jobRepository,
+                                           EnlevementRepository enlevementRepository,
+                                           TransactionRepository transactionRepository,
+                                           SocieteRepository societeRepository,
+                                           TransactionGenerationService transactionGenerationService,
+                                           ApplicationEventPublisher eventPublisher,
+                                           @Qualifier("regenerationExecutor") ThreadPoolTaskExecutor executor,
+                                           PlatformTransactionManager transactionManager,
+                                           RegenerationProperties properties) {
+        this.jobRepository = jobRepository;
+        this.enlevementRepository = enlevementRepository;
+        this.transactionRepository = transactionRepository;
+        this.societeRepository = societeRepository;
+        this.transactionGenerationService = transactionGenerationService;
+        this.eventPublisher = eventPublisher;
+        this.executor = executor;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.properties = properties;
+    }
+
+    /**
+     * Crée un job et le soumet au pool, retourne immédiatement
+     */
+    public RegenerationJobDTO lancer(CreateRegenerationJobRequest request, String demandePar) {
+        if (request.getDateDebut() != null && request.getDateFin() != null
+                && request.getDateDebut().isAfter(request.getDateFin())) {
+            throw new IllegalArgumentException("La date de début doit précéder la date de fin");
+        }
+        if (request.getSocieteId() != null && !societeRepository.existsById(request.getSocieteId())) {
+            throw new IllegalArgumentException("Société non trouvée avec l'ID : " + request.getSocieteId());
+        }
+
+        long total = enlevementRepository.countBySocieteIdOptionnelAndDateBetween(request.getSocieteId(),
+                debut(request.getDateDebut()), fin(request.getDateFin()));
+        RegenerationJob job = jobRepository.save(RegenerationJob.builder()
+                .societeId(request.getSocieteId())
+                .dateDebut(request.getDateDebut())
+                .dateFin(request.getDateFin())
+                .total(total)
+                .demandePar(demandePar)
+                .build());
+        log.info("Job de régénération {} créé : société {}, du {} au {}, {} enlèvements",
+                job.getId(), job.getSocieteId(), job.getDateDebut(), job.getDateFin(), total);
+
+        soumettre(job.getId());
+        return toDTO(job);
+    }
+
+    public RegenerationJobDTO getJob(Long id) {
+        return jobRepository.findById(id)
+                .map(this::toDTO)
+                .orElseThrow(() -> new IllegalArgumentException("Job non trouvé avec l'ID : " + id));
+    }
+
+    public List<RegenerationJobDTO> getDerniersJobs() {
+        return jobRepository.findAllByOrderByIdDesc(PageRequest.of(0, NB_JOBS_AFFICHES)).stream()
+                .map(this::toDTO)
+                .toList();
+    }
+
+    /**
+     * Annule un job en attente ou en cours, le lot en cours d'écriture est annulé avec lui
+     */
+    public RegenerationJobDTO annuler(Long id) {
+        int annule = transactionTemplate.execute(status -> jobRepository.changerStatut(id, RegenerationJob.Statut.ANNULE,
+                List.of(RegenerationJob.Statut.EN_ATTENTE, RegenerationJob.Statut.EN_COURS), Instant.now()));
+        RegenerationJobDTO job = getJob(id);
+        if (annule == 0) {
+            throw new IllegalArgumentException("Le job " + id + " est déjà " + job.getStatut());
+        }
+        log.info("Job de régénération {} annulé", id);
+        return job;
+    }
+
+    /**
+     * Relance les jobs en attente et ceux abandonnés par un worker arrêté (au démarrage puis périodiquement)
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${comptabilite.regeneration.reprise-intervalle-ms:60000}",
+               initialDelayString = "${comptabilite.regeneration.reprise-intervalle-ms:60000}")
+    public void reprendreJobs() {
+        jobRepository.findIdsAReprendre(expiration()).forEach(this::soumettre);
+    }
+
+    private void soumettre(Long jobId) {
+        if (!jobsSoumis.add(jobId)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    executer(jobId);
+                } finally {
+                    jobsSoumis.remove(jobId);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            jobsSoumis.remove(jobId);
+            log.info("Job de régénération {} en attente d'un thread, lancé par la prochaine reprise", jobId);
+        }
+    }
+
+    /**
+     * Exécute un job lot par lot jusqu'à épuisement, annulation, reprise par un autre worker ou interruption
+     */
+    void executer(Long jobId) {
+        // Jeton de propriété, tronqué à la précision de la colonne pour être comparé tel quel
+        Instant verrou = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        Integer reserve = transactionTemplate.execute(status -> jobRepository.reserver(jobId, verrou, expiration()));
+        if (reserve == null || reserve == 0) {
+            return;
+        }
+        RegenerationJob job = jobRepository.findById(jobId).orElseThrow();
+        log.info("Job de régénération {} démarré à partir de l'enlèvement {}", jobId, job.getDernierEnlevementId());
+
+        long dernierId = job.getDernierEnlevementId();
+        LocalDate dateDebut = debut(job.getDateDebut());
+        LocalDate dateFin = fin(job.getDateFin());
+        while (!Thread.currentThread().isInterrupted()) {
+            if (jobRepository.findStatutById(jobId) != RegenerationJob.Statut.EN_COURS) {
+                log.info("Job de régénération {} arrêté ({})", jobId, jobRepository.findStatutById(jobId));
+                return;
+            }
+            List<Long> ids = enlevementRepository.findIdsApres(dernierId, job.getSocieteId(), dateDebut, dateFin,
+                    Limit.of(properties.getTailleLot()));
+            if (ids.isEmpty()) {
+                transactionTemplate.execute(status -> jobRepository.terminer(jobId, verrou, Instant.now()));
+                log.info("Job de régénération {} terminé", jobId);
+                return;
+            }
+
+            if (!traiterLot(jobId, verrou, ids)) {
+                log.info("Job de régénération {} annulé ou repris par un autre worker, arrêt", jobId);
+                return;
+            }
+            dernierId = ids.get(ids.size() - 1);
+            pause();
+        }
+    }
+
+    /**
+     * Régénère un lot dans une transaction, ou enlèvement par enlèvement si le lot échoue
+     * Retourne false si le worker n'est plus propriétaire du job
+     */
+    private boolean traiterLot(Long jobId, Instant verrou, List<Long> ids) {
+        long debut = System.currentTimeMillis();
+        try {
+            return Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                enlevementRepository.verrouiller(ids);
+                List<Enlevement> enlevements = enlevementRepository.findAllWithItemsByIdIn(ids);
+                TransactionGenerationService.Bilan bilan = transactionGenerationService.regenerer(
+                        enlevements, transactionRepository.findByEnlevementIdIn(ids));
+                if (!avancer(jobId, verrou, ids.size(), 0, bilan, ids.get(ids.size() - 1), debut, null)) {
+                    status.setRollbackOnly();
+                    return false;
+                }
+                publierModifications(enlevements);
+                return true;
+            }));
+        } catch (RuntimeException e) {
+            log.warn("Lot du job de régénération {} en échec ({}), reprise enlèvement par enlèvement", jobId, e.getMessage());
+            return traiterUnParUn(jobId, verrou, ids);
+        }
+    }
+
+    /**
+     * Régénère un lot enlèvement par enlèvement, chacun dans sa transaction avec son avancement :
+     * le signe de vie suit chaque enlèvement et une reprise repart du dernier enlèvement validé
+     */
+    private boolean traiterUnParUn(Long jobId, Instant verrou, List<Long> ids) {
+        for (Long id : ids) {
+            long debut = System.currentTimeMillis();
+            boolean proprietaire;
+            try {
+                proprietaire = Boolean.TRUE.equals(transactionTemplate.execute(status -> {
+                    enlevementRepository.verrouiller(List.of(id));
+                    List<Enlevement> enlevement = enlevementRepository.findAllWithItemsByIdIn(List.of(id));
+                    TransactionGenerationService.Bilan bilan = transactionGenerationService.regenerer(
+                            enlevement, transactionRepository.findByEnlevementIdIn(List.of(id)));
+                    if (!avancer(jobId, verrou, 1, 0, bilan, id, debut, null)) {
+                        status.setRollbackOnly();
+                        return false;
+                    }
+                    publierModifications(enlevement);
+                    return true;
+                }));
+            } catch (RuntimeException e) {
+                String erreur = tronquer("Enlèvement " + id + " : " + e.getClass().getSimpleName() + " : " + e.getMessage());
+                log.warn("Job de régénération {} : échec sur l'enlèvement {}", jobId, id, e);
+                proprietaire = Boolean.TRUE.equals(transactionTemplate.execute(
+                        status -> avancer(jobId, verrou, 1, 1, null, id, debut, erreur)));
+            }
+            if (!proprietaire) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean avancer(Long jobId, Instant verrou, long traites, long enErreur,
+                            TransactionGenerationService.Bilan bilan, long dernierId, long debut, String erreur) {
+        long creees = bilan != null ? bilan.creees() : 0;
+        long modifiees = bilan != null ? bilan.modifiees() : 0;
+        long supprimees = bilan != null ? bilan.supprimees() : 0;
+        return jobRepository.avancer(jobId, verrou, traites, enErreur, creees, modifiees, supprimees,
+                dernierId, System.currentTimeMillis() - debut, erreur, Instant.now()) > 0;
+    }
+
+    private void publierModifications(List<Enlevement> enlevements) {
+        enlevements.stream()
+                .map(e -> e.getSociete().getId())
+                .collect(Collectors.toSet())
+                .forEach(societeId -> eventPublisher.publishEvent(new SocieteDonneesModifieesEvent(societeId)));
+    }
+
+    private void pause() {
+        if (properties.getPauseMs() <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(properties.getPauseMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Instant expiration() {
+        return Instant.now().minusMillis(properties.getVerrouExpirationMs());
+    }
+
+    private static LocalDate debut(LocalDate date) {
+        return date != null ? date : DATE_MIN;
+    }
+
+    private static LocalDate fin(LocalDate date) {
+        return date != null ? date : DATE_MAX;
+    }
+
+    private static String tronquer(String message) {
+        return message.length() > LONGUEUR_ERREUR_MAX ? message.substring(0, LONGUEUR_ERREUR_MAX) : message;
+    }
+
+    private RegenerationJobDTO toDTO(RegenerationJob job) {
+        Double debit = job.getDureeTraitementMs() > 0 ? job.getTraites() * 1000.0 / job.getDureeTraitementMs() : null;
+        long reste = Math.max(job.getTotal() - job.getTraites(), 0);
+        return RegenerationJobDTO.builder()
+                .id(job.getId())
+                .societeId(job.getSocieteId())
+                .dateDebut(job.getDateDebut())
+                .dateFin(job.getDateFin())
+                .statut(job.getStatut().name())
+                .total(job.getTotal())
+                .traites(job.getTraites())
+                .enErreur(job.getEnErreur())
+                .progression(job.getTotal() > 0 ? Math.min(100.0, job.getTraites() * 100.0 / job.getTotal()) : 100.0)
+                .transactionsCreees(job.getTransactionsCreees())
+                .transactionsModifiees(job.getTransactionsModifiees())
+                .transactionsSupprimees(job.getTransactionsSupprimees())
+                .enlevementsParSeconde(debit)
+                .resteSecondes(debit != null && debit > 0 && job.getStatut() == RegenerationJob.Statut.EN_COURS
+                        ? Math.round(reste / debit) : null)
+                .derniereErreur(job.getDerniereErreur())
+                .demandePar(job.getDemandePar())
+                .createdAt(job.getCreatedAt())
+                .demarreLe(job.getDemarreLe())
+                .actifLe(job.getActifLe())
+                .termineLe(job.getTermineLe())
+                .build();
+    }
+}
@@ -0,0 +1,339 @@
+package ma.iorecycling.service;
+
+import com.opencsv.CSVParserBuilder;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.exceptions.CsvValidationException;
+import org.springframework.stereotype.Component;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Lecture d'un relevé bancaire, en CSV ou en XML camt.053 (ISO 20022)
+ *
+ * CSV (séparateur ; ou ,) : colonnes date (ou date_operation, date_valeur), montant signé ou colonnes
+ * credit et debit, libelle (ou description) et reference facultatives.
+ * XML : une ligne par élément Ntry (montant, CdtDbtInd, BookgDt ou ValDt, AcctSvcrRef ou NtryRef) ;
+ * le libellé réunit AddtlNtryInf, les Ustrd, les références structurées et les EndToEndId.
+ * Les montants retournés sont positifs, le sens est porté par credit.
+ */
+@Component
+public class ReleveBancaireParser {
+
+    private static final DateTimeFormatter DATE_FR = DateTimeFormatter.ofPattern("dd/MM/yyyy");
+
+    private static final List<String> COLONNES_DATE = List.of("date_operation", "date", "date_valeur");
+    private static final List<String> COLONNES_LIBELLE = List.of("libelle", "description");
+
+    /**
+     * Ligne du relevé (numéro de ligne physique en CSV, en-tête = 1 ; rang de l'écriture en XML)
+     */
+    public record Ligne(long numero, LocalDate date, BigDecimal montant, boolean credit,
+                        String libelle, String reference) {
+    }
+
+    /**
+     * Lit le relevé, au format XML si le nom de fichier l'indique ou si le contenu commence par '<'
+     * IllegalArgumentException si le fichier est illisible, avec le numéro de la ligne en cause, ou dès que
+     * lignesMax lignes ont été lues et qu'il en reste une : la suite du fichier n'est pas lue
+     */
+    public List<Ligne> lire(InputStream fichier, String nomFichier, int lignesMax) throws IOException {
+        BufferedInputStream contenu = new BufferedInputStream(fichier);
+        if (estXml(contenu, nomFichier)) {
+            return lireCamt(contenu, lignesMax);
+        }
+        return lireCsv(contenu, lignesMax);
+    }
+
+    private boolean estXml(BufferedInputStream contenu, String nomFichier) throws IOException {
+        if (nomFichier != null && nomFichier.toLowerCase(Locale.ROOT).endsWith(".xml")) {
+            return true;
+        }
+        contenu.mark(1024);
+        try {
+            byte[] debut = contenu.readNBytes(1024);
+            String texte = new String(debut, StandardCharsets.UTF_8).replace("\uFEFF", "").stripLeading();
+            return texte.startsWith("<");
+        } finally {
+            contenu.reset();
+        }
+    }
+
+    // ========== CSV ==========
+
+    private List<Ligne> lireCsv(InputStream contenu, int lignesMax) throws IOException {
+        List<Ligne> lignes = new ArrayList<>();
+        try (CSVReader csv = ouvrir(contenu)) {
+            Map<String, Integer> colonnes = lireEntete(csv.readNext());
+            Integer date = premiereColonne(colonnes, COLONNES_DATE);
+            Integer montant = colonnes.get("montant");
+            Integer credit = colonnes.get("credit");
+            Integer debit = colonnes.get("debit");
+            Integer libelle = premiereColonne(colonnes, COLONNES_LIBELLE);
+            Integer reference = colonnes.get("reference");
+            if (date == null || (montant == null && credit == null && debit == null)) {
+                throw new IllegalArgumentException("Colonnes obligatoires : date et montant (ou credit/debit)");
+            }
+
+            String[] valeurs;
+            while ((valeurs = csv.readNext()) != null) {
+                if (Arrays.stream(valeurs).allMatch(String::isBlank)) {
+                    continue;
+                }
+                long numero = csv.getLinesRead();
+                verifierLongueur(lignes, lignesMax);
+                try {
+                    BigDecimal signe = montant != null ? lireMontant(valeur(valeurs, montant))
+                            : Objects.requireNonNullElse(lireMontant(valeur(valeurs, credit)), BigDecimal.ZERO)
+                                .subtract(Objects.requireNonNullElse(lireMontant(valeur(valeurs, debit)), BigDecimal.ZERO));
+                    if (signe == null || signe.signum() == 0) {
+                        throw new IllegalArgumentException("montant absent ou nul");
+                    }
+                    lignes.add(new Ligne(numero, lireDate(valeur(valeurs, date)), signe.abs(), signe.signum() > 0,
+                            valeur(valeurs, libelle), valeur(valeurs, reference)));
+                } catch (IllegalArgumentException | DateTimeParseException e) {
+                    throw new IllegalArgumentException("Ligne " + numero + " : " + e.getMessage(), e);
+                }
+            }
+        } catch (CsvValidationException e) {
+            throw new IllegalArgumentException("CSV illisible ligne " + e.getLineNumber() + " : " + e.getMessage(), e);
+        }
+        return lignes;
+    }
+
+    /**
+     * Ouvre le flux en détectant le séparateur sur la ligne d'en-tête et en ignorant un BOM éventuel
+     */
+    private CSVReader ouvrir(InputStream contenu) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(contenu, StandardCharsets.UTF_8));
+        reader.mark(1);
+        if (reader.read() != '\uFEFF') {
+            reader.reset();
+        }
+        reader.mark(64 * 1024);
+        String entete = reader.readLine();
+        reader.reset();
+        char separateur = entete != null && entete.indexOf(';') >= 0 ? ';' : ',';
+        return new CSVReaderBuilder(reader)
+                .withCSVParser(new CSVParserBuilder().withSeparator(separateur).build())
+                .build();
+    }
+
+    /**
+     * En-têtes sans accents, en minuscules, espaces remplacés par _ ("Date opération" -> date_operation)
+     */
+    private Map<String, Integer> lireEntete(String[] entete) {
+        if (entete == null) {
+            throw new IllegalArgumentException("Fichier vide");
+        }
+        Map<String, Integer> colonnes = new HashMap<>();
+        for (int i = 0; i < entete.length; i++) {
+            String nom = Normalizer.normalize(entete[i].trim(), Normalizer.Form.NFD)
+                    .replaceAll("\\p{M}", "")
+                    .toLowerCase(Locale.ROOT)
+                    .replaceAll("[\\s-]+", "_");
+            colonnes.putIfAbsent(nom, i);
+        }
+        return colonnes;
+    }
+
+    private Integer premiereColonne(Map<String, Integer> colonnes, List<String> noms) {
+        return noms.stream().map(colonnes::get).filter(Objects::nonNull).findFirst().orElse(null);
+    }
+
+    private String valeur(String[] valeurs, Integer colonne) {
+        if (colonne == null || colonne >= valeurs.length || valeurs[colonne].isBlank()) {
+            return null;
+        }
+        return valeurs[colonne].trim();
+    }
+
+    // ========== XML camt.053 ==========
+
+    private List<Ligne> lireCamt(InputStream contenu, int lignesMax) {
+        XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        List<Ligne> lignes = new ArrayList<>();
+        Deque<String> chemin = new ArrayDeque<>();
+        StringBuilder texte = new StringBuilder();
+        Ecriture ecriture = null;
+        try {
+            XMLStreamReader xml = factory.createXMLStreamReader(contenu);
+            try {
+                while (xml.hasNext()) {
+                    switch (xml.next()) {
+                        case XMLStreamConstants.START_ELEMENT -> {
+                            chemin.push(xml.getLocalName());
+                            texte.setLength(0);
+                            if ("Ntry".equals(xml.getLocalName())) {
+                                verifierLongueur(lignes, lignesMax);
+                                ecriture = new Ecriture(lignes.size() + 1L);
+                            }
+                        }
+                        case XMLStreamConstants.CHARACTERS, XMLStreamConstants.CDATA -> texte.append(xml.getText());
+                        case XMLStreamConstants.END_ELEMENT -> {
+                            String element = chemin.pop();
+                            if (ecriture != null) {
+                                if ("Ntry".equals(element)) {
+                                    lignes.add(ecriture.terminer());
+                                    ecriture = null;
+                                } else {
+                                    ecriture.lire(element, chemin.peek(), texte.toString().trim());
+                                }
+                            }
+                            texte.setLength(0);
+                        }
+                        default -> {
+                        }
+                    }
+                }
+            } finally {
+                xml.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IllegalArgumentException("XML illisible : " + e.getMessage(), e);
+        }
+        return lignes;
+    }
+
+    /**
+     * Écriture (Ntry) en cours de lecture
+     */
+    private static final class Ecriture {
+        private final long numero;
+        private BigDecimal montant;
+        private Boolean credit;
+        private LocalDate dateComptable;
+        private LocalDate dateValeur;
+        private String reference;
+        private String referenceEcriture;
+        private final List<String> libelles = new ArrayList<>();
+
+        private Ecriture(long numero) {
+            this.numero = numero;
+        }
+
+        /**
+         * Élément terminé, avec le nom de son parent
+         */
+        void lire(String element, String parent, String valeur) {
+            if (valeur.isEmpty()) {
+                return;
+            }
+            try {
+                switch (element) {
+                    // Montant de l'écriture, pas ceux du détail des transactions
+                    case "Amt" -> {
+                        if ("Ntry".equals(parent)) {
+                            montant = lireMontant(valeur);
+                        }
+                    }
+                    case "CdtDbtInd" -> {
+                        if ("Ntry".equals(parent)) {
+                            credit = "CRDT".equals(valeur);
+                        }
+                    }
+                    case "Dt", "DtTm" -> {
+                        if ("BookgDt".equals(parent)) {
+                            dateComptable = lireDate(valeur);
+                        } else if ("ValDt".equals(parent)) {
+                            dateValeur = lireDate(valeur);
+                        }
+                    }
+                    case "AcctSvcrRef" -> {
+                        if ("Ntry".equals(parent)) {
+                            reference = valeur;
+                        }
+                    }
+                    case "NtryRef" -> referenceEcriture = valeur;
+                    case "AddtlNtryInf", "Ustrd", "EndToEndId" -> {
+                        if (!"NOTPROVIDED".equals(valeur)) {
+                            libelles.add(valeur);
+                        }
+                    }
+                    case "Ref" -> {
+                        if ("CdtrRefInf".equals(parent)) {
+                            libelles.add(valeur);
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                throw new IllegalArgumentException("Écriture " + numero + " (" + element + ") : " + e.getMessage(), e);
+            }
+        }
+
+        Ligne terminer() {
+            LocalDate date = dateComptable != null ? dateComptable : dateValeur;
+            if (montant == null || montant.signum() == 0 || credit == null || date == null) {
+                throw new IllegalArgumentException("Écriture " + numero + " : montant, sens ou date manquant");
+            }
+            return new Ligne(numero, date, montant.abs(), credit,
+                    libelles.isEmpty() ? null : String.join(" ", libelles),
+                    reference != null ? reference : referenceEcriture);
+        }
+    }
+
+    /**
+     * Appelée avant de lire une nouvelle ligne : refuse le relevé si lignesMax lignes sont déjà lues
+     */
+    private static void verifierLongueur(List<Ligne> lignes, int lignesMax) {
+        if (lignes.size() >= lignesMax) {
+            throw new IllegalArgumentException("Relevé trop long : plus de " + lignesMax + " lignes");
+        }
+    }
+
+    // ========== VALEURS ==========
+
+    /**
+     * Montant au format 1234.56, 1 234,56 ou 1.234,56 (null si absent)
+     */
+    static BigDecimal lireMontant(String valeur) {
+        if (valeur == null) {
+            return null;
+        }
+        String v = valeur.replaceAll("[\\s\\u00A0\\u202F]", "");
+        int virgule = v.lastIndexOf(',');
+        if (virgule >= 0) {
+            v = virgule > v.lastIndexOf('.')
+                    ? v.replace(".", "").replace(',', '.')
+                    : v.replace(",", "");
+        }
+        try {
+            return new BigDecimal(v);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("montant invalide : " + valeur);
+        }
+    }
+
+    /**
+     * Date au format ISO (2024-05-02, avec heure éventuelle) ou dd/MM/yyyy
+     */
+    static LocalDate lireDate(String valeur) {
+        if (valeur == null) {
+            throw new IllegalArgumentException("date absente");
+        }
+        if (valeur.indexOf('/') >= 0) {
+            return LocalDate.parse(valeur, DATE_FR);
+        }
+        return LocalDate.parse(valeur.length() > 10 ? valeur.substring(0, 10) : valeur);
+    }
+}
@@ -0,0 +1,41 @@
+package ma.iorecycling.service;
+
+import lombok.RequiredArgsConstructor;
+import ma.iorecycling.entity.SocieteVersion;
+import ma.iorecycling.repository.SocieteVersionRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+/**
+ * Service de lecture de la version des données d'une société
+ * Sert aux requêtes conditionnelles (ETag / Last-Modified) du portail client
+ */
+@Service
+@RequiredArgsConstructor
+@Transactional(readOnly = true)
+public class SocieteVersionService {
+    
+    private final SocieteVersionRepository societeVersionRepository;
+    
+    /**
+     * Version courante des données d'une société (version 0 si aucune écriture n'a encore été enregistrée)
+     */
+    public SocieteVersion getVersion(Long societeId) {
+        return societeVersionRepository.findById(societeId)
+                .orElseGet(() -> new SocieteVersion(societeId, 0L, Instant.EPOCH));
+    }
+    
+    /**
+     * ETag des données d'une société, complété par les variantes dont dépend la réponse (ex: date du jour)
+     */
+    public String etag(SocieteVersion version, Object... variantes) {
+        StringBuilder etag = new StringBuilder("\"").append(version.getSocieteId())
+                .append('-').append(version.getVersion());
+        for (Object variante : variantes) {
+            etag.append('-').append(variante);
+        }
+        return etag.append('"').toString();
+    }
+}
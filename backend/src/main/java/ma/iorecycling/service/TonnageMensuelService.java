@@ -0,0 +1,57 @@
+package ma.iorecycling.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ma.iorecycling.repository.TonnageMensuelRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Service de maintenance du cube mensuel des tonnages (tonnage_mensuel)
+ * Appelé par EnlevementService dans la même transaction que la modification de l'enlèvement
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional
+public class TonnageMensuelService {
+    
+    private final TonnageMensuelRepository tonnageMensuelRepository;
+    
+    /**
+     * Ajoute au cube les items d'un enlèvement tels qu'enregistrés
+     */
+    public void ajouterEnlevement(Long enlevementId) {
+        tonnageMensuelRepository.appliquerEnlevement(enlevementId, 1);
+    }
+    
+    /**
+     * Ajoute au cube en une requête les items de plusieurs enlèvements enregistrés (import en masse)
+     */
+    public void ajouterEnlevements(List<Long> enlevementIds) {
+        if (!enlevementIds.isEmpty()) {
+            tonnageMensuelRepository.appliquerEnlevements(enlevementIds, 1);
+        }
+    }
+    
+    /**
+     * Retire du cube les items d'un enlèvement, à appeler avant de le modifier ou de le supprimer
+     */
+    public void retirerEnlevement(Long enlevementId, Long societeId) {
+        if (tonnageMensuelRepository.appliquerEnlevement(enlevementId, -1) > 0) {
+            tonnageMensuelRepository.supprimerLignesVides(societeId);
+        }
+    }
+    
+    /**
+     * Reconstruit entièrement le cube depuis les enlèvements
+     */
+    public int reconstruire() {
+        log.info("Reconstruction du cube mensuel des tonnages");
+        Integer nbLignes = tonnageMensuelRepository.reconstruire();
+        log.info("Cube mensuel des tonnages reconstruit : {} lignes", nbLignes);
+        return nbLignes != null ? nbLignes : 0;
+    }
+}
@@ -0,0 +1,155 @@
+package ma.iorecycling.service;
+
+import lombok.RequiredArgsConstructor;
+import ma.iorecycling.dto.EcheanceDTO;
+import ma.iorecycling.dto.PaiementDTO;
+import ma.iorecycling.dto.TransactionDTO;
+import ma.iorecycling.entity.Echeance;
+import ma.iorecycling.entity.Paiement;
+import ma.iorecycling.entity.Transaction;
+import ma.iorecycling.repository.EcheanceRepository;
+import ma.iorecycling.repository.PaiementRepository;
+import ma.iorecycling.repository.TransactionRepository;
+import org.springframework.data.domain.Page;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Assemble les TransactionDTO d'une liste à partir des identifiants de ses lignes
+ * Nombre de requêtes constant quelle que soit la taille de la page :
+ * transactions et en-têtes (société, enlèvement, vente), paiements, échéances
+ */
+@Component
+@RequiredArgsConstructor
+public class TransactionDtoAssembler {
+
+    private final TransactionRepository transactionRepository;
+    private final PaiementRepository paiementRepository;
+    private final EcheanceRepository echeanceRepository;
+
+    /**
+     * Assemble une page à partir de sa page d'identifiants, dans le même ordre
+     */
+    public Page<TransactionDTO> assembler(Page<Long> ids) {
+        Map<Long, TransactionDTO> parId = assemblerParId(ids.getContent());
+        return ids.map(parId::get);
+    }
+
+    /**
+     * Assemble des transactions déjà lues (liste par curseur, impayés), dans le même ordre
+     */
+    public List<TransactionDTO> assembler(List<Transaction> transactions) {
+        Map<Long, TransactionDTO> parId = assemblerParId(transactions.stream().map(Transaction::getId).toList());
+        return transactions.stream()
+                .map(t -> parId.get(t.getId()))
+                .collect(Collectors.toList());
+    }
+
+    private Map<Long, TransactionDTO> assemblerParId(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return Map.of();
+        }
+        Map<Long, List<PaiementDTO>> paiements = paiementRepository.findByTransactionIdIn(ids).stream()
+                .collect(Collectors.groupingBy(p -> p.getTransaction().getId(),
+                        Collectors.mapping(this::paiementToDTO, Collectors.toList())));
+        Map<Long, List<EcheanceDTO>> echeances = echeanceRepository.findByTransactionIdIn(ids).stream()
+                .collect(Collectors.groupingBy(e -> e.getTransaction().getId(),
+                        Collectors.mapping(this::echeanceToDTO, Collectors.toList())));
+
+        return transactionRepository.findAllWithEnTetesByIdIn(ids).stream()
+                .map(t -> toDTO(t, paiements.getOrDefault(t.getId(), List.of()),
+                        echeances.getOrDefault(t.getId(), List.of())))
+                .collect(Collectors.toMap(TransactionDTO::getId, Function.identity()));
+    }
+
+    /**
+     * Convertit une transaction isolée en DTO (paiements et échéances lus depuis ses collections)
+     */
+    public TransactionDTO toDTO(Transaction transaction) {
+        return toDTO(transaction,
+                transaction.getPaiements().stream().map(this::paiementToDTO).collect(Collectors.toList()),
+                transaction.getEcheances().stream().map(this::echeanceToDTO).collect(Collectors.toList()));
+    }
+
+    private TransactionDTO toDTO(Transaction transaction, List<PaiementDTO> paiements, List<EcheanceDTO> echeances) {
+        TransactionDTO dto = TransactionDTO.builder()
+                .id(transaction.getId())
+                .type(transaction.getType())
+                .montant(transaction.getMontant())
+                .dateTransaction(transaction.getDateTransaction())
+                .description(transaction.getDescription())
+                .categorie(transaction.getCategorie())
+                .numeroReference(transaction.getNumeroReference())
+                .societeId(transaction.getSociete().getId())
+                .societeNom(transaction.getSociete().getRaisonSociale())
+                .notes(transaction.getNotes())
+                .statut(transaction.getStatut())
+                .createdBy(transaction.getCreatedBy())
+                .createdAt(transaction.getCreatedAt())
+                .updatedAt(transaction.getUpdatedAt())
+                .build();
+
+        if (transaction.getEnlevement() != null) {
+            dto.setEnlevementId(transaction.getEnlevement().getId());
+            dto.setEnlevementNumero(transaction.getEnlevement().getNumeroEnlevement());
+        }
+
+        // Type de recette
+        dto.setTypeRecette(transaction.getTypeRecette());
+
+        // Information vente
+        if (transaction.getVenteItem() != null) {
+            dto.setVenteItemId(transaction.getVenteItem().getId());
+            if (transaction.getVenteItem().getVente() != null) {
+                dto.setVenteId(transaction.getVenteItem().getVente().getId());
+                dto.setVenteNumero(transaction.getVenteItem().getVente().getNumeroVente());
+            }
+        }
+
+        // Calculs automatiques - montant payé dénormalisé, sans requête par transaction
+        BigDecimal montantPaye = transaction.getMontantPaye();
+        BigDecimal montantRestant = transaction.getMontantRestant();
+        dto.setMontantPaye(montantPaye);
+        dto.setMontantRestant(montantRestant);
+        dto.setCompletementPayee(montantRestant.compareTo(BigDecimal.ZERO) <= 0);
+
+        dto.setPaiements(paiements);
+        dto.setEcheances(echeances);
+
+        return dto;
+    }
+
+    private PaiementDTO paiementToDTO(Paiement paiement) {
+        return PaiementDTO.builder()
+                .id(paiement.getId())
+                .transactionId(paiement.getTransaction().getId())
+                .montant(paiement.getMontant())
+                .datePaiement(paiement.getDatePaiement())
+                .modePaiement(paiement.getModePaiement())
+                .reference(paiement.getReference())
+                .notes(paiement.getNotes())
+                .statut(paiement.getStatut())
+                .createdBy(paiement.getCreatedBy())
+                .createdAt(paiement.getCreatedAt())
+                .updatedAt(paiement.getUpdatedAt())
+                .build();
+    }
+
+    private EcheanceDTO echeanceToDTO(Echeance echeance) {
+        return EcheanceDTO.builder()
+                .id(echeance.getId())
+                .transactionId(echeance.getTransaction().getId())
+                .montant(echeance.getMontant())
+                .dateEcheance(echeance.getDateEcheance())
+                .statut(echeance.getStatut())
+                .createdAt(echeance.getCreatedAt())
+                .updatedAt(echeance.getUpdatedAt())
+                .build();
+    }
+}
@@ -9,7 +9,14 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * Service pour la génération automatique des transactions comptables
@@ -20,44 +27,181 @@ import java.util.List;
 @Transactional
 public class TransactionGenerationService {
     
+    private static final String CATEGORIE_ACHAT = "Achat déchets valorisables";
+    private static final String CATEGORIE_TRAITEMENT = "Coût traitement déchets";
+    private static final String CATEGORIE_PRESTATION = "Prestation d'enlèvement";
+    private static final Set<String> CATEGORIES_GENEREES = Set.of(CATEGORIE_ACHAT, CATEGORIE_TRAITEMENT, CATEGORIE_PRESTATION);
+    
     private final TransactionRepository transactionRepository;
     
     /**
      * Génère automatiquement les transactions comptables depuis un enlèvement
+     * Les lignes existantes sont comparées aux lignes attendues par (item, type, catégorie) :
+     * une ligne inchangée n'est pas réécrite, une ligne modifiée est mise à jour en place
+     * (ses paiements et échéances sont conservés), seules les lignes en plus ou en moins sont insérées ou supprimées
      */
-    public void generateTransactionsFromEnlevement(Enlevement enlevement) {
+    public Bilan generateTransactionsFromEnlevement(Enlevement enlevement) {
         log.info("Génération des transactions pour l'enlèvement {}", enlevement.getNumeroEnlevement());
         
-        // Supprimer uniquement les transactions générées automatiquement depuis l'enlèvement
-        // (pas celles liées aux ventes qui sont créées lors de la création de la vente)
-        List<Transaction> existingTransactions = transactionRepository.findByEnlevementId(enlevement.getId());
-        List<Transaction> transactionsToDelete = existingTransactions.stream()
-                .filter(t -> t.getVenteItem() == null) // Ne pas supprimer les transactions liées aux ventes
-                .toList();
+        Bilan bilan = regenerer(List.of(enlevement), transactionRepository.findByEnlevementId(enlevement.getId()));
+        
+        log.info("Transactions de l'enlèvement {} : {} créées, {} modifiées, {} supprimées", 
+            enlevement.getNumeroEnlevement(), bilan.creees(), bilan.modifiees(), bilan.supprimees());
+        return bilan;
+    }
+    
+    /**
+     * Régénère les transactions d'un lot d'enlèvements (items chargés) à partir de leurs transactions déjà lues
+     * Les insertions et suppressions de tout le lot partent en une fois (lots JDBC)
+     */
+    public Bilan regenerer(Collection<Enlevement> enlevements, List<Transaction> existantes) {
+        Map<Long, List<Transaction>> parEnlevement = existantes.stream()
+                .collect(Collectors.groupingBy(t -> t.getEnlevement().getId()));
+        
+        List<Transaction> nouvelles = new ArrayList<>();
+        List<Transaction> aSupprimer = new ArrayList<>();
+        int modifiees = 0;
+        for (Enlevement enlevement : enlevements) {
+            modifiees += comparer(enlevement, parEnlevement.getOrDefault(enlevement.getId(), List.of()),
+                    nouvelles, aSupprimer);
+        }
         
-        if (!transactionsToDelete.isEmpty()) {
-            transactionRepository.deleteAll(transactionsToDelete);
-            log.info("{} transactions existantes supprimées (transactions liées aux ventes conservées)", 
-                    transactionsToDelete.size());
+        transactionRepository.deleteAll(aSupprimer);
+        transactionRepository.saveAll(nouvelles);
+        return new Bilan(nouvelles.size(), modifiees, aSupprimer.size());
+    }
+    
+    /**
+     * Compare les lignes attendues d'un enlèvement à ses transactions existantes
+     * Met à jour en place les lignes modifiées (retourne leur nombre), ajoute les lignes à créer et à supprimer
+     */
+    private int comparer(Enlevement enlevement, List<Transaction> existantes,
+                         List<Transaction> nouvelles, List<Transaction> aSupprimer) {
+        // Transactions générées depuis les items (pas celles des ventes ni les saisies manuelles)
+        Map<CleLigne, Transaction> rattachees = new HashMap<>();
+        List<Transaction> nonRattachees = new ArrayList<>();
+        List<Transaction> obsoletes = new ArrayList<>();
+        for (Transaction existante : existantes) {
+            if (existante.getPickupItem() != null) {
+                Transaction doublon = rattachees.putIfAbsent(CleLigne.de(existante), existante);
+                if (doublon != null) {
+                    obsoletes.add(existante);
+                }
+            } else if (estGenereeSansItem(existante)) {
+                nonRattachees.add(existante);
+            }
         }
         
+        int modifiees = 0;
+        for (Transaction attendue : construireTransactions(enlevement)) {
+            Transaction existante = rattachees.remove(CleLigne.de(attendue));
+            if (existante == null) {
+                existante = rattacher(attendue, nonRattachees);
+            }
+            if (existante == null) {
+                nouvelles.add(attendue);
+            } else if (appliquer(existante, attendue)) {
+                modifiees++;
+            }
+        }
+        obsoletes.addAll(rattachees.values());
+        obsoletes.addAll(nonRattachees);
+        
+        // Une ligne qui n'a plus lieu d'être mais porte des paiements est conservée pour ne pas les perdre
+        for (Transaction obsolete : obsoletes) {
+            if (obsolete.getMontantPaye().compareTo(BigDecimal.ZERO) > 0) {
+                log.warn("Transaction {} de l'enlèvement {} sans item correspondant conservée : paiements enregistrés",
+                        obsolete.getId(), enlevement.getNumeroEnlevement());
+            } else {
+                aSupprimer.add(obsolete);
+            }
+        }
+        return modifiees;
+    }
+    
+    /**
+     * Transaction générée avant le rattachement aux items (voir migration V31)
+     */
+    private boolean estGenereeSansItem(Transaction transaction) {
+        return transaction.getVenteItem() == null
+                && transaction.getCreatedBy() == null
+                && transaction.getCategorie() != null
+                && CATEGORIES_GENEREES.contains(transaction.getCategorie());
+    }
+    
+    /**
+     * Rattache à une ligne attendue une transaction générée sans item, de même montant de préférence
+     */
+    private Transaction rattacher(Transaction attendue, List<Transaction> nonRattachees) {
+        Transaction candidate = null;
+        for (Transaction transaction : nonRattachees) {
+            if (transaction.getType() == attendue.getType()
+                    && Objects.equals(transaction.getCategorie(), attendue.getCategorie())) {
+                if (transaction.getMontant().compareTo(attendue.getMontant()) == 0) {
+                    candidate = transaction;
+                    break;
+                }
+                if (candidate == null) {
+                    candidate = transaction;
+                }
+            }
+        }
+        if (candidate != null) {
+            nonRattachees.remove(candidate);
+        }
+        return candidate;
+    }
+    
+    /**
+     * Reporte sur une transaction existante les valeurs attendues, retourne true si elle a changé
+     */
+    private boolean appliquer(Transaction existante, Transaction attendue) {
+        boolean modifiee = false;
+        if (existante.getMontant().compareTo(attendue.getMontant()) != 0) {
+            existante.setMontant(attendue.getMontant());
+            existante.recalculerStatut();
+            modifiee = true;
+        }
+        if (!Objects.equals(existante.getDateTransaction(), attendue.getDateTransaction())) {
+            existante.setDateTransaction(attendue.getDateTransaction());
+            modifiee = true;
+        }
+        if (!Objects.equals(existante.getDescription(), attendue.getDescription())) {
+            existante.setDescription(attendue.getDescription());
+            modifiee = true;
+        }
+        if (existante.getPickupItem() == null) {
+            existante.setPickupItem(attendue.getPickupItem());
+            modifiee = true;
+        }
+        return modifiee;
+    }
+    
+    /**
+     * Construit, sans les enregistrer, les transactions comptables d'un enlèvement et de ses items
+     * Utilisé aussi par l'import en masse, qui les insère par lots
+     */
+    public List<Transaction> construireTransactions(Enlevement enlevement) {
+        List<Transaction> transactions = new ArrayList<>();
+        
         // Parcourir tous les items de l'enlèvement
         for (PickupItem item : enlevement.getItems()) {
             // Générer transaction DEPENSE (achat) si valorisable
             if (PickupItem.TypeDechet.RECYCLABLE.equals(item.getTypeDechet()) 
                     && item.getMontantAchatMad() != null 
                     && item.getMontantAchatMad().compareTo(BigDecimal.ZERO) > 0) {
-                createTransaction(
+                transactions.add(createTransaction(
                     Transaction.TypeTransaction.DEPENSE,
                     item.getMontantAchatMad(),
                     enlevement.getDateEnlevement(),
                     String.format("Achat déchets %s - Enlèvement %s", 
                         item.getSousType(), enlevement.getNumeroEnlevement()),
-                    "Achat déchets valorisables",
+                    CATEGORIE_ACHAT,
                     enlevement.getSociete(),
                     enlevement,
+                    item,
                     null // pas de type recette pour dépense
-                );
+                ));
             }
             
             // Générer transaction DEPENSE (traitement) si banal
@@ -65,39 +209,40 @@ public class TransactionGenerationService {
                     || PickupItem.TypeDechet.A_DETRUIRE.equals(item.getTypeDechet()))
                     && item.getMontantTraitementMad() != null 
                     && item.getMontantTraitementMad().compareTo(BigDecimal.ZERO) > 0) {
-                createTransaction(
+                transactions.add(createTransaction(
                     Transaction.TypeTransaction.DEPENSE,
                     item.getMontantTraitementMad(),
                     enlevement.getDateEnlevement(),
                     String.format("Traitement déchets %s - Enlèvement %s", 
                         item.getTypeDechet(), enlevement.getNumeroEnlevement()),
-                    "Coût traitement déchets",
+                    CATEGORIE_TRAITEMENT,
                     enlevement.getSociete(),
                     enlevement,
+                    item,
                     null
-                );
+                ));
             }
             
             // Générer transaction RECETTE PRESTATION si applicable
             if (item.getMontantPrestationMad() != null 
                     && item.getMontantPrestationMad().compareTo(BigDecimal.ZERO) > 0) {
-                createTransaction(
+                transactions.add(createTransaction(
                     Transaction.TypeTransaction.RECETTE,
                     item.getMontantPrestationMad(),
                     enlevement.getDateEnlevement(),
                     String.format("Prestation d'enlèvement %s - Enlèvement %s", 
                         item.getSousType() != null ? item.getSousType() : item.getTypeDechet(), 
                         enlevement.getNumeroEnlevement()),
-                    "Prestation d'enlèvement",
+                    CATEGORIE_PRESTATION,
                     enlevement.getSociete(),
                     enlevement,
+                    item,
                     Transaction.TypeRecette.PRESTATION
-                );
+                ));
             }
         }
         
-        log.info("Transactions générées avec succès pour l'enlèvement {}", 
-            enlevement.getNumeroEnlevement());
+        return transactions;
     }
     
     private Transaction createTransaction(
@@ -108,9 +253,10 @@ public class TransactionGenerationService {
             String categorie,
             Societe societe,
             Enlevement enlevement,
+            PickupItem item,
             Transaction.TypeRecette typeRecette) {
         
-        Transaction transaction = Transaction.builder()
+        return Transaction.builder()
             .type(type)
             .montant(montant)
             .dateTransaction(dateTransaction)
@@ -118,11 +264,25 @@ public class TransactionGenerationService {
             .categorie(categorie)
             .societe(societe)
             .enlevement(enlevement)
+            .pickupItem(item)
             .typeRecette(typeRecette)
             .statut(Transaction.StatutTransaction.EN_ATTENTE)
             .build();
+    }
+    
+    /**
+     * Nombre de transactions créées, modifiées et supprimées par une génération
+     */
+    public record Bilan(int creees, int modifiees, int supprimees) {
+    }
+    
+    /**
+     * Identité d'une ligne générée : un item produit au plus une ligne par type et catégorie
+     */
+    private record CleLigne(Long pickupItemId, Transaction.TypeTransaction type, String categorie) {
         
-        return transactionRepository.save(transaction);
+        static CleLigne de(Transaction transaction) {
+            return new CleLigne(transaction.getPickupItem().getId(), transaction.getType(), transaction.getCategorie());
+        }
     }
 }
-
@@ -0,0 +1,63 @@
+package ma.iorecycling.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ma.iorecycling.dto.RollupEcartDTO;
+import ma.iorecycling.repository.TransactionDailyRollupRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Service de contrôle et de reconstruction de l'agrégat journalier des transactions
+ * L'agrégat est maintenu en continu par trigger ; ce service sert à détecter et corriger une dérive
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional
+public class TransactionRollupService {
+    
+    private final TransactionDailyRollupRepository rollupRepository;
+    
+    /**
+     * Liste les écarts entre l'agrégat et les transactions (liste vide si l'agrégat est cohérent)
+     */
+    @Transactional(readOnly = true)
+    public List<RollupEcartDTO> verifier() {
+        List<RollupEcartDTO> ecarts = rollupRepository.findEcarts().stream()
+                .map(this::toEcartDTO)
+                .toList();
+        
+        if (!ecarts.isEmpty()) {
+            log.warn("{} écarts détectés entre transaction_daily_rollup et transaction", ecarts.size());
+        }
+        return ecarts;
+    }
+    
+    /**
+     * Reconstruit entièrement l'agrégat depuis la table transaction
+     */
+    public int reconstruire() {
+        log.info("Reconstruction de l'agrégat journalier des transactions");
+        Integer nbLignes = rollupRepository.reconstruire();
+        log.info("Agrégat journalier reconstruit : {} lignes", nbLignes);
+        return nbLignes != null ? nbLignes : 0;
+    }
+    
+    private RollupEcartDTO toEcartDTO(Object[] ligne) {
+        return RollupEcartDTO.builder()
+                .societeId(((Number) ligne[0]).longValue())
+                .jour(EvolutionPeriodeCalculator.toLocalDate(ligne[1]))
+                .type((String) ligne[2])
+                .typeRecette((String) ligne[3])
+                .categorie((String) ligne[4])
+                .montantAttendu(ligne[5] != null ? (BigDecimal) ligne[5] : BigDecimal.ZERO)
+                .montantAgrege(ligne[6] != null ? (BigDecimal) ligne[6] : BigDecimal.ZERO)
+                .nombreAttendu(ligne[7] != null ? ((Number) ligne[7]).longValue() : 0L)
+                .nombreAgrege(ligne[8] != null ? ((Number) ligne[8]).longValue() : 0L)
+                .build();
+    }
+}
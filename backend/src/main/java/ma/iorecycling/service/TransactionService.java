@@ -4,15 +4,16 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import ma.iorecycling.dto.*;
 import ma.iorecycling.entity.*;
+import ma.iorecycling.event.SocieteDonneesModifieesEvent;
 import ma.iorecycling.repository.*;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.math.BigDecimal;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Service pour la gestion des transactions comptables
@@ -24,10 +25,11 @@ import java.util.stream.Collectors;
 public class TransactionService {
     
     private final TransactionRepository transactionRepository;
-    private final PaiementRepository paiementRepository;
     private final SocieteRepository societeRepository;
     private final EnlevementRepository enlevementRepository;
     private final EcheanceRepository echeanceRepository;
+    private final TransactionDtoAssembler transactionDtoAssembler;
+    private final ApplicationEventPublisher eventPublisher;
     
     /**
      * Crée une nouvelle transaction avec ses échéances éventuelles
@@ -88,6 +90,7 @@ public class TransactionService {
         
         transaction = transactionRepository.save(transaction);
         log.info("Transaction créée avec ID {}", transaction.getId());
+        eventPublisher.publishEvent(new SocieteDonneesModifieesEvent(societe.getId()));
         
         return toDTO(transaction);
     }
@@ -127,6 +130,7 @@ public class TransactionService {
         updateStatutTransaction(transaction);
         
         transaction = transactionRepository.save(transaction);
+        eventPublisher.publishEvent(new SocieteDonneesModifieesEvent(transaction.getSociete().getId()));
         return toDTO(transaction);
     }
     
@@ -146,23 +150,19 @@ public class TransactionService {
     @Transactional(readOnly = true)
     public Page<TransactionDTO> getTransactionsBySociete(Long societeId, Transaction.TypeTransaction type, 
                                                          Pageable pageable) {
-        Page<Transaction> transactions;
+        Page<Long> ids;
         if (societeId != null) {
             // Transactions d'une société spécifique
-            if (type != null) {
-                transactions = transactionRepository.findBySocieteIdAndType(societeId, type, pageable);
-            } else {
-                transactions = transactionRepository.findBySocieteId(societeId, pageable);
-            }
+            ids = type != null
+                    ? transactionRepository.findPageIdsBySocieteIdAndType(societeId, type, pageable)
+                    : transactionRepository.findPageIdsBySocieteId(societeId, pageable);
         } else {
             // Toutes les transactions (toutes sociétés)
-            if (type != null) {
-                transactions = transactionRepository.findByType(type, pageable);
-            } else {
-                transactions = transactionRepository.findAll(pageable);
-            }
+            ids = type != null
+                    ? transactionRepository.findPageIdsByType(type, pageable)
+                    : transactionRepository.findPageIds(pageable);
         }
-        return transactions.map(this::toDTO);
+        return transactionDtoAssembler.assembler(ids);
     }
     
     /**
@@ -171,13 +171,50 @@ public class TransactionService {
     @Transactional(readOnly = true)
     public Page<TransactionDTO> getTransactionsByEnlevement(Long enlevementId, Transaction.TypeTransaction type, 
                                                              Pageable pageable) {
-        Page<Transaction> transactions;
-        if (type != null) {
-            transactions = transactionRepository.findByEnlevementIdAndType(enlevementId, type, pageable);
+        Page<Long> ids = type != null
+                ? transactionRepository.findPageIdsByEnlevementIdAndType(enlevementId, type, pageable)
+                : transactionRepository.findPageIdsByEnlevementId(enlevementId, pageable);
+        return transactionDtoAssembler.assembler(ids);
+    }
+    
+    /**
+     * Page de transactions par curseur (keyset), filtrée par enlèvement, société ou aucune
+     * Le comptage total n'est fait que si avecTotal est demandé
+     */
+    @Transactional(readOnly = true)
+    public CursorPageDTO<TransactionDTO> getTransactionsApres(Long societeId, Long enlevementId,
+                                                              Transaction.TypeTransaction type, String curseur,
+                                                              int taille, boolean avecTotal) {
+        CursorPageDTO.Cursor apres = CursorPageDTO.Cursor.decoder(curseur);
+        int n = CursorPageDTO.taille(taille);
+        List<Transaction> lignes;
+        if (enlevementId != null) {
+            lignes = transactionRepository.findByEnlevementIdApres(enlevementId, type, apres.date(), apres.id(), Limit.of(n + 1));
+        } else if (societeId != null) {
+            lignes = transactionRepository.findBySocieteIdApres(societeId, type, apres.date(), apres.id(), Limit.of(n + 1));
         } else {
-            transactions = transactionRepository.findByEnlevementId(enlevementId, pageable);
+            lignes = transactionRepository.findApres(type, apres.date(), apres.id(), Limit.of(n + 1));
         }
-        return transactions.map(this::toDTO);
+        Long total = avecTotal ? compter(societeId, enlevementId, type) : null;
+        return CursorPageDTO.of(lignes, n, t -> new CursorPageDTO.Cursor(t.getDateTransaction(), t.getId()), total)
+                .mapContent(transactionDtoAssembler::assembler);
+    }
+    
+    /**
+     * Nombre de transactions de la liste, par la requête propre à la combinaison de filtres
+     */
+    private long compter(Long societeId, Long enlevementId, Transaction.TypeTransaction type) {
+        if (enlevementId != null) {
+            return type != null
+                    ? transactionRepository.countByEnlevementIdAndType(enlevementId, type)
+                    : transactionRepository.countByEnlevementId(enlevementId);
+        }
+        if (societeId != null) {
+            return type != null
+                    ? transactionRepository.countBySocieteIdAndType(societeId, type)
+                    : transactionRepository.countBySocieteId(societeId);
+        }
+        return type != null ? transactionRepository.countByType(type) : transactionRepository.count();
     }
     
     /**
@@ -188,6 +225,7 @@ public class TransactionService {
         Transaction transaction = transactionRepository.findById(id)
                 .orElseThrow(() -> new RuntimeException("Transaction non trouvée: " + id));
         transactionRepository.delete(transaction);
+        eventPublisher.publishEvent(new SocieteDonneesModifieesEvent(transaction.getSociete().getId()));
     }
     
     /**
@@ -197,123 +235,24 @@ public class TransactionService {
     public List<TransactionDTO> getTransactionsImpayees(Long societeId) {
         log.info("Récupération des transactions impayées pour société {}", societeId);
         List<Transaction> transactions = transactionRepository.findTransactionsImpayees(societeId);
-        return transactions.stream()
-                .map(this::toDTO)
-                .collect(Collectors.toList());
+        return transactionDtoAssembler.assembler(transactions);
     }
     
     /**
      * Met à jour le statut d'une transaction selon ses paiements
-     * Utilise une requête SQL directe pour éviter les problèmes de lazy loading
+     * Utilise le montant payé dénormalisé pour éviter de charger les paiements
      */
     private void updateStatutTransaction(Transaction transaction) {
-        // Calculer le montant payé via une requête SQL directe pour éviter les problèmes de lazy loading
-        BigDecimal montantPaye = paiementRepository.sumMontantPayeByTransactionId(transaction.getId());
-        BigDecimal montant = transaction.getMontant();
-        
-        if (transaction.getStatut() == Transaction.StatutTransaction.ANNULEE) {
-            return; // Ne pas modifier si annulée
-        }
-        
-        if (montantPaye == null || montantPaye.compareTo(BigDecimal.ZERO) == 0) {
-            transaction.setStatut(Transaction.StatutTransaction.EN_ATTENTE);
-        } else if (montantPaye.compareTo(montant) >= 0) {
-            transaction.setStatut(Transaction.StatutTransaction.PAYEE);
-        } else {
-            transaction.setStatut(Transaction.StatutTransaction.PARTIELLEMENT_PAYEE);
-        }
+        transaction.recalculerStatut();
         
         log.debug("Mise à jour statut transaction {}: montant={}, montantPaye={}, nouveauStatut={}", 
-                transaction.getId(), montant, montantPaye, transaction.getStatut());
+                transaction.getId(), transaction.getMontant(), transaction.getMontantPaye(), transaction.getStatut());
     }
     
     /**
      * Convertit une entité Transaction en DTO
      */
     public TransactionDTO toDTO(Transaction transaction) {
-        TransactionDTO dto = TransactionDTO.builder()
-                .id(transaction.getId())
-                .type(transaction.getType())
-                .montant(transaction.getMontant())
-                .dateTransaction(transaction.getDateTransaction())
-                .description(transaction.getDescription())
-                .categorie(transaction.getCategorie())
-                .numeroReference(transaction.getNumeroReference())
-                .societeId(transaction.getSociete().getId())
-                .societeNom(transaction.getSociete().getRaisonSociale())
-                .notes(transaction.getNotes())
-                .statut(transaction.getStatut())
-                .createdBy(transaction.getCreatedBy())
-                .createdAt(transaction.getCreatedAt())
-                .updatedAt(transaction.getUpdatedAt())
-                .build();
-        
-        if (transaction.getEnlevement() != null) {
-            dto.setEnlevementId(transaction.getEnlevement().getId());
-            dto.setEnlevementNumero(transaction.getEnlevement().getNumeroEnlevement());
-        }
-        
-        // Type de recette
-        dto.setTypeRecette(transaction.getTypeRecette());
-        
-        // Information vente
-        if (transaction.getVenteItem() != null) {
-            dto.setVenteItemId(transaction.getVenteItem().getId());
-            if (transaction.getVenteItem().getVente() != null) {
-                dto.setVenteId(transaction.getVenteItem().getVente().getId());
-                dto.setVenteNumero(transaction.getVenteItem().getVente().getNumeroVente());
-            }
-        }
-        
-        // Calculs automatiques - Utiliser une requête SQL directe pour éviter les problèmes de lazy loading
-        BigDecimal montantPaye = paiementRepository.sumMontantPayeByTransactionId(transaction.getId());
-        if (montantPaye == null) {
-            montantPaye = BigDecimal.ZERO;
-        }
-        BigDecimal montantRestant = transaction.getMontant().subtract(montantPaye);
-        dto.setMontantPaye(montantPaye);
-        dto.setMontantRestant(montantRestant);
-        dto.setCompletementPayee(montantRestant.compareTo(BigDecimal.ZERO) <= 0);
-        
-        // Paiements
-        dto.setPaiements(transaction.getPaiements().stream()
-                .map(this::paiementToDTO)
-                .collect(Collectors.toList()));
-        
-        // Échéances
-        dto.setEcheances(transaction.getEcheances().stream()
-                .map(this::echeanceToDTO)
-                .collect(Collectors.toList()));
-        
-        return dto;
-    }
-    
-    private PaiementDTO paiementToDTO(Paiement paiement) {
-        return PaiementDTO.builder()
-                .id(paiement.getId())
-                .transactionId(paiement.getTransaction().getId())
-                .montant(paiement.getMontant())
-                .datePaiement(paiement.getDatePaiement())
-                .modePaiement(paiement.getModePaiement())
-                .reference(paiement.getReference())
-                .notes(paiement.getNotes())
-                .statut(paiement.getStatut())
-                .createdBy(paiement.getCreatedBy())
-                .createdAt(paiement.getCreatedAt())
-                .updatedAt(paiement.getUpdatedAt())
-                .build();
-    }
-    
-    private EcheanceDTO echeanceToDTO(Echeance echeance) {
-        return EcheanceDTO.builder()
-                .id(echeance.getId())
-                .transactionId(echeance.getTransaction().getId())
-                .montant(echeance.getMontant())
-                .dateEcheance(echeance.getDateEcheance())
-                .statut(echeance.getStatut())
-                .createdAt(echeance.getCreatedAt())
-                .updatedAt(echeance.getUpdatedAt())
-                .build();
+        return transactionDtoAssembler.toDTO(transaction);
     }
 }
-
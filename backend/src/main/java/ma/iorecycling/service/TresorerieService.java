@@ -0,0 +1,69 @@
+package ma.iorecycling.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ma.iorecycling.dto.SoldeTresorerieDTO;
+import ma.iorecycling.repository.SoldeTresorerieRepository;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+/**
+ * Service de calcul de la trésorerie
+ * Le solde à une date vaut le dernier solde mensuel clôturé plus les mouvements depuis cette clôture
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional(readOnly = true)
+public class TresorerieService {
+    
+    private final SoldeTresorerieRepository soldeTresorerieRepository;
+    
+    /**
+     * Calcule le solde de trésorerie d'une société (ou de toutes si societeId est null) à une date
+     */
+    public SoldeTresorerieDTO getSoldeAu(Long societeId, LocalDate date) {
+        BigDecimal solde = societeId != null
+                ? soldeTresorerieRepository.calculerSoldeBySocieteAt(societeId, date)
+                : soldeTresorerieRepository.calculerSoldeAt(date);
+        
+        return SoldeTresorerieDTO.builder()
+                .societeId(societeId)
+                .date(date)
+                .solde(solde)
+                .build();
+    }
+    
+    /**
+     * Calcule le solde de trésorerie actuel d'une société
+     */
+    public BigDecimal getSoldeActuel(Long societeId) {
+        return soldeTresorerieRepository.calculerSoldeBySocieteAt(societeId, LocalDate.now());
+    }
+    
+    /**
+     * Calcule le solde de trésorerie actuel de toutes les sociétés
+     */
+    public BigDecimal getSoldeActuelAll() {
+        return soldeTresorerieRepository.calculerSoldeAt(LocalDate.now());
+    }
+    
+    /**
+     * Clôture les mois écoulés (jusqu'au mois précédent inclus)
+     * Exécutée chaque nuit pour recalculer aussi les mois invalidés par une saisie rétroactive
+     */
+    @Scheduled(cron = "${comptabilite.tresorerie.cloture-cron:0 30 2 * * *}")
+    @Transactional
+    public int cloturerMoisEcoules() {
+        LocalDate dernierMois = LocalDate.now().withDayOfMonth(1).minusMonths(1);
+        log.info("Clôture des soldes de trésorerie jusqu'au mois {}", dernierMois);
+        
+        Integer nbInstantanes = soldeTresorerieRepository.cloturer(dernierMois);
+        log.info("Clôture terminée : {} soldes mensuels créés", nbInstantanes);
+        return nbInstantanes != null ? nbInstantanes : 0;
+    }
+}
@@ -4,15 +4,16 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import ma.iorecycling.dto.*;
 import ma.iorecycling.entity.*;
+import ma.iorecycling.event.SocieteDonneesModifieesEvent;
 import ma.iorecycling.repository.*;
 import ma.iorecycling.mapper.VenteMapper;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
-import java.time.LocalDate;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -30,6 +31,7 @@ public class VenteService {
     private final PickupItemRepository pickupItemRepository;
     private final TransactionRepository transactionRepository;
     private final VenteMapper venteMapper;
+    private final ApplicationEventPublisher eventPublisher;
     
     /**
      * Crée une nouvelle vente avec ses items
@@ -47,14 +49,9 @@ public class VenteService {
                 .createdBy(createdBy)
                 .build();
         
+        // Le numéro de vente est attribué à l'insertion (NumeroMetier)
         Vente savedVente = venteRepository.save(vente);
         
-        // Générer le numéro de vente
-        if (savedVente.getNumeroVente() == null) {
-            savedVente.setNumeroVente(generateNumeroVente(savedVente));
-            savedVente = venteRepository.save(savedVente);
-        }
-        
         // Créer les items
         for (CreateVenteItemRequest itemRequest : request.getItems()) {
             createVenteItem(savedVente, itemRequest);
@@ -152,6 +149,8 @@ public class VenteService {
             
             transactionRepository.save(transaction);
         }
+        
+        eventPublisher.publishEvent(new SocieteDonneesModifieesEvent(societe.getId()));
     }
     
     /**
@@ -198,13 +197,6 @@ public class VenteService {
                 .map(venteMapper::toDTO);
     }
     
-    private String generateNumeroVente(Vente vente) {
-        int year = vente.getDateVente() != null
-                ? vente.getDateVente().getYear()
-                : LocalDate.now().getYear();
-        return "VENT-" + year + "-" + String.format("%06d", vente.getId());
-    }
-    
     private void createVenteItem(Vente vente, CreateVenteItemRequest request) {
         PickupItem pickupItem = null;
         if (request.getPickupItemId() != null) {
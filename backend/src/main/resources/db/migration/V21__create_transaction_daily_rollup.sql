@@ -0,0 +1,110 @@
+-- ============================================
+-- V21: Agrégat journalier des transactions (transaction_daily_rollup)
+-- ============================================
+-- Le dashboard comptabilité lit ses totaux dans cette table au lieu de reparcourir
+-- toutes les lignes de transaction. Elle est maintenue par trigger à chaque
+-- insertion, modification ou suppression de transaction (saisie manuelle,
+-- génération depuis les enlèvements et les ventes, suppressions en cascade).
+-- type_recette et categorie valent '' lorsqu'ils sont NULL dans transaction.
+
+-- 1. TABLE transaction_daily_rollup
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS transaction_daily_rollup (
+    societe_id BIGINT NOT NULL,
+    jour DATE NOT NULL,
+    type VARCHAR(20) NOT NULL,
+    type_recette VARCHAR(20) NOT NULL DEFAULT '',
+    categorie VARCHAR(100) NOT NULL DEFAULT '',
+    montant_total DECIMAL(17, 2) NOT NULL DEFAULT 0,
+    nb_transactions INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (societe_id, jour, type, type_recette, categorie),
+    FOREIGN KEY (societe_id) REFERENCES societe(id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS idx_transaction_daily_rollup_jour ON transaction_daily_rollup(jour, type);
+
+-- 2. FONCTION DE MAINTENANCE INCRÉMENTALE
+-- ============================================
+
+CREATE OR REPLACE FUNCTION maj_transaction_daily_rollup()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'UPDATE'
+        AND OLD.societe_id = NEW.societe_id
+        AND OLD.date_transaction = NEW.date_transaction
+        AND OLD.type = NEW.type
+        AND OLD.type_recette IS NOT DISTINCT FROM NEW.type_recette
+        AND OLD.categorie IS NOT DISTINCT FROM NEW.categorie
+        AND OLD.montant = NEW.montant THEN
+        RETURN NULL;
+    END IF;
+
+    -- Retirer l'ancienne ligne
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        UPDATE transaction_daily_rollup
+        SET montant_total = montant_total - OLD.montant,
+            nb_transactions = nb_transactions - 1
+        WHERE societe_id = OLD.societe_id
+          AND jour = OLD.date_transaction
+          AND type = OLD.type
+          AND type_recette = COALESCE(OLD.type_recette, '')
+          AND categorie = COALESCE(OLD.categorie, '');
+
+        DELETE FROM transaction_daily_rollup
+        WHERE societe_id = OLD.societe_id
+          AND jour = OLD.date_transaction
+          AND type = OLD.type
+          AND type_recette = COALESCE(OLD.type_recette, '')
+          AND categorie = COALESCE(OLD.categorie, '')
+          AND nb_transactions <= 0;
+    END IF;
+
+    -- Ajouter la nouvelle ligne
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        INSERT INTO transaction_daily_rollup (societe_id, jour, type, type_recette, categorie, montant_total, nb_transactions)
+        VALUES (NEW.societe_id, NEW.date_transaction, NEW.type,
+                COALESCE(NEW.type_recette, ''), COALESCE(NEW.categorie, ''), NEW.montant, 1)
+        ON CONFLICT (societe_id, jour, type, type_recette, categorie) DO UPDATE
+        SET montant_total = transaction_daily_rollup.montant_total + EXCLUDED.montant_total,
+            nb_transactions = transaction_daily_rollup.nb_transactions + 1;
+    END IF;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_maj_transaction_daily_rollup ON transaction;
+CREATE TRIGGER trg_maj_transaction_daily_rollup
+    AFTER INSERT OR UPDATE OR DELETE ON transaction
+    FOR EACH ROW
+    EXECUTE FUNCTION maj_transaction_daily_rollup();
+
+-- 3. FONCTION DE RECONSTRUCTION (correction d'une dérive)
+-- ============================================
+
+CREATE OR REPLACE FUNCTION reconstruire_transaction_daily_rollup()
+RETURNS INTEGER AS $$
+DECLARE
+    nb_lignes INTEGER;
+BEGIN
+    -- Bloque les écritures concurrentes sur transaction le temps de la reconstruction
+    LOCK TABLE transaction IN SHARE MODE;
+
+    DELETE FROM transaction_daily_rollup;
+
+    INSERT INTO transaction_daily_rollup (societe_id, jour, type, type_recette, categorie, montant_total, nb_transactions)
+    SELECT societe_id, date_transaction, type, COALESCE(type_recette, ''), COALESCE(categorie, ''),
+           SUM(montant), COUNT(*)
+    FROM transaction
+    GROUP BY societe_id, date_transaction, type, COALESCE(type_recette, ''), COALESCE(categorie, '');
+
+    GET DIAGNOSTICS nb_lignes = ROW_COUNT;
+    RETURN nb_lignes;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 4. INITIALISATION AVEC L'HISTORIQUE EXISTANT
+-- ============================================
+
+SELECT reconstruire_transaction_daily_rollup();
@@ -0,0 +1,130 @@
+-- ============================================
+-- V22: Soldes de trésorerie des mois clôturés (solde_tresorerie)
+-- ============================================
+-- Un instantané par société et par mois clôturé contient le solde cumulé
+-- (recettes - dépenses) à la fin du mois. La trésorerie à une date se calcule
+-- avec le dernier instantané antérieur au mois de la date, plus les mouvements
+-- de transaction_daily_rollup depuis la fin de cet instantané.
+-- Une transaction saisie ou modifiée dans un mois clôturé supprime l'instantané
+-- de ce mois et ceux des mois suivants. Ils sont recalculés à la clôture suivante.
+
+-- 1. TABLE solde_tresorerie
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS solde_tresorerie (
+    societe_id BIGINT NOT NULL,
+    mois DATE NOT NULL,
+    total_recettes DECIMAL(17, 2) NOT NULL DEFAULT 0,
+    total_depenses DECIMAL(17, 2) NOT NULL DEFAULT 0,
+    solde_cumule DECIMAL(17, 2) NOT NULL DEFAULT 0,
+    date_cloture TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    PRIMARY KEY (societe_id, mois),
+    FOREIGN KEY (societe_id) REFERENCES societe(id) ON DELETE CASCADE,
+    CONSTRAINT chk_solde_tresorerie_mois CHECK (mois = CAST(date_trunc('month', mois) AS DATE))
+);
+
+CREATE INDEX IF NOT EXISTS idx_solde_tresorerie_mois ON solde_tresorerie(mois);
+
+-- 2. INVALIDATION DES INSTANTANÉS SUR MOUVEMENT RÉTROACTIF
+-- ============================================
+
+CREATE OR REPLACE FUNCTION invalider_solde_tresorerie()
+RETURNS TRIGGER AS $$
+BEGIN
+    -- Hibernate réécrit toutes les colonnes à chaque sauvegarde : une mise à jour
+    -- qui ne change aucune colonne du solde ne doit pas invalider les instantanés.
+    -- Le statut n'en fait pas partie (transaction_daily_rollup ne le lit pas) : le
+    -- changement de statut d'un paiement laisse les instantanés en place
+    IF TG_OP = 'UPDATE'
+        AND OLD.societe_id IS NOT DISTINCT FROM NEW.societe_id
+        AND OLD.date_transaction IS NOT DISTINCT FROM NEW.date_transaction
+        AND OLD.type IS NOT DISTINCT FROM NEW.type
+        AND OLD.montant IS NOT DISTINCT FROM NEW.montant THEN
+        RETURN NULL;
+    END IF;
+
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        DELETE FROM solde_tresorerie
+        WHERE societe_id = OLD.societe_id
+          AND mois >= CAST(date_trunc('month', OLD.date_transaction) AS DATE);
+    END IF;
+
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        DELETE FROM solde_tresorerie
+        WHERE societe_id = NEW.societe_id
+          AND mois >= CAST(date_trunc('month', NEW.date_transaction) AS DATE);
+    END IF;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_invalider_solde_tresorerie ON transaction;
+CREATE TRIGGER trg_invalider_solde_tresorerie
+    AFTER INSERT OR UPDATE OF societe_id, date_transaction, type, montant OR DELETE ON transaction
+    FOR EACH ROW
+    EXECUTE FUNCTION invalider_solde_tresorerie();
+
+-- 3. FONCTION DE CLÔTURE
+-- ============================================
+-- Crée les instantanés manquants de chaque société jusqu'au mois p_dernier_mois inclus,
+-- en repartant du dernier instantané existant. Retourne le nombre d'instantanés créés.
+
+CREATE OR REPLACE FUNCTION cloturer_solde_tresorerie(p_dernier_mois DATE)
+RETURNS INTEGER AS $$
+DECLARE
+    nb_lignes INTEGER;
+BEGIN
+    -- Attend la fin des écritures en cours sur transaction pour ne pas figer un solde périmé
+    LOCK TABLE transaction IN SHARE MODE;
+
+    WITH derniers AS (
+        SELECT s.id AS societe_id, st.mois AS dernier_mois, COALESCE(st.solde_cumule, 0) AS solde_base
+        FROM societe s
+        LEFT JOIN LATERAL (
+            SELECT mois, solde_cumule FROM solde_tresorerie
+            WHERE societe_id = s.id
+            ORDER BY mois DESC
+            LIMIT 1
+        ) st ON TRUE
+    ),
+    premiers AS (
+        SELECT d.societe_id, d.solde_base,
+               COALESCE(CAST(d.dernier_mois + INTERVAL '1 month' AS DATE),
+                        (SELECT CAST(date_trunc('month', MIN(r.jour)) AS DATE)
+                         FROM transaction_daily_rollup r
+                         WHERE r.societe_id = d.societe_id)) AS premier_mois
+        FROM derniers d
+    ),
+    mois_a_cloturer AS (
+        SELECT p.societe_id, p.solde_base, CAST(m AS DATE) AS mois
+        FROM premiers p
+        CROSS JOIN LATERAL generate_series(p.premier_mois, p_dernier_mois, INTERVAL '1 month') m
+        WHERE p.premier_mois IS NOT NULL
+    ),
+    totaux AS (
+        SELECT m.societe_id, m.mois, m.solde_base,
+               COALESCE(SUM(r.montant_total) FILTER (WHERE r.type = 'RECETTE'), 0) AS recettes,
+               COALESCE(SUM(r.montant_total) FILTER (WHERE r.type = 'DEPENSE'), 0) AS depenses
+        FROM mois_a_cloturer m
+        LEFT JOIN transaction_daily_rollup r
+               ON r.societe_id = m.societe_id
+              AND r.jour >= m.mois
+              AND r.jour < m.mois + INTERVAL '1 month'
+        GROUP BY m.societe_id, m.mois, m.solde_base
+    )
+    INSERT INTO solde_tresorerie (societe_id, mois, total_recettes, total_depenses, solde_cumule)
+    SELECT societe_id, mois, recettes, depenses,
+           solde_base + SUM(recettes - depenses) OVER (PARTITION BY societe_id ORDER BY mois)
+    FROM totaux
+    ON CONFLICT (societe_id, mois) DO NOTHING;
+
+    GET DIAGNOSTICS nb_lignes = ROW_COUNT;
+    RETURN nb_lignes;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 4. CLÔTURE INITIALE JUSQU'AU MOIS PRÉCÉDENT
+-- ============================================
+
+SELECT cloturer_solde_tresorerie(CAST(date_trunc('month', CURRENT_DATE) - INTERVAL '1 month' AS DATE));
@@ -0,0 +1,39 @@
+-- ============================================
+-- V23: Montant payé et montant restant dénormalisés sur transaction
+-- ============================================
+-- montant_paye est la somme des paiements VALIDE de la transaction. PaiementService
+-- le met à jour par une requête atomique à chaque création ou suppression de paiement.
+-- montant_restant est une colonne générée (montant - montant_paye). Les recherches
+-- d'impayés utilisent ainsi un index partiel au lieu d'une sous-requête SUM par ligne.
+
+-- 1. COLONNES
+-- ============================================
+
+ALTER TABLE transaction ADD COLUMN IF NOT EXISTS montant_paye DECIMAL(15, 2) NOT NULL DEFAULT 0;
+ALTER TABLE transaction ADD COLUMN IF NOT EXISTS montant_restant DECIMAL(15, 2)
+    GENERATED ALWAYS AS (montant - montant_paye) STORED;
+
+ALTER TABLE transaction DROP CONSTRAINT IF EXISTS chk_transaction_montant_paye;
+ALTER TABLE transaction ADD CONSTRAINT chk_transaction_montant_paye CHECK (montant_paye >= 0);
+
+-- 2. INITIALISATION AVEC LES PAIEMENTS EXISTANTS
+-- ============================================
+
+UPDATE transaction t
+SET montant_paye = p.total
+FROM (
+    SELECT transaction_id, SUM(montant) AS total
+    FROM paiement
+    WHERE statut = 'VALIDE'
+    GROUP BY transaction_id
+) p
+WHERE p.transaction_id = t.id;
+
+-- 3. INDEX PARTIELS SUR LES TRANSACTIONS IMPAYÉES
+-- ============================================
+
+CREATE INDEX IF NOT EXISTS idx_transaction_impayees_societe ON transaction(societe_id)
+    WHERE montant_restant > 0 AND statut <> 'ANNULEE';
+
+CREATE INDEX IF NOT EXISTS idx_transaction_impayees ON transaction(date_transaction)
+    WHERE montant_restant > 0 AND statut <> 'ANNULEE';
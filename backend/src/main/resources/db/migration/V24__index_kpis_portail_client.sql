@@ -0,0 +1,10 @@
+-- ============================================
+-- V24: Index du dashboard du portail client
+-- ============================================
+-- Les KPIs client (/api/client/dashboard/kpis) sont calculés en une requête qui
+-- filtre enlevement par société et période, puis recherche le prochain
+-- enlèvement planifié de la société (LIMIT 1).
+
+CREATE INDEX IF NOT EXISTS idx_enlevement_societe_date ON enlevement(societe_id, date_enlevement);
+
+CREATE INDEX IF NOT EXISTS idx_planning_societe_date ON planning_enlevement(societe_id, date_prevue, heure_prevue);
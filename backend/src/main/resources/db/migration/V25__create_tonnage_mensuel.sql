@@ -0,0 +1,65 @@
+-- ============================================
+-- V25: Cube mensuel des tonnages et valorisations (tonnage_mensuel)
+-- ============================================
+-- Quantités et montants des pickup_item agrégés par société, site, mois,
+-- type de déchet et sous-type. Les KPIs du portail client lisent les mois
+-- complets dans ce cube et ne parcourent les items que pour les mois partiels.
+-- EnlevementService retire la contribution d'un enlèvement avant de le modifier
+-- ou de le supprimer, puis l'ajoute à nouveau après enregistrement.
+-- sous_type vaut '' lorsqu'il est NULL dans pickup_item.
+
+-- 1. TABLE tonnage_mensuel
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS tonnage_mensuel (
+    societe_id BIGINT NOT NULL,
+    site_id BIGINT NOT NULL,
+    mois DATE NOT NULL, -- premier jour du mois
+    type_dechet VARCHAR(20) NOT NULL,
+    sous_type VARCHAR(50) NOT NULL DEFAULT '',
+    quantite_kg DECIMAL(15, 3) NOT NULL DEFAULT 0,
+    montant_mad DECIMAL(17, 2) NOT NULL DEFAULT 0,
+    montant_prestation_mad DECIMAL(17, 2) NOT NULL DEFAULT 0,
+    montant_achat_mad DECIMAL(17, 2) NOT NULL DEFAULT 0,
+    montant_traitement_mad DECIMAL(17, 2) NOT NULL DEFAULT 0,
+    nb_items INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (societe_id, site_id, mois, type_dechet, sous_type),
+    FOREIGN KEY (societe_id) REFERENCES societe(id) ON DELETE CASCADE,
+    FOREIGN KEY (site_id) REFERENCES site(id) ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS idx_tonnage_mensuel_societe_mois ON tonnage_mensuel(societe_id, mois);
+
+-- 2. FONCTION DE RECONSTRUCTION
+-- ============================================
+
+CREATE OR REPLACE FUNCTION reconstruire_tonnage_mensuel()
+RETURNS INTEGER AS $$
+DECLARE
+    nb_lignes INTEGER;
+BEGIN
+    -- Bloque les écritures concurrentes sur les enlèvements le temps de la reconstruction
+    LOCK TABLE enlevement, pickup_item IN SHARE MODE;
+
+    DELETE FROM tonnage_mensuel;
+
+    INSERT INTO tonnage_mensuel (societe_id, site_id, mois, type_dechet, sous_type, quantite_kg, montant_mad,
+                                 montant_prestation_mad, montant_achat_mad, montant_traitement_mad, nb_items)
+    SELECT e.societe_id, e.site_id, CAST(date_trunc('month', e.date_enlevement) AS DATE),
+           i.type_dechet, COALESCE(i.sous_type, ''),
+           SUM(i.quantite_kg), COALESCE(SUM(i.montant_mad), 0),
+           COALESCE(SUM(i.montant_prestation_mad), 0), COALESCE(SUM(i.montant_achat_mad), 0),
+           COALESCE(SUM(i.montant_traitement_mad), 0), COUNT(*)
+    FROM pickup_item i
+    JOIN enlevement e ON e.id = i.enlevement_id
+    GROUP BY 1, 2, 3, 4, 5;
+
+    GET DIAGNOSTICS nb_lignes = ROW_COUNT;
+    RETURN nb_lignes;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 3. INITIALISATION AVEC L'HISTORIQUE EXISTANT
+-- ============================================
+
+SELECT reconstruire_tonnage_mensuel();
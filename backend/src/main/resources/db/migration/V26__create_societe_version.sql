@@ -0,0 +1,187 @@
+-- ============================================
+-- V26: Version des données par société (societe_version)
+-- ============================================
+-- Compteur incrémenté par trigger, une fois par transaction qui écrit les enlèvements,
+-- leurs items, les documents, les transactions ou le planning d'une société. Le portail
+-- client l'expose en ETag / Last-Modified et répond 304 Not Modified tant que
+-- la version n'a pas changé, sans recalculer les KPIs ni mapper les DTOs.
+
+-- 1. TABLE societe_version
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS societe_version (
+    societe_id BIGINT PRIMARY KEY,
+    version BIGINT NOT NULL DEFAULT 0,
+    modifie_le TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    modifie_par_transaction BIGINT,
+    FOREIGN KEY (societe_id) REFERENCES societe(id) ON DELETE CASCADE
+);
+
+-- 2. FONCTIONS D'INCRÉMENTATION
+-- ============================================
+-- Les triggers sont déclenchés une fois par instruction (FOR EACH STATEMENT) et lisent
+-- les lignes modifiées dans les tables de transition : une instruction qui écrit un lot
+-- (import, régénération) incrémente une seule fois la version de chaque société touchée,
+-- au lieu de réécrire sa ligne pour chaque ligne écrite.
+
+-- Une transaction n'incrémente qu'une fois la version d'une société : les instructions
+-- suivantes (lots JDBC de mises à jour, exécutés ligne par ligne) trouvent son numéro
+-- dans modifie_par_transaction et ne réécrivent pas la ligne. Les lecteurs ne voient que
+-- des transactions validées, une incrémentation par transaction suffit à l'ETag.
+-- Sociétés prises dans l'ordre des ids : deux instructions concurrentes verrouillent les
+-- lignes de societe_version dans le même ordre.
+CREATE OR REPLACE FUNCTION incrementer_societes_version(p_societe_ids BIGINT[])
+RETURNS VOID AS $$
+BEGIN
+    INSERT INTO societe_version (societe_id, version, modifie_le, modifie_par_transaction)
+    SELECT DISTINCT societe_id, 1, CURRENT_TIMESTAMP, txid_current()
+    FROM unnest(p_societe_ids) AS ids(societe_id)
+    WHERE societe_id IS NOT NULL
+    ORDER BY societe_id
+    ON CONFLICT (societe_id) DO UPDATE
+    SET version = societe_version.version + 1,
+        modifie_le = CURRENT_TIMESTAMP,
+        modifie_par_transaction = EXCLUDED.modifie_par_transaction
+    WHERE societe_version.modifie_par_transaction IS DISTINCT FROM EXCLUDED.modifie_par_transaction;
+END;
+$$ LANGUAGE plpgsql;
+
+-- Tables portant directement societe_id (tables de transition : nouvelles, anciennes)
+CREATE OR REPLACE FUNCTION maj_societe_version()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        PERFORM incrementer_societes_version(ARRAY(SELECT societe_id FROM nouvelles));
+    ELSIF TG_OP = 'UPDATE' THEN
+        PERFORM incrementer_societes_version(ARRAY(
+            SELECT societe_id FROM anciennes UNION SELECT societe_id FROM nouvelles));
+    ELSE
+        PERFORM incrementer_societes_version(ARRAY(SELECT societe_id FROM anciennes));
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- pickup_item : société lue sur l'enlèvement (absent lors d'une suppression en cascade,
+-- déjà compté par le trigger de enlevement)
+CREATE OR REPLACE FUNCTION maj_societe_version_pickup_item()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        PERFORM incrementer_societes_version(ARRAY(
+            SELECT e.societe_id FROM enlevement e
+            WHERE e.id IN (SELECT enlevement_id FROM nouvelles)));
+    ELSIF TG_OP = 'UPDATE' THEN
+        PERFORM incrementer_societes_version(ARRAY(
+            SELECT e.societe_id FROM enlevement e
+            WHERE e.id IN (SELECT enlevement_id FROM anciennes UNION SELECT enlevement_id FROM nouvelles)));
+    ELSE
+        PERFORM incrementer_societes_version(ARRAY(
+            SELECT e.societe_id FROM enlevement e
+            WHERE e.id IN (SELECT enlevement_id FROM anciennes)));
+    END IF;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 3. TRIGGERS
+-- ============================================
+-- Un trigger par opération : une table de transition n'est permise que sur un
+-- trigger d'un seul événement
+
+DROP TRIGGER IF EXISTS trg_societe_version_enlevement_ins ON enlevement;
+CREATE TRIGGER trg_societe_version_enlevement_ins
+    AFTER INSERT ON enlevement
+    REFERENCING NEW TABLE AS nouvelles
+    FOR EACH STATEMENT EXECUTE FUNCTION maj_societe_version();
+
+DROP TRIGGER IF EXISTS trg_societe_version_enlevement_upd ON enlevement;
+CREATE TRIGGER trg_societe_version_enlevement_upd
+    AFTER UPDATE ON enlevement
+    REFERENCING OLD TABLE AS anciennes NEW TABLE AS nouvelles
+    FOR EACH STATEMENT EXECUTE FUNCTION maj_societe_version();
+
+DROP TRIGGER IF EXISTS trg_societe_version_enlevement_del ON enlevement;
+CREATE TRIGGER trg_societe_version_enlevement_del
+    AFTER DELETE ON enlevement
+    REFERENCING OLD TABLE AS anciennes
+    FOR EACH STATEMENT EXECUTE FUNCTION maj_societe_version();
+
+DROP TRIGGER IF EXISTS trg_societe_version_transaction_ins ON transaction;
+CREATE TRIGGER trg_societe_version_transaction_ins
+    AFTER INSERT ON transaction
+    REFERENCING NEW TABLE AS nouvelles
+    FOR EACH STATEMENT EXECUTE FUNCTION maj_societe_version();
+
+DROP TRIGGER IF EXISTS trg_societe_version_transaction_upd ON transaction;
+CREATE TRIGGER trg_societe_version_transaction_upd
+    AFTER UPDATE ON transaction
+    REFERENCING OLD TABLE AS anciennes NEW TABLE AS nouvelles
+    FOR EACH STATEMENT EXECUTE FUNCTION maj_societe_version();
+
+DROP TRIGGER IF EXISTS trg_societe_version_transaction_del ON transaction;
+CREATE TRIGGER trg_societe_version_transaction_del
+    AFTER DELETE ON transaction
+    REFERENCING OLD TABLE AS anciennes
+    FOR EACH STATEMENT EXECUTE FUNCTION maj_societe_version();
+
+DROP TRIGGER IF EXISTS trg_societe_version_planning_ins ON planning_enlevement;
+CREATE TRIGGER trg_societe_version_planning_ins
+    AFTER INSERT ON planning_enlevement
+    REFERENCING NEW TABLE AS nouvelles
+    FOR EACH STATEMENT EXECUTE FUNCTION maj_societe_version();
+
+DROP TRIGGER IF EXISTS trg_societe_version_planning_upd ON planning_enlevement;
+CREATE TRIGGER trg_societe_version_planning_upd
+    AFTER UPDATE ON planning_enlevement
+    REFERENCING OLD TABLE AS anciennes NEW TABLE AS nouvelles
+    FOR EACH STATEMENT EXECUTE FUNCTION maj_societe_version();
+
+DROP TRIGGER IF EXISTS trg_societe_version_planning_del ON planning_enlevement;
+CREATE TRIGGER trg_societe_version_planning_del
+    AFTER DELETE ON planning_enlevement
+    REFERENCING OLD TABLE AS anciennes
+    FOR EACH STATEMENT EXECUTE FUNCTION maj_societe_version();
+
+DROP TRIGGER IF EXISTS trg_societe_version_document_ins ON document;
+CREATE TRIGGER trg_societe_version_document_ins
+    AFTER INSERT ON document
+    REFERENCING NEW TABLE AS nouvelles
+    FOR EACH STATEMENT EXECUTE FUNCTION maj_societe_version();
+
+DROP TRIGGER IF EXISTS trg_societe_version_document_upd ON document;
+CREATE TRIGGER trg_societe_version_document_upd
+    AFTER UPDATE ON document
+    REFERENCING OLD TABLE AS anciennes NEW TABLE AS nouvelles
+    FOR EACH STATEMENT EXECUTE FUNCTION maj_societe_version();
+
+DROP TRIGGER IF EXISTS trg_societe_version_document_del ON document;
+CREATE TRIGGER trg_societe_version_document_del
+    AFTER DELETE ON document
+    REFERENCING OLD TABLE AS anciennes
+    FOR EACH STATEMENT EXECUTE FUNCTION maj_societe_version();
+
+DROP TRIGGER IF EXISTS trg_societe_version_pickup_item_ins ON pickup_item;
+CREATE TRIGGER trg_societe_version_pickup_item_ins
+    AFTER INSERT ON pickup_item
+    REFERENCING NEW TABLE AS nouvelles
+    FOR EACH STATEMENT EXECUTE FUNCTION maj_societe_version_pickup_item();
+
+DROP TRIGGER IF EXISTS trg_societe_version_pickup_item_upd ON pickup_item;
+CREATE TRIGGER trg_societe_version_pickup_item_upd
+    AFTER UPDATE ON pickup_item
+    REFERENCING OLD TABLE AS anciennes NEW TABLE AS nouvelles
+    FOR EACH STATEMENT EXECUTE FUNCTION maj_societe_version_pickup_item();
+
+DROP TRIGGER IF EXISTS trg_societe_version_pickup_item_del ON pickup_item;
+CREATE TRIGGER trg_societe_version_pickup_item_del
+    AFTER DELETE ON pickup_item
+    REFERENCING OLD TABLE AS anciennes
+    FOR EACH STATEMENT EXECUTE FUNCTION maj_societe_version_pickup_item();
+
+-- 4. INITIALISATION
+-- ============================================
+
+INSERT INTO societe_version (societe_id, version, modifie_le)
+SELECT id, 1, CURRENT_TIMESTAMP FROM societe
+ON CONFLICT (societe_id) DO NOTHING;
@@ -0,0 +1,89 @@
+-- ============================================
+-- V27: Totaux stockés sur enlevement
+-- ============================================
+-- Poids, budgets et nombre d'items de chaque enlèvement, maintenus par trigger
+-- à chaque écriture sur pickup_item. Les listes d'enlèvements lisent ces colonnes
+-- (EnlevementSummaryDTO) au lieu de charger et d'additionner tous les items.
+-- budget_recyclage : montants RECYCLABLE, budget_traitement : montants BANAL + A_DETRUIRE.
+
+-- 1. COLONNES
+-- ============================================
+
+ALTER TABLE enlevement ADD COLUMN IF NOT EXISTS nb_items INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE enlevement ADD COLUMN IF NOT EXISTS poids_total DECIMAL(15, 3) NOT NULL DEFAULT 0;
+ALTER TABLE enlevement ADD COLUMN IF NOT EXISTS poids_recyclable DECIMAL(15, 3) NOT NULL DEFAULT 0;
+ALTER TABLE enlevement ADD COLUMN IF NOT EXISTS budget_recyclage DECIMAL(15, 2) NOT NULL DEFAULT 0;
+ALTER TABLE enlevement ADD COLUMN IF NOT EXISTS budget_traitement DECIMAL(15, 2) NOT NULL DEFAULT 0;
+
+-- 2. FONCTION DE MAINTENANCE INCRÉMENTALE
+-- ============================================
+
+CREATE OR REPLACE FUNCTION maj_enlevement_totaux()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'UPDATE'
+        AND OLD.enlevement_id = NEW.enlevement_id
+        AND OLD.type_dechet = NEW.type_dechet
+        AND OLD.quantite_kg = NEW.quantite_kg
+        AND OLD.montant_mad IS NOT DISTINCT FROM NEW.montant_mad THEN
+        RETURN NULL;
+    END IF;
+
+    -- Retirer l'ancien item (aucune ligne si l'enlèvement est supprimé en cascade)
+    IF TG_OP IN ('UPDATE', 'DELETE') THEN
+        UPDATE enlevement
+        SET nb_items = nb_items - 1,
+            poids_total = poids_total - OLD.quantite_kg,
+            poids_recyclable = poids_recyclable
+                - CASE WHEN OLD.type_dechet = 'RECYCLABLE' THEN OLD.quantite_kg ELSE 0 END,
+            budget_recyclage = budget_recyclage
+                - CASE WHEN OLD.type_dechet = 'RECYCLABLE' THEN COALESCE(OLD.montant_mad, 0) ELSE 0 END,
+            budget_traitement = budget_traitement
+                - CASE WHEN OLD.type_dechet IN ('BANAL', 'A_DETRUIRE') THEN COALESCE(OLD.montant_mad, 0) ELSE 0 END
+        WHERE id = OLD.enlevement_id;
+    END IF;
+
+    -- Ajouter le nouvel item
+    IF TG_OP IN ('INSERT', 'UPDATE') THEN
+        UPDATE enlevement
+        SET nb_items = nb_items + 1,
+            poids_total = poids_total + NEW.quantite_kg,
+            poids_recyclable = poids_recyclable
+                + CASE WHEN NEW.type_dechet = 'RECYCLABLE' THEN NEW.quantite_kg ELSE 0 END,
+            budget_recyclage = budget_recyclage
+                + CASE WHEN NEW.type_dechet = 'RECYCLABLE' THEN COALESCE(NEW.montant_mad, 0) ELSE 0 END,
+            budget_traitement = budget_traitement
+                + CASE WHEN NEW.type_dechet IN ('BANAL', 'A_DETRUIRE') THEN COALESCE(NEW.montant_mad, 0) ELSE 0 END
+        WHERE id = NEW.enlevement_id;
+    END IF;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_maj_enlevement_totaux ON pickup_item;
+CREATE TRIGGER trg_maj_enlevement_totaux
+    AFTER INSERT OR UPDATE OR DELETE ON pickup_item
+    FOR EACH ROW
+    EXECUTE FUNCTION maj_enlevement_totaux();
+
+-- 3. INITIALISATION AVEC LES ITEMS EXISTANTS
+-- ============================================
+
+UPDATE enlevement e
+SET nb_items = t.nb_items,
+    poids_total = t.poids_total,
+    poids_recyclable = t.poids_recyclable,
+    budget_recyclage = t.budget_recyclage,
+    budget_traitement = t.budget_traitement
+FROM (
+    SELECT enlevement_id,
+           COUNT(*) AS nb_items,
+           SUM(quantite_kg) AS poids_total,
+           SUM(CASE WHEN type_dechet = 'RECYCLABLE' THEN quantite_kg ELSE 0 END) AS poids_recyclable,
+           SUM(CASE WHEN type_dechet = 'RECYCLABLE' THEN COALESCE(montant_mad, 0) ELSE 0 END) AS budget_recyclage,
+           SUM(CASE WHEN type_dechet IN ('BANAL', 'A_DETRUIRE') THEN COALESCE(montant_mad, 0) ELSE 0 END) AS budget_traitement
+    FROM pickup_item
+    GROUP BY enlevement_id
+) t
+WHERE t.enlevement_id = e.id;
@@ -0,0 +1,75 @@
+-- ============================================
+-- V28: Index de la pagination par curseur (keyset)
+-- ============================================
+-- Les listes parcourues par curseur reprennent après la clé (date, id) de la dernière ligne :
+-- WHERE (date, id) < (:date, :id) ORDER BY date DESC, id DESC LIMIT n
+-- Ces index composites servent la condition et le tri, une page coûte le même prix à toute profondeur.
+-- Ils remplacent les index simples sur la date (et (societe_id, date_enlevement) de V24) dont ils sont des préfixes.
+
+-- Enlèvements
+CREATE INDEX IF NOT EXISTS idx_enlevement_date_id ON enlevement(date_enlevement, id);
+CREATE INDEX IF NOT EXISTS idx_enlevement_societe_date_id ON enlevement(societe_id, date_enlevement, id);
+DROP INDEX IF EXISTS idx_enlevement_date;
+DROP INDEX IF EXISTS idx_enlevement_societe_date;
+
+-- Transactions
+CREATE INDEX IF NOT EXISTS idx_transaction_date_id ON transaction(date_transaction, id);
+CREATE INDEX IF NOT EXISTS idx_transaction_societe_date_id ON transaction(societe_id, date_transaction, id);
+DROP INDEX IF EXISTS idx_transaction_date;
+
+-- Paiements
+-- La société d'un paiement est recopiée de sa transaction (paiement.societe_id, maintenue par trigger) :
+-- le filtre société parcourt (societe_id, date_paiement, id) au lieu de l'index global par date
+CREATE INDEX IF NOT EXISTS idx_paiement_date_id ON paiement(date_paiement, id);
+DROP INDEX IF EXISTS idx_paiement_date;
+
+ALTER TABLE paiement ADD COLUMN IF NOT EXISTS societe_id BIGINT;
+
+UPDATE paiement p
+SET societe_id = t.societe_id
+FROM transaction t
+WHERE t.id = p.transaction_id;
+
+ALTER TABLE paiement ALTER COLUMN societe_id SET NOT NULL;
+
+CREATE INDEX IF NOT EXISTS idx_paiement_societe_date_id ON paiement(societe_id, date_paiement, id);
+
+-- Société du paiement à l'insertion et au changement de transaction
+CREATE OR REPLACE FUNCTION copier_societe_paiement()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'UPDATE'
+        AND OLD.transaction_id = NEW.transaction_id
+        AND OLD.societe_id IS NOT DISTINCT FROM NEW.societe_id THEN
+        RETURN NEW;
+    END IF;
+
+    SELECT societe_id INTO NEW.societe_id FROM transaction WHERE id = NEW.transaction_id;
+    RETURN NEW;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_copier_societe_paiement ON paiement;
+CREATE TRIGGER trg_copier_societe_paiement
+    BEFORE INSERT OR UPDATE OF transaction_id, societe_id ON paiement
+    FOR EACH ROW
+    EXECUTE FUNCTION copier_societe_paiement();
+
+-- Report d'un changement de société de la transaction sur ses paiements
+CREATE OR REPLACE FUNCTION reporter_societe_paiement()
+RETURNS TRIGGER AS $$
+BEGIN
+    IF OLD.societe_id IS NOT DISTINCT FROM NEW.societe_id THEN
+        RETURN NULL;
+    END IF;
+
+    UPDATE paiement SET societe_id = NEW.societe_id WHERE transaction_id = NEW.id;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_reporter_societe_paiement ON transaction;
+CREATE TRIGGER trg_reporter_societe_paiement
+    AFTER UPDATE OF societe_id ON transaction
+    FOR EACH ROW
+    EXECUTE FUNCTION reporter_societe_paiement();
@@ -0,0 +1,21 @@
+-- ============================================
+-- V29: Séquences par pas de 50 pour les entités écrites en masse
+-- ============================================
+-- Les ids IDENTITY obligent Hibernate à exécuter chaque INSERT immédiatement pour lire l'id généré,
+-- ce qui désactive hibernate.jdbc.batch_size. Avec GenerationType.SEQUENCE et allocationSize = 50
+-- (optimiseur "pooled"), un appel à nextval réserve 50 ids : la valeur v renvoyée couvre v-49 à v.
+-- Les INSERT partent alors par lots et les numéros métier (ENL-, VENT-) sont connus avant l'insertion.
+--
+-- Le pas des séquences doit rester égal à allocationSize dans les entités. Les colonnes gardent leur
+-- DEFAULT nextval(...) : une insertion SQL directe consomme une plage entière, sans collision possible.
+
+DO $$
+DECLARE
+    t TEXT;
+BEGIN
+    FOREACH t IN ARRAY ARRAY['enlevement', 'pickup_item', 'transaction', 'echeance', 'paiement',
+                             'vente', 'vente_item', 'planning_enlevement']
+    LOOP
+        EXECUTE format('ALTER SEQUENCE %s INCREMENT BY 50', pg_get_serial_sequence(t, 'id'));
+    END LOOP;
+END $$;
@@ -0,0 +1,39 @@
+-- ============================================
+-- V30: Outbox de la génération comptable (outbox_comptable)
+-- ============================================
+-- La création ou la modification d'un enlèvement n'écrit plus ses transactions dans la requête :
+-- elle enregistre une demande de génération dans la même transaction que l'enlèvement.
+-- Un worker (OutboxComptableService) réserve les demandes avec FOR UPDATE SKIP LOCKED, régénère les
+-- transactions et marque la demande traitée dans une même transaction. En cas d'erreur la demande
+-- est replanifiée avec un délai croissant, puis passe en ECHEC après le nombre maximal de tentatives.
+--
+-- Statuts : EN_ATTENTE -> EN_COURS -> TRAITE, ou retour EN_ATTENTE (nouvelle tentative), ou ECHEC
+
+CREATE TABLE IF NOT EXISTS outbox_comptable (
+    id BIGSERIAL PRIMARY KEY,
+    enlevement_id BIGINT NOT NULL,
+    statut VARCHAR(20) NOT NULL DEFAULT 'EN_ATTENTE',
+    tentatives INTEGER NOT NULL DEFAULT 0,
+    prochaine_tentative TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    verrouille_le TIMESTAMP WITH TIME ZONE,
+    derniere_erreur TEXT,
+    traite_le TIMESTAMP WITH TIME ZONE,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (enlevement_id) REFERENCES enlevement(id) ON DELETE CASCADE,
+    CONSTRAINT chk_outbox_comptable_statut CHECK (statut IN ('EN_ATTENTE', 'EN_COURS', 'TRAITE', 'ECHEC'))
+);
+
+-- Une seule demande en attente par enlèvement : des modifications rapprochées ne génèrent qu'une fois
+-- (la génération relit l'enlèvement, la dernière version est toujours prise en compte)
+CREATE UNIQUE INDEX IF NOT EXISTS uq_outbox_comptable_en_attente
+    ON outbox_comptable(enlevement_id) WHERE statut = 'EN_ATTENTE';
+
+-- Réservation des demandes à traiter, dans l'ordre d'arrivée
+CREATE INDEX IF NOT EXISTS idx_outbox_comptable_a_traiter
+    ON outbox_comptable(prochaine_tentative, id) WHERE statut IN ('EN_ATTENTE', 'EN_COURS');
+
+CREATE INDEX IF NOT EXISTS idx_outbox_comptable_statut ON outbox_comptable(statut);
+
+COMMENT ON TABLE outbox_comptable IS 'Demandes de génération des transactions comptables des enlèvements, traitées en arrière-plan';
+COMMENT ON COLUMN outbox_comptable.verrouille_le IS 'Début du traitement en cours, une réservation expirée est reprise par un autre worker';
@@ -0,0 +1,21 @@
+-- ============================================
+-- V31: Lien transaction -> item d'enlèvement (pickup_item_id)
+-- ============================================
+-- Les transactions générées depuis un enlèvement sont rattachées à l'item qui les produit.
+-- La génération (TransactionGenerationService) compare alors les lignes attendues aux lignes
+-- existantes par (item, type, catégorie) : seules les lignes modifiées sont mises à jour, en place,
+-- ce qui conserve les paiements et échéances déjà saisis.
+--
+-- Les transactions générées avant cette migration n'ont pas de lien : elles sont rattachées à
+-- leur item lors de la prochaine génération de l'enlèvement (même type, catégorie et montant).
+
+ALTER TABLE transaction ADD COLUMN IF NOT EXISTS pickup_item_id BIGINT;
+
+ALTER TABLE transaction
+    ADD CONSTRAINT fk_transaction_pickup_item
+    FOREIGN KEY (pickup_item_id) REFERENCES pickup_item(id) ON DELETE SET NULL;
+
+CREATE INDEX IF NOT EXISTS idx_transaction_pickup_item
+    ON transaction(pickup_item_id) WHERE pickup_item_id IS NOT NULL;
+
+COMMENT ON COLUMN transaction.pickup_item_id IS 'Item d''enlèvement à l''origine d''une transaction générée';
@@ -0,0 +1,42 @@
+-- ============================================
+-- V32: Jobs de régénération des transactions (regeneration_job)
+-- ============================================
+-- Régénération en masse des transactions générées des enlèvements d'une société et/ou d'une période,
+-- par exemple après une correction de tarif. Le job parcourt les enlèvements par id croissant,
+-- par lots, chaque lot dans sa propre transaction avec l'avancement : dernier_enlevement_id est le
+-- point de reprise après un arrêt, actif_le permet de détecter un job abandonné et de le reprendre.
+-- verrouille_le est le jeton du worker qui a réservé le job : un avancement sans le jeton courant
+-- (job repris par un autre worker ou annulé) n'est pas enregistré et arrête l'ancien worker.
+
+CREATE TABLE IF NOT EXISTS regeneration_job (
+    id BIGSERIAL PRIMARY KEY,
+    societe_id BIGINT,
+    date_debut DATE,
+    date_fin DATE,
+    statut VARCHAR(20) NOT NULL DEFAULT 'EN_ATTENTE',
+    total BIGINT NOT NULL DEFAULT 0,
+    traites BIGINT NOT NULL DEFAULT 0,
+    en_erreur BIGINT NOT NULL DEFAULT 0,
+    transactions_creees BIGINT NOT NULL DEFAULT 0,
+    transactions_modifiees BIGINT NOT NULL DEFAULT 0,
+    transactions_supprimees BIGINT NOT NULL DEFAULT 0,
+    dernier_enlevement_id BIGINT NOT NULL DEFAULT 0,
+    duree_traitement_ms BIGINT NOT NULL DEFAULT 0,
+    derniere_erreur TEXT,
+    demande_par VARCHAR(100),
+    demarre_le TIMESTAMP WITH TIME ZONE,
+    actif_le TIMESTAMP WITH TIME ZONE,
+    verrouille_le TIMESTAMP WITH TIME ZONE,
+    termine_le TIMESTAMP WITH TIME ZONE,
+    created_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    FOREIGN KEY (societe_id) REFERENCES societe(id) ON DELETE CASCADE,
+    CONSTRAINT chk_regeneration_job_statut CHECK (statut IN ('EN_ATTENTE', 'EN_COURS', 'TERMINE', 'ANNULE'))
+);
+
+CREATE INDEX IF NOT EXISTS idx_regeneration_job_actifs
+    ON regeneration_job(id) WHERE statut IN ('EN_ATTENTE', 'EN_COURS');
+
+COMMENT ON TABLE regeneration_job IS 'Régénérations en masse des transactions des enlèvements, reprises au dernier lot validé';
+COMMENT ON COLUMN regeneration_job.dernier_enlevement_id IS 'Point de reprise : plus grand id d''enlèvement du dernier lot validé';
+COMMENT ON COLUMN regeneration_job.verrouille_le IS 'Jeton du worker propriétaire, posé à la réservation et exigé par chaque avancement';
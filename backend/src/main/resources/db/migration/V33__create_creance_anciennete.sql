@@ -0,0 +1,167 @@
+-- ============================================
+-- V33: Balance âgée des créances clients (creance_anciennete)
+-- ============================================
+-- Une ligne par société et par tranche d'ancienneté (0 : 0-30 jours, 1 : 31-60,
+-- 2 : 61-90, 3 : plus de 90) contient le nombre et le montant restant des recettes
+-- impayées. L'ancienneté est comptée depuis la date de la transaction jusqu'à la
+-- date de référence de creance_reference.
+-- Le trigger sur transaction tient la table à jour à chaque écriture, y compris
+-- le montant payé mis à jour par PaiementService (voir V23) : la balance se lit
+-- sans parcourir les factures ni leurs paiements.
+-- Chaque nuit, avancer_creance_anciennete déplace la date de référence et fait
+-- passer dans la tranche suivante les seules factures qui franchissent une borne.
+
+-- 1. TABLES
+-- ============================================
+
+CREATE TABLE IF NOT EXISTS creance_anciennete (
+    societe_id BIGINT NOT NULL,
+    tranche SMALLINT NOT NULL,
+    nombre INTEGER NOT NULL DEFAULT 0,
+    montant_restant DECIMAL(17, 2) NOT NULL DEFAULT 0,
+    PRIMARY KEY (societe_id, tranche),
+    FOREIGN KEY (societe_id) REFERENCES societe(id) ON DELETE CASCADE,
+    CONSTRAINT chk_creance_anciennete_tranche CHECK (tranche BETWEEN 0 AND 3)
+);
+
+CREATE TABLE IF NOT EXISTS creance_reference (
+    id SMALLINT PRIMARY KEY DEFAULT 1,
+    date_reference DATE NOT NULL,
+    CONSTRAINT chk_creance_reference_unique CHECK (id = 1)
+);
+
+INSERT INTO creance_reference (id, date_reference) VALUES (1, CURRENT_DATE)
+ON CONFLICT (id) DO NOTHING;
+
+-- 2. TRANCHE D'ANCIENNETÉ
+-- ============================================
+
+CREATE OR REPLACE FUNCTION tranche_anciennete(p_reference DATE, p_date DATE)
+RETURNS SMALLINT AS $$
+    SELECT CAST(CASE
+        WHEN p_reference - p_date <= 30 THEN 0
+        WHEN p_reference - p_date <= 60 THEN 1
+        WHEN p_reference - p_date <= 90 THEN 2
+        ELSE 3
+    END AS SMALLINT);
+$$ LANGUAGE sql IMMUTABLE;
+
+-- 3. MISE À JOUR À CHAQUE ÉCRITURE SUR transaction
+-- ============================================
+-- Retire la contribution de l'ancienne ligne et ajoute celle de la nouvelle
+-- (montant_restant, colonne générée, est déjà calculé dans un trigger AFTER)
+
+CREATE OR REPLACE FUNCTION maj_creance_anciennete()
+RETURNS TRIGGER AS $$
+DECLARE
+    v_reference DATE;
+BEGIN
+    -- Hibernate réécrit toutes les colonnes à chaque sauvegarde : une mise à jour
+    -- qui ne change ni la société, ni la date, ni le type, ni le statut, ni le restant dû
+    -- laisse la balance inchangée
+    IF TG_OP = 'UPDATE'
+        AND OLD.societe_id IS NOT DISTINCT FROM NEW.societe_id
+        AND OLD.date_transaction IS NOT DISTINCT FROM NEW.date_transaction
+        AND OLD.type IS NOT DISTINCT FROM NEW.type
+        AND OLD.statut IS NOT DISTINCT FROM NEW.statut
+        AND OLD.montant_restant IS NOT DISTINCT FROM NEW.montant_restant THEN
+        RETURN NULL;
+    END IF;
+
+    SELECT date_reference INTO v_reference FROM creance_reference WHERE id = 1;
+
+    IF TG_OP IN ('UPDATE', 'DELETE')
+            AND OLD.type = 'RECETTE' AND OLD.statut <> 'ANNULEE' AND OLD.montant_restant > 0 THEN
+        UPDATE creance_anciennete
+        SET nombre = nombre - 1,
+            montant_restant = montant_restant - OLD.montant_restant
+        WHERE societe_id = OLD.societe_id
+          AND tranche = tranche_anciennete(v_reference, OLD.date_transaction);
+    END IF;
+
+    IF TG_OP IN ('INSERT', 'UPDATE')
+            AND NEW.type = 'RECETTE' AND NEW.statut <> 'ANNULEE' AND NEW.montant_restant > 0 THEN
+        INSERT INTO creance_anciennete (societe_id, tranche, nombre, montant_restant)
+        VALUES (NEW.societe_id, tranche_anciennete(v_reference, NEW.date_transaction), 1, NEW.montant_restant)
+        ON CONFLICT (societe_id, tranche) DO UPDATE
+        SET nombre = creance_anciennete.nombre + 1,
+            montant_restant = creance_anciennete.montant_restant + EXCLUDED.montant_restant;
+    END IF;
+
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DROP TRIGGER IF EXISTS trg_maj_creance_anciennete ON transaction;
+CREATE TRIGGER trg_maj_creance_anciennete
+    AFTER INSERT OR UPDATE OF societe_id, date_transaction, type, statut, montant, montant_paye OR DELETE ON transaction
+    FOR EACH ROW
+    EXECUTE FUNCTION maj_creance_anciennete();
+
+-- 4. AVANCEMENT DE LA DATE DE RÉFÉRENCE
+-- ============================================
+-- Ne relit que les factures dont la tranche change entre l'ancienne et la nouvelle
+-- date de référence : datées après (ancienne référence - 91) et au plus tard
+-- (nouvelle référence - 31). Retourne le nombre de lignes de balance modifiées.
+
+CREATE OR REPLACE FUNCTION avancer_creance_anciennete(p_reference DATE)
+RETURNS INTEGER AS $$
+DECLARE
+    v_ancienne DATE;
+    nb_lignes INTEGER;
+BEGIN
+    -- Attend la fin des écritures en cours sur transaction, comptées avec l'ancienne référence
+    LOCK TABLE transaction IN SHARE MODE;
+
+    SELECT date_reference INTO v_ancienne FROM creance_reference WHERE id = 1 FOR UPDATE;
+    IF p_reference <= v_ancienne THEN
+        RETURN 0;
+    END IF;
+
+    WITH mouvements AS (
+        SELECT societe_id, montant_restant,
+               tranche_anciennete(v_ancienne, date_transaction) AS avant,
+               tranche_anciennete(p_reference, date_transaction) AS apres
+        FROM transaction
+        WHERE type = 'RECETTE'
+          AND statut <> 'ANNULEE'
+          AND montant_restant > 0
+          AND date_transaction > v_ancienne - 91
+          AND date_transaction <= p_reference - 31
+    ),
+    deltas AS (
+        SELECT societe_id, avant AS tranche, -COUNT(*) AS nombre, -SUM(montant_restant) AS montant
+        FROM mouvements WHERE avant <> apres
+        GROUP BY societe_id, avant
+        UNION ALL
+        SELECT societe_id, apres, COUNT(*), SUM(montant_restant)
+        FROM mouvements WHERE avant <> apres
+        GROUP BY societe_id, apres
+    )
+    INSERT INTO creance_anciennete (societe_id, tranche, nombre, montant_restant)
+    SELECT societe_id, tranche, SUM(nombre), SUM(montant)
+    FROM deltas
+    GROUP BY societe_id, tranche
+    ON CONFLICT (societe_id, tranche) DO UPDATE
+    SET nombre = creance_anciennete.nombre + EXCLUDED.nombre,
+        montant_restant = creance_anciennete.montant_restant + EXCLUDED.montant_restant;
+
+    GET DIAGNOSTICS nb_lignes = ROW_COUNT;
+
+    UPDATE creance_reference SET date_reference = p_reference WHERE id = 1;
+
+    RETURN nb_lignes;
+END;
+$$ LANGUAGE plpgsql;
+
+-- 5. INITIALISATION AVEC LES RECETTES IMPAYÉES EXISTANTES
+-- ============================================
+
+INSERT INTO creance_anciennete (societe_id, tranche, nombre, montant_restant)
+SELECT societe_id, tranche_anciennete(CURRENT_DATE, date_transaction), COUNT(*), SUM(montant_restant)
+FROM transaction
+WHERE type = 'RECETTE'
+  AND statut <> 'ANNULEE'
+  AND montant_restant > 0
+GROUP BY societe_id, tranche_anciennete(CURRENT_DATE, date_transaction)
+ON CONFLICT (societe_id, tranche) DO NOTHING;
@@ -0,0 +1,58 @@
+package ma.iorecycling;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Base des tests d'intégration sur PostgreSQL (suffixe IT, lancés par mvn verify)
+ *
+ * Le schéma est créé par les migrations Flyway : triggers, fonctions et requêtes natives s'exécutent
+ * comme en production. La base est un PostgreSQL embarqué démarré une fois pour toute la JVM, ou la
+ * base vide désignée par POSTGRES_TEST_URL (POSTGRES_TEST_USER, POSTGRES_TEST_PASSWORD), nécessaire
+ * quand les tests tournent en root : initdb refuse de s'y exécuter.
+ * Chaque test s'exécute dans une transaction annulée à la fin (DataJpaTest).
+ */
+@DataJpaTest(properties = "spring.flyway.enabled=true")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+public abstract class AbstractPostgresIT {
+
+    private static EmbeddedPostgres postgres;
+
+    @DynamicPropertySource
+    static void postgres(DynamicPropertyRegistry registry) {
+        String url = System.getenv("POSTGRES_TEST_URL");
+        if (url != null) {
+            registry.add("spring.datasource.url", () -> url);
+            registry.add("spring.datasource.username", () -> System.getenv().getOrDefault("POSTGRES_TEST_USER", "postgres"));
+            registry.add("spring.datasource.password", () -> System.getenv().getOrDefault("POSTGRES_TEST_PASSWORD", ""));
+        } else {
+            registry.add("spring.datasource.url", () -> embarque().getJdbcUrl("postgres", "postgres"));
+            registry.add("spring.datasource.username", () -> "postgres");
+            registry.add("spring.datasource.password", () -> "");
+        }
+    }
+
+    private static synchronized EmbeddedPostgres embarque() {
+        if (postgres == null) {
+            try {
+                postgres = EmbeddedPostgres.start();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Démarrage du PostgreSQL embarqué impossible", e);
+            }
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    postgres.close();
+                } catch (IOException ignored) {
+                    // Arrêt de la JVM : rien à faire de plus
+                }
+            }));
+        }
+        return postgres;
+    }
+}
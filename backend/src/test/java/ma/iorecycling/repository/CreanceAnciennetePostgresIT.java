@@ -0,0 +1,122 @@
+package ma.iorecycling.repository;
+
+import ma.iorecycling.AbstractPostgresIT;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tenue de la balance âgée par le trigger trg_maj_creance_anciennete et par avancer_creance_anciennete
+ * Après chaque écriture, la table doit être identique au recalcul complet depuis transaction
+ */
+class CreanceAnciennetePostgresIT extends AbstractPostgresIT {
+
+    private static final String BALANCE = "SELECT tranche || ':' || nombre || ':' || montant_restant " +
+            "FROM creance_anciennete WHERE societe_id = ? AND nombre <> 0 ORDER BY tranche";
+
+    private static final String RECALCUL = "SELECT tranche || ':' || nombre || ':' || montant_restant FROM (" +
+            "SELECT tranche_anciennete(r.date_reference, t.date_transaction) AS tranche, COUNT(*) AS nombre, " +
+            "SUM(t.montant_restant) AS montant_restant FROM transaction t CROSS JOIN creance_reference r " +
+            "WHERE t.societe_id = ? AND t.type = 'RECETTE' AND t.statut <> 'ANNULEE' AND t.montant_restant > 0 " +
+            "GROUP BY 1) recalcul ORDER BY tranche";
+
+    @Autowired
+    private CreanceAncienneteRepository creanceAncienneteRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long societeId;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("UPDATE creance_reference SET date_reference = DATE '2024-06-30' WHERE id = 1");
+        societeId = jdbcTemplate.queryForObject(
+                "INSERT INTO societe (raison_sociale, ice, email) VALUES ('Société Balance', '001234567000097', " +
+                "'balance@test.ma') RETURNING id", Long.class);
+    }
+
+    @Test
+    void trigger_shouldKeepBucketsEqualToFullRecomputation() {
+        // Given : recettes à 10, 46 et 150 jours de la référence, une dépense ignorée
+        Long recente = transaction("RECETTE", "1000.00", "2024-06-20");
+        Long moyenne = transaction("RECETTE", "400.00", "2024-05-15");
+        Long ancienne = transaction("RECETTE", "200.00", "2024-02-01");
+        transaction("DEPENSE", "300.00", "2024-06-01");
+        assertThat(balance()).containsExactly("0:1:1000.00", "1:1:400.00", "3:1:200.00").isEqualTo(recalcul());
+
+        // When / Then : paiement partiel, paiement complet, annulation
+        jdbcTemplate.update("UPDATE transaction SET montant_paye = 600.00 WHERE id = ?", recente);
+        jdbcTemplate.update("UPDATE transaction SET montant_paye = 400.00, statut = 'PAYEE' WHERE id = ?", moyenne);
+        jdbcTemplate.update("UPDATE transaction SET statut = 'ANNULEE' WHERE id = ?", ancienne);
+        assertThat(balance()).containsExactly("0:1:400.00").isEqualTo(recalcul());
+
+        // When / Then : changement de date puis suppression
+        jdbcTemplate.update("UPDATE transaction SET date_transaction = DATE '2024-05-15' WHERE id = ?", recente);
+        assertThat(balance()).containsExactly("1:1:400.00").isEqualTo(recalcul());
+        jdbcTemplate.update("DELETE FROM transaction WHERE id = ?", recente);
+        assertThat(balance()).isEmpty();
+        assertThat(recalcul()).isEmpty();
+    }
+
+    @Test
+    void trigger_shouldNotRewriteBucketWhenReceivableColumnsAreUnchanged() {
+        // Given
+        Long recette = transaction("RECETTE", "1000.00", "2024-06-20");
+        String ligne = ctidTranche(0);
+
+        // When : sauvegarde Hibernate qui réécrit montant et montant_payé à l'identique
+        jdbcTemplate.update("UPDATE transaction SET description = 'Libellé corrigé', montant = montant, " +
+                "montant_paye = montant_paye, statut = statut WHERE id = ?", recette);
+
+        // Then : la ligne de balance n'a pas été réécrite
+        assertThat(ctidTranche(0)).isEqualTo(ligne);
+        assertThat(balance()).containsExactly("0:1:1000.00");
+    }
+
+    @Test
+    void avancer_shouldMoveOnlyReceivablesCrossingABound() {
+        // Given : à la référence du 30/06, tranches 0, 1 et 2
+        transaction("RECETTE", "1000.00", "2024-06-20");
+        transaction("RECETTE", "400.00", "2024-05-15");
+        transaction("RECETTE", "250.00", "2024-04-10");
+
+        // When : référence au 25/07 (35, 71 et 106 jours)
+        Integer lignes = creanceAncienneteRepository.avancer(LocalDate.of(2024, 7, 25));
+
+        // Then
+        assertThat(lignes).isEqualTo(4);
+        assertThat(creanceAncienneteRepository.findDateReference()).isEqualTo(LocalDate.of(2024, 7, 25));
+        assertThat(balance()).containsExactly("1:1:1000.00", "2:1:400.00", "3:1:250.00").isEqualTo(recalcul());
+
+        // When / Then : une date qui n'avance pas la référence ne change rien
+        assertThat(creanceAncienneteRepository.avancer(LocalDate.of(2024, 7, 1))).isZero();
+        assertThat(creanceAncienneteRepository.findDateReference()).isEqualTo(LocalDate.of(2024, 7, 25));
+        assertThat(balance()).isEqualTo(recalcul());
+    }
+
+    private Long transaction(String type, String montant, String date) {
+        return jdbcTemplate.queryForObject("INSERT INTO transaction (type, montant, date_transaction, description, " +
+                "societe_id) VALUES (?, CAST(? AS NUMERIC), CAST(? AS DATE), 'Facture', ?) RETURNING id",
+                Long.class, type, montant, date, societeId);
+    }
+
+    private List<String> balance() {
+        return jdbcTemplate.queryForList(BALANCE, String.class, societeId);
+    }
+
+    private List<String> recalcul() {
+        return jdbcTemplate.queryForList(RECALCUL, String.class, societeId);
+    }
+
+    private String ctidTranche(int tranche) {
+        return jdbcTemplate.queryForObject("SELECT ctid::text FROM creance_anciennete WHERE societe_id = ? " +
+                "AND tranche = ?", String.class, societeId, tranche);
+    }
+}
@@ -0,0 +1,202 @@
+package ma.iorecycling.repository;
+
+import jakarta.persistence.EntityManagerFactory;
+import ma.iorecycling.dto.CursorPageDTO;
+import ma.iorecycling.dto.EnlevementDTO;
+import ma.iorecycling.dto.EnlevementSummaryDTO;
+import ma.iorecycling.entity.*;
+import ma.iorecycling.mapper.EnlevementMapper;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class EnlevementRepositoryTest {
+
+    @Autowired
+    private EnlevementRepository enlevementRepository;
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private final EnlevementMapper enlevementMapper = new EnlevementMapper();
+
+    @Test
+    void chargerAvecDetails_shouldMapPeriodWithBoundedStatementCount() {
+        // Given : 12 enlèvements sur 3 destinations, dont 2 hors période
+        Societe societe = em.persist(Societe.builder()
+                .raisonSociale("Société Test").ice("001234567000089").email("contact@test.ma").build());
+        Site site = em.persist(Site.builder().societe(societe).name("Site A").build());
+        List<Destination> destinations = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            destinations.add(em.persist(Destination.builder()
+                    .raisonSociale("Destination " + i).site("Casablanca")
+                    .typesTraitement(new ArrayList<>(List.of(TypeTraitement.RECYCLAGE, TypeTraitement.INCINERATION)))
+                    .build()));
+        }
+        for (int i = 0; i < 12; i++) {
+            Enlevement enlevement = em.persist(Enlevement.builder()
+                    .numeroEnlevement("ENL-TEST-" + i)
+                    .dateEnlevement(LocalDate.of(2024, 1, 1).plusDays(i))
+                    .societe(societe).site(site).destination(destinations.get(i % 3))
+                    .build());
+            em.persist(item(enlevement, PickupItem.TypeDechet.RECYCLABLE, "CARTON"));
+            em.persist(item(enlevement, PickupItem.TypeDechet.BANAL, null));
+        }
+        em.flush();
+        em.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // When : chargement de EnlevementService.getEnlevementsBySocieteAndDateRange
+        List<EnlevementDTO> enlevements = enlevementRepository.chargerAvecDetails(
+                        enlevementRepository.findIdsBySocieteIdAndDateBetween(
+                                societe.getId(), LocalDate.of(2024, 1, 2), LocalDate.of(2024, 1, 11)))
+                .stream()
+                .map(enlevementMapper::toDTO)
+                .toList();
+
+        // Then : ids, chargement groupé, types de traitement en une requête IN
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(3);
+        assertThat(enlevements).hasSize(10);
+        assertThat(enlevements.get(0).getDateEnlevement()).isEqualTo(LocalDate.of(2024, 1, 11));
+        assertThat(enlevements.get(9).getDateEnlevement()).isEqualTo(LocalDate.of(2024, 1, 2));
+        assertThat(enlevements).allSatisfy(dto -> {
+            assertThat(dto.getItems()).hasSize(2);
+            assertThat(dto.getSiteNom()).isEqualTo("Site A");
+            assertThat(dto.getDestinationTypesTraitement()).containsExactly("RECYCLAGE", "INCINERATION");
+        });
+    }
+
+    @Test
+    void findSummariesBySocieteId_shouldNotLoadItems() {
+        // Given : enlèvements sans camion (LEFT JOIN) et avec items
+        Societe societe = em.persist(Societe.builder()
+                .raisonSociale("Société Résumé").ice("001234567000090").email("resume@test.ma").build());
+        Site site = em.persist(Site.builder().societe(societe).name("Site B").build());
+        for (int i = 0; i < 5; i++) {
+            Enlevement enlevement = em.persist(Enlevement.builder()
+                    .numeroEnlevement("ENL-RES-" + i)
+                    .dateEnlevement(LocalDate.of(2024, 2, 1).plusDays(i))
+                    .societe(societe).site(site)
+                    .build());
+            em.persist(item(enlevement, PickupItem.TypeDechet.RECYCLABLE, "CARTON"));
+        }
+        em.flush();
+        em.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // When
+        Page<EnlevementSummaryDTO> page = enlevementRepository.findSummariesBySocieteId(
+                societe.getId(), PageRequest.of(0, 3, Sort.by(Sort.Direction.DESC, "dateEnlevement")));
+
+        // Then : une requête pour la page, une pour le comptage, aucun item chargé
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(2);
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(page.getTotalElements()).isEqualTo(5);
+        assertThat(page.getContent()).extracting(EnlevementSummaryDTO::getNumeroEnlevement)
+                .containsExactly("ENL-RES-4", "ENL-RES-3", "ENL-RES-2");
+        assertThat(page.getContent()).allSatisfy(resume -> {
+            assertThat(resume.getSocieteNom()).isEqualTo("Société Résumé");
+            assertThat(resume.getSiteNom()).isEqualTo("Site B");
+            assertThat(resume.getCamionMatricule()).isNull();
+        });
+    }
+
+    @Test
+    void findSummariesBySocieteIdApres_shouldWalkAllRowsOnceAcrossEqualDates() {
+        // Given : 7 enlèvements sur 3 dates seulement, la clé de reprise doit départager par id
+        Societe societe = em.persist(Societe.builder()
+                .raisonSociale("Société Curseur").ice("001234567000091").email("curseur@test.ma").build());
+        Site site = em.persist(Site.builder().societe(societe).name("Site C").build());
+        for (int i = 0; i < 7; i++) {
+            em.persist(Enlevement.builder()
+                    .numeroEnlevement("ENL-CUR-" + i)
+                    .dateEnlevement(LocalDate.of(2024, 3, 1).plusDays(i % 3))
+                    .societe(societe).site(site)
+                    .build());
+        }
+        em.flush();
+        em.clear();
+
+        // When : parcours par pages de 3 en suivant le curseur
+        List<String> parcourus = new ArrayList<>();
+        List<Integer> taillesPages = new ArrayList<>();
+        String curseur = null;
+        do {
+            CursorPageDTO.Cursor apres = CursorPageDTO.Cursor.decoder(curseur);
+            CursorPageDTO<EnlevementSummaryDTO> page = CursorPageDTO.of(
+                    enlevementRepository.findSummariesBySocieteIdApres(societe.getId(), apres.date(), apres.id(), Limit.of(4)),
+                    3, resume -> new CursorPageDTO.Cursor(resume.getDateEnlevement(), resume.getId()), null);
+            page.getContent().forEach(resume -> parcourus.add(resume.getNumeroEnlevement()));
+            taillesPages.add(page.getSize());
+            curseur = page.getNextCursor();
+        } while (curseur != null);
+
+        // Then : chaque enlèvement une seule fois, du plus récent au plus ancien
+        assertThat(taillesPages).containsExactly(3, 3, 1);
+        assertThat(parcourus).containsExactly(
+                "ENL-CUR-5", "ENL-CUR-2", "ENL-CUR-4", "ENL-CUR-1", "ENL-CUR-6", "ENL-CUR-3", "ENL-CUR-0");
+    }
+
+    @Test
+    void save_shouldAssignNumeroBeforeInsertWithoutUpdate() {
+        // Given
+        Societe societe = em.persist(Societe.builder()
+                .raisonSociale("Société Test").ice("001234567000089").email("contact@test.ma").build());
+        Site site = em.persist(Site.builder().societe(societe).name("Site A").build());
+        em.flush();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        // When
+        Enlevement genere = enlevementRepository.save(Enlevement.builder()
+                .dateEnlevement(LocalDate.of(2024, 3, 1)).societe(societe).site(site).build());
+        Enlevement importe = enlevementRepository.save(Enlevement.builder()
+                .numeroEnlevement("ENL-IMPORT-1")
+                .dateEnlevement(LocalDate.of(2024, 3, 2)).societe(societe).site(site).build());
+        em.flush();
+
+        // Then : numéro calculé depuis l'id de séquence, numéro fourni conservé, aucun UPDATE
+        assertThat(genere.getNumeroEnlevement()).isEqualTo(String.format("ENL-2024-%06d", genere.getId()));
+        assertThat(importe.getNumeroEnlevement()).isEqualTo("ENL-IMPORT-1");
+        assertThat(statistics.getEntityInsertCount()).isEqualTo(2);
+        assertThat(statistics.getEntityUpdateCount()).isZero();
+    }
+
+    private PickupItem item(Enlevement enlevement, PickupItem.TypeDechet typeDechet, String sousType) {
+        return PickupItem.builder()
+                .enlevement(enlevement)
+                .typeDechet(typeDechet)
+                .sousType(sousType)
+                .quantiteKg(new BigDecimal("100.000"))
+                .prixUnitaireMad(new BigDecimal("1.500"))
+                .build();
+    }
+}
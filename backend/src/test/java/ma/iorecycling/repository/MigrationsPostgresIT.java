@@ -0,0 +1,21 @@
+package ma.iorecycling.repository;
+
+import ma.iorecycling.AbstractPostgresIT;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MigrationsPostgresIT extends AbstractPostgresIT {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void migrations_shouldApplyOnEmptyDatabase() {
+        Integer echecs = jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM flyway_schema_history WHERE NOT success", Integer.class);
+        assertThat(echecs).isZero();
+    }
+}
@@ -0,0 +1,123 @@
+package ma.iorecycling.repository;
+
+import ma.iorecycling.AbstractPostgresIT;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Incrémentation de societe_version par les triggers d'instruction de V26
+ * Sans transaction de test : chaque instruction JdbcTemplate est validée seule, comme un appel de service
+ */
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class SocieteVersionPostgresIT extends AbstractPostgresIT {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private Long societeA;
+    private Long societeB;
+
+    @BeforeEach
+    void setUp() {
+        societeA = societe("Société Version A", "001234567000101");
+        societeB = societe("Société Version B", "001234567000102");
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Lignes filles d'abord : leurs triggers écrivent dans des tables rattachées à la société
+        for (String table : List.of("transaction", "enlevement", "site")) {
+            jdbcTemplate.update("DELETE FROM " + table + " WHERE societe_id IN (?, ?)", societeA, societeB);
+        }
+        jdbcTemplate.update("DELETE FROM societe WHERE id IN (?, ?)", societeA, societeB);
+    }
+
+    @Test
+    void bulkStatement_shouldIncrementEachSocieteOnce() {
+        // When : une instruction insère 3 transactions pour A et 2 pour B
+        jdbcTemplate.update("INSERT INTO transaction (type, montant, date_transaction, description, societe_id) " +
+                "SELECT 'RECETTE', 100.00, DATE '2024-05-02', 'Facture ' || n, CASE WHEN n <= 3 THEN ? ELSE ? END " +
+                "FROM generate_series(1, 5) n", societeA, societeB);
+
+        // Then
+        assertThat(version(societeA)).isEqualTo(1);
+        assertThat(version(societeB)).isEqualTo(1);
+
+        // When / Then : mise à jour puis suppression de toutes les lignes, une incrémentation chacune
+        jdbcTemplate.update("UPDATE transaction SET description = 'Libellé corrigé' WHERE societe_id IN (?, ?)",
+                societeA, societeB);
+        assertThat(version(societeA)).isEqualTo(2);
+        assertThat(version(societeB)).isEqualTo(2);
+        jdbcTemplate.update("DELETE FROM transaction WHERE societe_id = ?", societeA);
+        assertThat(version(societeA)).isEqualTo(3);
+        assertThat(version(societeB)).isEqualTo(2);
+    }
+
+    @Test
+    void bulkStatement_shouldIncrementSocieteOfItemsOnceAndBothSocietesOnMove() {
+        // Given
+        Long site = jdbcTemplate.queryForObject("INSERT INTO site (societe_id, name) VALUES (?, 'Site V') " +
+                "RETURNING id", Long.class, societeA);
+        Long enlevement = jdbcTemplate.queryForObject("INSERT INTO enlevement (date_enlevement, site_id, " +
+                "societe_id) VALUES (DATE '2024-05-02', ?, ?) RETURNING id", Long.class, site, societeA);
+        long avant = version(societeA);
+
+        // When : 4 items en une instruction
+        jdbcTemplate.update("INSERT INTO pickup_item (enlevement_id, type_dechet, quantite_kg, prix_unitaire_mad) " +
+                "SELECT ?, 'BANAL', 10.000, 1.000 FROM generate_series(1, 4)", enlevement);
+
+        // Then : une incrémentation, y compris la mise à jour des totaux de l'enlèvement (V27)
+        assertThat(version(societeA)).isEqualTo(avant + 1);
+
+        // When / Then : l'enlèvement change de société, les deux sont incrémentées
+        long avantB = version(societeB);
+        jdbcTemplate.update("UPDATE enlevement SET societe_id = ? WHERE id = ?", societeB, enlevement);
+        assertThat(version(societeA)).isEqualTo(avant + 2);
+        assertThat(version(societeB)).isEqualTo(avantB + 1);
+    }
+
+    @Test
+    void jdbcBatchOfUpdates_shouldIncrementOncePerTransaction() {
+        // Given
+        jdbcTemplate.update("INSERT INTO transaction (type, montant, date_transaction, description, societe_id) " +
+                "SELECT 'RECETTE', 100.00, DATE '2024-05-02', 'Facture ' || n, ? FROM generate_series(1, 3) n",
+                societeA);
+        List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM transaction WHERE societe_id = ?", Long.class,
+                societeA);
+        long avant = version(societeA);
+
+        // When : un lot JDBC (une instruction par ligne) puis une autre instruction, dans une transaction
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            jdbcTemplate.batchUpdate("UPDATE transaction SET montant_paye = montant_paye + 10.00 WHERE id = ?", ids,
+                    ids.size(), (ps, id) -> ps.setLong(1, id));
+            jdbcTemplate.update("UPDATE transaction SET description = 'Payée' WHERE societe_id = ?", societeA);
+        });
+
+        // Then
+        assertThat(version(societeA)).isEqualTo(avant + 1);
+    }
+
+    private Long societe(String raisonSociale, String ice) {
+        return jdbcTemplate.queryForObject("INSERT INTO societe (raison_sociale, ice, email) VALUES (?, ?, " +
+                "'version@test.ma') RETURNING id", Long.class, raisonSociale, ice);
+    }
+
+    private long version(Long societeId) {
+        return jdbcTemplate.queryForObject("SELECT COALESCE(MAX(version), 0) FROM societe_version " +
+                "WHERE societe_id = ?", Long.class, societeId);
+    }
+}
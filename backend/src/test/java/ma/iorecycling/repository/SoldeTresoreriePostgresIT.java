@@ -0,0 +1,50 @@
+package ma.iorecycling.repository;
+
+import ma.iorecycling.AbstractPostgresIT;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Invalidation des instantanés de trésorerie par trg_invalider_solde_tresorerie
+ */
+class SoldeTresoreriePostgresIT extends AbstractPostgresIT {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void trigger_shouldKeepSnapshotsOnPaymentAndDropThemOnBalanceChange() {
+        // Given : une recette de mars et les instantanés clôturés de février à avril
+        Long societeId = jdbcTemplate.queryForObject(
+                "INSERT INTO societe (raison_sociale, ice, email) VALUES ('Société Trésorerie', '001234567000099', " +
+                "'tresorerie@test.ma') RETURNING id", Long.class);
+        Long recette = jdbcTemplate.queryForObject("INSERT INTO transaction (type, montant, date_transaction, " +
+                "description, societe_id) VALUES ('RECETTE', 1000.00, DATE '2024-03-10', 'Facture', ?) RETURNING id",
+                Long.class, societeId);
+        for (String mois : List.of("2024-02-01", "2024-03-01", "2024-04-01")) {
+            jdbcTemplate.update("INSERT INTO solde_tresorerie (societe_id, mois) VALUES (?, CAST(? AS DATE))",
+                    societeId, mois);
+        }
+
+        // When : paiement complet, réécrit comme par Hibernate (toutes les colonnes, statut modifié)
+        jdbcTemplate.update("UPDATE transaction SET montant_paye = 1000.00, statut = 'PAYEE', montant = montant, " +
+                "type = type, date_transaction = date_transaction, societe_id = societe_id WHERE id = ?", recette);
+
+        // Then : le solde ne dépend pas du statut, les instantanés restent
+        assertThat(mois(societeId)).containsExactly("2024-02-01", "2024-03-01", "2024-04-01");
+
+        // When / Then : un changement de montant invalide le mois de la transaction et les suivants
+        jdbcTemplate.update("UPDATE transaction SET montant = 1200.00 WHERE id = ?", recette);
+        assertThat(mois(societeId)).containsExactly("2024-02-01");
+    }
+
+    private List<String> mois(Long societeId) {
+        return jdbcTemplate.queryForList("SELECT CAST(mois AS TEXT) FROM solde_tresorerie WHERE societe_id = ? " +
+                "ORDER BY mois", String.class, societeId);
+    }
+}
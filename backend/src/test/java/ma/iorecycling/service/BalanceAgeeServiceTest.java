@@ -0,0 +1,71 @@
+package ma.iorecycling.service;
+
+import ma.iorecycling.dto.BalanceAgeeDTO;
+import ma.iorecycling.dto.CreanceDTO;
+import ma.iorecycling.dto.LigneBalanceAgeeDTO;
+import ma.iorecycling.entity.CreanceAnciennete;
+import ma.iorecycling.repository.CreanceAncienneteRepository;
+import ma.iorecycling.repository.TransactionRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BalanceAgeeServiceTest {
+
+    private static final LocalDate REFERENCE = LocalDate.of(2024, 6, 30);
+
+    private final CreanceAncienneteRepository creanceAncienneteRepository = mock(CreanceAncienneteRepository.class);
+    private final TransactionRepository transactionRepository = mock(TransactionRepository.class);
+    private final BalanceAgeeService service = new BalanceAgeeService(creanceAncienneteRepository, transactionRepository);
+
+    @Test
+    void getCreances_shouldUseSameBoundsAsTrancheAnciennete() {
+        // Given : 31 à 60 jours avant la référence, bornes incluses (tranche_anciennete en base)
+        when(creanceAncienneteRepository.findDateReference()).thenReturn(REFERENCE);
+        CreanceDTO creance = new CreanceDTO(5L, LocalDate.of(2024, 5, 30), "Prestation", null,
+                new BigDecimal("100.00"), BigDecimal.ZERO, new BigDecimal("100.00"));
+        when(transactionRepository.findCreances(eq(3L), eq(LocalDate.of(2024, 5, 1)), eq(LocalDate.of(2024, 5, 30)), any()))
+                .thenReturn(new PageImpl<>(List.of(creance)));
+
+        // When
+        service.getCreances(3L, CreanceAnciennete.Tranche.JOURS_31_60, Pageable.unpaged());
+
+        // Then
+        assertThat(creance.getJoursAnciennete()).isEqualTo(31);
+        assertThat(CreanceAnciennete.Tranche.JOURS_0_30.dateMax(REFERENCE)).isNull();
+        assertThat(CreanceAnciennete.Tranche.JOURS_0_30.dateMin(REFERENCE)).isEqualTo(LocalDate.of(2024, 5, 31));
+        assertThat(CreanceAnciennete.Tranche.PLUS_90_JOURS.dateMax(REFERENCE)).isEqualTo(LocalDate.of(2024, 3, 31));
+        assertThat(CreanceAnciennete.Tranche.PLUS_90_JOURS.dateMin(REFERENCE)).isNull();
+    }
+
+    @Test
+    void getBalanceAgee_shouldAddTotalLine() {
+        // Given
+        when(creanceAncienneteRepository.findDateReference()).thenReturn(REFERENCE);
+        when(creanceAncienneteRepository.findBalanceAgee(isNull())).thenReturn(List.of(
+                new LigneBalanceAgeeDTO(1L, "A", 3L, new BigDecimal("10.00"), BigDecimal.ZERO,
+                        new BigDecimal("5.00"), BigDecimal.ZERO),
+                new LigneBalanceAgeeDTO(2L, "B", 1L, BigDecimal.ZERO, BigDecimal.ZERO,
+                        BigDecimal.ZERO, new BigDecimal("7.50"))));
+
+        // When
+        BalanceAgeeDTO balance = service.getBalanceAgee(null);
+
+        // Then
+        assertThat(balance.getDateReference()).isEqualTo(REFERENCE);
+        assertThat(balance.getTotal().getNombreCreances()).isEqualTo(4L);
+        assertThat(balance.getTotal().getMontant61a90Jours()).isEqualByComparingTo("5.00");
+        assertThat(balance.getTotal().getMontantTotal()).isEqualByComparingTo("22.50");
+    }
+}
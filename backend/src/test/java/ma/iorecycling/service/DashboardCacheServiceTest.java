@@ -0,0 +1,72 @@
+package ma.iorecycling.service;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import ma.iorecycling.event.SocieteDonneesModifieesEvent;
+import ma.iorecycling.service.DashboardCacheService.DashboardCacheKey;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+
+import java.time.LocalDate;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DashboardCacheServiceTest {
+
+    private static final LocalDate DEBUT = LocalDate.of(2024, 1, 1);
+    private static final LocalDate FIN = LocalDate.of(2024, 1, 31);
+
+    private final DashboardCacheService cacheService = new DashboardCacheService(cacheManager());
+    private final AtomicInteger calculs = new AtomicInteger();
+
+    @Test
+    void onSocieteDonneesModifiees_shouldEvictOnlyThatSocieteAndGlobalEntries() {
+        // Given
+        obtenir(1L);
+        obtenir(2L);
+        obtenir(null);
+        assertThat(calculs.get()).isEqualTo(3);
+        obtenir(1L);
+        assertThat(calculs.get()).isEqualTo(3);
+
+        // When
+        cacheService.onSocieteDonneesModifiees(new SocieteDonneesModifieesEvent(1L));
+
+        // Then
+        obtenir(2L);
+        assertThat(calculs.get()).isEqualTo(3);
+        obtenir(1L);
+        obtenir(null);
+        assertThat(calculs.get()).isEqualTo(5);
+    }
+
+    @Test
+    void obtenir_shouldNotCacheResultComputedDuringAModification() {
+        // Given : une modification est validée pendant le calcul
+        DashboardCacheKey cle = new DashboardCacheKey(1L, DEBUT, FIN, "mensuel");
+        cacheService.obtenir(DashboardCacheService.CACHE_COMPTABILITE, cle, () -> {
+            cacheService.onSocieteDonneesModifiees(new SocieteDonneesModifieesEvent(1L));
+            return "ancien";
+        }, resultat -> true);
+
+        // When
+        String resultat = cacheService.obtenir(DashboardCacheService.CACHE_COMPTABILITE, cle, () -> "nouveau", r -> true);
+
+        // Then
+        assertThat(resultat).isEqualTo("nouveau");
+    }
+
+    private void obtenir(Long societeId) {
+        cacheService.obtenir(DashboardCacheService.CACHE_COMPTABILITE,
+                new DashboardCacheKey(societeId, DEBUT, FIN, "mensuel"),
+                () -> "dashboard-" + calculs.incrementAndGet(),
+                resultat -> true);
+    }
+
+    private static CaffeineCacheManager cacheManager() {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager(
+                DashboardCacheService.CACHE_COMPTABILITE, DashboardCacheService.CACHE_CLIENT);
+        cacheManager.setCaffeine(Caffeine.newBuilder().maximumSize(100));
+        return cacheManager;
+    }
+}
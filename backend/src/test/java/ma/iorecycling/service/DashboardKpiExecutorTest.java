@@ -0,0 +1,83 @@
+package ma.iorecycling.service;
+
+import ma.iorecycling.config.DashboardExecutorConfig;
+import ma.iorecycling.config.DashboardProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class DashboardKpiExecutorTest {
+
+    private final DashboardProperties properties = new DashboardProperties();
+    private ThreadPoolTaskExecutor threadPool;
+    private DashboardKpiExecutor kpiExecutor;
+
+    @BeforeEach
+    void setUp() {
+        properties.setThreads(2);
+        properties.setParallelismeParRequete(2);
+        properties.setTimeoutMs(300);
+        threadPool = new DashboardExecutorConfig().dashboardExecutor(properties);
+        kpiExecutor = new DashboardKpiExecutor(threadPool, mock(PlatformTransactionManager.class), properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        threadPool.shutdown();
+    }
+
+    @Test
+    void attendre_shouldReturnDefaultsForFailedAndSlowKpis() {
+        // Given
+        DashboardKpiExecutor.Collecte collecte = kpiExecutor.nouvelleCollecte();
+        DashboardKpiExecutor.Kpi<BigDecimal> ok = collecte.soumettre("ok", () -> new BigDecimal("10.00"), BigDecimal.ZERO);
+        DashboardKpiExecutor.Kpi<BigDecimal> enErreur = collecte.soumettre("enErreur", () -> {
+            throw new IllegalStateException("requête en échec");
+        }, BigDecimal.ZERO);
+        DashboardKpiExecutor.Kpi<BigDecimal> lent = collecte.soumettre("lent", () -> {
+            try {
+                Thread.sleep(5_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return BigDecimal.ONE;
+        }, BigDecimal.ZERO);
+
+        // When
+        long debut = System.currentTimeMillis();
+        List<String> indisponibles = collecte.attendre();
+
+        // Then
+        assertThat(System.currentTimeMillis() - debut).isLessThan(2_000);
+        assertThat(indisponibles).containsExactly("enErreur", "lent");
+        assertThat(ok.get()).isEqualByComparingTo("10.00");
+        assertThat(enErreur.get()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(lent.get()).isEqualByComparingTo(BigDecimal.ZERO);
+    }
+
+    @Test
+    void soumettre_sequentiel_shouldRunInlineAndDegrade() {
+        // Given
+        properties.setParallele(false);
+        DashboardKpiExecutor.Collecte collecte = kpiExecutor.nouvelleCollecte();
+
+        // When
+        DashboardKpiExecutor.Kpi<String> ok = collecte.soumettre("ok", () -> Thread.currentThread().getName(), "");
+        DashboardKpiExecutor.Kpi<String> enErreur = collecte.soumettre("enErreur", () -> {
+            throw new IllegalStateException("requête en échec");
+        }, "défaut");
+
+        // Then
+        assertThat(collecte.attendre()).containsExactly("enErreur");
+        assertThat(ok.get()).isEqualTo(Thread.currentThread().getName());
+        assertThat(enErreur.get()).isEqualTo("défaut");
+    }
+}
@@ -0,0 +1,48 @@
+package ma.iorecycling.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DashboardServiceTest {
+
+    @Test
+    void moisComplets_shouldExcludePartialEdgeMonths() {
+        // When
+        DashboardService.MoisComplets mois = DashboardService.MoisComplets.de(
+                LocalDate.of(2024, 1, 15), LocalDate.of(2024, 4, 10));
+
+        // Then
+        assertThat(mois.premier()).isEqualTo(LocalDate.of(2024, 2, 1));
+        assertThat(mois.dernier()).isEqualTo(LocalDate.of(2024, 3, 1));
+    }
+
+    @Test
+    void moisComplets_shouldKeepWholeMonthsAndBeEmptyInsideOneMonth() {
+        // When
+        DashboardService.MoisComplets annee = DashboardService.MoisComplets.de(
+                LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31));
+        DashboardService.MoisComplets partiel = DashboardService.MoisComplets.de(
+                LocalDate.of(2024, 2, 2), LocalDate.of(2024, 2, 28));
+
+        // Then
+        assertThat(annee.premier()).isEqualTo(LocalDate.of(2024, 1, 1));
+        assertThat(annee.dernier()).isEqualTo(LocalDate.of(2024, 12, 1));
+        assertThat(partiel.premier()).isAfter(partiel.dernier());
+    }
+
+    @Test
+    void kpiClient_depuis_shouldParseRequestedFieldsAndDefaultToAll() {
+        assertThat(DashboardService.KpiClient.depuis(List.of("count", " Budget ")))
+                .containsExactlyInAnyOrder(DashboardService.KpiClient.COUNT, DashboardService.KpiClient.BUDGET);
+        assertThat(DashboardService.KpiClient.depuis(null))
+                .containsExactlyInAnyOrder(DashboardService.KpiClient.values());
+        assertThatThrownBy(() -> DashboardService.KpiClient.depuis(List.of("tonnage")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("tonnage");
+    }
+}
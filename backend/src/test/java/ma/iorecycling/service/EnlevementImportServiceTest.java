@@ -0,0 +1,120 @@
+package ma.iorecycling.service;
+
+import ma.iorecycling.dto.ImportEnlevementsResultDTO;
+import ma.iorecycling.entity.*;
+import ma.iorecycling.event.SocieteDonneesModifieesEvent;
+import ma.iorecycling.repository.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class EnlevementImportServiceTest {
+
+    @Mock private SocieteRepository societeRepository;
+    @Mock private SiteRepository siteRepository;
+    @Mock private CamionRepository camionRepository;
+    @Mock private DestinationRepository destinationRepository;
+    @Mock private EnlevementRepository enlevementRepository;
+    @Mock private EnlevementImportWriter enlevementImportWriter;
+    @Mock private PlatformTransactionManager transactionManager;
+    @Mock private ApplicationEventPublisher eventPublisher;
+
+    @Test
+    void importer_shouldWriteValidEnlevementsAndReportRejectedLines() throws Exception {
+        // Given
+        Societe societe = Societe.builder().id(1L).raisonSociale("POLYMEDIC").build();
+        Societe autre = Societe.builder().id(2L).raisonSociale("AUTRE").build();
+        when(societeRepository.findAll()).thenReturn(List.of(societe, autre));
+        when(siteRepository.findAll()).thenReturn(List.of(
+                Site.builder().id(10L).societe(societe).name("Site principal").build(),
+                Site.builder().id(20L).societe(autre).name("Site autre").build()));
+        when(camionRepository.findAll()).thenReturn(List.of());
+        when(destinationRepository.findAll()).thenReturn(List.of(
+                Destination.builder().id(5L).raisonSociale("Incinérateur")
+                        .typesTraitement(new ArrayList<>(List.of(TypeTraitement.INCINERATION))).build(),
+                Destination.builder().id(6L).raisonSociale("Recycleur")
+                        .typesTraitement(new ArrayList<>(List.of(TypeTraitement.RECYCLAGE))).build()));
+        List<List<Enlevement>> lots = new ArrayList<>();
+        when(enlevementImportWriter.ecrireLot(anyList())).thenAnswer(invocation -> {
+            List<Enlevement> lot = new ArrayList<>(invocation.getArgument(0));
+            lots.add(lot);
+            return new EnlevementImportWriter.Resultat(lot.stream().mapToInt(e -> e.getItems().size()).sum(), 0);
+        });
+
+        String csv = "\uFEFFreference;date_enlevement;societe_id;site_id;destination_id;type_dechet;sous_type;quantite_kg;prix_unitaire_mad;prix_prestation_mad\n"
+                + "A;03/09/2025;1;10;;RECYCLABLE;CARTON;100,5;1,5;0,2\n"
+                + "A;03/09/2025;1;10;;BANAL;;200;0;\n"
+                + "B;2025-09-04;1;20;;BANAL;;50;1;\n"
+                + "C;2025-09-05;1;10;6;A_DETRUIRE;MEDICAL;10;3;\n"
+                + "D;2025-09-06;1;10;5;A_DETRUIRE;MEDICAL;10;3;\n"
+                + "D;2025-09-07;1;10;5;BANAL;;1;1;\n"
+                + ";;;;;;;;;\n"
+                + "E;2025-09-08;1;10;5;a_detruire;MEDICAL;10;3;\n";
+
+        // When
+        ImportEnlevementsResultDTO rapport = service().importer(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), "import-test");
+
+        // Then
+        assertThat(rapport.getLignesLues()).isEqualTo(7);
+        assertThat(rapport.getEnlevementsImportes()).isEqualTo(2);
+        assertThat(rapport.getItemsImportes()).isEqualTo(3);
+        assertThat(rapport.getEnlevementsRejetes()).isEqualTo(3);
+        assertThat(rapport.getErreurs()).extracting(ImportEnlevementsResultDTO.ErreurLigne::getLigne)
+                .containsExactly(4L, 5L, 7L);
+        assertThat(rapport.getErreurs().get(0).getMessage()).contains("site ne correspond pas");
+        assertThat(rapport.getErreurs().get(1).getMessage()).contains("déchets dangereux");
+        assertThat(rapport.getErreurs().get(2).getMessage()).contains("date_enlevement");
+
+        assertThat(lots).hasSize(1);
+        Enlevement a = lots.get(0).get(0);
+        assertThat(a.getDateEnlevement()).isEqualTo(LocalDate.of(2025, 9, 3));
+        assertThat(a.getCreatedBy()).isEqualTo("import-test");
+        assertThat(a.getItems()).hasSize(2);
+        PickupItem carton = a.getItems().get(0);
+        assertThat(carton.getMontantMad()).isEqualByComparingTo(new BigDecimal("150.75"));
+        assertThat(carton.getMontantPrestationMad()).isEqualByComparingTo(new BigDecimal("20.10"));
+        assertThat(lots.get(0).get(1).getDestination().getId()).isEqualTo(5L);
+
+        ArgumentCaptor<SocieteDonneesModifieesEvent> evenement = ArgumentCaptor.forClass(SocieteDonneesModifieesEvent.class);
+        verify(eventPublisher).publishEvent(evenement.capture());
+        assertThat(evenement.getValue().societeId()).isEqualTo(1L);
+    }
+
+    @Test
+    void importer_shouldRejectFileWithMissingColumns() {
+        // Given
+        when(societeRepository.findAll()).thenReturn(List.of());
+        String csv = "reference,date_enlevement,societe_id\nA,2025-09-03,1\n";
+
+        // When / Then
+        assertThatThrownBy(() -> service().importer(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), "import-test"))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("site_id")
+                .hasMessageContaining("quantite_kg");
+        verifyNoInteractions(enlevementImportWriter);
+    }
+
+    private EnlevementImportService service() {
+        return new EnlevementImportService(societeRepository, siteRepository, camionRepository,
+                destinationRepository, enlevementRepository, enlevementImportWriter, transactionManager, eventPublisher);
+    }
+}
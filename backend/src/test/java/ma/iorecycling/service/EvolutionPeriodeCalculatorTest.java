@@ -0,0 +1,65 @@
+package ma.iorecycling.service;
+
+import ma.iorecycling.dto.ComptabiliteDashboardDTO.EvolutionMensuelleDTO;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EvolutionPeriodeCalculatorTest {
+
+    private final EvolutionPeriodeCalculator calculator = new EvolutionPeriodeCalculator();
+
+    @Test
+    void construire_mensuel_shouldSplitByWeeksFromDateDebut() {
+        // Given
+        LocalDate dateDebut = LocalDate.of(2024, 1, 1);
+        LocalDate dateFin = LocalDate.of(2024, 1, 31);
+        List<Object[]> lignes = List.of(
+            new Object[]{Date.valueOf("2024-01-01"), "RECETTE", "PRESTATION", new BigDecimal("100.00")},
+            new Object[]{Date.valueOf("2024-01-08"), "DEPENSE", null, new BigDecimal("40.00")},
+            new Object[]{LocalDate.of(2024, 1, 29), "RECETTE", "VENTE_MATIERE", new BigDecimal("25.00")}
+        );
+
+        // When
+        List<EvolutionMensuelleDTO> evolution = calculator.construire(dateDebut, dateFin, "mensuel", lignes);
+
+        // Then
+        assertThat(evolution).hasSize(5);
+        assertThat(evolution.get(0).getMoisLibelle()).isEqualTo("Semaine 1");
+        assertThat(evolution.get(0).getRecettes()).isEqualByComparingTo("100.00");
+        assertThat(evolution.get(0).getCaPrestation()).isEqualByComparingTo("100.00");
+        assertThat(evolution.get(1).getDepenses()).isEqualByComparingTo("40.00");
+        assertThat(evolution.get(1).getResultat()).isEqualByComparingTo("-40.00");
+        assertThat(evolution.get(2).getRecettes()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(evolution.get(4).getMoisLibelle()).isEqualTo("Semaine 5");
+        assertThat(evolution.get(4).getCaVenteMatiere()).isEqualByComparingTo("25.00");
+    }
+
+    @Test
+    void construire_annuel_shouldSplitByCalendarMonths() {
+        // Given
+        LocalDate dateDebut = LocalDate.of(2024, 1, 15);
+        LocalDate dateFin = LocalDate.of(2024, 3, 10);
+        List<Object[]> lignes = List.of(
+            new Object[]{Date.valueOf("2024-01-01"), "RECETTE", "PRESTATION", new BigDecimal("10.00")},
+            new Object[]{Date.valueOf("2024-03-01"), "DEPENSE", null, new BigDecimal("5.00")},
+            new Object[]{Date.valueOf("2024-03-01"), "RECETTE", null, new BigDecimal("7.50")}
+        );
+
+        // When
+        List<EvolutionMensuelleDTO> evolution = calculator.construire(dateDebut, dateFin, "annuel", lignes);
+
+        // Then
+        assertThat(evolution).extracting(EvolutionMensuelleDTO::getMois)
+                .containsExactly("2024-01", "2024-02", "2024-03");
+        assertThat(evolution.get(0).getRecettes()).isEqualByComparingTo("10.00");
+        assertThat(evolution.get(1).getResultat()).isEqualByComparingTo(BigDecimal.ZERO);
+        assertThat(evolution.get(2).getRecettes()).isEqualByComparingTo("7.50");
+        assertThat(evolution.get(2).getResultat()).isEqualByComparingTo("2.50");
+    }
+}
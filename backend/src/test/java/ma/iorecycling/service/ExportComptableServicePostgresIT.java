@@ -0,0 +1,61 @@
+package ma.iorecycling.service;
+
+import ma.iorecycling.AbstractPostgresIT;
+import ma.iorecycling.config.ExportProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@Import({ExportComptableService.class, ExportProperties.class})
+class ExportComptableServicePostgresIT extends AbstractPostgresIT {
+
+    @Autowired
+    private ExportComptableService exportComptableService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void exporterGrandLivre_shouldWriteTransactionsWithTheirPaymentsAndInstalmentsInDateOrder() throws Exception {
+        // Given : une recette avec un paiement et une échéance, une dépense sans ligne, une recette hors période
+        Long societeId = jdbcTemplate.queryForObject(
+                "INSERT INTO societe (raison_sociale, ice, email) VALUES ('Société Export', '001234567000096', " +
+                "'export@test.ma') RETURNING id", Long.class);
+        Long recette = transaction(societeId, "RECETTE", "1200.00", "2024-03-05", "Recette \"mars\"; lot 1");
+        Long depense = transaction(societeId, "DEPENSE", "80.50", "2024-03-02", "Dépense");
+        transaction(societeId, "RECETTE", "10.00", "2024-05-01", "Hors période");
+        jdbcTemplate.update("INSERT INTO paiement (transaction_id, montant, date_paiement, mode_paiement, reference) " +
+                "VALUES (?, 500.00, DATE '2024-03-20', 'VIREMENT', 'VIR-1')", recette);
+        jdbcTemplate.update("INSERT INTO echeance (transaction_id, montant, date_echeance) " +
+                "VALUES (?, 700.00, DATE '2024-04-05')", recette);
+        jdbcTemplate.update("UPDATE transaction SET montant_paye = 500.00 WHERE id = ?", recette);
+
+        // When
+        ByteArrayOutputStream sortie = new ByteArrayOutputStream();
+        exportComptableService.exporterGrandLivre(societeId, LocalDate.of(2024, 3, 1), LocalDate.of(2024, 3, 31), sortie);
+
+        // Then : BOM, entête, transactions par date puis leurs paiements avant leurs échéances
+        String csv = sortie.toString(StandardCharsets.UTF_8);
+        assertThat(csv).startsWith("\uFEFFLigne;Transaction;Date;");
+        List<String> lignes = csv.substring(1).lines().skip(1).toList();
+        assertThat(lignes).containsExactly(
+                "TRANSACTION;" + depense + ";2024-03-02;DEPENSE;;Dépense;;;;80.50;0.00;80.50;EN_ATTENTE;",
+                "TRANSACTION;" + recette + ";2024-03-05;RECETTE;;\"Recette \"\"mars\"\"; lot 1\";;;;1200.00;500.00;700.00;EN_ATTENTE;",
+                "PAIEMENT;" + recette + ";2024-03-20;;;;VIR-1;;;500.00;;;VALIDE;VIREMENT",
+                "ECHEANCE;" + recette + ";2024-04-05;;;;;;;700.00;;;EN_ATTENTE;");
+    }
+
+    private Long transaction(Long societeId, String type, String montant, String date, String description) {
+        return jdbcTemplate.queryForObject("INSERT INTO transaction (type, montant, date_transaction, description, " +
+                "societe_id) VALUES (?, CAST(? AS NUMERIC), CAST(? AS DATE), ?, ?) RETURNING id",
+                Long.class, type, montant, date, description, societeId);
+    }
+}
@@ -0,0 +1,68 @@
+package ma.iorecycling.service;
+
+import ma.iorecycling.config.ExportProperties;
+import ma.iorecycling.repository.SocieteRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ExportComptableServiceTest {
+
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final ExportComptableService service =
+            new ExportComptableService(jdbcTemplate, mock(SocieteRepository.class), new ExportProperties());
+
+    @Test
+    void exporterGrandLivre_shouldWriteTransactionOnceThenItsLines() throws Exception {
+        // Given : une transaction avec un paiement et une échéance (deux lignes lues), puis une transaction seule
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("id")).thenReturn(10L, 10L, 11L);
+        when(rs.getDate("date_transaction")).thenReturn(Date.valueOf("2024-05-02"));
+        when(rs.getString("type")).thenReturn("RECETTE");
+        when(rs.getString("description")).thenReturn("Prestation; enlèvement", "Prestation; enlèvement", "Achat");
+        when(rs.getBigDecimal("montant")).thenReturn(new BigDecimal("120.00"));
+        when(rs.getBigDecimal("montant_paye")).thenReturn(new BigDecimal("40.00"));
+        when(rs.getBigDecimal("montant_restant")).thenReturn(new BigDecimal("80.00"));
+        when(rs.getString("statut")).thenReturn("PARTIELLEMENT_PAYEE");
+        when(rs.getString("ligne")).thenReturn("PAIEMENT", "ECHEANCE", null);
+        when(rs.getDate("date_ligne")).thenReturn(Date.valueOf("2024-05-10"), Date.valueOf("2024-06-01"));
+        when(rs.getBigDecimal("montant_ligne")).thenReturn(new BigDecimal("40.00"), new BigDecimal("80.00"));
+        when(rs.getString("statut_ligne")).thenReturn("VALIDE", "EN_ATTENTE");
+        when(rs.getString("mode_paiement")).thenReturn("VIREMENT", (String) null);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (int i = 0; i < 3; i++) {
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+        ByteArrayOutputStream sortie = new ByteArrayOutputStream();
+
+        // When
+        service.exporterGrandLivre(3L, LocalDate.of(2024, 1, 1), LocalDate.of(2024, 12, 31), sortie);
+
+        // Then
+        String[] lignes = sortie.toString(StandardCharsets.UTF_8).split("\r\n");
+        assertThat(lignes).hasSize(5);
+        assertThat(lignes[0]).startsWith("\uFEFFLigne;Transaction;Date;");
+        assertThat(lignes[1]).isEqualTo(
+                "TRANSACTION;10;2024-05-02;RECETTE;;\"Prestation; enlèvement\";;;;120.00;40.00;80.00;PARTIELLEMENT_PAYEE;");
+        assertThat(lignes[2]).isEqualTo("PAIEMENT;10;2024-05-10;;;;;;;40.00;;;VALIDE;VIREMENT");
+        assertThat(lignes[3]).isEqualTo("ECHEANCE;10;2024-06-01;;;;;;;80.00;;;EN_ATTENTE;");
+        assertThat(lignes[4]).startsWith("TRANSACTION;11;");
+    }
+}
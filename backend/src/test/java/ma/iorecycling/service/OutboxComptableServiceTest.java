@@ -0,0 +1,96 @@
+package ma.iorecycling.service;
+
+import ma.iorecycling.config.OutboxProperties;
+import ma.iorecycling.entity.Enlevement;
+import ma.iorecycling.entity.OutboxComptable;
+import ma.iorecycling.entity.Societe;
+import ma.iorecycling.repository.EnlevementRepository;
+import ma.iorecycling.repository.OutboxComptableRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboxComptableServiceTest {
+
+    private final OutboxProperties properties = new OutboxProperties();
+    private final OutboxComptableRepository outboxRepository = mock(OutboxComptableRepository.class);
+    private final EnlevementRepository enlevementRepository = mock(EnlevementRepository.class);
+    private final TransactionGenerationService generationService = mock(TransactionGenerationService.class);
+    private OutboxComptableService service;
+
+    @BeforeEach
+    void setUp() {
+        properties.setTentativesMax(3);
+        properties.setDelaiInitialMs(1000);
+        properties.setDelaiMaxMs(3000);
+        service = new OutboxComptableService(outboxRepository, enlevementRepository, generationService,
+                mock(ApplicationEventPublisher.class), mock(ThreadPoolTaskExecutor.class),
+                mock(PlatformTransactionManager.class), properties);
+    }
+
+    @Test
+    void traiter_shouldRescheduleWithBackoffThenDeadLetter() {
+        // Given
+        Enlevement enlevement = Enlevement.builder().id(7L).societe(Societe.builder().id(1L).build()).build();
+        when(enlevementRepository.findByIdWithItems(7L)).thenReturn(Optional.of(enlevement));
+        doThrow(new IllegalStateException("base indisponible")).when(generationService).generateTransactionsFromEnlevement(any());
+
+        // When : deuxième tentative en échec
+        OutboxComptable demande = reservee(2);
+        service.traiter(demande);
+
+        // Then : replanifiée, délai doublé
+        assertThat(demande.getStatut()).isEqualTo(OutboxComptable.Statut.EN_ATTENTE);
+        assertThat(demande.getDerniereErreur()).contains("base indisponible");
+        assertThat(demande.getProchaineTentative()).isAfter(Instant.now().plusMillis(1500));
+
+        // When : dernière tentative en échec
+        OutboxComptable derniere = reservee(3);
+        service.traiter(derniere);
+
+        // Then : passée en ECHEC, sans nouvelle tentative
+        assertThat(derniere.getStatut()).isEqualTo(OutboxComptable.Statut.ECHEC);
+        assertThat(service.delaiAvantTentative(10)).isEqualTo(Duration.ofMillis(3000));
+    }
+
+    @Test
+    void traiter_shouldSkipDemandeTakenOverByAnotherWorker() {
+        // Given : la réservation a expiré et a été reprise avec un autre jeton
+        OutboxComptable demande = reservee(1);
+        OutboxComptable reprise = reservee(2);
+        reprise.setVerrouilleLe(demande.getVerrouilleLe().plusSeconds(300));
+        when(outboxRepository.findByIdForUpdate(demande.getId())).thenReturn(Optional.of(reprise));
+
+        // When
+        service.traiter(demande);
+
+        // Then
+        verify(generationService, never()).generateTransactionsFromEnlevement(any());
+        assertThat(reprise.getStatut()).isEqualTo(OutboxComptable.Statut.EN_COURS);
+    }
+
+    private OutboxComptable reservee(int tentatives) {
+        OutboxComptable demande = OutboxComptable.builder()
+                .id(100L + tentatives).enlevementId(7L)
+                .statut(OutboxComptable.Statut.EN_COURS).tentatives(tentatives)
+                .verrouilleLe(Instant.now().truncatedTo(ChronoUnit.MICROS))
+                .build();
+        when(outboxRepository.findByIdForUpdate(demande.getId())).thenReturn(Optional.of(demande));
+        return demande;
+    }
+}
@@ -0,0 +1,122 @@
+package ma.iorecycling.service;
+
+import ma.iorecycling.AbstractPostgresIT;
+import ma.iorecycling.dto.CreatePaiementRequest;
+import ma.iorecycling.dto.ResultatRapprochementDTO;
+import ma.iorecycling.dto.ResultatRapprochementDTO.MotifRefus;
+import ma.iorecycling.entity.Paiement;
+import ma.iorecycling.exception.RapprochementRefuseException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * Application d'un rapprochement sur PostgreSQL, sans transaction de test : appliquer valide ou annule
+ * sa propre transaction comme en production
+ */
+@Import({RapprochementBancaireService.class, ReleveBancaireParser.class, PaiementService.class,
+        TransactionService.class, TransactionDtoAssembler.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RapprochementBancaireServicePostgresIT extends AbstractPostgresIT {
+
+    @Autowired
+    private RapprochementBancaireService rapprochementBancaireService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long societeId;
+
+    @BeforeEach
+    void setUp() {
+        societeId = jdbcTemplate.queryForObject(
+                "INSERT INTO societe (raison_sociale, ice, email) VALUES ('Société Rapprochement', " +
+                "'001234567000098', 'rapprochement@test.ma') RETURNING id", Long.class);
+    }
+
+    @AfterEach
+    void tearDown() {
+        // Transactions d'abord : leurs triggers mettent à jour des tables rattachées à la société
+        jdbcTemplate.update("DELETE FROM transaction WHERE societe_id = ?", societeId);
+        jdbcTemplate.update("DELETE FROM societe WHERE id = ?", societeId);
+    }
+
+    @Test
+    void appliquer_shouldSavePaymentsAndPaidInstalments() {
+        // Given : une recette de 500 à deux échéances
+        Long facture = transaction("500.00", "0.00");
+        echeance(facture, "200.00", "2024-05-31");
+        echeance(facture, "300.00", "2024-06-30");
+
+        // When : deux virements qui soldent chacun une échéance
+        ResultatRapprochementDTO resultat = rapprochementBancaireService.appliquer(
+                List.of(demande(facture, "200.00", "VIR-1"), demande(facture, "300.00", "VIR-2")), "comptable");
+
+        // Then
+        assertThat(resultat.getPaiementsCrees()).isEqualTo(2);
+        assertThat(resultat.getTransactionsSoldees()).isEqualTo(1);
+        assertThat(resultat.getEcheancesSoldees()).isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT montant_paye || ':' || statut FROM transaction WHERE id = ?",
+                String.class, facture)).isEqualTo("500.00:PAYEE");
+        assertThat(jdbcTemplate.queryForList("SELECT p.reference || ':' || e.montant FROM paiement p " +
+                "JOIN echeance e ON e.id = p.echeance_id WHERE p.transaction_id = ? AND e.statut = 'PAYEE' " +
+                "ORDER BY p.reference", String.class, facture)).containsExactly("VIR-1:200.00", "VIR-2:300.00");
+    }
+
+    @Test
+    void appliquer_shouldRollBackAcceptedUpdatesWhenOneTransactionIsRefused() {
+        // Given : une recette sans paiement, une recette dont il ne reste que 10
+        Long acceptee = transaction("100.00", "0.00");
+        Long presqueSoldee = transaction("50.00", "40.00");
+        Long inexistante = presqueSoldee + 1_000_000;
+
+        // When : la première mise à jour réussit, les deux autres sont refusées
+        assertThatThrownBy(() -> rapprochementBancaireService.appliquer(List.of(
+                demande(acceptee, "60.00", "VIR-1"), demande(presqueSoldee, "30.00", "VIR-2"),
+                demande(inexistante, "5.00", "VIR-3")), "comptable"))
+                .isInstanceOfSatisfying(RapprochementRefuseException.class, e -> assertThat(e.getRefus())
+                        .extracting(ResultatRapprochementDTO.Refus::getTransactionId,
+                                ResultatRapprochementDTO.Refus::getMontantRestant,
+                                ResultatRapprochementDTO.Refus::getMotif)
+                        .containsExactly(
+                                tuple(presqueSoldee, new BigDecimal("10.00"), MotifRefus.MONTANT_SUPERIEUR_AU_RESTANT),
+                                tuple(inexistante, null, MotifRefus.TRANSACTION_INEXISTANTE)));
+
+        // Then : rien n'est enregistré, pas même la mise à jour acceptée
+        assertThat(jdbcTemplate.queryForList("SELECT id || ':' || montant_paye FROM transaction " +
+                "WHERE societe_id = ? ORDER BY id", String.class, societeId))
+                .containsExactly(acceptee + ":0.00", presqueSoldee + ":40.00");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM paiement WHERE societe_id = ?",
+                Integer.class, societeId)).isZero();
+    }
+
+    private Long transaction(String montant, String montantPaye) {
+        return jdbcTemplate.queryForObject("INSERT INTO transaction (type, montant, montant_paye, date_transaction, " +
+                "description, societe_id) VALUES ('RECETTE', CAST(? AS NUMERIC), CAST(? AS NUMERIC), " +
+                "DATE '2024-05-02', 'Facture', ?) RETURNING id", Long.class, montant, montantPaye, societeId);
+    }
+
+    private void echeance(Long transactionId, String montant, String date) {
+        jdbcTemplate.update("INSERT INTO echeance (transaction_id, montant, date_echeance) " +
+                "VALUES (?, CAST(? AS NUMERIC), CAST(? AS DATE))", transactionId, montant, date);
+    }
+
+    private static CreatePaiementRequest demande(Long transactionId, String montant, String reference) {
+        return CreatePaiementRequest.builder().transactionId(transactionId).montant(new BigDecimal(montant))
+                .datePaiement(LocalDate.of(2024, 5, 15)).modePaiement(Paiement.ModePaiement.VIREMENT)
+                .reference(reference).build();
+    }
+}
@@ -0,0 +1,254 @@
+package ma.iorecycling.service;
+
+import ma.iorecycling.dto.CreatePaiementRequest;
+import ma.iorecycling.dto.PropositionRapprochementDTO;
+import ma.iorecycling.dto.PropositionRapprochementDTO.Critere;
+import ma.iorecycling.dto.PropositionRapprochementDTO.StatutProposition;
+import ma.iorecycling.dto.RapprochementDTO;
+import ma.iorecycling.dto.ResultatRapprochementDTO;
+import ma.iorecycling.dto.ResultatRapprochementDTO.MotifRefus;
+import ma.iorecycling.dto.TransactionOuverteDTO;
+import ma.iorecycling.entity.Echeance;
+import ma.iorecycling.entity.Paiement;
+import ma.iorecycling.entity.Societe;
+import ma.iorecycling.entity.Transaction;
+import ma.iorecycling.entity.Transaction.TypeTransaction;
+import ma.iorecycling.exception.RapprochementRefuseException;
+import ma.iorecycling.repository.EcheanceRepository;
+import ma.iorecycling.repository.PaiementRepository;
+import ma.iorecycling.repository.TransactionRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RapprochementBancaireServiceTest {
+
+    private final TransactionRepository transactionRepository = mock(TransactionRepository.class);
+    private final PaiementRepository paiementRepository = mock(PaiementRepository.class);
+    private final EcheanceRepository echeanceRepository = mock(EcheanceRepository.class);
+    private final JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+    private final PaiementService paiementService = new PaiementService(paiementRepository, transactionRepository,
+            mock(TransactionService.class), echeanceRepository, mock(ApplicationEventPublisher.class));
+    private final RapprochementBancaireService service = new RapprochementBancaireService(
+            new ReleveBancaireParser(), transactionRepository, paiementRepository, echeanceRepository,
+            paiementService, jdbcTemplate, mock(ApplicationEventPublisher.class));
+
+    @Test
+    void proposer_shouldMatchByNumberThenByAmountWithinTolerance() throws Exception {
+        // Given : une recette citée par son numéro d'enlèvement, deux recettes de même montant, une dépense
+        when(transactionRepository.findTransactionsOuvertes(isNull())).thenReturn(List.of(
+                ouverte(1L, TypeTransaction.RECETTE, "2024-04-02", "ENL-2024-0012", "300.00"),
+                ouverte(2L, TypeTransaction.RECETTE, "2024-03-01", null, "150.00"),
+                ouverte(3L, TypeTransaction.RECETTE, "2024-04-20", null, "150.00"),
+                ouverte(4L, TypeTransaction.DEPENSE, "2024-04-25", null, "80.00")));
+        when(paiementRepository.findReferencesExistantes(any())).thenReturn(List.of("VIR-000"));
+        String csv = """
+                Date opération;Libellé;Crédit;Débit;Référence
+                02/05/2024;VIR CLIENT enl 2024 0012 / ENL-2024-0012;"1 200,00";;VIR-001
+                03/05/2024;VIR CLIENT;150,00;;VIR-002
+                04/05/2024;PRLV FOURNISSEUR;;80,00;PRLV-003
+                05/05/2024;VIR DEJA SAISI;150,00;;VIR-000
+                06/05/2024;VIR INCONNU;999,99;;VIR-004
+                """;
+
+        // When
+        RapprochementDTO rapprochement = service.proposer(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), "releve.csv", null, 30);
+
+        // Then
+        List<PropositionRapprochementDTO> p = rapprochement.getPropositions();
+        assertThat(rapprochement.getLignesLues()).isEqualTo(5);
+        assertThat(p.get(0).getCritere()).isEqualTo(Critere.REFERENCE);
+        assertThat(p.get(0).getTransactionId()).isEqualTo(1L);
+        assertThat(p.get(0).getMontantAttribue()).isEqualByComparingTo("300.00"); // Plafonné au restant
+        assertThat(p.get(1).getCritere()).isEqualTo(Critere.MONTANT_DATE);
+        assertThat(p.get(1).getTransactionId()).isEqualTo(3L); // La transaction du 01/03 est hors tolérance
+        assertThat(p.get(1).getStatut()).isEqualTo(StatutProposition.PROPOSEE);
+        assertThat(p.get(2).getTransactionId()).isEqualTo(4L);
+        assertThat(p.get(2).isCredit()).isFalse();
+        assertThat(p.get(3).getStatut()).isEqualTo(StatutProposition.DEJA_ENREGISTREE);
+        assertThat(p.get(4).getStatut()).isEqualTo(StatutProposition.NON_RAPPROCHEE);
+        assertThat(rapprochement.getMontantPropose()).isEqualByComparingTo("530.00");
+    }
+
+    @Test
+    void proposer_shouldReadCamtEntriesAndNotReuseConsumedAmount() throws Exception {
+        // Given : deux virements de 150 pour une seule recette de 150 restant
+        when(transactionRepository.findTransactionsOuvertes(isNull())).thenReturn(List.of(
+                ouverte(7L, TypeTransaction.RECETTE, "2024-05-01", null, "150.00")));
+        String xml = """
+                <?xml version="1.0" encoding="UTF-8"?>
+                <Document xmlns="urn:iso:std:iso:20022:tech:xsd:camt.053.001.02">
+                  <BkToCstmrStmt><Stmt>
+                    <Ntry>
+                      <Amt Ccy="MAD">150.00</Amt><CdtDbtInd>CRDT</CdtDbtInd>
+                      <BookgDt><Dt>2024-05-10</Dt></BookgDt><AcctSvcrRef>BK-1</AcctSvcrRef>
+                      <NtryDtls><TxDtls><AmtDtls><TxAmt><Amt Ccy="MAD">1.00</Amt></TxAmt></AmtDtls>
+                        <RmtInf><Ustrd>Facture avril</Ustrd></RmtInf></TxDtls></NtryDtls>
+                    </Ntry>
+                    <Ntry>
+                      <Amt Ccy="MAD">150.00</Amt><CdtDbtInd>CRDT</CdtDbtInd>
+                      <ValDt><DtTm>2024-05-11T09:00:00</DtTm></ValDt><NtryRef>BK-2</NtryRef>
+                    </Ntry>
+                  </Stmt></BkToCstmrStmt>
+                </Document>
+                """;
+
+        // When
+        RapprochementDTO rapprochement = service.proposer(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), "releve", null, 30);
+
+        // Then
+        List<PropositionRapprochementDTO> p = rapprochement.getPropositions();
+        assertThat(p).hasSize(2);
+        assertThat(p.get(0).getDateOperation()).isEqualTo(LocalDate.of(2024, 5, 10));
+        assertThat(p.get(0).getMontant()).isEqualByComparingTo("150.00");
+        assertThat(p.get(0).getLibelle()).isEqualTo("Facture avril");
+        assertThat(p.get(0).getReferenceBancaire()).isEqualTo("BK-1");
+        assertThat(p.get(0).getTransactionId()).isEqualTo(7L);
+        assertThat(p.get(1).getReferenceBancaire()).isEqualTo("BK-2");
+        assertThat(p.get(1).getStatut()).isEqualTo(StatutProposition.NON_RAPPROCHEE);
+    }
+
+    @Test
+    void proposer_shouldStopReadingOnceLimitIsExceeded() {
+        // Given : un relevé de dix fois la longueur maximale, produit à la demande
+        byte[] entete = "Date;Libellé;Montant\n".getBytes(StandardCharsets.UTF_8);
+        byte[] ligne = "02/05/2024;VIR CLIENT;150,00\n".getBytes(StandardCharsets.UTF_8);
+        long taille = entete.length + (long) ligne.length * 10 * RapprochementBancaireService.LIGNES_MAX;
+        long[] lus = {0};
+        InputStream releve = new InputStream() {
+            @Override
+            public int read() {
+                if (lus[0] == taille) {
+                    return -1;
+                }
+                long position = lus[0]++;
+                return position < entete.length ? entete[(int) position]
+                        : ligne[(int) ((position - entete.length) % ligne.length)];
+            }
+        };
+
+        // When / Then : refusé sans lire la suite du fichier (au plus les tampons de lecture) ni chercher de transactions
+        assertThatThrownBy(() -> service.proposer(releve, "releve.csv", null, 30))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Relevé trop long");
+        assertThat(lus[0]).isLessThan((long) ligne.length * (RapprochementBancaireService.LIGNES_MAX + 1000));
+        verify(transactionRepository, never()).findTransactionsOuvertes(any());
+    }
+
+    @Test
+    void appliquer_shouldUpdateEachTransactionOnceAndAllocateInstalmentsAcrossItsPayments() {
+        // Given : deux lignes sur une recette de 500 à deux échéances, une ligne qui solde une autre recette
+        Transaction facture = transaction(1L, "500.00", "400.00");
+        Transaction soldee = transaction(2L, "50.00", "50.00");
+        Echeance mai = echeance(11L, facture, "200.00", "2024-05-31");
+        Echeance juin = echeance(12L, facture, "300.00", "2024-06-30");
+        when(jdbcTemplate.<Map.Entry<Long, BigDecimal>>batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+                .thenReturn(new int[][]{{1, 1}});
+        when(transactionRepository.findAllById(any())).thenReturn(List.of(facture, soldee));
+        when(echeanceRepository.findEcheancesEnAttenteByTransactionIdIn(any())).thenReturn(List.of(mai, juin));
+
+        // When
+        ResultatRapprochementDTO resultat = service.appliquer(List.of(
+                demande(2L, "50.00"), demande(1L, "200.00"), demande(1L, "200.00")), "comptable");
+
+        // Then : un montant payé par transaction, dans l'ordre des ids
+        assertThat(misesAJour()).containsExactly(Map.entry(1L, new BigDecimal("400.00")),
+                Map.entry(2L, new BigDecimal("50.00")));
+        // L'échéance de mai est attribuée au premier paiement et n'est plus proposée au second
+        List<Paiement> paiements = paiementsEnregistres();
+        assertThat(paiements).extracting(p -> p.getTransaction().getId(), Paiement::getEcheance)
+                .containsExactly(tuple(2L, null), tuple(1L, mai), tuple(1L, null));
+        assertThat(mai.getStatut()).isEqualTo(Echeance.StatutEcheance.PAYEE);
+        assertThat(juin.getStatut()).isEqualTo(Echeance.StatutEcheance.EN_ATTENTE);
+        assertThat(facture.getStatut()).isEqualTo(Transaction.StatutTransaction.PARTIELLEMENT_PAYEE);
+        assertThat(resultat.getPaiementsCrees()).isEqualTo(3);
+        assertThat(resultat.getMontantTotal()).isEqualByComparingTo("450.00");
+        assertThat(resultat.getTransactionsSoldees()).isEqualTo(1);
+        assertThat(resultat.getEcheancesSoldees()).isEqualTo(1);
+        assertThat(resultat.getRefus()).isEmpty();
+    }
+
+    @Test
+    void appliquer_shouldMapRefusedBatchCountsBackToTransactionsWithTheirReason() {
+        // Given : lot découpé en deux, la 2e mise à jour (restant insuffisant) et la 3e (inexistante) refusées
+        when(jdbcTemplate.<Map.Entry<Long, BigDecimal>>batchUpdate(anyString(), anyCollection(), anyInt(), any()))
+                .thenReturn(new int[][]{{1, 0}, {0}});
+        when(transactionRepository.findAllById(any())).thenReturn(List.of(transaction(5L, "100.00", "80.00")));
+
+        // When
+        assertThatThrownBy(() -> service.appliquer(List.of(
+                demande(9L, "10.00"), demande(1L, "30.00"), demande(5L, "15.00"), demande(5L, "15.00")), "comptable"))
+                // Then
+                .isInstanceOfSatisfying(RapprochementRefuseException.class, e -> assertThat(e.getRefus())
+                        .extracting(ResultatRapprochementDTO.Refus::getTransactionId,
+                                ResultatRapprochementDTO.Refus::getMontantDemande,
+                                ResultatRapprochementDTO.Refus::getMontantRestant,
+                                ResultatRapprochementDTO.Refus::getMotif)
+                        .containsExactly(
+                                tuple(5L, new BigDecimal("30.00"), new BigDecimal("20.00"), MotifRefus.MONTANT_SUPERIEUR_AU_RESTANT),
+                                tuple(9L, new BigDecimal("10.00"), null, MotifRefus.TRANSACTION_INEXISTANTE)));
+        verify(paiementRepository, never()).saveAll(any());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map.Entry<Long, BigDecimal>> misesAJour() {
+        ArgumentCaptor<Collection<Map.Entry<Long, BigDecimal>>> mises = ArgumentCaptor.forClass(Collection.class);
+        verify(jdbcTemplate).batchUpdate(anyString(), mises.capture(), anyInt(),
+                any(ParameterizedPreparedStatementSetter.class));
+        return List.copyOf(mises.getValue());
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Paiement> paiementsEnregistres() {
+        ArgumentCaptor<List<Paiement>> paiements = ArgumentCaptor.forClass(List.class);
+        verify(paiementRepository).saveAll(paiements.capture());
+        return paiements.getValue();
+    }
+
+    private static CreatePaiementRequest demande(Long transactionId, String montant) {
+        return CreatePaiementRequest.builder().transactionId(transactionId).montant(new BigDecimal(montant))
+                .datePaiement(LocalDate.of(2024, 5, 15)).modePaiement(Paiement.ModePaiement.VIREMENT).build();
+    }
+
+    private static Transaction transaction(Long id, String montant, String montantPaye) {
+        return Transaction.builder().id(id).type(TypeTransaction.RECETTE).montant(new BigDecimal(montant))
+                .montantPaye(new BigDecimal(montantPaye)).societe(Societe.builder().id(1L).build()).build();
+    }
+
+    private static Echeance echeance(Long id, Transaction transaction, String montant, String date) {
+        return Echeance.builder().id(id).transaction(transaction).montant(new BigDecimal(montant))
+                .dateEcheance(LocalDate.parse(date)).build();
+    }
+
+    private static TransactionOuverteDTO ouverte(Long id, TypeTransaction type, String date, String numeroEnlevement,
+                                                 String montantRestant) {
+        return new TransactionOuverteDTO(id, type, 1L, "Société", LocalDate.parse(date), "Transaction " + id,
+                null, numeroEnlevement, null, new BigDecimal(montantRestant));
+    }
+}
@@ -0,0 +1,241 @@
+package ma.iorecycling.service;
+
+import ma.iorecycling.config.RegenerationProperties;
+import ma.iorecycling.entity.Enlevement;
+import ma.iorecycling.entity.RegenerationJob;
+import ma.iorecycling.entity.Site;
+import ma.iorecycling.entity.Societe;
+import ma.iorecycling.repository.EnlevementRepository;
+import ma.iorecycling.repository.RegenerationJobRepository;
+import ma.iorecycling.repository.SiteRepository;
+import ma.iorecycling.repository.SocieteRepository;
+import ma.iorecycling.repository.TransactionRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+/**
+ * Exécution des jobs sur H2 sans transaction de test : chaque lot est validé comme en production
+ * Les reprises et annulations concurrentes sont simulées dans une transaction séparée pendant un lot
+ */
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class RegenerationTransactionsServiceTest {
+
+    @Autowired
+    private RegenerationJobRepository jobRepository;
+
+    @Autowired
+    private EnlevementRepository enlevementRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private SocieteRepository societeRepository;
+
+    @Autowired
+    private SiteRepository siteRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final TransactionGenerationService transactionGenerationService = mock(TransactionGenerationService.class);
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+    private final RegenerationProperties properties = new RegenerationProperties();
+
+    private RegenerationTransactionsService service;
+    private TransactionTemplate autreTransaction;
+
+    @BeforeEach
+    void setUp() {
+        properties.setTailleLot(2);
+        properties.setPauseMs(0);
+        service = new RegenerationTransactionsService(jobRepository, enlevementRepository, transactionRepository,
+                societeRepository, transactionGenerationService, eventPublisher, mock(ThreadPoolTaskExecutor.class),
+                transactionManager, properties);
+        autreTransaction = new TransactionTemplate(transactionManager);
+        autreTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    @AfterEach
+    void tearDown() {
+        jobRepository.deleteAllInBatch();
+        enlevementRepository.deleteAllInBatch();
+        siteRepository.deleteAllInBatch();
+        societeRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void executer_shouldTakeOverAbandonedJobButNotActiveOne() {
+        // Given : un job dont le worker ne donne plus signe de vie, un autre dont le worker est actif
+        List<Long> ids = creerEnlevements(2);
+        Instant abandonne = Instant.now().minus(10, ChronoUnit.MINUTES).truncatedTo(ChronoUnit.MICROS);
+        Instant actif = Instant.now().truncatedTo(ChronoUnit.MICROS);
+        Long jobAbandonne = jobRepository.save(RegenerationJob.builder().total(2)
+                .statut(RegenerationJob.Statut.EN_COURS).actifLe(abandonne).verrouilleLe(abandonne).build()).getId();
+        Long jobActif = jobRepository.save(RegenerationJob.builder().total(2)
+                .statut(RegenerationJob.Statut.EN_COURS).actifLe(actif).verrouilleLe(actif).build()).getId();
+        when(transactionGenerationService.regenerer(anyCollection(), anyList()))
+                .thenReturn(new TransactionGenerationService.Bilan(1, 0, 0));
+
+        // When
+        service.executer(jobActif);
+        verifyNoInteractions(transactionGenerationService);
+        service.executer(jobAbandonne);
+
+        // Then : le job abandonné est repris avec un nouveau jeton et parcouru, l'autre est laissé à son worker
+        RegenerationJob repris = jobRepository.findById(jobAbandonne).orElseThrow();
+        assertThat(repris.getStatut()).isEqualTo(RegenerationJob.Statut.TERMINE);
+        assertThat(repris.getVerrouilleLe()).isAfter(abandonne);
+        assertThat(repris.getTraites()).isEqualTo(2);
+        assertThat(repris.getDernierEnlevementId()).isEqualTo(ids.get(1));
+        RegenerationJob laisse = jobRepository.findById(jobActif).orElseThrow();
+        assertThat(laisse.getVerrouilleLe()).isEqualTo(actif);
+        assertThat(laisse.getTraites()).isZero();
+    }
+
+    @Test
+    void executer_shouldDiscardBatchAndStopWhenAnotherWorkerTakesOver() {
+        // Given : pendant le premier lot, un autre worker reprend le job
+        creerEnlevements(3);
+        Long jobId = jobRepository.save(RegenerationJob.builder().total(3).build()).getId();
+        Instant autreVerrou = Instant.now().plusSeconds(1).truncatedTo(ChronoUnit.MICROS);
+        when(transactionGenerationService.regenerer(anyCollection(), anyList())).thenAnswer(invocation -> {
+            autreTransaction.execute(status -> jobRepository.reserver(jobId, autreVerrou, autreVerrou.plusSeconds(60)));
+            return new TransactionGenerationService.Bilan(2, 0, 0);
+        });
+
+        // When
+        service.executer(jobId);
+
+        // Then : l'avancement du lot n'est pas enregistré, le premier worker s'arrête
+        RegenerationJob job = jobRepository.findById(jobId).orElseThrow();
+        verify(transactionGenerationService, times(1)).regenerer(anyCollection(), anyList());
+        verifyNoInteractions(eventPublisher);
+        assertThat(job.getStatut()).isEqualTo(RegenerationJob.Statut.EN_COURS);
+        assertThat(job.getVerrouilleLe()).isEqualTo(autreVerrou);
+        assertThat(job.getTraites()).isZero();
+        assertThat(job.getDernierEnlevementId()).isZero();
+    }
+
+    @Test
+    void executer_shouldResumeAfterLastValidatedEnlevement() {
+        // Given : les deux premiers enlèvements ont été validés avant un arrêt
+        List<Long> ids = creerEnlevements(4);
+        Long jobId = jobRepository.save(RegenerationJob.builder().total(4).traites(2)
+                .dernierEnlevementId(ids.get(1)).build()).getId();
+        List<Long> regeneres = new ArrayList<>();
+        when(transactionGenerationService.regenerer(anyCollection(), anyList())).thenAnswer(invocation -> {
+            Collection<Enlevement> enlevements = invocation.getArgument(0);
+            enlevements.forEach(e -> regeneres.add(e.getId()));
+            return new TransactionGenerationService.Bilan(enlevements.size(), 0, 0);
+        });
+
+        // When
+        service.executer(jobId);
+
+        // Then
+        RegenerationJob job = jobRepository.findById(jobId).orElseThrow();
+        assertThat(regeneres).containsExactlyInAnyOrder(ids.get(2), ids.get(3));
+        assertThat(job.getStatut()).isEqualTo(RegenerationJob.Statut.TERMINE);
+        assertThat(job.getTraites()).isEqualTo(4);
+        assertThat(job.getTransactionsCreees()).isEqualTo(2);
+        assertThat(job.getDernierEnlevementId()).isEqualTo(ids.get(3));
+    }
+
+    @Test
+    void executer_shouldFallBackToOneByOneAndRecordFailedEnlevement() {
+        // Given : le lot échoue à cause du deuxième enlèvement
+        properties.setTailleLot(3);
+        List<Long> ids = creerEnlevements(3);
+        Long jobId = jobRepository.save(RegenerationJob.builder().total(3).build()).getId();
+        when(transactionGenerationService.regenerer(anyCollection(), anyList())).thenAnswer(invocation -> {
+            Collection<Enlevement> enlevements = invocation.getArgument(0);
+            if (enlevements.stream().anyMatch(e -> e.getId().equals(ids.get(1)))) {
+                throw new IllegalStateException("tarif manquant");
+            }
+            return new TransactionGenerationService.Bilan(2, 0, 0);
+        });
+
+        // When
+        service.executer(jobId);
+
+        // Then : un appel pour le lot puis un par enlèvement, l'échec est compté sans bloquer le job
+        RegenerationJob job = jobRepository.findById(jobId).orElseThrow();
+        verify(transactionGenerationService, times(4)).regenerer(anyCollection(), anyList());
+        assertThat(job.getStatut()).isEqualTo(RegenerationJob.Statut.TERMINE);
+        assertThat(job.getTraites()).isEqualTo(3);
+        assertThat(job.getEnErreur()).isEqualTo(1);
+        assertThat(job.getTransactionsCreees()).isEqualTo(4);
+        assertThat(job.getDernierEnlevementId()).isEqualTo(ids.get(2));
+        assertThat(job.getDerniereErreur()).startsWith("Enlèvement " + ids.get(1) + " : IllegalStateException");
+    }
+
+    @Test
+    void executer_shouldDiscardBatchAndStopWhenJobIsCancelled() {
+        // Given : le job est annulé pendant le premier lot
+        creerEnlevements(4);
+        Long jobId = jobRepository.save(RegenerationJob.builder().total(4).build()).getId();
+        when(transactionGenerationService.regenerer(anyCollection(), anyList())).thenAnswer(invocation -> {
+            autreTransaction.execute(status -> jobRepository.changerStatut(jobId, RegenerationJob.Statut.ANNULE,
+                    List.of(RegenerationJob.Statut.EN_COURS), Instant.now()));
+            return new TransactionGenerationService.Bilan(2, 0, 0);
+        });
+
+        // When
+        service.executer(jobId);
+
+        // Then
+        RegenerationJob job = jobRepository.findById(jobId).orElseThrow();
+        verify(transactionGenerationService, times(1)).regenerer(anyCollection(), anyList());
+        verify(eventPublisher, times(0)).publishEvent(any(Object.class));
+        assertThat(job.getStatut()).isEqualTo(RegenerationJob.Statut.ANNULE);
+        assertThat(job.getTraites()).isZero();
+        assertThat(job.getTermineLe()).isNotNull();
+    }
+
+    private List<Long> creerEnlevements(int nombre) {
+        Societe societe = societeRepository.save(Societe.builder()
+                .raisonSociale("Société Job").ice("001234567000095").email("job@test.ma").build());
+        Site site = siteRepository.save(Site.builder().societe(societe).name("Site J").build());
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < nombre; i++) {
+            ids.add(enlevementRepository.save(Enlevement.builder()
+                    .dateEnlevement(LocalDate.of(2024, 6, 1).plusDays(i))
+                    .societe(societe).site(site)
+                    .build()).getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,103 @@
+package ma.iorecycling.service;
+
+import jakarta.persistence.EntityManagerFactory;
+import ma.iorecycling.dto.TransactionDTO;
+import ma.iorecycling.entity.*;
+import ma.iorecycling.repository.TransactionRepository;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest(properties = {
+        "spring.flyway.enabled=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import(TransactionDtoAssembler.class)
+class TransactionDtoAssemblerTest {
+
+    @Autowired
+    private TransactionDtoAssembler assembler;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private TestEntityManager em;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    void assembler_shouldBuildPageWithBoundedStatementCountAndSameDtos() {
+        // Given : le montant payé est alimenté en base (V23), sans valeur par défaut dans le schéma de test
+        em.getEntityManager().createNativeQuery("ALTER TABLE transaction ALTER COLUMN montant_paye SET DEFAULT 0")
+                .executeUpdate();
+        Societe client = societe("Client A", "001234567000092");
+        Societe autre = societe("Client B", "001234567000093");
+        Site site = em.persist(Site.builder().societe(client).name("Site T").build());
+        Enlevement enlevement = em.persist(Enlevement.builder()
+                .dateEnlevement(LocalDate.of(2024, 4, 2)).societe(client).site(site).build());
+        Vente vente = em.persist(Vente.builder().dateVente(LocalDate.of(2024, 4, 3)).build());
+        VenteItem venteItem = em.persist(VenteItem.builder()
+                .vente(vente).typeDechet(PickupItem.TypeDechet.RECYCLABLE)
+                .quantiteVendueKg(BigDecimal.TEN).prixVenteUnitaireMad(BigDecimal.ONE).build());
+        for (int i = 0; i < 30; i++) {
+            Transaction transaction = em.persist(Transaction.builder()
+                    .type(i % 2 == 0 ? Transaction.TypeTransaction.RECETTE : Transaction.TypeTransaction.DEPENSE)
+                    .montant(new BigDecimal("100.00")).dateTransaction(LocalDate.of(2024, 4, 1).plusDays(i))
+                    .description("Transaction " + i).societe(i % 3 == 0 ? autre : client)
+                    .enlevement(i % 3 == 1 ? enlevement : null).venteItem(i % 3 == 2 ? venteItem : null)
+                    .build());
+            for (int p = 0; p < i % 3; p++) {
+                em.persist(Paiement.builder().transaction(transaction).montant(BigDecimal.TEN)
+                        .datePaiement(LocalDate.of(2024, 5, 1)).modePaiement(Paiement.ModePaiement.VIREMENT).build());
+            }
+            em.persist(Echeance.builder().transaction(transaction).montant(new BigDecimal("100.00"))
+                    .dateEcheance(LocalDate.of(2024, 6, 1)).build());
+        }
+        em.flush();
+        em.clear();
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        PageRequest pageable = PageRequest.of(0, 25, Sort.by(Sort.Direction.DESC, "dateTransaction"));
+
+        // When
+        Page<TransactionDTO> page = assembler.assembler(transactionRepository.findPageIds(pageable));
+
+        // Then : page d'ids, comptage, transactions et en-têtes, paiements, échéances
+        assertThat(statistics.getPrepareStatementCount()).isLessThanOrEqualTo(5);
+        assertThat(page.getTotalElements()).isEqualTo(30);
+        assertThat(page.getContent()).hasSize(25);
+
+        // Même contenu que la conversion ligne par ligne
+        em.clear();
+        List<TransactionDTO> attendus = transactionRepository.findAll(pageable).map(assembler::toDTO).getContent();
+        assertThat(page.getContent()).isEqualTo(attendus);
+        TransactionDTO venteMatiere = page.getContent().stream()
+                .filter(dto -> dto.getVenteItemId() != null).findFirst().orElseThrow();
+        assertThat(venteMatiere.getVenteNumero()).startsWith("VENT-");
+        assertThat(venteMatiere.getPaiements()).hasSize(2);
+        assertThat(venteMatiere.getEcheances()).hasSize(1);
+    }
+
+    private Societe societe(String raisonSociale, String ice) {
+        return em.persist(Societe.builder()
+                .raisonSociale(raisonSociale).ice(ice).email(ice + "@test.ma").build());
+    }
+}
@@ -0,0 +1,81 @@
+package ma.iorecycling.service;
+
+import ma.iorecycling.entity.Enlevement;
+import ma.iorecycling.entity.PickupItem;
+import ma.iorecycling.entity.Societe;
+import ma.iorecycling.entity.Transaction;
+import ma.iorecycling.repository.TransactionRepository;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TransactionGenerationServiceTest {
+
+    private final TransactionRepository transactionRepository = mock(TransactionRepository.class);
+    private final TransactionGenerationService service = new TransactionGenerationService(transactionRepository);
+
+    @SuppressWarnings("unchecked")
+    @Test
+    void generateTransactionsFromEnlevement_shouldUpdateChangedLinesInPlace() {
+        // Given : deux items, la quantité du premier a changé et sa transaction est partiellement payée
+        Enlevement enlevement = Enlevement.builder()
+                .id(1L).numeroEnlevement("ENL-2024-000001").dateEnlevement(LocalDate.of(2024, 5, 2))
+                .societe(Societe.builder().id(3L).build()).build();
+        PickupItem modifie = item(10L, "12");
+        PickupItem inchange = item(11L, "5");
+        enlevement.addItem(modifie);
+        enlevement.addItem(inchange);
+
+        List<Transaction> attendues = service.construireTransactions(enlevement);
+        Transaction payee = existante(100L, attendues.get(0), modifie);
+        payee.setMontant(new BigDecimal("100.00"));
+        payee.setMontantPaye(new BigDecimal("40.00"));
+        payee.setStatut(Transaction.StatutTransaction.PARTIELLEMENT_PAYEE);
+        Transaction identique = existante(101L, attendues.get(1), inchange);
+        Transaction obsolete = existante(102L, attendues.get(1), item(99L, "1"));
+        when(transactionRepository.findByEnlevementId(1L)).thenReturn(List.of(payee, identique, obsolete));
+
+        // When
+        service.generateTransactionsFromEnlevement(enlevement);
+
+        // Then : montant mis à jour en place (paiement conservé), ligne inchangée intacte, ligne orpheline supprimée
+        assertThat(payee.getMontant()).isEqualByComparingTo("120.00");
+        assertThat(payee.getMontantPaye()).isEqualByComparingTo("40.00");
+        assertThat(payee.getStatut()).isEqualTo(Transaction.StatutTransaction.PARTIELLEMENT_PAYEE);
+        assertThat(identique.getMontant()).isEqualByComparingTo("50.00");
+
+        ArgumentCaptor<List<Transaction>> supprimees = ArgumentCaptor.forClass(List.class);
+        ArgumentCaptor<List<Transaction>> creees = ArgumentCaptor.forClass(List.class);
+        verify(transactionRepository).deleteAll(supprimees.capture());
+        verify(transactionRepository).saveAll(creees.capture());
+        assertThat(supprimees.getValue()).containsExactly(obsolete);
+        assertThat(creees.getValue()).isEmpty();
+    }
+
+    private Transaction existante(Long id, Transaction attendue, PickupItem item) {
+        return Transaction.builder()
+                .id(id).type(attendue.getType()).montant(attendue.getMontant())
+                .dateTransaction(attendue.getDateTransaction()).description(attendue.getDescription())
+                .categorie(attendue.getCategorie()).societe(attendue.getSociete())
+                .enlevement(attendue.getEnlevement()).pickupItem(item)
+                .build();
+    }
+
+    private PickupItem item(Long id, String quantite) {
+        PickupItem item = PickupItem.builder()
+                .id(id).typeDechet(PickupItem.TypeDechet.BANAL)
+                .quantiteKg(new BigDecimal(quantite)).prixUnitaireMad(BigDecimal.ZERO)
+                .prixTraitementMad(BigDecimal.TEN)
+                .build();
+        item.validateAndCalculate();
+        return item;
+    }
+}
@@ -40,6 +40,30 @@ export interface Enlevement {
   transactions?: Transaction[];
 }
 
+/**
+ * Résumé d'un enlèvement renvoyé par les listes (sans items), le détail complet reste sur /{id}
+ */
+export interface EnlevementSummary {
+  id: number;
+  numeroEnlevement: string;
+  dateEnlevement: string; // Format ISO: "2024-11-28"
+  heureEnlevement?: string; // Format ISO: "HH:mm:ss"
+  societeId: number;
+  societeNom: string;
+  siteId: number;
+  siteNom: string;
+  camionMatricule?: string;
+  chauffeurNom?: string;
+  destinationRaisonSociale?: string;
+  nbItems: number;
+  poidsTotal: number;
+  poidsRecyclable: number;
+  budgetRecyclage: number;
+  budgetTraitement: number;
+  bilanNet: number;
+  tauxRecyclage: number;
+}
+
 import { Transaction } from './comptabilite.model';
 
 export interface CreateEnlevementRequest {
@@ -92,6 +116,7 @@ export enum StatutStock {
 }
 
 export interface CreatePickupItemRequest {
+  id?: number; // Item existant à modifier (mise à jour), absent pour un nouvel item
   typeDechet: string; // 'RECYCLABLE', 'BANAL', 'A_DETRUIRE'
   sousType?: string;
   quantiteKg: number;
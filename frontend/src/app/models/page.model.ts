@@ -31,3 +31,14 @@ export interface Page<T> {
   empty: boolean;
 }
 
+
+/**
+ * Page parcourue par curseur (keyset), renvoyée par les endpoints /scroll
+ */
+export interface CursorPage<T> {
+  content: T[];
+  size: number;
+  hasNext: boolean;
+  nextCursor: string | null; // A renvoyer en paramètre cursor pour la page suivante
+  totalElements: number | null; // Renseigné uniquement avec withTotal=true
+}
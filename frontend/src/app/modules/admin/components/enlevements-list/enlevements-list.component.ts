@@ -17,7 +17,7 @@ import { FormBuilder, FormGroup, ReactiveFormsModule } from '@angular/forms';
 import { Router } from '@angular/router';
 import { EnlevementService } from '../../../../services/enlevement.service';
 import { SocieteService } from '../../../../services/societe.service';
-import { Enlevement } from '../../../../models/enlevement.model';
+import { EnlevementSummary } from '../../../../models/enlevement.model';
 import { Societe } from '../../../../models/societe.model';
 import { TranslatePipe } from '../../../../pipes/translate.pipe';
 import { I18nService } from '../../../../services/i18n.service';
@@ -50,7 +50,7 @@ import { I18nService } from '../../../../services/i18n.service';
   styleUrls: ['./enlevements-list.component.scss']
 })
 export class EnlevementsListComponent implements OnInit {
-  enlevements: Enlevement[] = [];
+  enlevements: EnlevementSummary[] = [];
   displayedColumns: string[] = ['numeroEnlevement', 'dateEnlevement', 'societeNom', 'siteNom', 'poidsTotal', 'budgetRecyclage', 'budgetTraitement', 'bilanNet', 'tauxRecyclage', 'actions'];
   
   // Pagination
@@ -136,7 +136,7 @@ export class EnlevementsListComponent implements OnInit {
     this.router.navigate(['/admin/enlevements/new']);
   }
 
-  viewEnlevement(enlevement: Enlevement): void {
+  viewEnlevement(enlevement: EnlevementSummary): void {
     this.router.navigate(['/admin/enlevements', enlevement.id]);
   }
 
@@ -14,7 +14,7 @@ import { SiteService } from '../../../../services/site.service';
 import { ClientUserService } from '../../../../services/client-user.service';
 import { EnlevementService } from '../../../../services/enlevement.service';
 import { Societe, Site, ClientUser } from '../../../../models/societe.model';
-import { Enlevement } from '../../../../models/enlevement.model';
+import { EnlevementSummary } from '../../../../models/enlevement.model';
 import { ClientUserFormComponent } from '../client-user-form/client-user-form.component';
 import { SiteFormComponent, SiteFormData } from '../site-form/site-form.component';
 import { TranslatePipe } from '../../../../pipes/translate.pipe';
@@ -51,7 +51,7 @@ export class SocieteDetailComponent implements OnInit {
   societe?: Societe;
   sites: Site[] = [];
   utilisateurs: ClientUser[] = [];
-  enlevements: Enlevement[] = [];
+  enlevements: EnlevementSummary[] = [];
   loading = false;
 
   displayedColumnsSites = ['name', 'adresse', 'nbEnlevements', 'actions'];
@@ -130,7 +130,7 @@ export class SocieteDetailComponent implements OnInit {
     });
   }
 
-  viewEnlevement(enlevement: Enlevement): void {
+  viewEnlevement(enlevement: EnlevementSummary): void {
     this.router.navigate(['/admin/enlevements', enlevement.id]);
   }
 
@@ -27,7 +27,7 @@ import {
   Transaction
 } from '../../../../models/comptabilite.model';
 import { Societe } from '../../../../models/societe.model';
-import { Enlevement } from '../../../../models/enlevement.model';
+import { EnlevementSummary } from '../../../../models/enlevement.model';
 import { AddPaiementDialogComponent } from '../add-paiement-dialog/add-paiement-dialog.component';
 import { TranslatePipe } from '../../../../pipes/translate.pipe';
 import { I18nService } from '../../../../services/i18n.service';
@@ -66,7 +66,7 @@ export class TransactionFormComponent implements OnInit {
   transactionId?: number;
   loading = false;
   societes: Societe[] = [];
-  enlevements: Enlevement[] = [];
+  enlevements: EnlevementSummary[] = [];
   typeFixe = false; // Indique si le type est fixe (passé en paramètre)
   currentTransaction?: Transaction; // Transaction chargée pour la consultation
   isComptable = false; // Indique si l'utilisateur est comptable
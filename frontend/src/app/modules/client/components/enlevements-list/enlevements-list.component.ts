@@ -13,7 +13,7 @@ import { MatFormFieldModule } from '@angular/material/form-field';
 import { MatSelectModule } from '@angular/material/select';
 import { MatInputModule } from '@angular/material/input';
 import { EnlevementService } from '../../../../services/enlevement.service';
-import { Enlevement } from '../../../../models/enlevement.model';
+import { EnlevementSummary } from '../../../../models/enlevement.model';
 import { TranslatePipe } from '../../../../pipes/translate.pipe';
 import { I18nService } from '../../../../services/i18n.service';
 
@@ -42,7 +42,7 @@ import { I18nService } from '../../../../services/i18n.service';
   styleUrls: ['./enlevements-list.component.scss']
 })
 export class ClientEnlevementsListComponent implements OnInit {
-  enlevements: Enlevement[] = [];
+  enlevements: EnlevementSummary[] = [];
   displayedColumns: string[] = ['numeroEnlevement', 'dateEnlevement', 'siteNom', 'poidsTotal', 'bilanNet', 'tauxRecyclage', 'actions'];
   
   totalElements = 0;
@@ -83,7 +83,7 @@ export class ClientEnlevementsListComponent implements OnInit {
     this.loadEnlevements();
   }
 
-  viewEnlevement(enlevement: Enlevement): void {
+  viewEnlevement(enlevement: EnlevementSummary): void {
     this.router.navigate(['/client/enlevements', enlevement.id]);
   }
 
@@ -1,8 +1,9 @@
 import { Injectable } from '@angular/core';
 import { HttpClient, HttpParams } from '@angular/common/http';
 import { Observable } from 'rxjs';
-import { Enlevement, CreateEnlevementRequest } from '../models/enlevement.model';
+import { Enlevement, EnlevementSummary, CreateEnlevementRequest } from '../models/enlevement.model';
 import { Page } from '../models/societe.model';
+import { CursorPage } from '../models/page.model';
 import { environment } from '../../environments/environment';
 
 /**
@@ -35,7 +36,7 @@ export class EnlevementService {
   /**
    * Liste les enlèvements (paginé) - Admin
    */
-  getEnlevements(societeId?: number, page: number = 0, size: number = 20): Observable<Page<Enlevement>> {
+  getEnlevements(societeId?: number, page: number = 0, size: number = 20): Observable<Page<EnlevementSummary>> {
     let params = new HttpParams()
       .set('page', page.toString())
       .set('size', size.toString());
@@ -44,7 +45,25 @@ export class EnlevementService {
       params = params.set('societeId', societeId.toString());
     }
 
-    return this.http.get<Page<Enlevement>>(this.adminApiUrl, { params });
+    return this.http.get<Page<EnlevementSummary>>(this.adminApiUrl, { params });
+  }
+
+  /**
+   * Parcourt les enlèvements par curseur (défilement infini) - Admin
+   */
+  scrollEnlevements(societeId?: number, cursor?: string, size: number = 20, withTotal: boolean = false): Observable<CursorPage<EnlevementSummary>> {
+    let params = new HttpParams()
+      .set('size', size.toString())
+      .set('withTotal', withTotal.toString());
+
+    if (societeId) {
+      params = params.set('societeId', societeId.toString());
+    }
+    if (cursor) {
+      params = params.set('cursor', cursor);
+    }
+
+    return this.http.get<CursorPage<EnlevementSummary>>(`${this.adminApiUrl}/scroll`, { params });
   }
 
   /**
@@ -57,12 +76,12 @@ export class EnlevementService {
   /**
    * Liste les enlèvements de la société du client (paginé)
    */
-  getClientEnlevements(page: number = 0, size: number = 20): Observable<Page<Enlevement>> {
+  getClientEnlevements(page: number = 0, size: number = 20): Observable<Page<EnlevementSummary>> {
     const params = new HttpParams()
       .set('page', page.toString())
       .set('size', size.toString());
 
-    return this.http.get<Page<Enlevement>>(this.clientApiUrl, { params });
+    return this.http.get<Page<EnlevementSummary>>(this.clientApiUrl, { params });
   }
 
   /**